@@ -92,7 +92,8 @@ javac -encoding UTF-8 -cp "lib\*" -d src -sourcepath src ^
     src\server\*.java ^
     src\App.java ^
     src\CriarBanco.java ^
-    src\TesteConexao.java
+    src\TesteConexao.java ^
+    src\BenchmarkEstoque.java
 
 if errorlevel 1 (
     echo.
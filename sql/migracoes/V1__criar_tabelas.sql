@@ -0,0 +1,53 @@
+-- Esquema inicial do Petshop.
+-- IF NOT EXISTS para que bancos criados antes do controle de versao
+-- (pelo antigo criar_banco_corrigido.sql) sejam adotados sem erro.
+
+CREATE TABLE IF NOT EXISTS TB_CLIENTE (
+    id_cliente INT AUTO_INCREMENT PRIMARY KEY,
+    nome VARCHAR(100) NOT NULL,
+    cpf CHAR(11) NOT NULL,
+    telefone VARCHAR(11),
+    email VARCHAR(100) NOT NULL,
+    endereco VARCHAR(255),
+    data_cadastro TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_cliente_cpf UNIQUE (cpf)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS TB_PET (
+    id_pet INT AUTO_INCREMENT PRIMARY KEY,
+    id_cliente INT NOT NULL,
+    nome VARCHAR(100) NOT NULL,
+    especie VARCHAR(50) NOT NULL,
+    raca VARCHAR(50),
+    data_nascimento DATE,
+    peso DECIMAL(7,2),
+    observacoes TEXT,
+    data_cadastro TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT fk_pet_cliente FOREIGN KEY (id_cliente)
+        REFERENCES TB_CLIENTE (id_cliente) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS TB_PRODUTO (
+    id_produto INT AUTO_INCREMENT PRIMARY KEY,
+    nome VARCHAR(100) NOT NULL,
+    descricao TEXT,
+    preco DECIMAL(10,2) NOT NULL,
+    estoque INT NOT NULL DEFAULT 0,
+    categoria VARCHAR(50),
+    ativo BOOLEAN NOT NULL DEFAULT TRUE,
+    data_cadastro TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS TB_FUNCIONARIO (
+    id_funcionario INT AUTO_INCREMENT PRIMARY KEY,
+    nome VARCHAR(100) NOT NULL,
+    cpf CHAR(11) NOT NULL,
+    telefone VARCHAR(11),
+    email VARCHAR(100) NOT NULL,
+    cargo VARCHAR(50) NOT NULL,
+    salario_base DECIMAL(10,2) NOT NULL,
+    data_contratacao DATE,
+    ativo BOOLEAN NOT NULL DEFAULT TRUE,
+    data_cadastro TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_funcionario_cpf UNIQUE (cpf)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
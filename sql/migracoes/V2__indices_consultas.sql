@@ -0,0 +1,50 @@
+-- Indices para os caminhos de acesso dos DAOs.
+-- Todo indice secundario do InnoDB ja carrega a chave primaria, entao
+-- (coluna) tambem atende "ORDER BY coluna, id" da paginacao por chave.
+--
+-- CREATE INDEX faz commit implicito e o MySQL nao tem IF NOT EXISTS para
+-- indices: se um deles falhar, os anteriores ficam criados e a migracao
+-- nao e registrada. Cada indice passa por criar_indice, que pula os que ja
+-- existem, para a migracao poder rodar de novo depois de corrigido o erro.
+
+DELIMITER //
+DROP PROCEDURE IF EXISTS criar_indice //
+CREATE PROCEDURE criar_indice(IN tabela VARCHAR(64), IN indice VARCHAR(64), IN colunas VARCHAR(255))
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.STATISTICS
+                   WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = tabela AND INDEX_NAME = indice) THEN
+        SET @ddl = CONCAT('CREATE INDEX ', indice, ' ON ', tabela, ' (', colunas, ')');
+        PREPARE ddl FROM @ddl;
+        EXECUTE ddl;
+        DEALLOCATE PREPARE ddl;
+    END IF;
+END //
+DELIMITER ;
+
+-- PetDAO.buscarPorCliente: WHERE id_cliente = ? ORDER BY nome.
+-- Tambem atende a chave estrangeira fk_pet_cliente, cujo indice
+-- implicito o MySQL descarta ao ver este.
+CALL criar_indice('TB_PET', 'idx_pet_cliente_nome', 'id_cliente, nome');
+
+-- ProdutoDAO.buscarPorCategoria: WHERE categoria = ? ORDER BY nome
+CALL criar_indice('TB_PRODUTO', 'idx_produto_categoria_nome', 'categoria, nome');
+
+-- FuncionarioDAO.buscarPorCargo: WHERE cargo = ? ORDER BY nome
+CALL criar_indice('TB_FUNCIONARIO', 'idx_funcionario_cargo_nome', 'cargo, nome');
+
+-- listarTodos e a listagem paginada ordenam por nome; o filtro nome=
+-- da paginacao e um LIKE 'prefixo%', que tambem usa estes indices
+CALL criar_indice('TB_CLIENTE', 'idx_cliente_nome', 'nome');
+CALL criar_indice('TB_PET', 'idx_pet_nome', 'nome');
+CALL criar_indice('TB_PRODUTO', 'idx_produto_nome', 'nome');
+CALL criar_indice('TB_FUNCIONARIO', 'idx_funcionario_nome', 'nome');
+
+-- Demais ordenacoes e filtros de igualdade da listagem paginada.
+-- TB_PRODUTO.estoque fica sem indice: e a coluna mais atualizada da
+-- tabela e cada baixa de estoque teria que manter o indice.
+CALL criar_indice('TB_CLIENTE', 'idx_cliente_email', 'email');
+CALL criar_indice('TB_PET', 'idx_pet_especie', 'especie');
+CALL criar_indice('TB_PRODUTO', 'idx_produto_preco', 'preco');
+CALL criar_indice('TB_FUNCIONARIO', 'idx_funcionario_salario', 'salario_base');
+
+DROP PROCEDURE criar_indice;
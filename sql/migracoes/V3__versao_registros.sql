@@ -0,0 +1,29 @@
+-- Versao de cada registro, para controle de concorrencia otimista.
+-- Todo UPDATE incrementa a versao e so grava se a versao enviada pelo
+-- cliente ainda for a atual (WHERE id = ? AND versao = ?).
+--
+-- ALTER TABLE faz commit implicito e o MySQL nao tem ADD COLUMN IF NOT
+-- EXISTS: se uma tabela falhar, as anteriores ja ganharam a coluna e a
+-- migracao nao e registrada. Cada coluna passa por criar_coluna, que pula
+-- as tabelas que ja a tem, para a migracao poder rodar de novo.
+
+DELIMITER //
+DROP PROCEDURE IF EXISTS criar_coluna //
+CREATE PROCEDURE criar_coluna(IN tabela VARCHAR(64), IN coluna VARCHAR(64), IN definicao VARCHAR(255))
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.COLUMNS
+                   WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = tabela AND COLUMN_NAME = coluna) THEN
+        SET @ddl = CONCAT('ALTER TABLE ', tabela, ' ADD COLUMN ', coluna, ' ', definicao);
+        PREPARE ddl FROM @ddl;
+        EXECUTE ddl;
+        DEALLOCATE PREPARE ddl;
+    END IF;
+END //
+DELIMITER ;
+
+CALL criar_coluna('TB_CLIENTE', 'versao', 'INT NOT NULL DEFAULT 0');
+CALL criar_coluna('TB_PET', 'versao', 'INT NOT NULL DEFAULT 0');
+CALL criar_coluna('TB_PRODUTO', 'versao', 'INT NOT NULL DEFAULT 0');
+CALL criar_coluna('TB_FUNCIONARIO', 'versao', 'INT NOT NULL DEFAULT 0');
+
+DROP PROCEDURE criar_coluna;
@@ -0,0 +1,109 @@
+import dao.ProdutoDAO;
+import exception.EstoqueInsuficienteException;
+import model.Produto;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compara a baixa de estoque antiga (ler, alterar em memoria, regravar)
+ * com o UPDATE condicional do ProdutoDAO, com muitas threads vendendo o
+ * mesmo produto. Uso: java BenchmarkEstoque [threads] [vendasPorThread]
+ */
+public class BenchmarkEstoque {
+    
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int vendasPorThread = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int estoqueInicial = threads * vendasPorThread;
+        
+        System.out.println("========================================");
+        System.out.println("  Benchmark de Estoque (produto disputado)");
+        System.out.println("========================================");
+        System.out.println("  Threads: " + threads + ", vendas por thread: " + vendasPorThread);
+        System.out.println();
+        
+        ProdutoDAO produtoDAO = new ProdutoDAO();
+        Produto produto = new Produto();
+        produto.setNome("BENCHMARK ESTOQUE");
+        produto.setPreco(1.0);
+        produto.setEstoque(estoqueInicial);
+        produto.setCategoria("BENCHMARK");
+        produto = produtoDAO.inserir(produto);
+        int id = produto.getIdProduto();
+        
+        try {
+            long vendidas = executar("Ler-alterar-gravar", threads, vendasPorThread, () -> {
+                Produto p = produtoDAO.buscarPorId(id);
+                p.removerEstoque(1);
+                produtoDAO.atualizar(p);
+            });
+            relatarSaldo(produtoDAO, id, estoqueInicial - vendidas);
+            
+            produtoDAO.atualizarEstoque(id, estoqueInicial);
+            vendidas = executar("UPDATE condicional", threads, vendasPorThread, () -> produtoDAO.removerEstoque(id, 1));
+            relatarSaldo(produtoDAO, id, estoqueInicial - vendidas);
+            
+            // Mais vendas que estoque: nenhuma pode deixar o saldo negativo
+            produtoDAO.atualizarEstoque(id, estoqueInicial / 2);
+            vendidas = executar("UPDATE condicional com falta", threads, vendasPorThread, () -> produtoDAO.removerEstoque(id, 1));
+            relatarSaldo(produtoDAO, id, estoqueInicial / 2 - vendidas);
+        } finally {
+            produtoDAO.deletar(id);
+        }
+    }
+    
+    private interface Venda {
+        void executar() throws Exception;
+    }
+    
+    private static long executar(String nome, int threads, int vendasPorThread, Venda venda) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch largada = new CountDownLatch(1);
+        AtomicLong sucesso = new AtomicLong();
+        AtomicLong semEstoque = new AtomicLong();
+        AtomicLong erros = new AtomicLong();
+        
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    largada.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < vendasPorThread; i++) {
+                    try {
+                        venda.executar();
+                        sucesso.incrementAndGet();
+                    } catch (EstoqueInsuficienteException e) {
+                        semEstoque.incrementAndGet();
+                    } catch (IllegalArgumentException e) {
+                        // Produto.removerEstoque tambem recusa saldo insuficiente
+                        semEstoque.incrementAndGet();
+                    } catch (Exception e) {
+                        erros.incrementAndGet();
+                    }
+                }
+            });
+        }
+        
+        long inicio = System.nanoTime();
+        largada.countDown();
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.MINUTES);
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        
+        System.out.printf("%-30s %8.0f vendas/s | ok: %d, sem estoque: %d, erros: %d%n",
+            nome, sucesso.get() / segundos, sucesso.get(), semEstoque.get(), erros.get());
+        return sucesso.get();
+    }
+    
+    private static void relatarSaldo(ProdutoDAO produtoDAO, int id, long esperado) throws Exception {
+        int saldo = produtoDAO.buscarPorId(id).getEstoque();
+        System.out.println("  saldo final: " + saldo + ", esperado: " + esperado
+            + (saldo != esperado ? " (" + (saldo - esperado) + " baixas perdidas)" : ""));
+    }
+}
@@ -0,0 +1,172 @@
+import dao.FuncionarioDAO;
+import dao.RowMapper;
+import model.Atendente;
+import model.Funcionario;
+import model.Tosador;
+import model.Veterinario;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * Mede o custo por linha do mapeamento de funcionarios: o mapeador antigo,
+ * que procura cada coluna pelo nome, contra FuncionarioDAO.MAPEADOR, que
+ * resolve os indices uma vez por ResultSet. Roda sobre um CachedRowSet em
+ * memoria, entao nao precisa de banco.
+ * Uso: java BenchmarkMapeamento [linhas] [rodadas]
+ */
+public class BenchmarkMapeamento {
+    
+    private static final String[] COLUNAS = {
+        "id_funcionario", "nome", "cpf", "telefone", "email",
+        "cargo", "salario_base", "data_contratacao", "ativo", "data_cadastro", "versao"
+    };
+    private static final int[] TIPOS = {
+        Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+        Types.VARCHAR, Types.DOUBLE, Types.DATE, Types.BOOLEAN, Types.TIMESTAMP, Types.INTEGER
+    };
+    private static final String[] CARGOS = { "VETERINARIO", "TOSADOR", "ATENDENTE" };
+    
+    // Recebe o resultado de cada rodada para o JIT nao eliminar o laco
+    private static volatile int sumidouro;
+    
+    public static void main(String[] args) throws Exception {
+        int linhas = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int rodadas = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        
+        System.out.println("========================================");
+        System.out.println("  Benchmark de Mapeamento de Linhas");
+        System.out.println("========================================");
+        System.out.println("  Linhas: " + linhas + ", rodadas: " + rodadas);
+        System.out.println();
+        
+        CachedRowSet dados = criarResultSet(gerarDados(linhas));
+        
+        // Aquecimento do JIT nas duas versoes antes de medir
+        for (int i = 0; i < 10; i++) {
+            sumidouro = porNome(dados) + porIndice(dados);
+        }
+        
+        // Rodadas alternadas, para ruido (GC, frequencia da CPU) afetar as duas igualmente
+        long melhorNome = Long.MAX_VALUE;
+        long melhorIndice = Long.MAX_VALUE;
+        for (int i = 0; i < rodadas; i++) {
+            melhorNome = Math.min(melhorNome, medir(() -> porNome(dados)));
+            melhorIndice = Math.min(melhorIndice, medir(() -> porIndice(dados)));
+        }
+        double nomeNs = (double) melhorNome / linhas;
+        double indiceNs = (double) melhorIndice / linhas;
+        
+        System.out.printf("%-30s %8.1f ns/linha%n", "Por nome (antes)", nomeNs);
+        System.out.printf("%-30s %8.1f ns/linha%n", "Indices resolvidos (depois)", indiceNs);
+        System.out.printf("%-30s %8.2fx%n", "Ganho", nomeNs / indiceNs);
+    }
+    
+    private interface Rodada {
+        int executar() throws SQLException;
+    }
+    
+    private static long medir(Rodada rodada) throws SQLException {
+        long inicio = System.nanoTime();
+        sumidouro = rodada.executar();
+        return System.nanoTime() - inicio;
+    }
+    
+    private static int porIndice(CachedRowSet rs) throws SQLException {
+        rs.beforeFirst();
+        RowMapper<Funcionario> mapper = FuncionarioDAO.MAPEADOR.vincular(rs);
+        int soma = 0;
+        while (rs.next()) {
+            soma += mapper.mapear(rs).getIdFuncionario();
+        }
+        return soma;
+    }
+    
+    private static int porNome(CachedRowSet rs) throws SQLException {
+        rs.beforeFirst();
+        int soma = 0;
+        while (rs.next()) {
+            soma += mapearPorNome(rs).getIdFuncionario();
+        }
+        return soma;
+    }
+    
+    // Mapeador anterior do FuncionarioDAO, mantido aqui so para comparacao
+    private static Funcionario mapearPorNome(ResultSet rs) throws SQLException {
+        Integer id = rs.getInt("id_funcionario");
+        String nome = rs.getString("nome");
+        String cpf = rs.getString("cpf");
+        String telefone = rs.getString("telefone");
+        String email = rs.getString("email");
+        String cargo = rs.getString("cargo");
+        Double salarioBase = rs.getDouble("salario_base");
+        Date dataContratacao = rs.getDate("data_contratacao");
+        Boolean ativo = rs.getBoolean("ativo");
+        Timestamp timestamp = rs.getTimestamp("data_cadastro");
+        
+        Funcionario funcionario;
+        if ("VETERINARIO".equalsIgnoreCase(cargo)) {
+            funcionario = new Veterinario();
+        } else if ("TOSADOR".equalsIgnoreCase(cargo)) {
+            funcionario = new Tosador();
+        } else {
+            funcionario = new Atendente();
+        }
+        funcionario.setIdFuncionario(id);
+        funcionario.setNome(nome);
+        funcionario.setCpf(cpf);
+        funcionario.setTelefone(telefone);
+        funcionario.setEmail(email);
+        funcionario.setSalarioBase(salarioBase);
+        funcionario.setDataContratacao(dataContratacao != null ? dataContratacao.toLocalDate() : null);
+        funcionario.setAtivo(ativo);
+        funcionario.setDataCadastro(timestamp != null ? timestamp.toLocalDateTime() : null);
+        funcionario.setVersao(rs.getInt("versao"));
+        return funcionario;
+    }
+    
+    private static Object[][] gerarDados(int linhas) {
+        Object[][] dados = new Object[linhas][];
+        Date contratacao = Date.valueOf(LocalDate.of(2020, 1, 15));
+        Timestamp cadastro = Timestamp.valueOf(LocalDateTime.of(2020, 1, 10, 9, 30));
+        for (int i = 0; i < linhas; i++) {
+            dados[i] = new Object[] {
+                i + 1, "Funcionario " + i, String.format("%011d", 10000000000L + i), "11999990000",
+                "func" + i + "@petshop.com", CARGOS[i % CARGOS.length], 3500.0 + i, contratacao, true, cadastro, 0
+            };
+        }
+        return dados;
+    }
+    
+    // CachedRowSet do JDK: ResultSet em memoria que procura colunas pelo nome
+    // percorrendo os metadados, sem precisar de banco
+    private static CachedRowSet criarResultSet(Object[][] dados) throws SQLException {
+        RowSetMetaDataImpl meta = new RowSetMetaDataImpl();
+        meta.setColumnCount(COLUNAS.length);
+        for (int i = 0; i < COLUNAS.length; i++) {
+            meta.setColumnName(i + 1, COLUNAS[i]);
+            meta.setColumnLabel(i + 1, COLUNAS[i]);
+            meta.setColumnType(i + 1, TIPOS[i]);
+        }
+        
+        CachedRowSet rs = RowSetProvider.newFactory().createCachedRowSet();
+        rs.setMetaData(meta);
+        for (Object[] linha : dados) {
+            rs.moveToInsertRow();
+            for (int i = 0; i < linha.length; i++) {
+                rs.updateObject(i + 1, linha[i]);
+            }
+            rs.insertRow();
+            rs.moveToCurrentRow();
+        }
+        return rs;
+    }
+}
@@ -0,0 +1,156 @@
+import server.ServerEngine;
+import server.ServerExecutor;
+import server.WebServer;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compara os motores HTTP jdk e nio atendendo o mesmo handler, com clientes
+ * em keep-alive que mandam as requisicoes em lotes (pipelining). Com
+ * pipeline 1 cada cliente espera a resposta antes da proxima requisicao.
+ * Nao precisa de banco.
+ * Uso: java BenchmarkServidor [conexoes] [pipeline] [requisicoesPorConexao] [rodadas]
+ */
+public class BenchmarkServidor {
+    
+    private static final String CORPO =
+        "{\"idProduto\":1,\"nome\":\"Racao Premium 15kg\",\"preco\":189.9,\"estoque\":42,\"categoria\":\"RACAO\"}";
+    
+    public static void main(String[] args) throws Exception {
+        int conexoes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int pipeline = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int porConexao = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int rodadas = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        
+        System.out.println("========================================");
+        System.out.println("  Benchmark de Motores HTTP");
+        System.out.println("========================================");
+        System.out.println("  Conexoes: " + conexoes + ", pipeline: " + pipeline
+            + ", requisicoes por conexao: " + porConexao + ", rodadas: " + rodadas);
+        System.out.println();
+        
+        String[] motores = { ServerEngine.JDK, ServerEngine.NIO };
+        double[] melhor = new double[motores.length];
+        ExecutorService clientes = Executors.newFixedThreadPool(conexoes);
+        try {
+            // Rodadas alternadas, para ruido (GC, frequencia da CPU) afetar os dois igualmente
+            for (int rodada = 0; rodada <= rodadas; rodada++) {
+                for (int i = 0; i < motores.length; i++) {
+                    double porSegundo = medir(motores[i], clientes, conexoes, pipeline, porConexao);
+                    // A rodada 0 e so aquecimento do JIT
+                    if (rodada > 0) {
+                        melhor[i] = Math.max(melhor[i], porSegundo);
+                    }
+                }
+            }
+        } finally {
+            clientes.shutdownNow();
+        }
+        
+        for (int i = 0; i < motores.length; i++) {
+            System.out.printf("%-30s %10.0f req/s%n", "Motor " + motores[i], melhor[i]);
+        }
+        System.out.printf("%-30s %10.2fx%n", "nio / jdk", melhor[1] / melhor[0]);
+    }
+    
+    private static double medir(String motor, ExecutorService clientes, int conexoes, int pipeline,
+                                int porConexao) throws Exception {
+        ServerExecutor executor = ServerExecutor.fromConfig();
+        ServerEngine servidor = ServerEngine.create(motor, new InetSocketAddress("127.0.0.1", 0), executor);
+        servidor.createContext("/bench", exchange -> WebServer.sendResponse(exchange, 200, "application/json", CORPO));
+        servidor.start();
+        try {
+            int porta = servidor.getAddress().getPort();
+            List<Callable<Integer>> tarefas = new ArrayList<>();
+            for (int i = 0; i < conexoes; i++) {
+                tarefas.add(() -> cliente(porta, pipeline, porConexao));
+            }
+            
+            long inicio = System.nanoTime();
+            long total = 0;
+            for (Future<Integer> resultado : clientes.invokeAll(tarefas)) {
+                total += resultado.get();
+            }
+            return total / ((System.nanoTime() - inicio) / 1e9);
+        } finally {
+            servidor.stop(0);
+            executor.shutdown();
+        }
+    }
+    
+    // Uma conexao keep-alive; devolve quantas respostas 200 recebeu
+    private static int cliente(int porta, int pipeline, int total) throws IOException {
+        byte[] requisicao = ("GET /bench HTTP/1.1\r\nHost: 127.0.0.1:" + porta + "\r\n\r\n")
+            .getBytes(StandardCharsets.ISO_8859_1);
+        byte[] lote = new byte[requisicao.length * pipeline];
+        for (int i = 0; i < pipeline; i++) {
+            System.arraycopy(requisicao, 0, lote, i * requisicao.length, requisicao.length);
+        }
+        
+        try (Socket socket = new Socket("127.0.0.1", porta)) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(30_000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+            int recebidas = 0;
+            while (recebidas < total) {
+                int n = Math.min(pipeline, total - recebidas);
+                out.write(lote, 0, n * requisicao.length);
+                out.flush();
+                for (int i = 0; i < n; i++) {
+                    if (lerResposta(in) != 200) {
+                        throw new IOException("Resposta inesperada do servidor");
+                    }
+                    recebidas++;
+                }
+            }
+            return recebidas;
+        }
+    }
+    
+    // Le uma resposta com Content-Length e devolve o status
+    private static int lerResposta(InputStream in) throws IOException {
+        String linha = lerLinha(in);
+        int status = Integer.parseInt(linha.substring(9, 12));
+        int tamanho = 0;
+        while (!(linha = lerLinha(in)).isEmpty()) {
+            if (linha.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                tamanho = Integer.parseInt(linha.substring(15).trim());
+            }
+        }
+        while (tamanho > 0) {
+            long pulados = in.skip(tamanho);
+            if (pulados <= 0) {
+                throw new IOException("Conexao fechada no meio da resposta");
+            }
+            tamanho -= (int) pulados;
+        }
+        return status;
+    }
+    
+    private static String lerLinha(InputStream in) throws IOException {
+        StringBuilder linha = new StringBuilder(64);
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("Conexao fechada pelo servidor");
+            }
+            if (c != '\r') {
+                linha.append((char) c);
+            }
+        }
+        return linha.toString();
+    }
+}
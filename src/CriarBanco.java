@@ -1,47 +1,89 @@
+import dao.VerificacaoPlanos;
+import db.MigrationRunner;
+import util.ConfigUtil;
+
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.Statement;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.List;
 
+/**
+ * Cria o banco, se ainda nao existir, aplica as migracoes pendentes de
+ * sql/migracoes e confere com EXPLAIN que as consultas dos DAOs usam indice.
+ * Termina com codigo 1 em qualquer falha, inclusive consulta sem indice
+ * candidato; uma varredura que o otimizador preferiu tendo indice (comum com
+ * as tabelas ainda vazias) so gera aviso.
+ */
 public class CriarBanco {
-    private static final String URL = "jdbc:mysql://localhost:3306";
-    private static final String USER = "root";
-    private static final String PASSWORD = ""; // XAMPP padrão: sem senha
-    
+    private static final String URL = ConfigUtil.getString("db.url", "jdbc:mysql://localhost:3306/db_petshop");
+    private static final String USER = ConfigUtil.getString("db.user", "root");
+    private static final String PASSWORD = ConfigUtil.getString("db.password", ""); // XAMPP padrão: sem senha
+    private static final String DIRETORIO = ConfigUtil.getString("db.migracoes", "sql/migracoes");
+
     public static void main(String[] args) {
         System.out.println("========================================");
         System.out.println("  Criando Banco de Dados Petshop");
         System.out.println("========================================");
         System.out.println();
-        
+
         try {
             Class.forName("com.mysql.cj.jdbc.Driver");
-            Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-            Statement stmt = conn.createStatement();
-            
-            String sqlScript = new String(Files.readAllBytes(Paths.get("sql/criar_banco_corrigido.sql")));
-            String[] statements = sqlScript.split(";");
-            
-            for (String statement : statements) {
-                statement = statement.trim();
-                if (!statement.isEmpty() && !statement.startsWith("--")) {
-                    try {
-                        stmt.execute(statement);
-                        System.out.println("✓ Executado: " + statement.substring(0, Math.min(50, statement.length())) + "...");
-                    } catch (Exception e) {
-                        System.err.println("✗ Erro: " + e.getMessage());
+            criarBanco();
+
+            try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD)) {
+                List<MigrationRunner.Migracao> aplicadas = new MigrationRunner(Paths.get(DIRETORIO)).migrar(conn);
+                if (aplicadas.isEmpty()) {
+                    System.out.println("✓ Esquema ja esta atualizado");
+                }
+                for (MigrationRunner.Migracao migracao : aplicadas) {
+                    System.out.println("✓ V" + migracao.getVersao() + " " + migracao.getDescricao()
+                        + " (" + migracao.getTotalComandos() + " comandos)");
+                }
+
+                VerificacaoPlanos.Resultado planos = VerificacaoPlanos.verificar(conn);
+                if (!planos.getAvisos().isEmpty()) {
+                    System.out.println("\n⚠ Varreduras escolhidas pelo otimizador, apesar de haver indice:");
+                    for (String aviso : planos.getAvisos()) {
+                        System.out.println("   - " + aviso);
                     }
                 }
+                if (!planos.getProblemas().isEmpty()) {
+                    System.err.println("\n✗ Consultas sem indice:");
+                    for (String problema : planos.getProblemas()) {
+                        System.err.println("   - " + problema);
+                    }
+                    System.exit(1);
+                }
+                System.out.println("✓ Planos conferidos: " + VerificacaoPlanos.getTotalConsultas() + " consultas tem indice");
             }
-            
-            stmt.close();
-            conn.close();
+
             System.out.println("\n✅ Banco de dados criado com sucesso!");
-            
+
         } catch (Exception e) {
             System.err.println("❌ Erro ao criar banco de dados: " + e.getMessage());
             e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // Conecta ao servidor sem banco selecionado para poder criar o banco da URL
+    private static void criarBanco() throws Exception {
+        int barra = URL.indexOf('/', "jdbc:mysql://".length());
+        if (barra < 0) {
+            return;
+        }
+        int fim = URL.indexOf('?', barra);
+        String banco = URL.substring(barra + 1, fim < 0 ? URL.length() : fim);
+        if (banco.isEmpty()) {
+            return;
+        }
+        String servidor = URL.substring(0, barra + 1) + (fim < 0 ? "" : URL.substring(fim));
+
+        try (Connection conn = DriverManager.getConnection(servidor, USER, PASSWORD);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE DATABASE IF NOT EXISTS `" + banco.replace("`", "``")
+                + "` DEFAULT CHARACTER SET utf8mb4");
         }
     }
 }
@@ -0,0 +1,126 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Monta o UPDATE de uma edicao parcial: so as colunas cujo valor mudou entram
+ * no SET. As colunas alteradas sao um bit cada numa mascara, e o SQL de cada
+ * mascara e montado uma vez e reaproveitado (o cache de PreparedStatement do
+ * pool tambem reconhece o mesmo texto). A versao do registro e conferida no
+ * WHERE e incrementada no mesmo comando, como no atualizar completo.
+ */
+final class AtualizacaoParcial<T> {
+    
+    private static final class Coluna<T> {
+        final String nome;
+        final Function<T, ?> valor;
+        final int tipoSql;
+        
+        Coluna(String nome, Function<T, ?> valor, int tipoSql) {
+            this.nome = nome;
+            this.valor = valor;
+            this.tipoSql = tipoSql;
+        }
+    }
+    
+    private final String tabela;
+    private final String colunaId;
+    private final List<Coluna<T>> colunas = new ArrayList<>();
+    private final Map<Long, String> sqlPorMascara = new ConcurrentHashMap<>();
+    
+    AtualizacaoParcial(String tabela, String colunaId) {
+        this.tabela = tabela;
+        this.colunaId = colunaId;
+    }
+    
+    AtualizacaoParcial<T> coluna(String nome, Function<T, ?> valor, int tipoSql) {
+        if (colunas.size() == Long.SIZE) {
+            throw new IllegalStateException("Colunas demais para uma atualizacao parcial: " + tabela);
+        }
+        colunas.add(new Coluna<>(nome, valor, tipoSql));
+        return this;
+    }
+    
+    /**
+     * Mascara das colunas em que alterado difere de atual; 0 quando nada mudou.
+     */
+    long alteradas(T atual, T alterado) {
+        long mascara = 0;
+        for (int i = 0; i < colunas.size(); i++) {
+            Function<T, ?> valor = colunas.get(i).valor;
+            if (!Objects.equals(valor.apply(atual), valor.apply(alterado))) {
+                mascara |= 1L << i;
+            }
+        }
+        return mascara;
+    }
+    
+    /**
+     * Grava as colunas da mascara se a linha ainda estiver na versao informada.
+     * Retorna a nova versao, ou null quando nenhuma linha foi alterada (id
+     * inexistente ou versao diferente).
+     */
+    Integer executar(Connection conn, long mascara, T alterado, int id, int versao) throws SQLException {
+        String sql = sqlPorMascara.computeIfAbsent(mascara, this::montarSql);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            int parametro = 1;
+            for (int i = 0; i < colunas.size(); i++) {
+                if ((mascara & (1L << i)) != 0) {
+                    Coluna<T> coluna = colunas.get(i);
+                    Object valor = coluna.valor.apply(alterado);
+                    if (valor instanceof LocalDate) {
+                        valor = Date.valueOf((LocalDate) valor);
+                    }
+                    pstmt.setObject(parametro++, valor, coluna.tipoSql);
+                }
+            }
+            pstmt.setInt(parametro++, id);
+            pstmt.setInt(parametro, versao);
+            
+            if (pstmt.executeUpdate() == 0) {
+                return null;
+            }
+            // LAST_INSERT_ID(versao + 1) devolve a nova versao sem outra consulta
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                return rs.next() ? rs.getInt(1) : versao + 1;
+            }
+        }
+    }
+    
+    /**
+     * Versao gravada do registro, ou null se ele nao existe. Usada para
+     * distinguir "nao encontrado" de conflito quando o UPDATE nao altera nada.
+     */
+    Integer versaoAtual(Connection conn, int id) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT versao FROM " + tabela + " WHERE " + colunaId + " = ?")) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+    
+    private String montarSql(long mascara) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(tabela).append(" SET ");
+        for (int i = 0; i < colunas.size(); i++) {
+            if ((mascara & (1L << i)) != 0) {
+                sql.append(colunas.get(i).nome).append(" = ?, ");
+            }
+        }
+        return sql.append("versao = LAST_INSERT_ID(versao + 1) WHERE ")
+            .append(colunaId).append(" = ? AND versao = ?").toString();
+    }
+}
@@ -0,0 +1,102 @@
+package dao;
+
+import exception.RegistroNaoEncontradoException;
+import util.ConfigUtil;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Decora um IDAO com cache de leitura em buscarPorId. As demais operacoes
+ * vao direto ao DAO; a invalidacao vem das notificacoes de alteracao da
+ * tabela, entao gravacoes feitas por outros caminhos (estoque, lotes)
+ * tambem limpam o cache. Ids inexistentes ficam num cache negativo de TTL
+ * curto; como inserir tambem notifica, um id recem-criado nao fica preso nele.
+ */
+public class CachedDAO<T> implements IDAO<T> {
+    
+    private final IDAO<T> dao;
+    private final EntityCache<T> cache;
+    private final Function<Integer, ? extends RegistroNaoEncontradoException> naoEncontrado;
+    
+    public CachedDAO(String nome, String tabela, IDAO<T> dao,
+                     Function<Integer, ? extends RegistroNaoEncontradoException> naoEncontrado) {
+        this(nome, tabela, dao, naoEncontrado,
+            ConfigUtil.getInt("cache." + nome + ".maxSize", ConfigUtil.getInt("cache.maxSize", 1000)),
+            ConfigUtil.getLong("cache." + nome + ".ttlMs", ConfigUtil.getLong("cache.ttlMs", 60000)),
+            ConfigUtil.getLong("cache." + nome + ".negativeTtlMs", ConfigUtil.getLong("cache.negativeTtlMs", 5000)));
+    }
+    
+    public CachedDAO(String nome, String tabela, IDAO<T> dao,
+                     Function<Integer, ? extends RegistroNaoEncontradoException> naoEncontrado,
+                     int tamanhoMaximo, long ttlMs, long ttlAusenteMs) {
+        this.dao = dao;
+        this.naoEncontrado = naoEncontrado;
+        this.cache = new EntityCache<>(nome, tamanhoMaximo, ttlMs, ttlAusenteMs);
+        NotificadorAlteracoes.registrar(tabela, (t, id, particao) -> {
+            if (id != null) {
+                cache.invalidar(id);
+            } else {
+                cache.limpar();
+            }
+        });
+    }
+    
+    @Override
+    public T buscarPorId(Integer id) throws Exception {
+        Optional<T> entidade = buscarOpcional(id);
+        if (entidade.isEmpty()) {
+            throw naoEncontrado.apply(id);
+        }
+        return entidade.get();
+    }
+    
+    @Override
+    public Optional<T> buscarOpcional(Integer id) throws Exception {
+        if (id == null || id <= 0) {
+            // Deixa o DAO lancar a mesma validacao de sempre
+            return dao.buscarOpcional(id);
+        }
+        return Optional.ofNullable(cache.buscar(id, i -> dao.buscarOpcional(i).orElse(null)));
+    }
+    
+    @Override
+    public T inserir(T entidade) throws Exception {
+        return dao.inserir(entidade);
+    }
+    
+    @Override
+    public List<T> inserirEmLote(List<T> entidades) throws Exception {
+        return dao.inserirEmLote(entidades);
+    }
+    
+    @Override
+    public List<T> listarTodos() throws Exception {
+        return dao.listarTodos();
+    }
+    
+    @Override
+    public Pagina<T> listarPaginado(Consulta consulta) throws Exception {
+        return dao.listarPaginado(consulta);
+    }
+    
+    @Override
+    public T atualizar(T entidade) throws Exception {
+        return dao.atualizar(entidade);
+    }
+    
+    @Override
+    public int[] atualizarEmLote(List<T> entidades) throws Exception {
+        return dao.atualizarEmLote(entidades);
+    }
+    
+    @Override
+    public boolean deletar(Integer id) throws Exception {
+        return dao.deletar(id);
+    }
+    
+    public EntityCache<T> getCache() {
+        return cache;
+    }
+}
@@ -2,15 +2,68 @@ package dao;
 
 import db.DatabaseConnection;
 import exception.ClienteNaoEncontradoException;
+import exception.ConflitoVersaoException;
+import exception.VersaoObrigatoriaException;
 import model.Cliente;
+import util.Histogram;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 public class ClienteDAO implements IDAO<Cliente> {
     
+    public static final String TABELA = "TB_CLIENTE";
+    
+    private static final String SQL_INSERIR = "INSERT INTO TB_CLIENTE (nome, cpf, telefone, email, endereco, data_cadastro) " +
+        "VALUES (?, ?, ?, ?, ?, ?)";
+    
+    private static final String SQL_ATUALIZAR = "UPDATE TB_CLIENTE SET nome = ?, cpf = ?, telefone = ?, email = ?, endereco = ?, " +
+        "versao = LAST_INSERT_ID(versao + 1) WHERE id_cliente = ? AND versao = ?";
+    
+    private static final String SQL_DATA_CADASTRO_VERSAO = "SELECT data_cadastro, versao FROM TB_CLIENTE WHERE id_cliente = ?";
+    
+    // Consultas por indice; conferidas por VerificacaoPlanos
+    static final String SQL_BUSCAR_POR_ID = "SELECT id_cliente, nome, cpf, telefone, email, endereco, data_cadastro, versao " +
+        "FROM TB_CLIENTE WHERE id_cliente = ?";
+    
+    // Ordenacoes e filtros aceitos na listagem paginada
+    private static final KeysetQuery.Definicao PAGINACAO = new KeysetQuery.Definicao(
+            "SELECT id_cliente, nome, cpf, telefone, email, endereco, data_cadastro, versao " +
+            "FROM TB_CLIENTE", "id_cliente")
+        .ordenacao("nome", "nome", KeysetQuery.Tipo.TEXTO)
+        .filtro("nome", "nome", KeysetQuery.Tipo.TEXTO, KeysetQuery.Comparacao.PREFIXO)
+        .filtro("cpf", "cpf", KeysetQuery.Tipo.TEXTO, KeysetQuery.Comparacao.IGUAL)
+        .filtro("email", "email", KeysetQuery.Tipo.TEXTO, KeysetQuery.Comparacao.IGUAL);
+    
+    // Colunas na ordem usada pelos SELECTs deste DAO; indices resolvidos uma vez por consulta
+    public static final MapeadorColunas<Cliente> MAPEADOR = new MapeadorColunas<>(ClienteDAO::montarCliente,
+        "id_cliente", "nome", "cpf", "telefone", "email",
+        "endereco", "data_cadastro", "versao");
+    
+    // Colunas editaveis, para o UPDATE de edicao parcial
+    private static final AtualizacaoParcial<Cliente> ATUALIZACAO_PARCIAL = new AtualizacaoParcial<Cliente>(TABELA, "id_cliente")
+        .coluna("nome", Cliente::getNome, Types.VARCHAR)
+        .coluna("cpf", Cliente::getCpf, Types.VARCHAR)
+        .coluna("telefone", Cliente::getTelefone, Types.VARCHAR)
+        .coluna("email", Cliente::getEmail, Types.VARCHAR)
+        .coluna("endereco", Cliente::getEndereco, Types.VARCHAR);
+    
+    // Tempo de cada metodo publico, exportado em /metrics
+    private static final Histogram TEMPO_INSERIR = MetricasDAO.metodo("ClienteDAO", "inserir");
+    private static final Histogram TEMPO_INSERIR_EM_LOTE = MetricasDAO.metodo("ClienteDAO", "inserirEmLote");
+    private static final Histogram TEMPO_BUSCAR_POR_ID = MetricasDAO.metodo("ClienteDAO", "buscarPorId");
+    private static final Histogram TEMPO_BUSCAR_OPCIONAL = MetricasDAO.metodo("ClienteDAO", "buscarOpcional");
+    private static final Histogram TEMPO_LISTAR_TODOS = MetricasDAO.metodo("ClienteDAO", "listarTodos");
+    private static final Histogram TEMPO_LISTAR_PAGINADO = MetricasDAO.metodo("ClienteDAO", "listarPaginado");
+    private static final Histogram TEMPO_EXPORTAR = MetricasDAO.metodo("ClienteDAO", "exportar");
+    private static final Histogram TEMPO_ATUALIZAR = MetricasDAO.metodo("ClienteDAO", "atualizar");
+    private static final Histogram TEMPO_ATUALIZAR_PARCIAL = MetricasDAO.metodo("ClienteDAO", "atualizarParcial");
+    private static final Histogram TEMPO_ATUALIZAR_EM_LOTE = MetricasDAO.metodo("ClienteDAO", "atualizarEmLote");
+    private static final Histogram TEMPO_DELETAR = MetricasDAO.metodo("ClienteDAO", "deletar");
+    
     private DatabaseConnection dbConnection;
     
     public ClienteDAO() {
@@ -19,25 +72,23 @@ public class ClienteDAO implements IDAO<Cliente> {
     
     @Override
     public Cliente inserir(Cliente cliente) throws Exception {
-        String sql = "INSERT INTO TB_CLIENTE (nome, cpf, telefone, email, endereco, data_cadastro) " +
-                     "VALUES (?, ?, ?, ?, ?, ?)";
-        
+        long inicio = System.nanoTime();
+        try {
+            return inserirSemMedir(cliente);
+        } finally {
+            TEMPO_INSERIR.registrarDesde(inicio);
+        }
+    }
+    
+    private Cliente inserirSemMedir(Cliente cliente) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            
-            pstmt.setString(1, cliente.getNome());
-            pstmt.setString(2, cliente.getCpf());
-            pstmt.setString(3, cliente.getTelefone());
-            pstmt.setString(4, cliente.getEmail());
-            pstmt.setString(5, cliente.getEndereco());
-            pstmt.setTimestamp(6, Timestamp.valueOf(
-                cliente.getDataCadastro() != null ? cliente.getDataCadastro() : LocalDateTime.now()
-            ));
+            pstmt = conn.prepareStatement(SQL_INSERIR, Statement.RETURN_GENERATED_KEYS);
+            preencherInsercao(pstmt, cliente);
             
             int linhasAfetadas = pstmt.executeUpdate();
             
@@ -46,6 +97,8 @@ public class ClienteDAO implements IDAO<Cliente> {
                 if (rs.next()) {
                     cliente.setIdCliente(rs.getInt(1));
                 }
+                cliente.setVersao(0);
+                NotificadorAlteracoes.notificar(TABELA, cliente.getIdCliente());
                 return cliente;
             } else {
                 throw new SQLException("Falha ao inserir cliente. Nenhuma linha afetada.");
@@ -54,48 +107,104 @@ public class ClienteDAO implements IDAO<Cliente> {
         } catch (SQLException e) {
             throw new Exception("Erro ao inserir cliente: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    /**
+     * Insere os registros com JDBC batch, em blocos transacionais.
+     * Os ids gerados sao atribuidos nas proprias entidades.
+     */
+    @Override
+    public List<Cliente> inserirEmLote(List<Cliente> clientes) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return inserirEmLoteSemMedir(clientes);
+        } finally {
+            TEMPO_INSERIR_EM_LOTE.registrarDesde(inicio);
+        }
+    }
+    
+    private List<Cliente> inserirEmLoteSemMedir(List<Cliente> clientes) throws Exception {
+        try {
+            ExecucaoEmLote.executar(dbConnection, SQL_INSERIR, clientes, this::preencherInsercao, (cliente, id) -> {
+                cliente.setIdCliente(id);
+                cliente.setVersao(0);
+            });
+        } finally {
+            notificarLote(clientes);
         }
+        return clientes;
     }
     
     @Override
     public Cliente buscarPorId(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return buscarPorIdSemMedir(id);
+        } finally {
+            TEMPO_BUSCAR_POR_ID.registrarDesde(inicio);
+        }
+    }
+    
+    private Cliente buscarPorIdSemMedir(Integer id) throws Exception {
+        Optional<Cliente> cliente = buscarOpcional(id);
+        if (cliente.isEmpty()) {
+            throw new ClienteNaoEncontradoException(id);
+        }
+        return cliente.get();
+    }
+    
+    @Override
+    public Optional<Cliente> buscarOpcional(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return buscarOpcionalSemMedir(id);
+        } finally {
+            TEMPO_BUSCAR_OPCIONAL.registrarDesde(inicio);
+        }
+    }
+    
+    private Optional<Cliente> buscarOpcionalSemMedir(Integer id) throws Exception {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("ID do cliente deve ser positivo.");
         }
         
-        String sql = "SELECT id_cliente, nome, cpf, telefone, email, endereco, data_cadastro " +
-                     "FROM TB_CLIENTE WHERE id_cliente = ?";
-        
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = conn.prepareStatement(SQL_BUSCAR_POR_ID);
             pstmt.setInt(1, id);
             
             rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                return criarClienteDoResultSet(rs);
-            } else {
-                throw new ClienteNaoEncontradoException(id);
+                return Optional.of(MAPEADOR.vincular(rs).mapear(rs));
             }
+            return Optional.empty();
             
-        } catch (ClienteNaoEncontradoException e) {
-            throw e;
         } catch (SQLException e) {
             throw new Exception("Erro ao buscar cliente por ID: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
         }
     }
     
     @Override
     public List<Cliente> listarTodos() throws Exception {
-        String sql = "SELECT id_cliente, nome, cpf, telefone, email, endereco, data_cadastro " +
+        long inicio = System.nanoTime();
+        try {
+            return listarTodosSemMedir();
+        } finally {
+            TEMPO_LISTAR_TODOS.registrarDesde(inicio);
+        }
+    }
+    
+    private List<Cliente> listarTodosSemMedir() throws Exception {
+        String sql = "SELECT id_cliente, nome, cpf, telefone, email, endereco, data_cadastro, versao " +
                      "FROM TB_CLIENTE ORDER BY nome ASC";
         
         Connection conn = null;
@@ -108,8 +217,9 @@ public class ClienteDAO implements IDAO<Cliente> {
             pstmt = conn.prepareStatement(sql);
             rs = pstmt.executeQuery();
             
+            RowMapper<Cliente> mapper = MAPEADOR.vincular(rs);
             while (rs.next()) {
-                clientes.add(criarClienteDoResultSet(rs));
+                clientes.add(mapper.mapear(rs));
             }
             
             return clientes;
@@ -117,50 +227,236 @@ public class ClienteDAO implements IDAO<Cliente> {
         } catch (SQLException e) {
             throw new Exception("Erro ao listar clientes: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    @Override
+    public Pagina<Cliente> listarPaginado(Consulta consulta) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return listarPaginadoSemMedir(consulta);
+        } finally {
+            TEMPO_LISTAR_PAGINADO.registrarDesde(inicio);
+        }
+    }
+    
+    private Pagina<Cliente> listarPaginadoSemMedir(Consulta consulta) throws Exception {
+        KeysetQuery query = new KeysetQuery(PAGINACAO, consulta);
+        
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = dbConnection.getConnection();
+            pstmt = conn.prepareStatement(query.getSql());
+            query.bind(pstmt);
+            
+            rs = pstmt.executeQuery();
+            
+            return query.lerPagina(rs, MAPEADOR);
+            
+        } catch (SQLException e) {
+            throw new Exception("Erro ao listar clientes: " + e.getMessage(), e);
+        } finally {
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    /**
+     * Percorre a tabela inteira em ordem de id entregando cada registro ao
+     * consumidor, sem manter a lista em memoria. Retorna o numero de linhas.
+     */
+    public long exportar(RowConsumer<Cliente> consumidor) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return exportarSemMedir(consumidor);
+        } finally {
+            TEMPO_EXPORTAR.registrarDesde(inicio);
+        }
+    }
+    
+    private long exportarSemMedir(RowConsumer<Cliente> consumidor) throws Exception {
+        String sql = "SELECT id_cliente, nome, cpf, telefone, email, endereco, data_cadastro, versao " +
+                     "FROM TB_CLIENTE ORDER BY id_cliente";
+        
+        try {
+            return ConsultaStreaming.executar(dbConnection, sql, MAPEADOR, consumidor);
+        } catch (SQLException e) {
+            throw new Exception("Erro ao exportar clientes: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * O UPDATE grava todas as colunas editaveis, entao o proprio objeto ja e o
+     * estado persistido; so a data de cadastro, quando nao veio preenchida, e
+     * lida na mesma conexao.
+     */
     @Override
     public Cliente atualizar(Cliente cliente) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarSemMedir(cliente);
+        } finally {
+            TEMPO_ATUALIZAR.registrarDesde(inicio);
+        }
+    }
+    
+    private Cliente atualizarSemMedir(Cliente cliente) throws Exception {
         if (cliente.getIdCliente() == null || cliente.getIdCliente() <= 0) {
             throw new IllegalArgumentException("ID do cliente é obrigatório para atualização.");
         }
-        
-        String sql = "UPDATE TB_CLIENTE SET nome = ?, cpf = ?, telefone = ?, email = ?, endereco = ? " +
-                     "WHERE id_cliente = ?";
+        if (cliente.getVersao() == null) {
+            throw new VersaoObrigatoriaException("Cliente", cliente.getIdCliente());
+        }
         
         Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql);
-            
-            pstmt.setString(1, cliente.getNome());
-            pstmt.setString(2, cliente.getCpf());
-            pstmt.setString(3, cliente.getTelefone());
-            pstmt.setString(4, cliente.getEmail());
-            pstmt.setString(5, cliente.getEndereco());
-            pstmt.setInt(6, cliente.getIdCliente());
+            pstmt = conn.prepareStatement(SQL_ATUALIZAR, Statement.RETURN_GENERATED_KEYS);
+            preencherAtualizacao(pstmt, cliente);
+            boolean gravado = pstmt.executeUpdate() > 0;
             
-            int linhasAfetadas = pstmt.executeUpdate();
+            if (gravado) {
+                NotificadorAlteracoes.notificar(TABELA, cliente.getIdCliente());
+                // LAST_INSERT_ID(versao + 1) devolve a nova versao sem outra consulta
+                rs = pstmt.getGeneratedKeys();
+                if (rs.next()) {
+                    cliente.setVersao(rs.getInt(1));
+                }
+                if (cliente.getDataCadastro() != null) {
+                    return cliente;
+                }
+                rs.close();
+            }
             
-            if (linhasAfetadas > 0) {
-                return buscarPorId(cliente.getIdCliente());
-            } else {
+            pstmt.close();
+            pstmt = conn.prepareStatement(SQL_DATA_CADASTRO_VERSAO);
+            pstmt.setInt(1, cliente.getIdCliente());
+            rs = pstmt.executeQuery();
+            if (!rs.next()) {
                 throw new ClienteNaoEncontradoException(cliente.getIdCliente());
             }
+            if (!gravado) {
+                // A linha existe, entao foi a versao que nao bateu
+                throw new ConflitoVersaoException("Cliente", cliente.getIdCliente(), cliente.getVersao(), rs.getInt(2));
+            }
+            if (rs.getTimestamp(1) != null) {
+                cliente.setDataCadastro(rs.getTimestamp(1).toLocalDateTime());
+            }
+            return cliente;
+            
+        } catch (SQLException e) {
+            throw new Exception("Erro ao atualizar cliente: " + e.getMessage(), e);
+        } finally {
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    /**
+     * Grava so as colunas em que alterado difere de atual, desde que o registro
+     * ainda esteja na versao de atual. Sem diferencas, nada e gravado e atual e
+     * devolvido. alterado recebe o id, a data de cadastro e a nova versao.
+     */
+    public Cliente atualizarParcial(Cliente atual, Cliente alterado) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarParcialSemMedir(atual, alterado);
+        } finally {
+            TEMPO_ATUALIZAR_PARCIAL.registrarDesde(inicio);
+        }
+    }
+    
+    private Cliente atualizarParcialSemMedir(Cliente atual, Cliente alterado) throws Exception {
+        Integer id = atual.getIdCliente();
+        if (id == null || id <= 0 || atual.getVersao() == null) {
+            throw new IllegalArgumentException("ID e versão do cliente são obrigatórios para atualização.");
+        }
+        alterado.setIdCliente(id);
+        alterado.setDataCadastro(atual.getDataCadastro());
+        
+        long mascara = ATUALIZACAO_PARCIAL.alteradas(atual, alterado);
+        if (mascara == 0) {
+            alterado.setVersao(atual.getVersao());
+            return alterado;
+        }
+        
+        Connection conn = null;
+        
+        try {
+            conn = dbConnection.getConnection();
+            Integer versao = ATUALIZACAO_PARCIAL.executar(conn, mascara, alterado, id, atual.getVersao());
+            if (versao == null) {
+                Integer versaoAtual = ATUALIZACAO_PARCIAL.versaoAtual(conn, id);
+                if (versaoAtual == null) {
+                    throw new ClienteNaoEncontradoException(id);
+                }
+                throw new ConflitoVersaoException("Cliente", id, atual.getVersao(), versaoAtual);
+            }
+            
+            NotificadorAlteracoes.notificar(TABELA, id);
+            alterado.setVersao(versao);
+            return alterado;
             
         } catch (SQLException e) {
             throw new Exception("Erro ao atualizar cliente: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(null, pstmt, null);
+            dbConnection.closeConnection(conn);
+        }
+    }
+    
+    /**
+     * Atualiza os registros com JDBC batch, em blocos transacionais.
+     * Retorna as linhas afetadas por registro (0 quando o id nao existe).
+     */
+    @Override
+    public int[] atualizarEmLote(List<Cliente> clientes) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarEmLoteSemMedir(clientes);
+        } finally {
+            TEMPO_ATUALIZAR_EM_LOTE.registrarDesde(inicio);
+        }
+    }
+    
+    private int[] atualizarEmLoteSemMedir(List<Cliente> clientes) throws Exception {
+        for (Cliente cliente : clientes) {
+            if (cliente.getIdCliente() == null || cliente.getIdCliente() <= 0) {
+                throw new IllegalArgumentException("Todos os registros do lote precisam de ID para atualização.");
+            }
+            if (cliente.getVersao() == null) {
+                throw new IllegalArgumentException("Todos os registros do lote precisam da versão para atualização.");
+            }
+        }
+        try {
+            int[] linhas = ExecucaoEmLote.executar(dbConnection, SQL_ATUALIZAR, clientes, this::preencherAtualizacao, null);
+            for (int i = 0; i < linhas.length; i++) {
+                Cliente cliente = clientes.get(i);
+                if (linhas[i] > 0) {
+                    cliente.setVersao(cliente.getVersao() + 1);
+                }
+            }
+            return linhas;
+        } finally {
+            notificarLote(clientes);
         }
     }
     
     @Override
     public boolean deletar(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return deletarSemMedir(id);
+        } finally {
+            TEMPO_DELETAR.registrarDesde(inicio);
+        }
+    }
+    
+    private boolean deletarSemMedir(Integer id) throws Exception {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("ID do cliente deve ser positivo.");
         }
@@ -176,43 +472,81 @@ public class ClienteDAO implements IDAO<Cliente> {
             pstmt.setInt(1, id);
             
             int linhasAfetadas = pstmt.executeUpdate();
+            if (linhasAfetadas > 0) {
+                NotificadorAlteracoes.notificar(TABELA, id);
+                // ON DELETE CASCADE em TB_PET apagou os pets do cliente sem passar pelo PetDAO
+                NotificadorAlteracoes.notificar(PetDAO.TABELA, null);
+            }
             
             return linhasAfetadas > 0;
             
         } catch (SQLException e) {
             throw new Exception("Erro ao deletar cliente: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(null, pstmt, null);
+            fecharRecursos(null, pstmt, conn);
         }
     }
     
-    private Cliente criarClienteDoResultSet(ResultSet rs) throws SQLException {
+    private static Cliente montarCliente(ResultSet rs, int[] c) throws SQLException {
         Cliente cliente = new Cliente();
-        cliente.setIdCliente(rs.getInt("id_cliente"));
+        cliente.setIdCliente(rs.getInt(c[0]));
         
         // Usar métodos que não fazem validação para carregar dados do banco
         // Isso evita erros quando os dados no banco estão em formato diferente
-        cliente.setNomeFromDB(rs.getString("nome"));
-        cliente.setCpfFromDB(rs.getString("cpf"));
-        cliente.setTelefoneFromDB(rs.getString("telefone"));
-        cliente.setEmailFromDB(rs.getString("email"));
-        cliente.setEnderecoFromDB(rs.getString("endereco"));
+        cliente.setNomeFromDB(rs.getString(c[1]));
+        cliente.setCpfFromDB(rs.getString(c[2]));
+        cliente.setTelefoneFromDB(rs.getString(c[3]));
+        cliente.setEmailFromDB(rs.getString(c[4]));
+        cliente.setEnderecoFromDB(rs.getString(c[5]));
         
-        Timestamp timestamp = rs.getTimestamp("data_cadastro");
+        Timestamp timestamp = rs.getTimestamp(c[6]);
         if (timestamp != null) {
             cliente.setDataCadastro(timestamp.toLocalDateTime());
         }
         
+        cliente.setVersao(rs.getInt(c[7]));
+        
         return cliente;
     }
     
-    private void fecharRecursos(ResultSet rs, PreparedStatement pstmt, Statement stmt) {
+    private void preencherInsercao(PreparedStatement pstmt, Cliente cliente) throws SQLException {
+        pstmt.setString(1, cliente.getNome());
+        pstmt.setString(2, cliente.getCpf());
+        pstmt.setString(3, cliente.getTelefone());
+        pstmt.setString(4, cliente.getEmail());
+        pstmt.setString(5, cliente.getEndereco());
+        pstmt.setTimestamp(6, Timestamp.valueOf(
+            cliente.getDataCadastro() != null ? cliente.getDataCadastro() : LocalDateTime.now()
+        ));
+    }
+    
+    private void preencherAtualizacao(PreparedStatement pstmt, Cliente cliente) throws SQLException {
+        pstmt.setString(1, cliente.getNome());
+        pstmt.setString(2, cliente.getCpf());
+        pstmt.setString(3, cliente.getTelefone());
+        pstmt.setString(4, cliente.getEmail());
+        pstmt.setString(5, cliente.getEndereco());
+        pstmt.setInt(6, cliente.getIdCliente());
+        pstmt.setObject(7, cliente.getVersao(), Types.INTEGER);
+    }
+    
+    // Um bloco pode ter sido gravado mesmo quando o lote falha depois
+    private void notificarLote(List<Cliente> clientes) {
+        for (Cliente cliente : clientes) {
+            if (cliente.getIdCliente() != null) {
+                NotificadorAlteracoes.notificar(TABELA, cliente.getIdCliente());
+            }
+        }
+    }
+    
+    private void fecharRecursos(ResultSet rs, PreparedStatement pstmt, Connection conn) {
         try {
             if (rs != null) rs.close();
             if (pstmt != null) pstmt.close();
-            if (stmt != null) stmt.close();
         } catch (SQLException e) {
             System.err.println("Erro ao fechar recursos: " + e.getMessage());
+        } finally {
+            dbConnection.closeConnection(conn);
         }
     }
 }
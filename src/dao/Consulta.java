@@ -0,0 +1,85 @@
+package dao;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parametros de uma listagem paginada: limite, cursor, ordenacao e filtros.
+ */
+public class Consulta {
+    
+    public static final int LIMITE_PADRAO = 50;
+    public static final int LIMITE_MAXIMO = 500;
+    public static final String ORDEM_PADRAO = "nome";
+    
+    private final int limite;
+    private final String cursor;
+    private final String ordem;
+    private final boolean decrescente;
+    private final Map<String, String> filtros;
+    
+    public Consulta(int limite, String cursor, String ordem, boolean decrescente, Map<String, String> filtros) {
+        if (limite <= 0 || limite > LIMITE_MAXIMO) {
+            throw new IllegalArgumentException("Limite deve estar entre 1 e " + LIMITE_MAXIMO + ".");
+        }
+        this.limite = limite;
+        this.cursor = cursor != null && !cursor.isEmpty() ? cursor : null;
+        this.ordem = ordem != null && !ordem.isEmpty() ? ordem : ORDEM_PADRAO;
+        this.decrescente = decrescente;
+        this.filtros = filtros != null ? new LinkedHashMap<>(filtros) : new LinkedHashMap<>();
+    }
+    
+    /**
+     * Monta a consulta a partir dos parametros da query string.
+     * Parametros reservados: limite, cursor, ordem, direcao (asc|desc);
+     * os demais sao tratados como filtros.
+     */
+    public static Consulta de(Map<String, String> parametros) {
+        Map<String, String> filtros = new LinkedHashMap<>(parametros);
+        String limiteTexto = filtros.remove("limite");
+        String cursor = filtros.remove("cursor");
+        String ordem = filtros.remove("ordem");
+        String direcao = filtros.remove("direcao");
+        
+        int limite = LIMITE_PADRAO;
+        if (limiteTexto != null) {
+            try {
+                limite = Integer.parseInt(limiteTexto);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Limite deve ser numerico.");
+            }
+        }
+        
+        boolean decrescente = false;
+        if (direcao != null) {
+            if (direcao.equalsIgnoreCase("desc")) {
+                decrescente = true;
+            } else if (!direcao.equalsIgnoreCase("asc")) {
+                throw new IllegalArgumentException("Direcao deve ser asc ou desc.");
+            }
+        }
+        
+        return new Consulta(limite, cursor, ordem, decrescente, filtros);
+    }
+    
+    public int getLimite() {
+        return limite;
+    }
+    
+    public String getCursor() {
+        return cursor;
+    }
+    
+    public String getOrdem() {
+        return ordem;
+    }
+    
+    public boolean isDecrescente() {
+        return decrescente;
+    }
+    
+    public Map<String, String> getFiltros() {
+        return Collections.unmodifiableMap(filtros);
+    }
+}
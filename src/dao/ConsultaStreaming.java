@@ -0,0 +1,73 @@
+package dao;
+
+import db.DatabaseConnection;
+import util.ConfigUtil;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Executa um SELECT entregando as linhas uma a uma, sem montar a lista.
+ * Com o MySQL Connector/J, fetch size Integer.MIN_VALUE num ResultSet
+ * forward-only e somente leitura faz o driver trazer as linhas sob demanda
+ * (com useCursorFetch=true na URL, um valor positivo usa cursor no servidor).
+ */
+final class ConsultaStreaming {
+    
+    private static final int FETCH_SIZE = ConfigUtil.getInt("db.export.fetchSize", Integer.MIN_VALUE);
+    
+    private ConsultaStreaming() {
+    }
+    
+    static <T> long executar(DatabaseConnection dbConnection, String sql, MapeadorColunas<T> mapeador,
+                             RowConsumer<T> consumidor) throws SQLException, IOException {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = dbConnection.getConnection();
+            pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(FETCH_SIZE);
+            
+            rs = pstmt.executeQuery();
+            RowMapper<T> mapper = mapeador.vincular(rs);
+            
+            long linhas = 0;
+            while (rs.next()) {
+                consumidor.aceitar(mapper.mapear(rs));
+                linhas++;
+            }
+            return linhas;
+            
+        } catch (IOException e) {
+            // Cliente desconectou: cancela a consulta para o driver nao ter
+            // que ler o restante das linhas ao fechar o ResultSet
+            cancelar(pstmt);
+            throw e;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (pstmt != null) pstmt.close();
+            } catch (SQLException e) {
+                System.err.println("Erro ao fechar recursos: " + e.getMessage());
+            } finally {
+                dbConnection.closeConnection(conn);
+            }
+        }
+    }
+    
+    private static void cancelar(PreparedStatement pstmt) {
+        if (pstmt == null) {
+            return;
+        }
+        try {
+            pstmt.cancel();
+        } catch (SQLException e) {
+            System.err.println("Erro ao cancelar exportacao: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package dao;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache de registros por id com limite de tamanho e TTL.
+ * Cada entrada guarda um CompletableFuture: enquanto um registro e lido do
+ * banco, as outras threads que pedem o mesmo id esperam essa leitura em vez
+ * de irem todas ao banco quando uma chave muito usada expira.
+ * Um carregador que devolve null (id inexistente) gera uma entrada negativa
+ * com TTL proprio, mais curto, para ids procurados repetidamente nao irem
+ * ao banco toda vez.
+ * A remocao por tamanho segue a ordem de insercao (FIFO). Os objetos
+ * devolvidos sao compartilhados entre requisicoes e nao devem ser alterados.
+ */
+public class EntityCache<T> {
+    
+    @FunctionalInterface
+    public interface Carregador<T> {
+        T carregar(Integer id) throws Exception;
+    }
+    
+    private static final Map<String, EntityCache<?>> CACHES = new ConcurrentSkipListMap<>();
+    
+    private final String nome;
+    private final int tamanhoMaximo;
+    private final long ttlNanos;
+    private final long ttlAusenteNanos;
+    private final Map<Integer, Entrada<T>> entradas = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entrada<T>> ordemInsercao = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger tamanhoFila = new AtomicInteger();
+    
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder acertosAusentes = new LongAdder();
+    private final LongAdder faltas = new LongAdder();
+    private final LongAdder esperasCompartilhadas = new LongAdder();
+    private final LongAdder expiracoes = new LongAdder();
+    private final LongAdder evicoes = new LongAdder();
+    private final LongAdder invalidacoes = new LongAdder();
+    
+    private static final class Entrada<T> {
+        final Integer id;
+        final CompletableFuture<T> valor = new CompletableFuture<>();
+        volatile long expiraEm;
+        
+        Entrada(Integer id) {
+            this.id = id;
+        }
+    }
+    
+    public EntityCache(String nome, int tamanhoMaximo, long ttlMs) {
+        this(nome, tamanhoMaximo, ttlMs, 0);
+    }
+    
+    // ttlAusenteMs = 0 desliga o cache negativo
+    public EntityCache(String nome, int tamanhoMaximo, long ttlMs, long ttlAusenteMs) {
+        if (tamanhoMaximo <= 0) {
+            throw new IllegalArgumentException("Tamanho maximo do cache deve ser positivo.");
+        }
+        this.nome = nome;
+        this.tamanhoMaximo = tamanhoMaximo;
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.ttlAusenteNanos = ttlAusenteMs * 1_000_000L;
+        CACHES.put(nome, this);
+    }
+    
+    public T buscar(Integer id, Carregador<T> carregador) throws Exception {
+        while (true) {
+            Entrada<T> entrada = entradas.get(id);
+            if (entrada != null) {
+                if (!entrada.valor.isDone()) {
+                    esperasCompartilhadas.increment();
+                    return aguardar(entrada);
+                }
+                if (System.nanoTime() - entrada.expiraEm < 0) {
+                    T valor = aguardar(entrada);
+                    if (valor != null) {
+                        acertos.increment();
+                    } else {
+                        acertosAusentes.increment();
+                    }
+                    return valor;
+                }
+                // Expirou: so quem conseguir remover a entrada recarrega
+                if (entradas.remove(id, entrada)) {
+                    expiracoes.increment();
+                }
+                continue;
+            }
+            
+            Entrada<T> nova = new Entrada<>(id);
+            if (entradas.putIfAbsent(id, nova) != null) {
+                continue;
+            }
+            faltas.increment();
+            ordemInsercao.add(nova);
+            tamanhoFila.incrementAndGet();
+            
+            try {
+                T valor = carregador.carregar(id);
+                nova.expiraEm = System.nanoTime() + (valor != null ? ttlNanos : ttlAusenteNanos);
+                nova.valor.complete(valor);
+                if (valor == null && ttlAusenteNanos <= 0) {
+                    entradas.remove(id, nova);
+                }
+            } catch (Exception | Error e) {
+                // Falhas nao ficam no cache; quem estava esperando recebe o mesmo erro
+                entradas.remove(id, nova);
+                nova.valor.completeExceptionally(e);
+                throw e;
+            }
+            removerExcedentes();
+            return nova.valor.getNow(null);
+        }
+    }
+    
+    public void invalidar(Integer id) {
+        if (entradas.remove(id) != null) {
+            invalidacoes.increment();
+        }
+    }
+    
+    public void limpar() {
+        int removidas = entradas.size();
+        entradas.clear();
+        invalidacoes.add(removidas);
+    }
+    
+    public int tamanho() {
+        return entradas.size();
+    }
+    
+    public String toJson() {
+        return "{" +
+            "\"tamanho\":" + entradas.size() + "," +
+            "\"tamanhoMaximo\":" + tamanhoMaximo + "," +
+            "\"ttlMs\":" + ttlNanos / 1_000_000L + "," +
+            "\"acertos\":" + acertos.sum() + "," +
+            "\"acertosAusentes\":" + acertosAusentes.sum() + "," +
+            "\"ttlAusenteMs\":" + ttlAusenteNanos / 1_000_000L + "," +
+            "\"faltas\":" + faltas.sum() + "," +
+            "\"esperasCompartilhadas\":" + esperasCompartilhadas.sum() + "," +
+            "\"expiracoes\":" + expiracoes.sum() + "," +
+            "\"evicoes\":" + evicoes.sum() + "," +
+            "\"invalidacoes\":" + invalidacoes.sum() +
+            "}";
+    }
+    
+    public static String toJsonTodos() {
+        StringBuilder json = new StringBuilder("{");
+        boolean primeiro = true;
+        for (EntityCache<?> cache : CACHES.values()) {
+            if (!primeiro) json.append(",");
+            primeiro = false;
+            json.append("\"").append(cache.nome).append("\":").append(cache.toJson());
+        }
+        json.append("}");
+        return json.toString();
+    }
+    
+    private void removerExcedentes() {
+        while (entradas.size() > tamanhoMaximo || tamanhoFila.get() > 2 * tamanhoMaximo) {
+            Entrada<T> maisAntiga = ordemInsercao.poll();
+            if (maisAntiga == null) {
+                return;
+            }
+            tamanhoFila.decrementAndGet();
+            if (entradas.get(maisAntiga.id) != maisAntiga) {
+                // Ja invalidada ou substituida, so estava ocupando a fila
+                continue;
+            }
+            if (entradas.size() > tamanhoMaximo) {
+                if (entradas.remove(maisAntiga.id, maisAntiga)) {
+                    evicoes.increment();
+                }
+            } else {
+                ordemInsercao.add(maisAntiga);
+                tamanhoFila.incrementAndGet();
+            }
+        }
+    }
+    
+    private T aguardar(Entrada<T> entrada) throws Exception {
+        try {
+            return entrada.valor.get();
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof Exception) {
+                throw (Exception) causa;
+            }
+            throw (Error) causa;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package dao;
+
+import db.DatabaseConnection;
+import exception.LoteException;
+import util.ConfigUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Executa o mesmo INSERT/UPDATE para varios registros com addBatch/executeBatch.
+ * A lista e dividida em blocos de db.batch.size registros e cada bloco e uma
+ * transacao; com rewriteBatchedStatements=true na URL o Connector/J envia cada
+ * bloco como um unico comando multi-valores.
+ */
+final class ExecucaoEmLote {
+    
+    static final int TAMANHO_BLOCO = ConfigUtil.getInt("db.batch.size", 500);
+    
+    @FunctionalInterface
+    interface Preenchedor<T> {
+        void preencher(PreparedStatement pstmt, T item) throws SQLException;
+    }
+    
+    @FunctionalInterface
+    interface AtribuidorId<T> {
+        void atribuir(T item, int id);
+    }
+    
+    private ExecucaoEmLote() {
+    }
+    
+    /**
+     * Retorna as linhas afetadas por registro. Se um bloco falhar, ele e
+     * desfeito e a LoteException traz as linhas afetadas dos registros ja gravados;
+     * vale tambem para erros de preenchimento (ex.: campo nulo), que nao sao
+     * SQLException mas podem ocorrer depois de blocos ja confirmados.
+     */
+    static <T> int[] executar(DatabaseConnection dbConnection, String sql, List<T> itens,
+                              Preenchedor<T> preenchedor, AtribuidorId<T> atribuidorId) throws LoteException {
+        int[] resultado = new int[itens.size()];
+        if (itens.isEmpty()) {
+            return resultado;
+        }
+        
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        int confirmados = 0;
+        
+        try {
+            conn = dbConnection.getConnection();
+            conn.setAutoCommit(false);
+            pstmt = atribuidorId != null
+                ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : conn.prepareStatement(sql);
+            
+            while (confirmados < itens.size()) {
+                int fim = Math.min(confirmados + TAMANHO_BLOCO, itens.size());
+                for (int i = confirmados; i < fim; i++) {
+                    preenchedor.preencher(pstmt, itens.get(i));
+                    pstmt.addBatch();
+                }
+                
+                int[] linhas = pstmt.executeBatch();
+                for (int i = 0; i < linhas.length && confirmados + i < fim; i++) {
+                    // SUCCESS_NO_INFO: o driver reescreveu o lote e nao sabe por registro
+                    resultado[confirmados + i] = linhas[i] == Statement.SUCCESS_NO_INFO ? 1 : linhas[i];
+                }
+                if (atribuidorId != null) {
+                    try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                        for (int i = confirmados; i < fim && rs.next(); i++) {
+                            atribuidorId.atribuir(itens.get(i), rs.getInt(1));
+                        }
+                    }
+                }
+                
+                conn.commit();
+                confirmados = fim;
+            }
+            return resultado;
+            
+        } catch (SQLException | RuntimeException e) {
+            desfazer(conn);
+            throw new LoteException("Erro no lote apos " + confirmados + " registros: " + e.getMessage(),
+                Arrays.copyOf(resultado, confirmados), e);
+        } finally {
+            try {
+                if (pstmt != null) pstmt.close();
+            } catch (SQLException e) {
+                System.err.println("Erro ao fechar recursos: " + e.getMessage());
+            } finally {
+                // O pool restaura o autocommit ao receber a conexao de volta
+                dbConnection.closeConnection(conn);
+            }
+        }
+    }
+    
+    private static void desfazer(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            System.err.println("Erro ao desfazer lote: " + e.getMessage());
+        }
+    }
+}
@@ -1,20 +1,88 @@
 package dao;
 
 import db.DatabaseConnection;
+import exception.ConflitoVersaoException;
 import exception.FuncionarioNaoEncontradoException;
+import exception.VersaoObrigatoriaException;
 import model.Funcionario;
-import model.Veterinario;
-import model.Tosador;
-import model.Atendente;
+import util.Histogram;
 
 import java.sql.*;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 public class FuncionarioDAO implements IDAO<Funcionario> {
     
+    public static final String TABELA = "TB_FUNCIONARIO";
+    
+    private static final String SQL_INSERIR = "INSERT INTO TB_FUNCIONARIO (nome, cpf, telefone, email, cargo, salario_base, " +
+        "data_contratacao, ativo, data_cadastro) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String SQL_ATUALIZAR = "UPDATE TB_FUNCIONARIO SET nome = ?, cpf = ?, telefone = ?, email = ?, cargo = ?, " +
+        "salario_base = ?, data_contratacao = ?, ativo = ?, versao = LAST_INSERT_ID(versao + 1) " +
+        "WHERE id_funcionario = ? AND versao = ?";
+    
+    private static final String SQL_DATA_CADASTRO_VERSAO = "SELECT data_cadastro, versao FROM TB_FUNCIONARIO WHERE id_funcionario = ?";
+    
+    // Consultas por indice; conferidas por VerificacaoPlanos
+    static final String SQL_BUSCAR_POR_ID = "SELECT id_funcionario, nome, cpf, telefone, email, cargo, salario_base, " +
+        "data_contratacao, ativo, data_cadastro, versao FROM TB_FUNCIONARIO WHERE id_funcionario = ?";
+    
+    static final String SQL_BUSCAR_POR_CARGO = "SELECT id_funcionario, nome, cpf, telefone, email, cargo, salario_base, " +
+        "data_contratacao, ativo, data_cadastro, versao FROM TB_FUNCIONARIO " +
+        "WHERE cargo = ? ORDER BY nome ASC";
+    
+    // Ordenacoes e filtros aceitos na listagem paginada
+    private static final KeysetQuery.Definicao PAGINACAO = new KeysetQuery.Definicao(
+            "SELECT id_funcionario, nome, cpf, telefone, email, cargo, salario_base, " +
+            "data_contratacao, ativo, data_cadastro, versao FROM TB_FUNCIONARIO", "id_funcionario")
+        .ordenacao("nome", "nome", KeysetQuery.Tipo.TEXTO)
+        .ordenacao("cargo", "cargo", KeysetQuery.Tipo.TEXTO)
+        .ordenacao("salario", "salario_base", KeysetQuery.Tipo.DECIMAL)
+        .filtro("cargo", "cargo", KeysetQuery.Tipo.TEXTO, KeysetQuery.Comparacao.IGUAL)
+        .filtro("ativo", "ativo", KeysetQuery.Tipo.BOOLEANO, KeysetQuery.Comparacao.IGUAL)
+        .filtro("nome", "nome", KeysetQuery.Tipo.TEXTO, KeysetQuery.Comparacao.PREFIXO);
+    
+    // Resultado de buscarPorCargo por valor normalizado; invalidado pelas gravacoes na tabela
+    private static final QueryCache<Funcionario> CACHE_CARGO = new QueryCache<>("funcionariosPorCargo", TABELA,
+        Funcionario::getIdFuncionario, cargo -> CarregadorCargo.DAO.consultarPorCargo(cargo));
+    
+    // Instancia do carregador do CACHE_CARGO, criada no primeiro uso e reaproveitada em cada falta
+    private static final class CarregadorCargo {
+        static final FuncionarioDAO DAO = new FuncionarioDAO();
+    }
+    
+    // Colunas na ordem usada pelos SELECTs deste DAO; indices resolvidos uma vez por consulta
+    public static final MapeadorColunas<Funcionario> MAPEADOR = new MapeadorColunas<>(FuncionarioDAO::montarFuncionario,
+        "id_funcionario", "nome", "cpf", "telefone", "email",
+        "cargo", "salario_base", "data_contratacao", "ativo", "data_cadastro", "versao");
+    
+    // Colunas editaveis, para o UPDATE de edicao parcial
+    private static final AtualizacaoParcial<Funcionario> ATUALIZACAO_PARCIAL = new AtualizacaoParcial<Funcionario>(TABELA, "id_funcionario")
+        .coluna("nome", Funcionario::getNome, Types.VARCHAR)
+        .coluna("cpf", Funcionario::getCpf, Types.VARCHAR)
+        .coluna("telefone", Funcionario::getTelefone, Types.VARCHAR)
+        .coluna("email", Funcionario::getEmail, Types.VARCHAR)
+        .coluna("cargo", Funcionario::getCargo, Types.VARCHAR)
+        .coluna("salario_base", Funcionario::getSalarioBase, Types.DOUBLE)
+        .coluna("data_contratacao", Funcionario::getDataContratacao, Types.DATE)
+        .coluna("ativo", Funcionario::getAtivo, Types.BOOLEAN);
+    
+    // Tempo de cada metodo publico, exportado em /metrics
+    private static final Histogram TEMPO_INSERIR = MetricasDAO.metodo("FuncionarioDAO", "inserir");
+    private static final Histogram TEMPO_INSERIR_EM_LOTE = MetricasDAO.metodo("FuncionarioDAO", "inserirEmLote");
+    private static final Histogram TEMPO_BUSCAR_POR_ID = MetricasDAO.metodo("FuncionarioDAO", "buscarPorId");
+    private static final Histogram TEMPO_BUSCAR_OPCIONAL = MetricasDAO.metodo("FuncionarioDAO", "buscarOpcional");
+    private static final Histogram TEMPO_LISTAR_TODOS = MetricasDAO.metodo("FuncionarioDAO", "listarTodos");
+    private static final Histogram TEMPO_LISTAR_PAGINADO = MetricasDAO.metodo("FuncionarioDAO", "listarPaginado");
+    private static final Histogram TEMPO_ATUALIZAR = MetricasDAO.metodo("FuncionarioDAO", "atualizar");
+    private static final Histogram TEMPO_ATUALIZAR_PARCIAL = MetricasDAO.metodo("FuncionarioDAO", "atualizarParcial");
+    private static final Histogram TEMPO_ATUALIZAR_EM_LOTE = MetricasDAO.metodo("FuncionarioDAO", "atualizarEmLote");
+    private static final Histogram TEMPO_DELETAR = MetricasDAO.metodo("FuncionarioDAO", "deletar");
+    private static final Histogram TEMPO_BUSCAR_POR_CARGO = MetricasDAO.metodo("FuncionarioDAO", "buscarPorCargo");
+    
     private DatabaseConnection dbConnection;
     
     public FuncionarioDAO() {
@@ -23,34 +91,23 @@ public class FuncionarioDAO implements IDAO<Funcionario> {
     
     @Override
     public Funcionario inserir(Funcionario funcionario) throws Exception {
-        String sql = "INSERT INTO TB_FUNCIONARIO (nome, cpf, telefone, email, cargo, salario_base, " +
-                     "data_contratacao, ativo, data_cadastro) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        
+        long inicio = System.nanoTime();
+        try {
+            return inserirSemMedir(funcionario);
+        } finally {
+            TEMPO_INSERIR.registrarDesde(inicio);
+        }
+    }
+    
+    private Funcionario inserirSemMedir(Funcionario funcionario) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            
-            pstmt.setString(1, funcionario.getNome());
-            pstmt.setString(2, funcionario.getCpf());
-            pstmt.setString(3, funcionario.getTelefone());
-            pstmt.setString(4, funcionario.getEmail());
-            pstmt.setString(5, funcionario.getCargo());
-            pstmt.setDouble(6, funcionario.getSalarioBase() != null ? funcionario.getSalarioBase() : 0.0);
-            
-            if (funcionario.getDataContratacao() != null) {
-                pstmt.setDate(7, Date.valueOf(funcionario.getDataContratacao()));
-            } else {
-                pstmt.setDate(7, null);
-            }
-            
-            pstmt.setBoolean(8, funcionario.getAtivo() != null ? funcionario.getAtivo() : true);
-            pstmt.setTimestamp(9, Timestamp.valueOf(
-                funcionario.getDataCadastro() != null ? funcionario.getDataCadastro() : LocalDateTime.now()
-            ));
+            pstmt = conn.prepareStatement(SQL_INSERIR, Statement.RETURN_GENERATED_KEYS);
+            preencherInsercao(pstmt, funcionario);
             
             int linhasAfetadas = pstmt.executeUpdate();
             
@@ -59,6 +116,8 @@ public class FuncionarioDAO implements IDAO<Funcionario> {
                 if (rs.next()) {
                     funcionario.setIdFuncionario(rs.getInt(1));
                 }
+                funcionario.setVersao(0);
+                NotificadorAlteracoes.notificar(TABELA, funcionario.getIdFuncionario(), funcionario.getCargo());
                 return funcionario;
             } else {
                 throw new SQLException("Falha ao inserir funcionario. Nenhuma linha afetada.");
@@ -67,49 +126,105 @@ public class FuncionarioDAO implements IDAO<Funcionario> {
         } catch (SQLException e) {
             throw new Exception("Erro ao inserir funcionario: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    /**
+     * Insere os registros com JDBC batch, em blocos transacionais.
+     * Os ids gerados sao atribuidos nas proprias entidades.
+     */
+    @Override
+    public List<Funcionario> inserirEmLote(List<Funcionario> funcionarios) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return inserirEmLoteSemMedir(funcionarios);
+        } finally {
+            TEMPO_INSERIR_EM_LOTE.registrarDesde(inicio);
+        }
+    }
+    
+    private List<Funcionario> inserirEmLoteSemMedir(List<Funcionario> funcionarios) throws Exception {
+        try {
+            ExecucaoEmLote.executar(dbConnection, SQL_INSERIR, funcionarios, this::preencherInsercao, (funcionario, id) -> {
+                funcionario.setIdFuncionario(id);
+                funcionario.setVersao(0);
+            });
+        } finally {
+            notificarLote(funcionarios);
         }
+        return funcionarios;
     }
     
     @Override
     public Funcionario buscarPorId(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return buscarPorIdSemMedir(id);
+        } finally {
+            TEMPO_BUSCAR_POR_ID.registrarDesde(inicio);
+        }
+    }
+    
+    private Funcionario buscarPorIdSemMedir(Integer id) throws Exception {
+        Optional<Funcionario> funcionario = buscarOpcional(id);
+        if (funcionario.isEmpty()) {
+            throw new FuncionarioNaoEncontradoException(id);
+        }
+        return funcionario.get();
+    }
+    
+    @Override
+    public Optional<Funcionario> buscarOpcional(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return buscarOpcionalSemMedir(id);
+        } finally {
+            TEMPO_BUSCAR_OPCIONAL.registrarDesde(inicio);
+        }
+    }
+    
+    private Optional<Funcionario> buscarOpcionalSemMedir(Integer id) throws Exception {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("ID do funcionário deve ser positivo.");
         }
         
-        String sql = "SELECT id_funcionario, nome, cpf, telefone, email, cargo, salario_base, " +
-                     "data_contratacao, ativo, data_cadastro FROM TB_FUNCIONARIO WHERE id_funcionario = ?";
-        
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = conn.prepareStatement(SQL_BUSCAR_POR_ID);
             pstmt.setInt(1, id);
             
             rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                return criarFuncionarioDoResultSet(rs);
-            } else {
-                throw new FuncionarioNaoEncontradoException(id);
+                return Optional.of(MAPEADOR.vincular(rs).mapear(rs));
             }
+            return Optional.empty();
             
-        } catch (FuncionarioNaoEncontradoException e) {
-            throw e;
         } catch (SQLException e) {
             throw new Exception("Erro ao buscar funcionário por ID: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
         }
     }
     
     @Override
     public List<Funcionario> listarTodos() throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return listarTodosSemMedir();
+        } finally {
+            TEMPO_LISTAR_TODOS.registrarDesde(inicio);
+        }
+    }
+    
+    private List<Funcionario> listarTodosSemMedir() throws Exception {
         String sql = "SELECT id_funcionario, nome, cpf, telefone, email, cargo, salario_base, " +
-                     "data_contratacao, ativo, data_cadastro FROM TB_FUNCIONARIO ORDER BY nome ASC";
+                     "data_contratacao, ativo, data_cadastro, versao FROM TB_FUNCIONARIO ORDER BY nome ASC";
         
         Connection conn = null;
         PreparedStatement pstmt = null;
@@ -121,8 +236,9 @@ public class FuncionarioDAO implements IDAO<Funcionario> {
             pstmt = conn.prepareStatement(sql);
             rs = pstmt.executeQuery();
             
+            RowMapper<Funcionario> mapper = MAPEADOR.vincular(rs);
             while (rs.next()) {
-                funcionarios.add(criarFuncionarioDoResultSet(rs));
+                funcionarios.add(mapper.mapear(rs));
             }
             
             return funcionarios;
@@ -130,59 +246,212 @@ public class FuncionarioDAO implements IDAO<Funcionario> {
         } catch (SQLException e) {
             throw new Exception("Erro ao listar funcionários: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    @Override
+    public Pagina<Funcionario> listarPaginado(Consulta consulta) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return listarPaginadoSemMedir(consulta);
+        } finally {
+            TEMPO_LISTAR_PAGINADO.registrarDesde(inicio);
+        }
+    }
+    
+    private Pagina<Funcionario> listarPaginadoSemMedir(Consulta consulta) throws Exception {
+        KeysetQuery query = new KeysetQuery(PAGINACAO, consulta);
+        
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = dbConnection.getConnection();
+            pstmt = conn.prepareStatement(query.getSql());
+            query.bind(pstmt);
+            
+            rs = pstmt.executeQuery();
+            
+            return query.lerPagina(rs, MAPEADOR);
+            
+        } catch (SQLException e) {
+            throw new Exception("Erro ao listar funcionarios: " + e.getMessage(), e);
+        } finally {
+            fecharRecursos(rs, pstmt, conn);
         }
     }
     
+    /**
+     * O UPDATE grava todas as colunas editaveis, entao o proprio objeto ja e o
+     * estado persistido; so a data de cadastro, quando nao veio preenchida, e
+     * lida na mesma conexao.
+     */
     @Override
     public Funcionario atualizar(Funcionario funcionario) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarSemMedir(funcionario);
+        } finally {
+            TEMPO_ATUALIZAR.registrarDesde(inicio);
+        }
+    }
+    
+    private Funcionario atualizarSemMedir(Funcionario funcionario) throws Exception {
         if (funcionario.getIdFuncionario() == null || funcionario.getIdFuncionario() <= 0) {
             throw new IllegalArgumentException("ID do funcionário é obrigatório para atualização.");
         }
-        
-        String sql = "UPDATE TB_FUNCIONARIO SET nome = ?, cpf = ?, telefone = ?, email = ?, cargo = ?, " +
-                     "salario_base = ?, data_contratacao = ?, ativo = ? WHERE id_funcionario = ?";
+        if (funcionario.getVersao() == null) {
+            throw new VersaoObrigatoriaException("Funcionário", funcionario.getIdFuncionario());
+        }
         
         Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql);
-            
-            pstmt.setString(1, funcionario.getNome());
-            pstmt.setString(2, funcionario.getCpf());
-            pstmt.setString(3, funcionario.getTelefone());
-            pstmt.setString(4, funcionario.getEmail());
-            pstmt.setString(5, funcionario.getCargo());
-            pstmt.setDouble(6, funcionario.getSalarioBase() != null ? funcionario.getSalarioBase() : 0.0);
+            pstmt = conn.prepareStatement(SQL_ATUALIZAR, Statement.RETURN_GENERATED_KEYS);
+            preencherAtualizacao(pstmt, funcionario);
+            boolean gravado = pstmt.executeUpdate() > 0;
             
-            if (funcionario.getDataContratacao() != null) {
-                pstmt.setDate(7, Date.valueOf(funcionario.getDataContratacao()));
-            } else {
-                pstmt.setDate(7, null);
+            if (gravado) {
+                NotificadorAlteracoes.notificar(TABELA, funcionario.getIdFuncionario(), funcionario.getCargo());
+                // LAST_INSERT_ID(versao + 1) devolve a nova versao sem outra consulta
+                rs = pstmt.getGeneratedKeys();
+                if (rs.next()) {
+                    funcionario.setVersao(rs.getInt(1));
+                }
+                if (funcionario.getDataCadastro() != null) {
+                    return funcionario;
+                }
+                rs.close();
             }
             
-            pstmt.setBoolean(8, funcionario.getAtivo() != null ? funcionario.getAtivo() : true);
-            pstmt.setInt(9, funcionario.getIdFuncionario());
-            
-            int linhasAfetadas = pstmt.executeUpdate();
-            
-            if (linhasAfetadas > 0) {
-                return buscarPorId(funcionario.getIdFuncionario());
-            } else {
+            pstmt.close();
+            pstmt = conn.prepareStatement(SQL_DATA_CADASTRO_VERSAO);
+            pstmt.setInt(1, funcionario.getIdFuncionario());
+            rs = pstmt.executeQuery();
+            if (!rs.next()) {
                 throw new FuncionarioNaoEncontradoException(funcionario.getIdFuncionario());
             }
+            if (!gravado) {
+                // A linha existe, entao foi a versao que nao bateu
+                throw new ConflitoVersaoException("Funcionário", funcionario.getIdFuncionario(), funcionario.getVersao(), rs.getInt(2));
+            }
+            if (rs.getTimestamp(1) != null) {
+                funcionario.setDataCadastro(rs.getTimestamp(1).toLocalDateTime());
+            }
+            return funcionario;
+            
+        } catch (SQLException e) {
+            throw new Exception("Erro ao atualizar funcionário: " + e.getMessage(), e);
+        } finally {
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    /**
+     * Grava so as colunas em que alterado difere de atual, desde que o registro
+     * ainda esteja na versao de atual. Sem diferencas, nada e gravado e atual e
+     * devolvido. alterado recebe o id, a data de cadastro e a nova versao.
+     */
+    public Funcionario atualizarParcial(Funcionario atual, Funcionario alterado) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarParcialSemMedir(atual, alterado);
+        } finally {
+            TEMPO_ATUALIZAR_PARCIAL.registrarDesde(inicio);
+        }
+    }
+    
+    private Funcionario atualizarParcialSemMedir(Funcionario atual, Funcionario alterado) throws Exception {
+        Integer id = atual.getIdFuncionario();
+        if (id == null || id <= 0 || atual.getVersao() == null) {
+            throw new IllegalArgumentException("ID e versão do funcionário são obrigatórios para atualização.");
+        }
+        alterado.setIdFuncionario(id);
+        alterado.setDataCadastro(atual.getDataCadastro());
+        
+        long mascara = ATUALIZACAO_PARCIAL.alteradas(atual, alterado);
+        if (mascara == 0) {
+            alterado.setVersao(atual.getVersao());
+            return alterado;
+        }
+        
+        Connection conn = null;
+        
+        try {
+            conn = dbConnection.getConnection();
+            Integer versao = ATUALIZACAO_PARCIAL.executar(conn, mascara, alterado, id, atual.getVersao());
+            if (versao == null) {
+                Integer versaoAtual = ATUALIZACAO_PARCIAL.versaoAtual(conn, id);
+                if (versaoAtual == null) {
+                    throw new FuncionarioNaoEncontradoException(id);
+                }
+                throw new ConflitoVersaoException("Funcionário", id, atual.getVersao(), versaoAtual);
+            }
+            
+            NotificadorAlteracoes.notificar(TABELA, id, alterado.getCargo());
+            alterado.setVersao(versao);
+            return alterado;
             
         } catch (SQLException e) {
             throw new Exception("Erro ao atualizar funcionário: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(null, pstmt, null);
+            dbConnection.closeConnection(conn);
+        }
+    }
+    
+    /**
+     * Atualiza os registros com JDBC batch, em blocos transacionais.
+     * Retorna as linhas afetadas por registro (0 quando o id nao existe).
+     */
+    @Override
+    public int[] atualizarEmLote(List<Funcionario> funcionarios) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarEmLoteSemMedir(funcionarios);
+        } finally {
+            TEMPO_ATUALIZAR_EM_LOTE.registrarDesde(inicio);
+        }
+    }
+    
+    private int[] atualizarEmLoteSemMedir(List<Funcionario> funcionarios) throws Exception {
+        for (Funcionario funcionario : funcionarios) {
+            if (funcionario.getIdFuncionario() == null || funcionario.getIdFuncionario() <= 0) {
+                throw new IllegalArgumentException("Todos os registros do lote precisam de ID para atualização.");
+            }
+            if (funcionario.getVersao() == null) {
+                throw new IllegalArgumentException("Todos os registros do lote precisam da versão para atualização.");
+            }
+        }
+        try {
+            int[] linhas = ExecucaoEmLote.executar(dbConnection, SQL_ATUALIZAR, funcionarios, this::preencherAtualizacao, null);
+            for (int i = 0; i < linhas.length; i++) {
+                Funcionario funcionario = funcionarios.get(i);
+                if (linhas[i] > 0) {
+                    funcionario.setVersao(funcionario.getVersao() + 1);
+                }
+            }
+            return linhas;
+        } finally {
+            notificarLote(funcionarios);
         }
     }
     
     @Override
     public boolean deletar(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return deletarSemMedir(id);
+        } finally {
+            TEMPO_DELETAR.registrarDesde(inicio);
+        }
+    }
+    
+    private boolean deletarSemMedir(Integer id) throws Exception {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("ID do funcionário deve ser positivo.");
         }
@@ -198,25 +467,37 @@ public class FuncionarioDAO implements IDAO<Funcionario> {
             pstmt.setInt(1, id);
             
             int linhasAfetadas = pstmt.executeUpdate();
+            if (linhasAfetadas > 0) {
+                NotificadorAlteracoes.notificar(TABELA, id);
+            }
             
             return linhasAfetadas > 0;
             
         } catch (SQLException e) {
             throw new Exception("Erro ao deletar funcionário: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(null, pstmt, null);
+            fecharRecursos(null, pstmt, conn);
         }
     }
     
     public List<Funcionario> buscarPorCargo(String cargo) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return buscarPorCargoSemMedir(cargo);
+        } finally {
+            TEMPO_BUSCAR_POR_CARGO.registrarDesde(inicio);
+        }
+    }
+    
+    private List<Funcionario> buscarPorCargoSemMedir(String cargo) throws Exception {
         if (cargo == null || cargo.trim().isEmpty()) {
             throw new IllegalArgumentException("Cargo não pode ser vazio.");
         }
         
-        String sql = "SELECT id_funcionario, nome, cpf, telefone, email, cargo, salario_base, " +
-                     "data_contratacao, ativo, data_cadastro FROM TB_FUNCIONARIO " +
-                     "WHERE cargo = ? ORDER BY nome ASC";
-        
+        return CACHE_CARGO.buscar(cargo.trim().toUpperCase());
+    }
+    
+    private List<Funcionario> consultarPorCargo(String cargo) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
@@ -224,13 +505,14 @@ public class FuncionarioDAO implements IDAO<Funcionario> {
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql);
-            pstmt.setString(1, cargo.trim().toUpperCase());
+            pstmt = conn.prepareStatement(SQL_BUSCAR_POR_CARGO);
+            pstmt.setString(1, cargo);
             
             rs = pstmt.executeQuery();
             
+            RowMapper<Funcionario> mapper = MAPEADOR.vincular(rs);
             while (rs.next()) {
-                funcionarios.add(criarFuncionarioDoResultSet(rs));
+                funcionarios.add(mapper.mapear(rs));
             }
             
             return funcionarios;
@@ -238,71 +520,87 @@ public class FuncionarioDAO implements IDAO<Funcionario> {
         } catch (SQLException e) {
             throw new Exception("Erro ao buscar funcionários por cargo: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
         }
     }
     
-    private Funcionario criarFuncionarioDoResultSet(ResultSet rs) throws SQLException {
-        Integer id = rs.getInt("id_funcionario");
-        String nome = rs.getString("nome");
-        String cpf = rs.getString("cpf");
-        String telefone = rs.getString("telefone");
-        String email = rs.getString("email");
-        String cargo = rs.getString("cargo");
-        Double salarioBase = rs.getDouble("salario_base");
-        Date dataContratacao = rs.getDate("data_contratacao");
-        Boolean ativo = rs.getBoolean("ativo");
-        Timestamp timestamp = rs.getTimestamp("data_cadastro");
+    private static Funcionario montarFuncionario(ResultSet rs, int[] c) throws SQLException {
+        Funcionario funcionario = Funcionario.criarPorCargo(rs.getString(c[5]));
+        funcionario.setIdFuncionario(rs.getInt(c[0]));
+        funcionario.setNome(rs.getString(c[1]));
+        funcionario.setCpf(rs.getString(c[2]));
+        funcionario.setTelefone(rs.getString(c[3]));
+        funcionario.setEmail(rs.getString(c[4]));
+        funcionario.setSalarioBase(rs.getDouble(c[6]));
+        
+        Date dataContratacao = rs.getDate(c[7]);
+        funcionario.setDataContratacao(dataContratacao != null ? dataContratacao.toLocalDate() : null);
+        funcionario.setAtivo(rs.getBoolean(c[8]));
+        
+        Timestamp timestamp = rs.getTimestamp(c[9]);
+        funcionario.setDataCadastro(timestamp != null ? timestamp.toLocalDateTime() : null);
+        
+        funcionario.setVersao(rs.getInt(c[10]));
+        
+        return funcionario;
+    }
+    
+    private void preencherInsercao(PreparedStatement pstmt, Funcionario funcionario) throws SQLException {
+        pstmt.setString(1, funcionario.getNome());
+        pstmt.setString(2, funcionario.getCpf());
+        pstmt.setString(3, funcionario.getTelefone());
+        pstmt.setString(4, funcionario.getEmail());
+        pstmt.setString(5, funcionario.getCargo());
+        pstmt.setDouble(6, funcionario.getSalarioBase() != null ? funcionario.getSalarioBase() : 0.0);
         
-        LocalDate dataContratacaoLocal = dataContratacao != null ? dataContratacao.toLocalDate() : null;
-        LocalDateTime dataCadastroLocal = timestamp != null ? timestamp.toLocalDateTime() : null;
+        if (funcionario.getDataContratacao() != null) {
+            pstmt.setDate(7, Date.valueOf(funcionario.getDataContratacao()));
+        } else {
+            pstmt.setDate(7, null);
+        }
+        
+        pstmt.setBoolean(8, funcionario.getAtivo() != null ? funcionario.getAtivo() : true);
+        pstmt.setTimestamp(9, Timestamp.valueOf(
+            funcionario.getDataCadastro() != null ? funcionario.getDataCadastro() : LocalDateTime.now()
+        ));
+    }
+    
+    private void preencherAtualizacao(PreparedStatement pstmt, Funcionario funcionario) throws SQLException {
+        pstmt.setString(1, funcionario.getNome());
+        pstmt.setString(2, funcionario.getCpf());
+        pstmt.setString(3, funcionario.getTelefone());
+        pstmt.setString(4, funcionario.getEmail());
+        pstmt.setString(5, funcionario.getCargo());
+        pstmt.setDouble(6, funcionario.getSalarioBase() != null ? funcionario.getSalarioBase() : 0.0);
         
-        if ("VETERINARIO".equalsIgnoreCase(cargo)) {
-            Veterinario vet = new Veterinario();
-            vet.setIdFuncionario(id);
-            vet.setNome(nome);
-            vet.setCpf(cpf);
-            vet.setTelefone(telefone);
-            vet.setEmail(email);
-            vet.setSalarioBase(salarioBase);
-            vet.setDataContratacao(dataContratacaoLocal);
-            vet.setAtivo(ativo);
-            vet.setDataCadastro(dataCadastroLocal);
-            return vet;
-        } else if ("TOSADOR".equalsIgnoreCase(cargo)) {
-            Tosador tos = new Tosador();
-            tos.setIdFuncionario(id);
-            tos.setNome(nome);
-            tos.setCpf(cpf);
-            tos.setTelefone(telefone);
-            tos.setEmail(email);
-            tos.setSalarioBase(salarioBase);
-            tos.setDataContratacao(dataContratacaoLocal);
-            tos.setAtivo(ativo);
-            tos.setDataCadastro(dataCadastroLocal);
-            return tos;
+        if (funcionario.getDataContratacao() != null) {
+            pstmt.setDate(7, Date.valueOf(funcionario.getDataContratacao()));
         } else {
-            Atendente ate = new Atendente();
-            ate.setIdFuncionario(id);
-            ate.setNome(nome);
-            ate.setCpf(cpf);
-            ate.setTelefone(telefone);
-            ate.setEmail(email);
-            ate.setSalarioBase(salarioBase);
-            ate.setDataContratacao(dataContratacaoLocal);
-            ate.setAtivo(ativo);
-            ate.setDataCadastro(dataCadastroLocal);
-            return ate;
+            pstmt.setDate(7, null);
         }
+        
+        pstmt.setBoolean(8, funcionario.getAtivo() != null ? funcionario.getAtivo() : true);
+        pstmt.setInt(9, funcionario.getIdFuncionario());
+        pstmt.setObject(10, funcionario.getVersao(), Types.INTEGER);
     }
     
-    private void fecharRecursos(ResultSet rs, PreparedStatement pstmt, Statement stmt) {
+    // Um bloco pode ter sido gravado mesmo quando o lote falha depois
+    private void notificarLote(List<Funcionario> funcionarios) {
+        for (Funcionario funcionario : funcionarios) {
+            if (funcionario.getIdFuncionario() != null) {
+                NotificadorAlteracoes.notificar(TABELA, funcionario.getIdFuncionario(), funcionario.getCargo());
+            }
+        }
+    }
+    
+    private void fecharRecursos(ResultSet rs, PreparedStatement pstmt, Connection conn) {
         try {
             if (rs != null) rs.close();
             if (pstmt != null) pstmt.close();
-            if (stmt != null) stmt.close();
         } catch (SQLException e) {
             System.err.println("Erro ao fechar recursos: " + e.getMessage());
+        } finally {
+            dbConnection.closeConnection(conn);
         }
     }
 }
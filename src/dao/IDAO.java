@@ -1,17 +1,27 @@
 package dao;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface IDAO<T> {
     
     T inserir(T entidade) throws Exception;
     
+    List<T> inserirEmLote(List<T> entidades) throws Exception;
+    
     T buscarPorId(Integer id) throws Exception;
     
+    // Vazio quando o id nao existe, sem lancar excecao
+    Optional<T> buscarOpcional(Integer id) throws Exception;
+    
     List<T> listarTodos() throws Exception;
     
+    Pagina<T> listarPaginado(Consulta consulta) throws Exception;
+    
     T atualizar(T entidade) throws Exception;
     
+    int[] atualizarEmLote(List<T> entidades) throws Exception;
+    
     boolean deletar(Integer id) throws Exception;
 }
 
@@ -0,0 +1,268 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Monta consultas de listagem com paginacao por chave (keyset/seek).
+ * Em vez de OFFSET, cada pagina continua a partir do ultimo par
+ * (coluna de ordenacao, id) lido, o que permite ao banco usar o indice e
+ * mantem o custo constante independente da pagina.
+ */
+final class KeysetQuery {
+    
+    enum Tipo { TEXTO, INTEIRO, DECIMAL, DATA_HORA, BOOLEANO }
+    
+    enum Comparacao { IGUAL, PREFIXO }
+    
+    private static final Base64.Encoder CURSOR_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder CURSOR_DECODER = Base64.getUrlDecoder();
+    
+    /**
+     * Colunas e filtros permitidos para uma tabela. As colunas de ordenacao
+     * devem ser NOT NULL, pois o valor da ultima linha vai para o cursor.
+     */
+    static final class Definicao {
+        private final String select;
+        private final String colunaId;
+        private final Map<String, Coluna> ordenacoes = new LinkedHashMap<>();
+        private final Map<String, Filtro> filtros = new LinkedHashMap<>();
+        
+        Definicao(String select, String colunaId) {
+            this.select = select;
+            this.colunaId = colunaId;
+            ordenacoes.put("id", new Coluna(colunaId, Tipo.INTEIRO));
+        }
+        
+        Definicao ordenacao(String nome, String coluna, Tipo tipo) {
+            ordenacoes.put(nome, new Coluna(coluna, tipo));
+            return this;
+        }
+        
+        Definicao filtro(String nome, String coluna, Tipo tipo, Comparacao comparacao) {
+            filtros.put(nome, new Filtro(new Coluna(coluna, tipo), comparacao));
+            return this;
+        }
+    }
+    
+    private static final class Coluna {
+        final String nome;
+        final Tipo tipo;
+        
+        Coluna(String nome, Tipo tipo) {
+            this.nome = nome;
+            this.tipo = tipo;
+        }
+    }
+    
+    private static final class Filtro {
+        final Coluna coluna;
+        final Comparacao comparacao;
+        
+        Filtro(Coluna coluna, Comparacao comparacao) {
+            this.coluna = coluna;
+            this.comparacao = comparacao;
+        }
+    }
+    
+    private final Definicao definicao;
+    private final Consulta consulta;
+    private final Coluna ordem;
+    private final String sql;
+    private final List<Coluna> tipos = new ArrayList<>();
+    private final List<String> valores = new ArrayList<>();
+    
+    KeysetQuery(Definicao definicao, Consulta consulta) {
+        this.definicao = definicao;
+        this.consulta = consulta;
+        this.ordem = definicao.ordenacoes.get(consulta.getOrdem());
+        if (ordem == null) {
+            throw new IllegalArgumentException("Ordenacao nao permitida: " + consulta.getOrdem()
+                + ". Use: " + String.join(", ", definicao.ordenacoes.keySet()) + ".");
+        }
+        
+        StringBuilder where = new StringBuilder();
+        for (Map.Entry<String, String> entrada : consulta.getFiltros().entrySet()) {
+            Filtro filtro = definicao.filtros.get(entrada.getKey());
+            if (filtro == null) {
+                throw new IllegalArgumentException("Filtro nao permitido: " + entrada.getKey()
+                    + ". Use: " + String.join(", ", definicao.filtros.keySet()) + ".");
+            }
+            adicionarCondicao(where);
+            if (filtro.comparacao == Comparacao.PREFIXO) {
+                where.append(filtro.coluna.nome).append(" LIKE ?");
+                parametro(new Coluna(filtro.coluna.nome, Tipo.TEXTO), escaparLike(entrada.getValue()) + "%");
+            } else {
+                where.append(filtro.coluna.nome).append(" = ?");
+                parametro(filtro.coluna, entrada.getValue());
+            }
+        }
+        
+        String operador = consulta.isDecrescente() ? "<" : ">";
+        String direcao = consulta.isDecrescente() ? "DESC" : "ASC";
+        boolean porId = ordem.nome.equals(definicao.colunaId);
+        
+        if (consulta.getCursor() != null) {
+            String[] cursor = decodificarCursor(consulta.getCursor());
+            adicionarCondicao(where);
+            if (porId) {
+                where.append(definicao.colunaId).append(' ').append(operador).append(" ?");
+                parametro(ordem, cursor[3]);
+            } else {
+                where.append('(').append(ordem.nome).append(' ').append(operador).append(" ? OR (")
+                     .append(ordem.nome).append(" = ? AND ").append(definicao.colunaId).append(' ')
+                     .append(operador).append(" ?))");
+                parametro(ordem, cursor[2]);
+                parametro(ordem, cursor[2]);
+                parametro(definicao.ordenacoes.get("id"), cursor[3]);
+            }
+        }
+        
+        StringBuilder sql = new StringBuilder(definicao.select).append(where).append(" ORDER BY ");
+        if (!porId) {
+            sql.append(ordem.nome).append(' ').append(direcao).append(", ");
+        }
+        sql.append(definicao.colunaId).append(' ').append(direcao);
+        // Uma linha a mais indica se existe proxima pagina
+        sql.append(" LIMIT ").append(consulta.getLimite() + 1);
+        this.sql = sql.toString();
+    }
+    
+    String getSql() {
+        return sql;
+    }
+    
+    void bind(PreparedStatement pstmt) throws SQLException {
+        for (int i = 0; i < valores.size(); i++) {
+            bindValor(pstmt, i + 1, tipos.get(i).tipo, valores.get(i));
+        }
+    }
+    
+    <T> Pagina<T> lerPagina(ResultSet rs, MapeadorColunas<T> mapeador) throws SQLException {
+        RowMapper<T> mapper = mapeador.vincular(rs);
+        int indiceOrdem = rs.findColumn(ordem.nome);
+        int indiceId = rs.findColumn(definicao.colunaId);
+        List<T> itens = new ArrayList<>(Math.min(consulta.getLimite(), 64));
+        String ultimoValor = null;
+        long ultimoId = 0;
+        boolean temProxima = false;
+        
+        while (rs.next()) {
+            if (itens.size() == consulta.getLimite()) {
+                temProxima = true;
+                break;
+            }
+            itens.add(mapper.mapear(rs));
+            ultimoValor = lerValor(rs, ordem, indiceOrdem);
+            ultimoId = rs.getLong(indiceId);
+        }
+        
+        String proximoCursor = temProxima ? codificarCursor(ultimoValor, ultimoId) : null;
+        return new Pagina<>(itens, proximoCursor, consulta.getLimite());
+    }
+    
+    private void adicionarCondicao(StringBuilder where) {
+        where.append(where.length() == 0 ? " WHERE " : " AND ");
+    }
+    
+    private void parametro(Coluna coluna, String valor) {
+        tipos.add(coluna);
+        valores.add(valor);
+    }
+    
+    // O cursor carrega a ordenacao para recusar tokens de outra listagem. Cada campo vai
+    // como <tamanho>:<texto>, entao o valor da coluna pode conter qualquer caractere
+    private String codificarCursor(String valor, long id) {
+        StringBuilder conteudo = new StringBuilder();
+        for (String campo : new String[] {
+            consulta.getOrdem(), consulta.isDecrescente() ? "desc" : "asc", valor, String.valueOf(id)
+        }) {
+            conteudo.append(campo.length()).append(':').append(campo);
+        }
+        return CURSOR_ENCODER.encodeToString(conteudo.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private String[] decodificarCursor(String cursor) {
+        String[] partes = new String[4];
+        try {
+            String conteudo = new String(CURSOR_DECODER.decode(cursor), StandardCharsets.UTF_8);
+            int posicao = 0;
+            for (int i = 0; i < partes.length; i++) {
+                int separador = conteudo.indexOf(':', posicao);
+                int tamanho = Integer.parseInt(conteudo.substring(posicao, separador));
+                partes[i] = conteudo.substring(separador + 1, separador + 1 + tamanho);
+                posicao = separador + 1 + tamanho;
+            }
+            if (posicao != conteudo.length()) {
+                throw new IllegalArgumentException("Cursor invalido.");
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // NumberFormatException e um IllegalArgumentException
+            throw new IllegalArgumentException("Cursor invalido.");
+        }
+        if (!partes[0].equals(consulta.getOrdem())
+            || !partes[1].equals(consulta.isDecrescente() ? "desc" : "asc")) {
+            throw new IllegalArgumentException("Cursor invalido para esta ordenacao.");
+        }
+        return partes;
+    }
+    
+    private static String lerValor(ResultSet rs, Coluna coluna, int indice) throws SQLException {
+        switch (coluna.tipo) {
+            case INTEIRO:
+                return String.valueOf(rs.getLong(indice));
+            case DECIMAL:
+                BigDecimal decimal = rs.getBigDecimal(indice);
+                return decimal != null ? decimal.toPlainString() : "0";
+            case DATA_HORA:
+                Timestamp timestamp = rs.getTimestamp(indice);
+                return timestamp != null ? timestamp.toLocalDateTime().toString() : "";
+            case BOOLEANO:
+                return String.valueOf(rs.getBoolean(indice));
+            default:
+                String texto = rs.getString(indice);
+                return texto != null ? texto : "";
+        }
+    }
+    
+    private static void bindValor(PreparedStatement pstmt, int indice, Tipo tipo, String valor) throws SQLException {
+        try {
+            switch (tipo) {
+                case INTEIRO:
+                    pstmt.setLong(indice, Long.parseLong(valor));
+                    break;
+                case DECIMAL:
+                    pstmt.setBigDecimal(indice, new BigDecimal(valor));
+                    break;
+                case DATA_HORA:
+                    pstmt.setTimestamp(indice, Timestamp.valueOf(LocalDateTime.parse(valor)));
+                    break;
+                case BOOLEANO:
+                    if (!valor.equalsIgnoreCase("true") && !valor.equalsIgnoreCase("false")) {
+                        throw new IllegalArgumentException("Valor booleano invalido: " + valor);
+                    }
+                    pstmt.setBoolean(indice, Boolean.parseBoolean(valor));
+                    break;
+                default:
+                    pstmt.setString(indice, valor);
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Valor invalido para filtro ou cursor: " + valor);
+        }
+    }
+    
+    private static String escaparLike(String valor) {
+        return valor.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,63 @@
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Mapeador de linhas que resolve o indice de cada coluna uma vez por
+ * ResultSet, pelos metadados, em vez de procurar a coluna pelo nome em toda
+ * linha. Cada DAO tem uma instancia por entidade, usada por todas as suas
+ * consultas (busca por id, listagens, filtros, paginacao e exportacao).
+ */
+public final class MapeadorColunas<T> {
+    
+    /**
+     * Monta a entidade da linha atual; {@code indices[i]} e o indice JDBC
+     * da i-esima coluna declarada no mapeador.
+     */
+    @FunctionalInterface
+    public interface Montador<T> {
+        T montar(ResultSet rs, int[] indices) throws SQLException;
+    }
+    
+    private final Montador<T> montador;
+    private final String[] colunas;
+    
+    public MapeadorColunas(Montador<T> montador, String... colunas) {
+        this.montador = montador;
+        this.colunas = colunas;
+    }
+    
+    /**
+     * Resolve os indices para este ResultSet e devolve o mapeador por linha.
+     * Chamar uma vez, antes do laco de rs.next().
+     */
+    public RowMapper<T> vincular(ResultSet rs) throws SQLException {
+        int[] indices = resolver(rs.getMetaData());
+        return linha -> montador.montar(linha, indices);
+    }
+    
+    private int[] resolver(ResultSetMetaData meta) throws SQLException {
+        int total = meta.getColumnCount();
+        int[] indices = new int[colunas.length];
+        for (int i = 0; i < colunas.length; i++) {
+            // Caso comum: o SELECT lista as colunas na mesma ordem do mapeador
+            if (i < total && colunas[i].equalsIgnoreCase(meta.getColumnLabel(i + 1))) {
+                indices[i] = i + 1;
+                continue;
+            }
+            indices[i] = procurar(meta, total, colunas[i]);
+        }
+        return indices;
+    }
+    
+    private static int procurar(ResultSetMetaData meta, int total, String coluna) throws SQLException {
+        for (int j = 1; j <= total; j++) {
+            if (coluna.equalsIgnoreCase(meta.getColumnLabel(j))) {
+                return j;
+            }
+        }
+        throw new SQLException("Coluna " + coluna + " ausente no resultado da consulta.");
+    }
+}
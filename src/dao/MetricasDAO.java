@@ -0,0 +1,20 @@
+package dao;
+
+import util.Histogram;
+import util.Metrics;
+
+/**
+ * Histogramas de tempo dos metodos dos DAOs, exportados em /metrics. Cada DAO
+ * registra as suas series em campos estaticos, uma por metodo; o tempo inclui
+ * a espera por conexao e a leitura do ResultSet.
+ */
+final class MetricasDAO {
+    
+    private MetricasDAO() {
+    }
+    
+    static Histogram metodo(String dao, String metodo) {
+        return Metrics.histograma("petshop_dao_duration_seconds", "Tempo das chamadas aos metodos dos DAOs",
+            Histogram.latencia(), "dao", dao, "metodo", metodo);
+    }
+}
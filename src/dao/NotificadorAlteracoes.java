@@ -0,0 +1,55 @@
+package dao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Avisa os interessados (caches) quando um DAO grava numa tabela e mantem
+ * um contador de versao por tabela, incrementado a cada alteracao.
+ * Os DAOs notificam depois que a alteracao foi confirmada no banco.
+ */
+public final class NotificadorAlteracoes {
+    
+    @FunctionalInterface
+    public interface Ouvinte {
+        /**
+         * @param id registro alterado, ou null quando o registro nao e conhecido
+         * @param particao valor da coluna de agrupamento do registro depois da
+         *                 alteracao (ex.: categoria), ou null se nao mudou ou nao se aplica
+         */
+        void alterado(String tabela, Integer id, String particao);
+    }
+    
+    private static final Map<String, List<Ouvinte>> OUVINTES = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicLong> VERSOES = new ConcurrentHashMap<>();
+    
+    private NotificadorAlteracoes() {
+    }
+    
+    public static void registrar(String tabela, Ouvinte ouvinte) {
+        OUVINTES.computeIfAbsent(tabela, t -> new CopyOnWriteArrayList<>()).add(ouvinte);
+    }
+    
+    public static long versao(String tabela) {
+        return VERSOES.computeIfAbsent(tabela, t -> new AtomicLong()).get();
+    }
+    
+    static void notificar(String tabela, Integer id) {
+        notificar(tabela, id, null);
+    }
+    
+    static void notificar(String tabela, Integer id, String particao) {
+        // A versao sobe antes dos ouvintes, para quem comparar versoes ver a mudanca
+        VERSOES.computeIfAbsent(tabela, t -> new AtomicLong()).incrementAndGet();
+        List<Ouvinte> ouvintes = OUVINTES.get(tabela);
+        if (ouvintes == null) {
+            return;
+        }
+        for (Ouvinte ouvinte : ouvintes) {
+            ouvinte.alterado(tabela, id, particao);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package dao;
+
+import java.util.List;
+
+public class Pagina<T> {
+    
+    private final List<T> itens;
+    private final String proximoCursor;
+    private final int limite;
+    
+    public Pagina(List<T> itens, String proximoCursor, int limite) {
+        this.itens = itens;
+        this.proximoCursor = proximoCursor;
+        this.limite = limite;
+    }
+    
+    public List<T> getItens() {
+        return itens;
+    }
+    
+    // Nulo quando esta e a ultima pagina
+    public String getProximoCursor() {
+        return proximoCursor;
+    }
+    
+    public int getLimite() {
+        return limite;
+    }
+    
+    public boolean temProxima() {
+        return proximoCursor != null;
+    }
+}
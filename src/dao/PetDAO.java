@@ -1,17 +1,78 @@
 package dao;
 
 import db.DatabaseConnection;
+import exception.ConflitoVersaoException;
 import exception.PetNaoEncontradoException;
+import exception.VersaoObrigatoriaException;
 import model.Pet;
+import util.Histogram;
 
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 public class PetDAO implements IDAO<Pet> {
     
+    public static final String TABELA = "TB_PET";
+    
+    private static final String SQL_INSERIR = "INSERT INTO TB_PET (id_cliente, nome, especie, raca, data_nascimento, peso, " +
+        "observacoes, data_cadastro) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String SQL_ATUALIZAR = "UPDATE TB_PET SET id_cliente = ?, nome = ?, especie = ?, raca = ?, " +
+        "data_nascimento = ?, peso = ?, observacoes = ?, versao = LAST_INSERT_ID(versao + 1) " +
+        "WHERE id_pet = ? AND versao = ?";
+    
+    private static final String SQL_DATA_CADASTRO_VERSAO = "SELECT data_cadastro, versao FROM TB_PET WHERE id_pet = ?";
+    
+    // Consultas por indice; conferidas por VerificacaoPlanos
+    static final String SQL_BUSCAR_POR_ID = "SELECT id_pet, id_cliente, nome, especie, raca, data_nascimento, peso, " +
+        "observacoes, data_cadastro, versao FROM TB_PET WHERE id_pet = ?";
+    
+    static final String SQL_BUSCAR_POR_CLIENTE = "SELECT id_pet, id_cliente, nome, especie, raca, data_nascimento, peso, " +
+        "observacoes, data_cadastro, versao FROM TB_PET WHERE id_cliente = ? ORDER BY nome ASC";
+    
+    // Ordenacoes e filtros aceitos na listagem paginada
+    private static final KeysetQuery.Definicao PAGINACAO = new KeysetQuery.Definicao(
+            "SELECT id_pet, id_cliente, nome, especie, raca, data_nascimento, peso, " +
+            "observacoes, data_cadastro, versao FROM TB_PET", "id_pet")
+        .ordenacao("nome", "nome", KeysetQuery.Tipo.TEXTO)
+        .ordenacao("especie", "especie", KeysetQuery.Tipo.TEXTO)
+        .filtro("idCliente", "id_cliente", KeysetQuery.Tipo.INTEIRO, KeysetQuery.Comparacao.IGUAL)
+        .filtro("especie", "especie", KeysetQuery.Tipo.TEXTO, KeysetQuery.Comparacao.IGUAL)
+        .filtro("nome", "nome", KeysetQuery.Tipo.TEXTO, KeysetQuery.Comparacao.PREFIXO);
+    
+    // Colunas na ordem usada pelos SELECTs deste DAO; indices resolvidos uma vez por consulta
+    public static final MapeadorColunas<Pet> MAPEADOR = new MapeadorColunas<>(PetDAO::montarPet,
+        "id_pet", "id_cliente", "nome", "especie", "raca",
+        "data_nascimento", "peso", "observacoes", "data_cadastro", "versao");
+    
+    // Colunas editaveis, para o UPDATE de edicao parcial
+    private static final AtualizacaoParcial<Pet> ATUALIZACAO_PARCIAL = new AtualizacaoParcial<Pet>(TABELA, "id_pet")
+        .coluna("id_cliente", Pet::getIdCliente, Types.INTEGER)
+        .coluna("nome", Pet::getNome, Types.VARCHAR)
+        .coluna("especie", Pet::getEspecie, Types.VARCHAR)
+        .coluna("raca", Pet::getRaca, Types.VARCHAR)
+        .coluna("data_nascimento", Pet::getDataNascimento, Types.DATE)
+        .coluna("peso", Pet::getPeso, Types.DOUBLE)
+        .coluna("observacoes", Pet::getObservacoes, Types.VARCHAR);
+    
+    // Tempo de cada metodo publico, exportado em /metrics
+    private static final Histogram TEMPO_INSERIR = MetricasDAO.metodo("PetDAO", "inserir");
+    private static final Histogram TEMPO_INSERIR_EM_LOTE = MetricasDAO.metodo("PetDAO", "inserirEmLote");
+    private static final Histogram TEMPO_BUSCAR_POR_ID = MetricasDAO.metodo("PetDAO", "buscarPorId");
+    private static final Histogram TEMPO_BUSCAR_OPCIONAL = MetricasDAO.metodo("PetDAO", "buscarOpcional");
+    private static final Histogram TEMPO_LISTAR_TODOS = MetricasDAO.metodo("PetDAO", "listarTodos");
+    private static final Histogram TEMPO_LISTAR_PAGINADO = MetricasDAO.metodo("PetDAO", "listarPaginado");
+    private static final Histogram TEMPO_EXPORTAR = MetricasDAO.metodo("PetDAO", "exportar");
+    private static final Histogram TEMPO_ATUALIZAR = MetricasDAO.metodo("PetDAO", "atualizar");
+    private static final Histogram TEMPO_ATUALIZAR_PARCIAL = MetricasDAO.metodo("PetDAO", "atualizarParcial");
+    private static final Histogram TEMPO_ATUALIZAR_EM_LOTE = MetricasDAO.metodo("PetDAO", "atualizarEmLote");
+    private static final Histogram TEMPO_DELETAR = MetricasDAO.metodo("PetDAO", "deletar");
+    private static final Histogram TEMPO_BUSCAR_POR_CLIENTE = MetricasDAO.metodo("PetDAO", "buscarPorCliente");
+    
     private DatabaseConnection dbConnection;
     
     public PetDAO() {
@@ -20,33 +81,23 @@ public class PetDAO implements IDAO<Pet> {
     
     @Override
     public Pet inserir(Pet pet) throws Exception {
-        String sql = "INSERT INTO TB_PET (id_cliente, nome, especie, raca, data_nascimento, peso, " +
-                     "observacoes, data_cadastro) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-        
+        long inicio = System.nanoTime();
+        try {
+            return inserirSemMedir(pet);
+        } finally {
+            TEMPO_INSERIR.registrarDesde(inicio);
+        }
+    }
+    
+    private Pet inserirSemMedir(Pet pet) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            
-            pstmt.setInt(1, pet.getIdCliente());
-            pstmt.setString(2, pet.getNome());
-            pstmt.setString(3, pet.getEspecie());
-            pstmt.setString(4, pet.getRaca());
-            
-            if (pet.getDataNascimento() != null) {
-                pstmt.setDate(5, Date.valueOf(pet.getDataNascimento()));
-            } else {
-                pstmt.setDate(5, null);
-            }
-            
-            pstmt.setDouble(6, pet.getPeso() != null ? pet.getPeso() : 0.0);
-            pstmt.setString(7, pet.getObservacoes());
-            pstmt.setTimestamp(8, Timestamp.valueOf(
-                pet.getDataCadastro() != null ? pet.getDataCadastro() : LocalDateTime.now()
-            ));
+            pstmt = conn.prepareStatement(SQL_INSERIR, Statement.RETURN_GENERATED_KEYS);
+            preencherInsercao(pstmt, pet);
             
             int linhasAfetadas = pstmt.executeUpdate();
             
@@ -55,6 +106,8 @@ public class PetDAO implements IDAO<Pet> {
                 if (rs.next()) {
                     pet.setIdPet(rs.getInt(1));
                 }
+                pet.setVersao(0);
+                NotificadorAlteracoes.notificar(TABELA, pet.getIdPet());
                 return pet;
             } else {
                 throw new SQLException("Falha ao inserir pet. Nenhuma linha afetada.");
@@ -63,49 +116,105 @@ public class PetDAO implements IDAO<Pet> {
         } catch (SQLException e) {
             throw new Exception("Erro ao inserir pet: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
         }
     }
     
+    /**
+     * Insere os registros com JDBC batch, em blocos transacionais.
+     * Os ids gerados sao atribuidos nas proprias entidades.
+     */
+    @Override
+    public List<Pet> inserirEmLote(List<Pet> pets) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return inserirEmLoteSemMedir(pets);
+        } finally {
+            TEMPO_INSERIR_EM_LOTE.registrarDesde(inicio);
+        }
+    }
+    
+    private List<Pet> inserirEmLoteSemMedir(List<Pet> pets) throws Exception {
+        try {
+            ExecucaoEmLote.executar(dbConnection, SQL_INSERIR, pets, this::preencherInsercao, (pet, id) -> {
+                pet.setIdPet(id);
+                pet.setVersao(0);
+            });
+        } finally {
+            notificarLote(pets);
+        }
+        return pets;
+    }
+    
     @Override
     public Pet buscarPorId(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return buscarPorIdSemMedir(id);
+        } finally {
+            TEMPO_BUSCAR_POR_ID.registrarDesde(inicio);
+        }
+    }
+    
+    private Pet buscarPorIdSemMedir(Integer id) throws Exception {
+        Optional<Pet> pet = buscarOpcional(id);
+        if (pet.isEmpty()) {
+            throw new PetNaoEncontradoException(id);
+        }
+        return pet.get();
+    }
+    
+    @Override
+    public Optional<Pet> buscarOpcional(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return buscarOpcionalSemMedir(id);
+        } finally {
+            TEMPO_BUSCAR_OPCIONAL.registrarDesde(inicio);
+        }
+    }
+    
+    private Optional<Pet> buscarOpcionalSemMedir(Integer id) throws Exception {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("ID do pet deve ser positivo.");
         }
         
-        String sql = "SELECT id_pet, id_cliente, nome, especie, raca, data_nascimento, peso, " +
-                     "observacoes, data_cadastro FROM TB_PET WHERE id_pet = ?";
-        
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = conn.prepareStatement(SQL_BUSCAR_POR_ID);
             pstmt.setInt(1, id);
             
             rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                return criarPetDoResultSet(rs);
-            } else {
-                throw new PetNaoEncontradoException(id);
+                return Optional.of(MAPEADOR.vincular(rs).mapear(rs));
             }
+            return Optional.empty();
             
-        } catch (PetNaoEncontradoException e) {
-            throw e;
         } catch (SQLException e) {
             throw new Exception("Erro ao buscar pet por ID: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
         }
     }
     
     @Override
     public List<Pet> listarTodos() throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return listarTodosSemMedir();
+        } finally {
+            TEMPO_LISTAR_TODOS.registrarDesde(inicio);
+        }
+    }
+    
+    private List<Pet> listarTodosSemMedir() throws Exception {
         String sql = "SELECT id_pet, id_cliente, nome, especie, raca, data_nascimento, peso, " +
-                     "observacoes, data_cadastro FROM TB_PET ORDER BY nome ASC";
+                     "observacoes, data_cadastro, versao FROM TB_PET ORDER BY nome ASC";
         
         Connection conn = null;
         PreparedStatement pstmt = null;
@@ -117,8 +226,9 @@ public class PetDAO implements IDAO<Pet> {
             pstmt = conn.prepareStatement(sql);
             rs = pstmt.executeQuery();
             
+            RowMapper<Pet> mapper = MAPEADOR.vincular(rs);
             while (rs.next()) {
-                pets.add(criarPetDoResultSet(rs));
+                pets.add(mapper.mapear(rs));
             }
             
             return pets;
@@ -126,56 +236,236 @@ public class PetDAO implements IDAO<Pet> {
         } catch (SQLException e) {
             throw new Exception("Erro ao listar pets: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    @Override
+    public Pagina<Pet> listarPaginado(Consulta consulta) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return listarPaginadoSemMedir(consulta);
+        } finally {
+            TEMPO_LISTAR_PAGINADO.registrarDesde(inicio);
+        }
+    }
+    
+    private Pagina<Pet> listarPaginadoSemMedir(Consulta consulta) throws Exception {
+        KeysetQuery query = new KeysetQuery(PAGINACAO, consulta);
+        
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = dbConnection.getConnection();
+            pstmt = conn.prepareStatement(query.getSql());
+            query.bind(pstmt);
+            
+            rs = pstmt.executeQuery();
+            
+            return query.lerPagina(rs, MAPEADOR);
+            
+        } catch (SQLException e) {
+            throw new Exception("Erro ao listar pets: " + e.getMessage(), e);
+        } finally {
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    /**
+     * Percorre a tabela inteira em ordem de id entregando cada registro ao
+     * consumidor, sem manter a lista em memoria. Retorna o numero de linhas.
+     */
+    public long exportar(RowConsumer<Pet> consumidor) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return exportarSemMedir(consumidor);
+        } finally {
+            TEMPO_EXPORTAR.registrarDesde(inicio);
+        }
+    }
+    
+    private long exportarSemMedir(RowConsumer<Pet> consumidor) throws Exception {
+        String sql = "SELECT id_pet, id_cliente, nome, especie, raca, data_nascimento, peso, " +
+                     "observacoes, data_cadastro, versao FROM TB_PET ORDER BY id_pet";
+        
+        try {
+            return ConsultaStreaming.executar(dbConnection, sql, MAPEADOR, consumidor);
+        } catch (SQLException e) {
+            throw new Exception("Erro ao exportar pets: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * O UPDATE grava todas as colunas editaveis, entao o proprio objeto ja e o
+     * estado persistido; so a data de cadastro, quando nao veio preenchida, e
+     * lida na mesma conexao.
+     */
     @Override
     public Pet atualizar(Pet pet) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarSemMedir(pet);
+        } finally {
+            TEMPO_ATUALIZAR.registrarDesde(inicio);
+        }
+    }
+    
+    private Pet atualizarSemMedir(Pet pet) throws Exception {
         if (pet.getIdPet() == null || pet.getIdPet() <= 0) {
             throw new IllegalArgumentException("ID do pet é obrigatório para atualização.");
         }
-        
-        String sql = "UPDATE TB_PET SET id_cliente = ?, nome = ?, especie = ?, raca = ?, " +
-                     "data_nascimento = ?, peso = ?, observacoes = ? WHERE id_pet = ?";
+        if (pet.getVersao() == null) {
+            throw new VersaoObrigatoriaException("Pet", pet.getIdPet());
+        }
         
         Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = conn.prepareStatement(SQL_ATUALIZAR, Statement.RETURN_GENERATED_KEYS);
+            preencherAtualizacao(pstmt, pet);
+            boolean gravado = pstmt.executeUpdate() > 0;
             
-            pstmt.setInt(1, pet.getIdCliente());
-            pstmt.setString(2, pet.getNome());
-            pstmt.setString(3, pet.getEspecie());
-            pstmt.setString(4, pet.getRaca());
-            if (pet.getDataNascimento() != null) {
-                pstmt.setDate(5, Date.valueOf(pet.getDataNascimento()));
-            } else {
-                pstmt.setDate(5, null);
+            if (gravado) {
+                NotificadorAlteracoes.notificar(TABELA, pet.getIdPet());
+                // LAST_INSERT_ID(versao + 1) devolve a nova versao sem outra consulta
+                rs = pstmt.getGeneratedKeys();
+                if (rs.next()) {
+                    pet.setVersao(rs.getInt(1));
+                }
+                if (pet.getDataCadastro() != null) {
+                    return pet;
+                }
+                rs.close();
             }
-            pstmt.setDouble(6, pet.getPeso() != null ? pet.getPeso() : 0.0);
-            pstmt.setString(7, pet.getObservacoes());
-            pstmt.setInt(8, pet.getIdPet());
-            
-            int linhasAfetadas = pstmt.executeUpdate();
             
-            if (linhasAfetadas > 0) {
-                return buscarPorId(pet.getIdPet());
-            } else {
+            pstmt.close();
+            pstmt = conn.prepareStatement(SQL_DATA_CADASTRO_VERSAO);
+            pstmt.setInt(1, pet.getIdPet());
+            rs = pstmt.executeQuery();
+            if (!rs.next()) {
                 throw new PetNaoEncontradoException(pet.getIdPet());
             }
+            if (!gravado) {
+                // A linha existe, entao foi a versao que nao bateu
+                throw new ConflitoVersaoException("Pet", pet.getIdPet(), pet.getVersao(), rs.getInt(2));
+            }
+            if (rs.getTimestamp(1) != null) {
+                pet.setDataCadastro(rs.getTimestamp(1).toLocalDateTime());
+            }
+            return pet;
             
         } catch (SQLException e) {
             throw new Exception("Erro ao atualizar pet: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(null, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    /**
+     * Grava so as colunas em que alterado difere de atual, desde que o registro
+     * ainda esteja na versao de atual. Sem diferencas, nada e gravado e atual e
+     * devolvido. alterado recebe o id, a data de cadastro e a nova versao.
+     */
+    public Pet atualizarParcial(Pet atual, Pet alterado) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarParcialSemMedir(atual, alterado);
+        } finally {
+            TEMPO_ATUALIZAR_PARCIAL.registrarDesde(inicio);
+        }
+    }
+    
+    private Pet atualizarParcialSemMedir(Pet atual, Pet alterado) throws Exception {
+        Integer id = atual.getIdPet();
+        if (id == null || id <= 0 || atual.getVersao() == null) {
+            throw new IllegalArgumentException("ID e versão do pet são obrigatórios para atualização.");
+        }
+        alterado.setIdPet(id);
+        alterado.setDataCadastro(atual.getDataCadastro());
+        
+        long mascara = ATUALIZACAO_PARCIAL.alteradas(atual, alterado);
+        if (mascara == 0) {
+            alterado.setVersao(atual.getVersao());
+            return alterado;
+        }
+        
+        Connection conn = null;
+        
+        try {
+            conn = dbConnection.getConnection();
+            Integer versao = ATUALIZACAO_PARCIAL.executar(conn, mascara, alterado, id, atual.getVersao());
+            if (versao == null) {
+                Integer versaoAtual = ATUALIZACAO_PARCIAL.versaoAtual(conn, id);
+                if (versaoAtual == null) {
+                    throw new PetNaoEncontradoException(id);
+                }
+                throw new ConflitoVersaoException("Pet", id, atual.getVersao(), versaoAtual);
+            }
+            
+            NotificadorAlteracoes.notificar(TABELA, id);
+            alterado.setVersao(versao);
+            return alterado;
+            
+        } catch (SQLException e) {
+            throw new Exception("Erro ao atualizar pet: " + e.getMessage(), e);
+        } finally {
+            dbConnection.closeConnection(conn);
+        }
+    }
+    
+    /**
+     * Atualiza os registros com JDBC batch, em blocos transacionais.
+     * Retorna as linhas afetadas por registro (0 quando o id nao existe).
+     */
+    @Override
+    public int[] atualizarEmLote(List<Pet> pets) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarEmLoteSemMedir(pets);
+        } finally {
+            TEMPO_ATUALIZAR_EM_LOTE.registrarDesde(inicio);
+        }
+    }
+    
+    private int[] atualizarEmLoteSemMedir(List<Pet> pets) throws Exception {
+        for (Pet pet : pets) {
+            if (pet.getIdPet() == null || pet.getIdPet() <= 0) {
+                throw new IllegalArgumentException("Todos os registros do lote precisam de ID para atualização.");
+            }
+            if (pet.getVersao() == null) {
+                throw new IllegalArgumentException("Todos os registros do lote precisam da versão para atualização.");
+            }
+        }
+        try {
+            int[] linhas = ExecucaoEmLote.executar(dbConnection, SQL_ATUALIZAR, pets, this::preencherAtualizacao, null);
+            for (int i = 0; i < linhas.length; i++) {
+                Pet pet = pets.get(i);
+                if (linhas[i] > 0) {
+                    pet.setVersao(pet.getVersao() + 1);
+                }
+            }
+            return linhas;
+        } finally {
+            notificarLote(pets);
         }
     }
     
     @Override
     public boolean deletar(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return deletarSemMedir(id);
+        } finally {
+            TEMPO_DELETAR.registrarDesde(inicio);
+        }
+    }
+    
+    private boolean deletarSemMedir(Integer id) throws Exception {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("ID do pet deve ser positivo.");
         }
@@ -191,24 +481,33 @@ public class PetDAO implements IDAO<Pet> {
             pstmt.setInt(1, id);
             
             int linhasAfetadas = pstmt.executeUpdate();
+            if (linhasAfetadas > 0) {
+                NotificadorAlteracoes.notificar(TABELA, id);
+            }
             
             return linhasAfetadas > 0;
             
         } catch (SQLException e) {
             throw new Exception("Erro ao deletar pet: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(null, pstmt, null);
+            fecharRecursos(null, pstmt, conn);
         }
     }
     
     public List<Pet> buscarPorCliente(Integer idCliente) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return buscarPorClienteSemMedir(idCliente);
+        } finally {
+            TEMPO_BUSCAR_POR_CLIENTE.registrarDesde(inicio);
+        }
+    }
+    
+    private List<Pet> buscarPorClienteSemMedir(Integer idCliente) throws Exception {
         if (idCliente == null || idCliente <= 0) {
             throw new IllegalArgumentException("ID do cliente deve ser positivo.");
         }
         
-        String sql = "SELECT id_pet, id_cliente, nome, especie, raca, data_nascimento, peso, " +
-                     "observacoes, data_cadastro FROM TB_PET WHERE id_cliente = ? ORDER BY nome ASC";
-        
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
@@ -216,13 +515,14 @@ public class PetDAO implements IDAO<Pet> {
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = conn.prepareStatement(SQL_BUSCAR_POR_CLIENTE);
             pstmt.setInt(1, idCliente);
             
             rs = pstmt.executeQuery();
             
+            RowMapper<Pet> mapper = MAPEADOR.vincular(rs);
             while (rs.next()) {
-                pets.add(criarPetDoResultSet(rs));
+                pets.add(mapper.mapear(rs));
             }
             
             return pets;
@@ -230,41 +530,88 @@ public class PetDAO implements IDAO<Pet> {
         } catch (SQLException e) {
             throw new Exception("Erro ao buscar pets por cliente: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
         }
     }
     
-    private Pet criarPetDoResultSet(ResultSet rs) throws SQLException {
+    private static Pet montarPet(ResultSet rs, int[] c) throws SQLException {
         Pet pet = new Pet();
-        pet.setIdPet(rs.getInt("id_pet"));
-        pet.setIdCliente(rs.getInt("id_cliente"));
-        pet.setNome(rs.getString("nome"));
-        pet.setEspecie(rs.getString("especie"));
-        pet.setRaca(rs.getString("raca"));
+        pet.setIdPet(rs.getInt(c[0]));
+        pet.setIdCliente(rs.getInt(c[1]));
+        pet.setNome(rs.getString(c[2]));
+        pet.setEspecie(rs.getString(c[3]));
+        pet.setRaca(rs.getString(c[4]));
         
-        Date dataNascimento = rs.getDate("data_nascimento");
+        Date dataNascimento = rs.getDate(c[5]);
         if (dataNascimento != null) {
             pet.setDataNascimento(dataNascimento.toLocalDate());
         }
         
-        pet.setPeso(rs.getDouble("peso"));
-        pet.setObservacoes(rs.getString("observacoes"));
+        pet.setPeso(rs.getDouble(c[6]));
+        pet.setObservacoes(rs.getString(c[7]));
         
-        Timestamp timestamp = rs.getTimestamp("data_cadastro");
+        Timestamp timestamp = rs.getTimestamp(c[8]);
         if (timestamp != null) {
             pet.setDataCadastro(timestamp.toLocalDateTime());
         }
         
+        pet.setVersao(rs.getInt(c[9]));
+        
         return pet;
     }
     
-    private void fecharRecursos(ResultSet rs, PreparedStatement pstmt, Statement stmt) {
+    private void preencherInsercao(PreparedStatement pstmt, Pet pet) throws SQLException {
+        pstmt.setInt(1, pet.getIdCliente());
+        pstmt.setString(2, pet.getNome());
+        pstmt.setString(3, pet.getEspecie());
+        pstmt.setString(4, pet.getRaca());
+        
+        if (pet.getDataNascimento() != null) {
+            pstmt.setDate(5, Date.valueOf(pet.getDataNascimento()));
+        } else {
+            pstmt.setDate(5, null);
+        }
+        
+        pstmt.setDouble(6, pet.getPeso() != null ? pet.getPeso() : 0.0);
+        pstmt.setString(7, pet.getObservacoes());
+        pstmt.setTimestamp(8, Timestamp.valueOf(
+            pet.getDataCadastro() != null ? pet.getDataCadastro() : LocalDateTime.now()
+        ));
+    }
+    
+    private void preencherAtualizacao(PreparedStatement pstmt, Pet pet) throws SQLException {
+        pstmt.setInt(1, pet.getIdCliente());
+        pstmt.setString(2, pet.getNome());
+        pstmt.setString(3, pet.getEspecie());
+        pstmt.setString(4, pet.getRaca());
+        if (pet.getDataNascimento() != null) {
+            pstmt.setDate(5, Date.valueOf(pet.getDataNascimento()));
+        } else {
+            pstmt.setDate(5, null);
+        }
+        pstmt.setDouble(6, pet.getPeso() != null ? pet.getPeso() : 0.0);
+        pstmt.setString(7, pet.getObservacoes());
+        pstmt.setInt(8, pet.getIdPet());
+        pstmt.setObject(9, pet.getVersao(), Types.INTEGER);
+    }
+    
+    // Um bloco pode ter sido gravado mesmo quando o lote falha depois
+    private void notificarLote(List<Pet> pets) {
+        for (Pet pet : pets) {
+            if (pet.getIdPet() != null) {
+                NotificadorAlteracoes.notificar(TABELA, pet.getIdPet());
+            }
+        }
+    }
+    
+    private void fecharRecursos(ResultSet rs, PreparedStatement pstmt, Connection conn) {
         try {
             if (rs != null) rs.close();
             if (pstmt != null) pstmt.close();
-            if (stmt != null) stmt.close();
         } catch (SQLException e) {
             System.err.println("Erro ao fechar recursos: " + e.getMessage());
+        } finally {
+            dbConnection.closeConnection(conn);
         }
     }
 }
@@ -1,16 +1,105 @@
 package dao;
 
 import db.DatabaseConnection;
+import exception.EstoqueInsuficienteException;
+import exception.ConflitoVersaoException;
 import exception.ProdutoNaoEncontradoException;
+import exception.VersaoObrigatoriaException;
 import model.Produto;
+import util.ConfigUtil;
+import util.Histogram;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ProdutoDAO implements IDAO<Produto> {
     
+    public static final String TABELA = "TB_PRODUTO";
+    
+    private static final String SQL_INSERIR = "INSERT INTO TB_PRODUTO (nome, descricao, preco, estoque, categoria, ativo, data_cadastro) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String SQL_ATUALIZAR = "UPDATE TB_PRODUTO SET nome = ?, descricao = ?, preco = ?, estoque = ?, " +
+        "categoria = ?, ativo = ?, versao = LAST_INSERT_ID(versao + 1) " +
+        "WHERE id_produto = ? AND versao = ?";
+    
+    private static final String SQL_DATA_CADASTRO_VERSAO = "SELECT data_cadastro, versao FROM TB_PRODUTO WHERE id_produto = ?";
+    
+    // Consultas por indice; conferidas por VerificacaoPlanos
+    static final String SQL_BUSCAR_POR_ID = "SELECT id_produto, nome, descricao, preco, estoque, categoria, ativo, data_cadastro, versao " +
+        "FROM TB_PRODUTO WHERE id_produto = ?";
+    
+    static final String SQL_BUSCAR_POR_CATEGORIA = "SELECT id_produto, nome, descricao, preco, estoque, categoria, ativo, data_cadastro, versao " +
+        "FROM TB_PRODUTO WHERE categoria = ? ORDER BY nome ASC";
+    
+    private static final String SQL_DEFINIR_ESTOQUE = "UPDATE TB_PRODUTO SET estoque = ?, versao = versao + 1 WHERE id_produto = ?";
+    
+    private static final String SQL_ADICIONAR_ESTOQUE =
+        "UPDATE TB_PRODUTO SET estoque = LAST_INSERT_ID(estoque + ?), versao = versao + 1 WHERE id_produto = ?";
+    
+    private static final String SQL_REMOVER_ESTOQUE =
+        "UPDATE TB_PRODUTO SET estoque = LAST_INSERT_ID(estoque - ?), versao = versao + 1 WHERE id_produto = ? AND estoque >= ?";
+    
+    private static final StripedLocks LOCKS_ESTOQUE = new StripedLocks(ConfigUtil.getInt("db.estoque.stripes", 64));
+    
+    // Ordenacoes e filtros aceitos na listagem paginada
+    private static final KeysetQuery.Definicao PAGINACAO = new KeysetQuery.Definicao(
+            "SELECT id_produto, nome, descricao, preco, estoque, categoria, ativo, data_cadastro, versao " +
+            "FROM TB_PRODUTO", "id_produto")
+        .ordenacao("nome", "nome", KeysetQuery.Tipo.TEXTO)
+        .ordenacao("preco", "preco", KeysetQuery.Tipo.DECIMAL)
+        .ordenacao("estoque", "estoque", KeysetQuery.Tipo.INTEIRO)
+        .filtro("categoria", "categoria", KeysetQuery.Tipo.TEXTO, KeysetQuery.Comparacao.IGUAL)
+        .filtro("ativo", "ativo", KeysetQuery.Tipo.BOOLEANO, KeysetQuery.Comparacao.IGUAL)
+        .filtro("nome", "nome", KeysetQuery.Tipo.TEXTO, KeysetQuery.Comparacao.PREFIXO);
+    
+    // Resultado de buscarPorCategoria por valor normalizado; invalidado pelas gravacoes na tabela
+    private static final QueryCache<Produto> CACHE_CATEGORIA = new QueryCache<>("produtosPorCategoria", TABELA,
+        Produto::getIdProduto, categoria -> CarregadorCategoria.DAO.consultarPorCategoria(categoria));
+    
+    // Instancia do carregador do CACHE_CATEGORIA, criada no primeiro uso e reaproveitada em cada falta
+    private static final class CarregadorCategoria {
+        static final ProdutoDAO DAO = new ProdutoDAO();
+    }
+    
+    // Colunas na ordem usada pelos SELECTs deste DAO; indices resolvidos uma vez por consulta
+    public static final MapeadorColunas<Produto> MAPEADOR = new MapeadorColunas<>(ProdutoDAO::montarProduto,
+        "id_produto", "nome", "descricao", "preco", "estoque",
+        "categoria", "ativo", "data_cadastro", "versao");
+    
+    // Colunas editaveis, para o UPDATE de edicao parcial
+    private static final AtualizacaoParcial<Produto> ATUALIZACAO_PARCIAL = new AtualizacaoParcial<Produto>(TABELA, "id_produto")
+        .coluna("nome", Produto::getNome, Types.VARCHAR)
+        .coluna("descricao", Produto::getDescricao, Types.VARCHAR)
+        .coluna("preco", Produto::getPreco, Types.DOUBLE)
+        .coluna("estoque", Produto::getEstoque, Types.INTEGER)
+        .coluna("categoria", Produto::getCategoria, Types.VARCHAR)
+        .coluna("ativo", Produto::getAtivo, Types.BOOLEAN);
+    
+    // Tempo de cada metodo publico, exportado em /metrics
+    private static final Histogram TEMPO_INSERIR = MetricasDAO.metodo("ProdutoDAO", "inserir");
+    private static final Histogram TEMPO_INSERIR_EM_LOTE = MetricasDAO.metodo("ProdutoDAO", "inserirEmLote");
+    private static final Histogram TEMPO_BUSCAR_POR_ID = MetricasDAO.metodo("ProdutoDAO", "buscarPorId");
+    private static final Histogram TEMPO_BUSCAR_OPCIONAL = MetricasDAO.metodo("ProdutoDAO", "buscarOpcional");
+    private static final Histogram TEMPO_LISTAR_TODOS = MetricasDAO.metodo("ProdutoDAO", "listarTodos");
+    private static final Histogram TEMPO_LISTAR_PAGINADO = MetricasDAO.metodo("ProdutoDAO", "listarPaginado");
+    private static final Histogram TEMPO_EXPORTAR = MetricasDAO.metodo("ProdutoDAO", "exportar");
+    private static final Histogram TEMPO_ATUALIZAR = MetricasDAO.metodo("ProdutoDAO", "atualizar");
+    private static final Histogram TEMPO_ATUALIZAR_PARCIAL = MetricasDAO.metodo("ProdutoDAO", "atualizarParcial");
+    private static final Histogram TEMPO_ATUALIZAR_EM_LOTE = MetricasDAO.metodo("ProdutoDAO", "atualizarEmLote");
+    private static final Histogram TEMPO_DELETAR = MetricasDAO.metodo("ProdutoDAO", "deletar");
+    private static final Histogram TEMPO_BUSCAR_POR_CATEGORIA = MetricasDAO.metodo("ProdutoDAO", "buscarPorCategoria");
+    private static final Histogram TEMPO_ATUALIZAR_ESTOQUE = MetricasDAO.metodo("ProdutoDAO", "atualizarEstoque");
+    private static final Histogram TEMPO_ADICIONAR_ESTOQUE = MetricasDAO.metodo("ProdutoDAO", "adicionarEstoque");
+    private static final Histogram TEMPO_REMOVER_ESTOQUE = MetricasDAO.metodo("ProdutoDAO", "removerEstoque");
+    private static final Histogram TEMPO_REMOVER_ESTOQUE_ITENS = MetricasDAO.metodo("ProdutoDAO", "removerEstoqueItens");
+    
     private DatabaseConnection dbConnection;
     
     public ProdutoDAO() {
@@ -19,26 +108,23 @@ public class ProdutoDAO implements IDAO<Produto> {
     
     @Override
     public Produto inserir(Produto produto) throws Exception {
-        String sql = "INSERT INTO TB_PRODUTO (nome, descricao, preco, estoque, categoria, ativo, data_cadastro) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, ?)";
-        
+        long inicio = System.nanoTime();
+        try {
+            return inserirSemMedir(produto);
+        } finally {
+            TEMPO_INSERIR.registrarDesde(inicio);
+        }
+    }
+    
+    private Produto inserirSemMedir(Produto produto) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            
-            pstmt.setString(1, produto.getNome());
-            pstmt.setString(2, produto.getDescricao());
-            pstmt.setDouble(3, produto.getPreco());
-            pstmt.setInt(4, produto.getEstoque() != null ? produto.getEstoque() : 0);
-            pstmt.setString(5, produto.getCategoria());
-            pstmt.setBoolean(6, produto.getAtivo() != null ? produto.getAtivo() : true);
-            pstmt.setTimestamp(7, Timestamp.valueOf(
-                produto.getDataCadastro() != null ? produto.getDataCadastro() : LocalDateTime.now()
-            ));
+            pstmt = conn.prepareStatement(SQL_INSERIR, Statement.RETURN_GENERATED_KEYS);
+            preencherInsercao(pstmt, produto);
             
             int linhasAfetadas = pstmt.executeUpdate();
             
@@ -47,6 +133,8 @@ public class ProdutoDAO implements IDAO<Produto> {
                 if (rs.next()) {
                     produto.setIdProduto(rs.getInt(1));
                 }
+                produto.setVersao(0);
+                NotificadorAlteracoes.notificar(TABELA, produto.getIdProduto(), produto.getCategoria());
                 return produto;
             } else {
                 throw new SQLException("Falha ao inserir produto. Nenhuma linha afetada.");
@@ -55,48 +143,104 @@ public class ProdutoDAO implements IDAO<Produto> {
         } catch (SQLException e) {
             throw new Exception("Erro ao inserir produto: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    /**
+     * Insere os registros com JDBC batch, em blocos transacionais.
+     * Os ids gerados sao atribuidos nas proprias entidades.
+     */
+    @Override
+    public List<Produto> inserirEmLote(List<Produto> produtos) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return inserirEmLoteSemMedir(produtos);
+        } finally {
+            TEMPO_INSERIR_EM_LOTE.registrarDesde(inicio);
+        }
+    }
+    
+    private List<Produto> inserirEmLoteSemMedir(List<Produto> produtos) throws Exception {
+        try {
+            ExecucaoEmLote.executar(dbConnection, SQL_INSERIR, produtos, this::preencherInsercao, (produto, id) -> {
+                produto.setIdProduto(id);
+                produto.setVersao(0);
+            });
+        } finally {
+            notificarLote(produtos);
         }
+        return produtos;
     }
     
     @Override
     public Produto buscarPorId(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return buscarPorIdSemMedir(id);
+        } finally {
+            TEMPO_BUSCAR_POR_ID.registrarDesde(inicio);
+        }
+    }
+    
+    private Produto buscarPorIdSemMedir(Integer id) throws Exception {
+        Optional<Produto> produto = buscarOpcional(id);
+        if (produto.isEmpty()) {
+            throw new ProdutoNaoEncontradoException(id);
+        }
+        return produto.get();
+    }
+    
+    @Override
+    public Optional<Produto> buscarOpcional(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return buscarOpcionalSemMedir(id);
+        } finally {
+            TEMPO_BUSCAR_OPCIONAL.registrarDesde(inicio);
+        }
+    }
+    
+    private Optional<Produto> buscarOpcionalSemMedir(Integer id) throws Exception {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("ID do produto deve ser positivo.");
         }
         
-        String sql = "SELECT id_produto, nome, descricao, preco, estoque, categoria, ativo, data_cadastro " +
-                     "FROM TB_PRODUTO WHERE id_produto = ?";
-        
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql);
+            pstmt = conn.prepareStatement(SQL_BUSCAR_POR_ID);
             pstmt.setInt(1, id);
             
             rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                return criarProdutoDoResultSet(rs);
-            } else {
-                throw new ProdutoNaoEncontradoException(id);
+                return Optional.of(MAPEADOR.vincular(rs).mapear(rs));
             }
+            return Optional.empty();
             
-        } catch (ProdutoNaoEncontradoException e) {
-            throw e;
         } catch (SQLException e) {
             throw new Exception("Erro ao buscar produto por ID: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
         }
     }
     
     @Override
     public List<Produto> listarTodos() throws Exception {
-        String sql = "SELECT id_produto, nome, descricao, preco, estoque, categoria, ativo, data_cadastro " +
+        long inicio = System.nanoTime();
+        try {
+            return listarTodosSemMedir();
+        } finally {
+            TEMPO_LISTAR_TODOS.registrarDesde(inicio);
+        }
+    }
+    
+    private List<Produto> listarTodosSemMedir() throws Exception {
+        String sql = "SELECT id_produto, nome, descricao, preco, estoque, categoria, ativo, data_cadastro, versao " +
                      "FROM TB_PRODUTO ORDER BY nome ASC";
         
         Connection conn = null;
@@ -109,8 +253,9 @@ public class ProdutoDAO implements IDAO<Produto> {
             pstmt = conn.prepareStatement(sql);
             rs = pstmt.executeQuery();
             
+            RowMapper<Produto> mapper = MAPEADOR.vincular(rs);
             while (rs.next()) {
-                produtos.add(criarProdutoDoResultSet(rs));
+                produtos.add(mapper.mapear(rs));
             }
             
             return produtos;
@@ -118,51 +263,236 @@ public class ProdutoDAO implements IDAO<Produto> {
         } catch (SQLException e) {
             throw new Exception("Erro ao listar produtos: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
         }
     }
     
+    @Override
+    public Pagina<Produto> listarPaginado(Consulta consulta) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return listarPaginadoSemMedir(consulta);
+        } finally {
+            TEMPO_LISTAR_PAGINADO.registrarDesde(inicio);
+        }
+    }
+    
+    private Pagina<Produto> listarPaginadoSemMedir(Consulta consulta) throws Exception {
+        KeysetQuery query = new KeysetQuery(PAGINACAO, consulta);
+        
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = dbConnection.getConnection();
+            pstmt = conn.prepareStatement(query.getSql());
+            query.bind(pstmt);
+            
+            rs = pstmt.executeQuery();
+            
+            return query.lerPagina(rs, MAPEADOR);
+            
+        } catch (SQLException e) {
+            throw new Exception("Erro ao listar produtos: " + e.getMessage(), e);
+        } finally {
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    /**
+     * Percorre a tabela inteira em ordem de id entregando cada registro ao
+     * consumidor, sem manter a lista em memoria. Retorna o numero de linhas.
+     */
+    public long exportar(RowConsumer<Produto> consumidor) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return exportarSemMedir(consumidor);
+        } finally {
+            TEMPO_EXPORTAR.registrarDesde(inicio);
+        }
+    }
+    
+    private long exportarSemMedir(RowConsumer<Produto> consumidor) throws Exception {
+        String sql = "SELECT id_produto, nome, descricao, preco, estoque, categoria, ativo, data_cadastro, versao " +
+                     "FROM TB_PRODUTO ORDER BY id_produto";
+        
+        try {
+            return ConsultaStreaming.executar(dbConnection, sql, MAPEADOR, consumidor);
+        } catch (SQLException e) {
+            throw new Exception("Erro ao exportar produtos: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * O UPDATE grava todas as colunas editaveis, entao o proprio objeto ja e o
+     * estado persistido; so a data de cadastro, quando nao veio preenchida, e
+     * lida na mesma conexao.
+     */
     @Override
     public Produto atualizar(Produto produto) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarSemMedir(produto);
+        } finally {
+            TEMPO_ATUALIZAR.registrarDesde(inicio);
+        }
+    }
+    
+    private Produto atualizarSemMedir(Produto produto) throws Exception {
         if (produto.getIdProduto() == null || produto.getIdProduto() <= 0) {
             throw new IllegalArgumentException("ID do produto é obrigatório para atualização.");
         }
-        
-        String sql = "UPDATE TB_PRODUTO SET nome = ?, descricao = ?, preco = ?, estoque = ?, " +
-                     "categoria = ?, ativo = ? WHERE id_produto = ?";
+        if (produto.getVersao() == null) {
+            throw new VersaoObrigatoriaException("Produto", produto.getIdProduto());
+        }
         
         Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql);
-            
-            pstmt.setString(1, produto.getNome());
-            pstmt.setString(2, produto.getDescricao());
-            pstmt.setDouble(3, produto.getPreco());
-            pstmt.setInt(4, produto.getEstoque() != null ? produto.getEstoque() : 0);
-            pstmt.setString(5, produto.getCategoria());
-            pstmt.setBoolean(6, produto.getAtivo() != null ? produto.getAtivo() : true);
-            pstmt.setInt(7, produto.getIdProduto());
+            pstmt = conn.prepareStatement(SQL_ATUALIZAR, Statement.RETURN_GENERATED_KEYS);
+            preencherAtualizacao(pstmt, produto);
+            boolean gravado = pstmt.executeUpdate() > 0;
             
-            int linhasAfetadas = pstmt.executeUpdate();
+            if (gravado) {
+                NotificadorAlteracoes.notificar(TABELA, produto.getIdProduto(), produto.getCategoria());
+                // LAST_INSERT_ID(versao + 1) devolve a nova versao sem outra consulta
+                rs = pstmt.getGeneratedKeys();
+                if (rs.next()) {
+                    produto.setVersao(rs.getInt(1));
+                }
+                if (produto.getDataCadastro() != null) {
+                    return produto;
+                }
+                rs.close();
+            }
             
-            if (linhasAfetadas > 0) {
-                return buscarPorId(produto.getIdProduto());
-            } else {
+            pstmt.close();
+            pstmt = conn.prepareStatement(SQL_DATA_CADASTRO_VERSAO);
+            pstmt.setInt(1, produto.getIdProduto());
+            rs = pstmt.executeQuery();
+            if (!rs.next()) {
                 throw new ProdutoNaoEncontradoException(produto.getIdProduto());
             }
+            if (!gravado) {
+                // A linha existe, entao foi a versao que nao bateu
+                throw new ConflitoVersaoException("Produto", produto.getIdProduto(), produto.getVersao(), rs.getInt(2));
+            }
+            if (rs.getTimestamp(1) != null) {
+                produto.setDataCadastro(rs.getTimestamp(1).toLocalDateTime());
+            }
+            return produto;
             
         } catch (SQLException e) {
             throw new Exception("Erro ao atualizar produto: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(null, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
+        }
+    }
+    
+    /**
+     * Grava so as colunas em que alterado difere de atual, desde que o registro
+     * ainda esteja na versao de atual. Sem diferencas, nada e gravado e atual e
+     * devolvido. alterado recebe o id, a data de cadastro e a nova versao.
+     */
+    public Produto atualizarParcial(Produto atual, Produto alterado) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarParcialSemMedir(atual, alterado);
+        } finally {
+            TEMPO_ATUALIZAR_PARCIAL.registrarDesde(inicio);
+        }
+    }
+    
+    private Produto atualizarParcialSemMedir(Produto atual, Produto alterado) throws Exception {
+        Integer id = atual.getIdProduto();
+        if (id == null || id <= 0 || atual.getVersao() == null) {
+            throw new IllegalArgumentException("ID e versão do produto são obrigatórios para atualização.");
+        }
+        alterado.setIdProduto(id);
+        alterado.setDataCadastro(atual.getDataCadastro());
+        
+        long mascara = ATUALIZACAO_PARCIAL.alteradas(atual, alterado);
+        if (mascara == 0) {
+            alterado.setVersao(atual.getVersao());
+            return alterado;
+        }
+        
+        Connection conn = null;
+        
+        try {
+            conn = dbConnection.getConnection();
+            Integer versao = ATUALIZACAO_PARCIAL.executar(conn, mascara, alterado, id, atual.getVersao());
+            if (versao == null) {
+                Integer versaoAtual = ATUALIZACAO_PARCIAL.versaoAtual(conn, id);
+                if (versaoAtual == null) {
+                    throw new ProdutoNaoEncontradoException(id);
+                }
+                throw new ConflitoVersaoException("Produto", id, atual.getVersao(), versaoAtual);
+            }
+            
+            NotificadorAlteracoes.notificar(TABELA, id, alterado.getCategoria());
+            alterado.setVersao(versao);
+            return alterado;
+            
+        } catch (SQLException e) {
+            throw new Exception("Erro ao atualizar produto: " + e.getMessage(), e);
+        } finally {
+            dbConnection.closeConnection(conn);
+        }
+    }
+    
+    /**
+     * Atualiza os registros com JDBC batch, em blocos transacionais.
+     * Retorna as linhas afetadas por registro (0 quando o id nao existe).
+     */
+    @Override
+    public int[] atualizarEmLote(List<Produto> produtos) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarEmLoteSemMedir(produtos);
+        } finally {
+            TEMPO_ATUALIZAR_EM_LOTE.registrarDesde(inicio);
+        }
+    }
+    
+    private int[] atualizarEmLoteSemMedir(List<Produto> produtos) throws Exception {
+        for (Produto produto : produtos) {
+            if (produto.getIdProduto() == null || produto.getIdProduto() <= 0) {
+                throw new IllegalArgumentException("Todos os registros do lote precisam de ID para atualização.");
+            }
+            if (produto.getVersao() == null) {
+                throw new IllegalArgumentException("Todos os registros do lote precisam da versão para atualização.");
+            }
+        }
+        try {
+            int[] linhas = ExecucaoEmLote.executar(dbConnection, SQL_ATUALIZAR, produtos, this::preencherAtualizacao, null);
+            for (int i = 0; i < linhas.length; i++) {
+                Produto produto = produtos.get(i);
+                if (linhas[i] > 0) {
+                    produto.setVersao(produto.getVersao() + 1);
+                }
+            }
+            return linhas;
+        } finally {
+            notificarLote(produtos);
         }
     }
     
     @Override
     public boolean deletar(Integer id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return deletarSemMedir(id);
+        } finally {
+            TEMPO_DELETAR.registrarDesde(inicio);
+        }
+    }
+    
+    private boolean deletarSemMedir(Integer id) throws Exception {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("ID do produto deve ser positivo.");
         }
@@ -178,24 +508,37 @@ public class ProdutoDAO implements IDAO<Produto> {
             pstmt.setInt(1, id);
             
             int linhasAfetadas = pstmt.executeUpdate();
+            if (linhasAfetadas > 0) {
+                NotificadorAlteracoes.notificar(TABELA, id);
+            }
             
             return linhasAfetadas > 0;
             
         } catch (SQLException e) {
             throw new Exception("Erro ao deletar produto: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(null, pstmt, null);
+            fecharRecursos(null, pstmt, conn);
         }
     }
     
     public List<Produto> buscarPorCategoria(String categoria) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return buscarPorCategoriaSemMedir(categoria);
+        } finally {
+            TEMPO_BUSCAR_POR_CATEGORIA.registrarDesde(inicio);
+        }
+    }
+    
+    private List<Produto> buscarPorCategoriaSemMedir(String categoria) throws Exception {
         if (categoria == null || categoria.trim().isEmpty()) {
             throw new IllegalArgumentException("Categoria não pode ser vazia.");
         }
         
-        String sql = "SELECT id_produto, nome, descricao, preco, estoque, categoria, ativo, data_cadastro " +
-                     "FROM TB_PRODUTO WHERE categoria = ? ORDER BY nome ASC";
-        
+        return CACHE_CATEGORIA.buscar(categoria.trim().toUpperCase());
+    }
+    
+    private List<Produto> consultarPorCategoria(String categoria) throws Exception {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
@@ -203,13 +546,14 @@ public class ProdutoDAO implements IDAO<Produto> {
         
         try {
             conn = dbConnection.getConnection();
-            pstmt = conn.prepareStatement(sql);
-            pstmt.setString(1, categoria.trim().toUpperCase());
+            pstmt = conn.prepareStatement(SQL_BUSCAR_POR_CATEGORIA);
+            pstmt.setString(1, categoria);
             
             rs = pstmt.executeQuery();
             
+            RowMapper<Produto> mapper = MAPEADOR.vincular(rs);
             while (rs.next()) {
-                produtos.add(criarProdutoDoResultSet(rs));
+                produtos.add(mapper.mapear(rs));
             }
             
             return produtos;
@@ -217,11 +561,20 @@ public class ProdutoDAO implements IDAO<Produto> {
         } catch (SQLException e) {
             throw new Exception("Erro ao buscar produtos por categoria: " + e.getMessage(), e);
         } finally {
-            fecharRecursos(rs, pstmt, null);
+            fecharRecursos(rs, pstmt, conn);
         }
     }
     
     public Produto atualizarEstoque(Integer idProduto, Integer quantidade) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return atualizarEstoqueSemMedir(idProduto, quantidade);
+        } finally {
+            TEMPO_ATUALIZAR_ESTOQUE.registrarDesde(inicio);
+        }
+    }
+    
+    private Produto atualizarEstoqueSemMedir(Integer idProduto, Integer quantidade) throws Exception {
         if (idProduto == null || idProduto <= 0) {
             throw new IllegalArgumentException("ID do produto deve ser positivo.");
         }
@@ -229,36 +582,299 @@ public class ProdutoDAO implements IDAO<Produto> {
             throw new IllegalArgumentException("Quantidade não pode ser negativa.");
         }
         
-        Produto produto = buscarPorId(idProduto);
-        produto.setEstoque(quantidade);
-        return atualizar(produto);
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        int linhasAfetadas;
+        
+        ReentrantLock lock = LOCKS_ESTOQUE.lockDe(idProduto);
+        lock.lock();
+        try {
+            conn = dbConnection.getConnection();
+            pstmt = conn.prepareStatement(SQL_DEFINIR_ESTOQUE);
+            pstmt.setInt(1, quantidade);
+            pstmt.setInt(2, idProduto);
+            
+            linhasAfetadas = pstmt.executeUpdate();
+            
+        } catch (SQLException e) {
+            throw new Exception("Erro ao atualizar estoque: " + e.getMessage(), e);
+        } finally {
+            fecharRecursos(null, pstmt, conn);
+            lock.unlock();
+        }
+        
+        if (linhasAfetadas > 0) {
+            NotificadorAlteracoes.notificar(TABELA, idProduto);
+            return buscarPorId(idProduto);
+        } else {
+            throw new ProdutoNaoEncontradoException(idProduto);
+        }
+    }
+    
+    /**
+     * Soma ao estoque com um unico UPDATE relativo e retorna o novo saldo.
+     * Mesma regra de Produto.adicionarEstoque: quantidade deve ser positiva.
+     */
+    public int adicionarEstoque(Integer idProduto, Integer quantidade) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return adicionarEstoqueSemMedir(idProduto, quantidade);
+        } finally {
+            TEMPO_ADICIONAR_ESTOQUE.registrarDesde(inicio);
+        }
     }
     
-    private Produto criarProdutoDoResultSet(ResultSet rs) throws SQLException {
+    private int adicionarEstoqueSemMedir(Integer idProduto, Integer quantidade) throws Exception {
+        validarMovimento(idProduto, quantidade);
+        
+        Integer saldo = movimentarEstoque(SQL_ADICIONAR_ESTOQUE, idProduto, quantidade, false);
+        if (saldo == null) {
+            throw new ProdutoNaoEncontradoException(idProduto);
+        }
+        return saldo;
+    }
+    
+    /**
+     * Baixa do estoque so se houver saldo suficiente, com um unico UPDATE
+     * condicional (estoque >= quantidade). Mesma regra de Produto.removerEstoque.
+     */
+    public int removerEstoque(Integer idProduto, Integer quantidade) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return removerEstoqueSemMedir(idProduto, quantidade);
+        } finally {
+            TEMPO_REMOVER_ESTOQUE.registrarDesde(inicio);
+        }
+    }
+    
+    private int removerEstoqueSemMedir(Integer idProduto, Integer quantidade) throws Exception {
+        validarMovimento(idProduto, quantidade);
+        
+        Integer saldo = movimentarEstoque(SQL_REMOVER_ESTOQUE, idProduto, quantidade, true);
+        if (saldo == null) {
+            // Nenhuma linha afetada: o produto nao existe ou o saldo nao basta
+            Integer disponivel = consultarEstoque(idProduto);
+            if (disponivel == null) {
+                throw new ProdutoNaoEncontradoException(idProduto);
+            }
+            throw new EstoqueInsuficienteException(idProduto, disponivel, quantidade);
+        }
+        return saldo;
+    }
+    
+    /**
+     * Baixa de uma cesta inteira (tudo ou nada) numa transacao: um UPDATE
+     * condicional por produto enviados num unico executeBatch. Se algum item
+     * nao tiver saldo, nada e alterado. Retorna o novo saldo de cada produto.
+     */
+    public Map<Integer, Integer> removerEstoque(Map<Integer, Integer> itens) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return removerEstoqueSemMedir(itens);
+        } finally {
+            TEMPO_REMOVER_ESTOQUE_ITENS.registrarDesde(inicio);
+        }
+    }
+    
+    private Map<Integer, Integer> removerEstoqueSemMedir(Map<Integer, Integer> itens) throws Exception {
+        if (itens == null || itens.isEmpty()) {
+            throw new IllegalArgumentException("A cesta deve ter ao menos um item.");
+        }
+        // Ordem crescente de id: mesma ordem de locks de linha em todas as cestas
+        Map<Integer, Integer> cesta = new TreeMap<>(itens);
+        int[] ids = new int[cesta.size()];
+        int n = 0;
+        for (Map.Entry<Integer, Integer> item : cesta.entrySet()) {
+            validarMovimento(item.getKey(), item.getValue());
+            ids[n++] = item.getKey();
+        }
+        
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        ReentrantLock[] locks = LOCKS_ESTOQUE.travar(ids);
+        try {
+            conn = dbConnection.getConnection();
+            conn.setAutoCommit(false);
+            
+            pstmt = conn.prepareStatement(SQL_REMOVER_ESTOQUE);
+            for (Map.Entry<Integer, Integer> item : cesta.entrySet()) {
+                pstmt.setInt(1, item.getValue());
+                pstmt.setInt(2, item.getKey());
+                pstmt.setInt(3, item.getValue());
+                pstmt.addBatch();
+            }
+            int[] linhas = pstmt.executeBatch();
+            pstmt.close();
+            
+            for (int i = 0; i < linhas.length; i++) {
+                if (linhas[i] == 0) {
+                    conn.rollback();
+                    int solicitado = cesta.get(ids[i]);
+                    Integer disponivel = consultarEstoque(conn, ids[i]);
+                    if (disponivel == null) {
+                        throw new ProdutoNaoEncontradoException(ids[i]);
+                    }
+                    throw new EstoqueInsuficienteException(ids[i], disponivel, solicitado);
+                }
+            }
+            
+            StringBuilder sql = new StringBuilder("SELECT id_produto, estoque FROM TB_PRODUTO WHERE id_produto IN (");
+            for (int i = 0; i < ids.length; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            pstmt = conn.prepareStatement(sql.append(")").toString());
+            for (int i = 0; i < ids.length; i++) {
+                pstmt.setInt(i + 1, ids[i]);
+            }
+            rs = pstmt.executeQuery();
+            Map<Integer, Integer> saldos = new TreeMap<>();
+            while (rs.next()) {
+                saldos.put(rs.getInt("id_produto"), rs.getInt("estoque"));
+            }
+            
+            conn.commit();
+            for (int id : ids) {
+                NotificadorAlteracoes.notificar(TABELA, id);
+            }
+            return saldos;
+            
+        } catch (SQLException e) {
+            throw new Exception("Erro ao baixar estoque da cesta: " + e.getMessage(), e);
+        } finally {
+            // Sem commit, o pool desfaz a transacao ao receber a conexao de volta
+            fecharRecursos(rs, pstmt, conn);
+            StripedLocks.liberar(locks);
+        }
+    }
+    
+    private Integer movimentarEstoque(String sql, int idProduto, int quantidade, boolean condicional) throws Exception {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        // Enfileira no stripe antes de pegar conexao: num produto muito
+        // disputado as threads esperam aqui, nao no lock de linha do banco
+        ReentrantLock lock = LOCKS_ESTOQUE.lockDe(idProduto);
+        lock.lock();
+        try {
+            conn = dbConnection.getConnection();
+            pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            pstmt.setInt(1, quantidade);
+            pstmt.setInt(2, idProduto);
+            if (condicional) {
+                pstmt.setInt(3, quantidade);
+            }
+            
+            if (pstmt.executeUpdate() == 0) {
+                return null;
+            }
+            NotificadorAlteracoes.notificar(TABELA, idProduto);
+            
+            // LAST_INSERT_ID(expr) devolve o novo saldo no proprio pacote de
+            // resposta do UPDATE; o driver nao gera chave quando o valor e 0
+            rs = pstmt.getGeneratedKeys();
+            return rs.next() ? rs.getInt(1) : 0;
+            
+        } catch (SQLException e) {
+            throw new Exception("Erro ao movimentar estoque: " + e.getMessage(), e);
+        } finally {
+            fecharRecursos(rs, pstmt, conn);
+            lock.unlock();
+        }
+    }
+    
+    private Integer consultarEstoque(Integer idProduto) throws Exception {
+        Connection conn = null;
+        try {
+            conn = dbConnection.getConnection();
+            return consultarEstoque(conn, idProduto);
+        } catch (SQLException e) {
+            throw new Exception("Erro ao consultar estoque: " + e.getMessage(), e);
+        } finally {
+            dbConnection.closeConnection(conn);
+        }
+    }
+    
+    private Integer consultarEstoque(Connection conn, int idProduto) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT estoque FROM TB_PRODUTO WHERE id_produto = ?")) {
+            pstmt.setInt(1, idProduto);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+    
+    private void validarMovimento(Integer idProduto, Integer quantidade) {
+        if (idProduto == null || idProduto <= 0) {
+            throw new IllegalArgumentException("ID do produto deve ser positivo.");
+        }
+        if (quantidade == null || quantidade <= 0) {
+            throw new IllegalArgumentException("Quantidade deve ser positiva.");
+        }
+    }
+    
+    private static Produto montarProduto(ResultSet rs, int[] c) throws SQLException {
         Produto produto = new Produto();
-        produto.setIdProduto(rs.getInt("id_produto"));
-        produto.setNome(rs.getString("nome"));
-        produto.setDescricao(rs.getString("descricao"));
-        produto.setPreco(rs.getDouble("preco"));
-        produto.setEstoque(rs.getInt("estoque"));
-        produto.setCategoria(rs.getString("categoria"));
-        produto.setAtivo(rs.getBoolean("ativo"));
+        produto.setIdProduto(rs.getInt(c[0]));
+        produto.setNome(rs.getString(c[1]));
+        produto.setDescricao(rs.getString(c[2]));
+        produto.setPreco(rs.getDouble(c[3]));
+        produto.setEstoque(rs.getInt(c[4]));
+        produto.setCategoria(rs.getString(c[5]));
+        produto.setAtivo(rs.getBoolean(c[6]));
         
-        Timestamp timestamp = rs.getTimestamp("data_cadastro");
+        Timestamp timestamp = rs.getTimestamp(c[7]);
         if (timestamp != null) {
             produto.setDataCadastro(timestamp.toLocalDateTime());
         }
         
+        produto.setVersao(rs.getInt(c[8]));
+        
         return produto;
     }
     
-    private void fecharRecursos(ResultSet rs, PreparedStatement pstmt, Statement stmt) {
+    private void preencherInsercao(PreparedStatement pstmt, Produto produto) throws SQLException {
+        pstmt.setString(1, produto.getNome());
+        pstmt.setString(2, produto.getDescricao());
+        pstmt.setDouble(3, produto.getPreco());
+        pstmt.setInt(4, produto.getEstoque() != null ? produto.getEstoque() : 0);
+        pstmt.setString(5, produto.getCategoria());
+        pstmt.setBoolean(6, produto.getAtivo() != null ? produto.getAtivo() : true);
+        pstmt.setTimestamp(7, Timestamp.valueOf(
+            produto.getDataCadastro() != null ? produto.getDataCadastro() : LocalDateTime.now()
+        ));
+    }
+    
+    private void preencherAtualizacao(PreparedStatement pstmt, Produto produto) throws SQLException {
+        pstmt.setString(1, produto.getNome());
+        pstmt.setString(2, produto.getDescricao());
+        pstmt.setDouble(3, produto.getPreco());
+        pstmt.setInt(4, produto.getEstoque() != null ? produto.getEstoque() : 0);
+        pstmt.setString(5, produto.getCategoria());
+        pstmt.setBoolean(6, produto.getAtivo() != null ? produto.getAtivo() : true);
+        pstmt.setInt(7, produto.getIdProduto());
+        pstmt.setObject(8, produto.getVersao(), Types.INTEGER);
+    }
+    
+    // Um bloco pode ter sido gravado mesmo quando o lote falha depois
+    private void notificarLote(List<Produto> produtos) {
+        for (Produto produto : produtos) {
+            if (produto.getIdProduto() != null) {
+                NotificadorAlteracoes.notificar(TABELA, produto.getIdProduto(), produto.getCategoria());
+            }
+        }
+    }
+    
+    private void fecharRecursos(ResultSet rs, PreparedStatement pstmt, Connection conn) {
         try {
             if (rs != null) rs.close();
             if (pstmt != null) pstmt.close();
-            if (stmt != null) stmt.close();
         } catch (SQLException e) {
             System.err.println("Erro ao fechar recursos: " + e.getMessage());
+        } finally {
+            dbConnection.closeConnection(conn);
         }
     }
 }
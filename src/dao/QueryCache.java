@@ -0,0 +1,328 @@
+package dao;
+
+import util.ConfigUtil;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Cache de resultados de consultas por parametro (ex.: produtos de uma
+ * categoria). Cada entrada guarda os ids do resultado; uma alteracao no
+ * registro X derruba so as entradas que contem X e a entrada da particao
+ * para onde o registro foi (nova categoria, novo cargo). Um indice por id
+ * aponta as entradas que contem cada registro, entao a invalidacao nao
+ * percorre o cache inteiro.
+ * O contador de versao da tabela evita guardar um resultado lido enquanto
+ * outra thread alterava a tabela. Chaves populares sao recarregadas em
+ * segundo plano antes de expirar e logo depois de invalidadas.
+ */
+public class QueryCache<T> {
+    
+    @FunctionalInterface
+    public interface Carregador<T> {
+        List<T> executar(String parametro) throws Exception;
+    }
+    
+    private static final Map<String, QueryCache<?>> CACHES = new ConcurrentSkipListMap<>();
+    
+    // Uma thread de recarga compartilhada; se a fila encher, a recarga e descartada
+    private static final ThreadPoolExecutor RECARGA = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(64), r -> {
+            Thread t = new Thread(r, "query-cache-recarga");
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    
+    private final String nome;
+    private final String tabela;
+    private final Carregador<T> carregador;
+    private final Function<T, Integer> idDe;
+    private final int tamanhoMaximo;
+    private final long ttlNanos;
+    private final long recargaAntecipadaNanos;
+    private final int acessosPopular;
+    private final Map<String, Entrada<T>> entradas = new ConcurrentHashMap<>();
+    // id -> entradas cujo resultado contem o id; e as entradas ainda carregando, que toda alteracao derruba
+    private final Map<Integer, Set<Entrada<T>>> porId = new ConcurrentHashMap<>();
+    private final Set<Entrada<T>> carregando = ConcurrentHashMap.newKeySet();
+    
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder faltas = new LongAdder();
+    private final LongAdder esperasCompartilhadas = new LongAdder();
+    private final LongAdder recargasAntecipadas = new LongAdder();
+    private final LongAdder invalidacoes = new LongAdder();
+    private final LongAdder descartesPorVersao = new LongAdder();
+    private final LongAdder evicoes = new LongAdder();
+    
+    private static final class Entrada<T> {
+        final String parametro;
+        final CompletableFuture<List<T>> valor = new CompletableFuture<>();
+        final AtomicInteger acessos = new AtomicInteger();
+        final AtomicBoolean recarregando = new AtomicBoolean();
+        volatile Set<Integer> ids = Collections.emptySet();
+        volatile long carregadoEm;
+        volatile boolean removida;
+        
+        Entrada(String parametro) {
+            this.parametro = parametro;
+        }
+    }
+    
+    public QueryCache(String nome, String tabela, Function<T, Integer> idDe, Carregador<T> carregador) {
+        this(nome, tabela, idDe, carregador,
+            ConfigUtil.getInt("cache.consultas.maxSize", 256),
+            ConfigUtil.getLong("cache.consultas.ttlMs", 60000),
+            ConfigUtil.getInt("cache.consultas.minAcessos", 3));
+    }
+    
+    public QueryCache(String nome, String tabela, Function<T, Integer> idDe, Carregador<T> carregador,
+                      int tamanhoMaximo, long ttlMs, int acessosPopular) {
+        this.nome = nome;
+        this.tabela = tabela;
+        this.idDe = idDe;
+        this.carregador = carregador;
+        this.tamanhoMaximo = tamanhoMaximo;
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.recargaAntecipadaNanos = ttlNanos * 8 / 10;
+        this.acessosPopular = acessosPopular;
+        CACHES.put(nome, this);
+        NotificadorAlteracoes.registrar(tabela, (t, id, particao) -> invalidar(id, particao));
+    }
+    
+    /**
+     * O parametro ja deve vir normalizado (mesma forma usada na consulta).
+     * A lista devolvida e compartilhada e nao pode ser alterada.
+     */
+    public List<T> buscar(String parametro) throws Exception {
+        while (true) {
+            Entrada<T> entrada = entradas.get(parametro);
+            if (entrada != null) {
+                if (!entrada.valor.isDone()) {
+                    esperasCompartilhadas.increment();
+                    return aguardar(entrada);
+                }
+                long idade = System.nanoTime() - entrada.carregadoEm;
+                if (idade < ttlNanos) {
+                    acertos.increment();
+                    int acessos = entrada.acessos.incrementAndGet();
+                    if (idade >= recargaAntecipadaNanos && acessos >= acessosPopular) {
+                        agendarRecarga(entrada.parametro);
+                    }
+                    return aguardar(entrada);
+                }
+                remover(entrada);
+                continue;
+            }
+            
+            Entrada<T> nova = new Entrada<>(parametro);
+            if (entradas.putIfAbsent(parametro, nova) != null) {
+                continue;
+            }
+            faltas.increment();
+            carregar(nova);
+            removerExcedentes();
+            return aguardar(nova);
+        }
+    }
+    
+    public String toJson() {
+        return "{" +
+            "\"tamanho\":" + entradas.size() + "," +
+            "\"tamanhoMaximo\":" + tamanhoMaximo + "," +
+            "\"ttlMs\":" + ttlNanos / 1_000_000L + "," +
+            "\"acertos\":" + acertos.sum() + "," +
+            "\"faltas\":" + faltas.sum() + "," +
+            "\"esperasCompartilhadas\":" + esperasCompartilhadas.sum() + "," +
+            "\"recargasAntecipadas\":" + recargasAntecipadas.sum() + "," +
+            "\"invalidacoes\":" + invalidacoes.sum() + "," +
+            "\"descartesPorVersao\":" + descartesPorVersao.sum() + "," +
+            "\"evicoes\":" + evicoes.sum() +
+            "}";
+    }
+    
+    public static String toJsonTodos() {
+        StringBuilder json = new StringBuilder("{");
+        boolean primeiro = true;
+        for (QueryCache<?> cache : CACHES.values()) {
+            if (!primeiro) json.append(",");
+            primeiro = false;
+            json.append("\"").append(cache.nome).append("\":").append(cache.toJson());
+        }
+        json.append("}");
+        return json.toString();
+    }
+    
+    private void carregar(Entrada<T> entrada) {
+        long versao = NotificadorAlteracoes.versao(tabela);
+        carregando.add(entrada);
+        try {
+            List<T> resultado = Collections.unmodifiableList(carregador.executar(entrada.parametro));
+            Set<Integer> ids = new HashSet<>();
+            for (T item : resultado) {
+                ids.add(idDe.apply(item));
+            }
+            entrada.ids = ids;
+            indexar(entrada);
+            entrada.carregadoEm = System.nanoTime();
+            entrada.valor.complete(resultado);
+            
+            // A tabela mudou durante a leitura: entrega o resultado mas nao guarda
+            if (NotificadorAlteracoes.versao(tabela) != versao) {
+                descartesPorVersao.increment();
+                remover(entrada);
+            }
+        } catch (Exception | Error e) {
+            remover(entrada);
+            entrada.valor.completeExceptionally(e);
+        } finally {
+            carregando.remove(entrada);
+        }
+    }
+    
+    private void indexar(Entrada<T> entrada) {
+        for (Integer id : entrada.ids) {
+            porId.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(entrada);
+        }
+        // Removida enquanto indexava: desfaz, para o indice nao segurar a entrada
+        if (entrada.removida) {
+            desindexar(entrada);
+        }
+    }
+    
+    private void desindexar(Entrada<T> entrada) {
+        for (Integer id : entrada.ids) {
+            porId.computeIfPresent(id, (k, conjunto) -> {
+                conjunto.remove(entrada);
+                return conjunto.isEmpty() ? null : conjunto;
+            });
+        }
+    }
+    
+    // Tira a entrada do cache e do indice; false se ela ja nao estava no cache. A marca vem
+    // antes do remove: quem poe a entrada no cache depois confere a marca e desiste dela
+    private boolean remover(Entrada<T> entrada) {
+        entrada.removida = true;
+        boolean estava = entradas.remove(entrada.parametro, entrada);
+        desindexar(entrada);
+        return estava;
+    }
+    
+    private void agendarRecarga(String parametro) {
+        Entrada<T> atual = entradas.get(parametro);
+        if (atual == null || !atual.recarregando.compareAndSet(false, true)) {
+            return;
+        }
+        RECARGA.execute(() -> {
+            Entrada<T> nova = new Entrada<>(parametro);
+            nova.acessos.set(atual.acessos.get());
+            carregar(nova);
+            if (!nova.valor.isCompletedExceptionally()) {
+                // So substitui se ninguem invalidou a entrada antiga nesse meio tempo
+                if (entradas.replace(parametro, atual, nova)) {
+                    remover(atual);
+                    if (nova.removida) {
+                        // Invalidada antes de entrar no cache
+                        remover(nova);
+                    } else {
+                        recargasAntecipadas.increment();
+                    }
+                } else {
+                    remover(nova);
+                }
+            }
+            atual.recarregando.set(false);
+        });
+    }
+    
+    private void invalidar(Integer id, String particao) {
+        // Primeiro quem ja estava carregando, cujo resultado pode nao ter visto a alteracao;
+        // as recargas que esta invalidacao agenda comecam depois e ficam de fora
+        for (Entrada<T> entrada : carregando) {
+            invalidar(entrada);
+        }
+        if (id == null) {
+            for (Entrada<T> entrada : entradas.values()) {
+                invalidar(entrada);
+            }
+            return;
+        }
+        Set<Entrada<T>> comId = porId.get(id);
+        if (comId != null) {
+            for (Entrada<T> entrada : comId) {
+                invalidar(entrada);
+            }
+        }
+        if (particao != null) {
+            Entrada<T> daParticao = entradas.get(particao);
+            if (daParticao != null) {
+                invalidar(daParticao);
+            }
+        }
+    }
+    
+    private void invalidar(Entrada<T> entrada) {
+        // Uma recarga em segundo plano ainda fora do cache so fica marcada e nao entra mais
+        if (remover(entrada)) {
+            invalidacoes.increment();
+            // Chave popular: recarrega ja, para o proximo acesso nao pegar o cache frio
+            if (entrada.acessos.get() >= acessosPopular && entrada.valor.isDone()) {
+                recarregarInvalidada(entrada);
+            }
+        }
+    }
+    
+    private void recarregarInvalidada(Entrada<T> antiga) {
+        RECARGA.execute(() -> {
+            Entrada<T> nova = new Entrada<>(antiga.parametro);
+            nova.acessos.set(antiga.acessos.get());
+            if (entradas.putIfAbsent(antiga.parametro, nova) == null) {
+                carregar(nova);
+                if (!nova.valor.isCompletedExceptionally()) {
+                    recargasAntecipadas.increment();
+                }
+            }
+        });
+    }
+    
+    private void removerExcedentes() {
+        while (entradas.size() > tamanhoMaximo) {
+            // Remove a entrada menos acessada entre as existentes
+            Entrada<T> menosUsada = null;
+            for (Entrada<T> entrada : entradas.values()) {
+                if (menosUsada == null || entrada.acessos.get() < menosUsada.acessos.get()) {
+                    menosUsada = entrada;
+                }
+            }
+            if (menosUsada == null || !remover(menosUsada)) {
+                return;
+            }
+            evicoes.increment();
+        }
+    }
+    
+    private List<T> aguardar(Entrada<T> entrada) throws Exception {
+        try {
+            return entrada.valor.get();
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof Exception) {
+                throw (Exception) causa;
+            }
+            throw (Error) causa;
+        }
+    }
+}
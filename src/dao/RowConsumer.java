@@ -0,0 +1,9 @@
+package dao;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface RowConsumer<T> {
+    
+    void aceitar(T item) throws IOException;
+}
@@ -0,0 +1,10 @@
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface RowMapper<T> {
+    
+    T mapear(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,64 @@
+package dao;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Conjunto fixo de locks indexado pelo id do registro. Threads que mexem no
+ * mesmo registro se enfileiram aqui, antes de pegar uma conexao do pool, em
+ * vez de ficarem segurando conexoes esperando o lock de linha do InnoDB.
+ */
+final class StripedLocks {
+    
+    private final ReentrantLock[] locks;
+    private final int mascara;
+    
+    StripedLocks(int quantidade) {
+        int tamanho = Integer.highestOneBit(Math.max(1, quantidade - 1)) << 1;
+        this.locks = new ReentrantLock[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mascara = tamanho - 1;
+    }
+    
+    ReentrantLock lockDe(int id) {
+        return locks[indice(id)];
+    }
+    
+    /**
+     * Trava os stripes de varios ids sempre em ordem crescente de indice,
+     * para que duas cestas com os mesmos produtos nao entrem em deadlock.
+     * Retorna os locks adquiridos, a serem liberados com {@link #liberar}.
+     */
+    ReentrantLock[] travar(int[] ids) {
+        int[] indices = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            indices[i] = indice(ids[i]);
+        }
+        Arrays.sort(indices);
+        
+        ReentrantLock[] adquiridos = new ReentrantLock[indices.length];
+        int n = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (i > 0 && indices[i] == indices[i - 1]) {
+                continue;
+            }
+            ReentrantLock lock = locks[indices[i]];
+            lock.lock();
+            adquiridos[n++] = lock;
+        }
+        return Arrays.copyOf(adquiridos, n);
+    }
+    
+    static void liberar(ReentrantLock[] adquiridos) {
+        for (int i = adquiridos.length - 1; i >= 0; i--) {
+            adquiridos[i].unlock();
+        }
+    }
+    
+    private int indice(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mascara;
+    }
+}
@@ -0,0 +1,91 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Confere com EXPLAIN que as consultas de acesso por chave dos DAOs usam
+ * indice. Um plano com type=ALL (varredura da tabela) ou type=index
+ * (varredura do indice inteiro) sem nenhum indice candidato (possible_keys)
+ * e um problema: falta uma migracao de indice. Com candidato, e o otimizador
+ * preferindo a varredura, o que e normal em tabela pequena ou vazia, e vira
+ * so um aviso.
+ */
+public final class VerificacaoPlanos {
+
+    private static final class Caso {
+        final String nome;
+        final String sql;
+        final Object parametro;
+
+        Caso(String nome, String sql, Object parametro) {
+            this.nome = nome;
+            this.sql = sql;
+            this.parametro = parametro;
+        }
+    }
+
+    private static final List<Caso> CASOS = List.of(
+        new Caso("ClienteDAO.buscarPorId", ClienteDAO.SQL_BUSCAR_POR_ID, 1),
+        new Caso("PetDAO.buscarPorId", PetDAO.SQL_BUSCAR_POR_ID, 1),
+        new Caso("PetDAO.buscarPorCliente", PetDAO.SQL_BUSCAR_POR_CLIENTE, 1),
+        new Caso("ProdutoDAO.buscarPorId", ProdutoDAO.SQL_BUSCAR_POR_ID, 1),
+        new Caso("ProdutoDAO.buscarPorCategoria", ProdutoDAO.SQL_BUSCAR_POR_CATEGORIA, "RACAO"),
+        new Caso("FuncionarioDAO.buscarPorId", FuncionarioDAO.SQL_BUSCAR_POR_ID, 1),
+        new Caso("FuncionarioDAO.buscarPorCargo", FuncionarioDAO.SQL_BUSCAR_POR_CARGO, "VETERINARIO")
+    );
+
+    /** Resultado da verificacao: consultas sem indice e varreduras escolhidas pelo otimizador. */
+    public static final class Resultado {
+        private final List<String> problemas = new ArrayList<>();
+        private final List<String> avisos = new ArrayList<>();
+
+        public List<String> getProblemas() {
+            return problemas;
+        }
+
+        public List<String> getAvisos() {
+            return avisos;
+        }
+    }
+
+    private VerificacaoPlanos() {
+    }
+
+    /**
+     * Roda EXPLAIN em cada consulta conhecida. Sem problemas nem avisos,
+     * todas usam indice.
+     */
+    public static Resultado verificar(Connection conn) throws SQLException {
+        Resultado resultado = new Resultado();
+        for (Caso caso : CASOS) {
+            try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN " + caso.sql)) {
+                pstmt.setObject(1, caso.parametro);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        String tipo = rs.getString("type");
+                        if ("ALL".equalsIgnoreCase(tipo) || "index".equalsIgnoreCase(tipo)) {
+                            String candidatos = rs.getString("possible_keys");
+                            String descricao = caso.nome + ": varredura completa em " + rs.getString("table")
+                                + " (type=" + tipo + ", possible_keys=" + candidatos + ", key=" + rs.getString("key") + ")";
+                            if (candidatos == null) {
+                                resultado.problemas.add(descricao);
+                            } else {
+                                resultado.avisos.add(descricao);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return resultado;
+    }
+
+    public static int getTotalConsultas() {
+        return CASOS.size();
+    }
+}
@@ -0,0 +1,504 @@
+package db;
+
+import util.Histogram;
+import util.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool de conexoes JDBC com tamanho limitado.
+ * As conexoes entregues sao proxies: chamar close() devolve a conexao fisica
+ * ao pool em vez de encerrar o socket com o MySQL. Cada conexao fisica pode
+ * ter um cache de PreparedStatements (ver {@link StatementCache}). Os
+ * statements criados pelo proxy devolvem o proprio proxy em getConnection(),
+ * entao fechar a conexao de um statement tambem so a devolve ao pool.
+ *
+ * Uma conexao emprestada ha mais de leakThresholdMs e reportada como possivel
+ * vazamento. A pilha de quem pegou a conexao so e capturada com
+ * leakStackTrace ligado, porque custa um Throwable a cada emprestimo.
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private final long leakThresholdNanos;
+    private final boolean leakStackTrace;
+    private final long validationIntervalNanos;
+    private final int statementCacheSize;
+    private final AtomicInteger nextConnectionId = new AtomicInteger();
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> inUse = ConcurrentHashMap.newKeySet();
+    private int total;
+    private int waiters;
+    private volatile boolean closed;
+
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder timeouts = Metrics.contador("petshop_jdbc_acquire_timeouts_total",
+        "Pedidos de conexao que esgotaram o tempo de espera do pool");
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final Histogram acquire = Metrics.histograma("petshop_jdbc_acquire_seconds",
+        "Tempo para obter uma conexao do pool, incluindo espera, validacao e abertura", Histogram.latencia());
+
+    private final ScheduledExecutorService housekeeper;
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long acquireTimeoutMs, long idleTimeoutMs, long leakThresholdMs, boolean leakStackTrace,
+                          long validationIntervalMs, long housekeepingIntervalMs, int statementCacheSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Tamanho maximo do pool deve ser positivo.");
+        }
+        if (minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Tamanho minimo do pool deve estar entre 0 e o maximo.");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos(leakThresholdMs);
+        this.leakStackTrace = leakStackTrace && leakThresholdMs > 0;
+        this.validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(validationIntervalMs);
+        this.statementCacheSize = Math.max(statementCacheSize, 0);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-manutencao");
+            t.setDaemon(true);
+            return t;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeeping, 0,
+            housekeepingIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + acquireTimeoutNanos;
+
+        while (true) {
+            PooledConnection pc = reserve(deadline);
+            if (pc == null) {
+                pc = openPhysical();
+            } else if (!validate(pc)) {
+                discard(pc);
+                continue;
+            }
+
+            long waited = System.nanoTime() - start;
+            totalWaitNanos.add(waited);
+            acquire.registrar(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            borrowed.increment();
+
+            pc.borrowedAt = System.nanoTime();
+            pc.borrowStack = leakStackTrace
+                ? new Throwable("Conexao emprestada pela thread " + Thread.currentThread().getName())
+                : null;
+            pc.leakReported = false;
+            inUse.add(pc);
+            return pc.lend();
+        }
+    }
+
+    /**
+     * Retorna uma conexao ociosa ou null quando o chamador ganhou uma vaga
+     * para abrir uma conexao fisica nova.
+     */
+    private PooledConnection reserve(long deadline) throws SQLException {
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) {
+                    throw new SQLException("Pool de conexoes encerrado.");
+                }
+                PooledConnection pc = idle.pollFirst();
+                if (pc != null) {
+                    return pc;
+                }
+                if (total < maxSize) {
+                    total++;
+                    return null;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    timeouts.increment();
+                    throw new SQLTimeoutException(String.format(
+                        "Tempo esgotado aguardando conexao do pool (%d ativas, maximo %d, %d aguardando).",
+                        inUse.size(), maxSize, waiters));
+                }
+                waiters++;
+                try {
+                    available.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrompido aguardando conexao do pool.", e);
+                } finally {
+                    waiters--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PooledConnection openPhysical() throws SQLException {
+        try {
+            Properties props = new Properties();
+            props.setProperty("user", user);
+            props.setProperty("password", password);
+            // Sem prepare no servidor o cache so economizaria objetos Java; a URL pode sobrescrever
+            if (statementCacheSize > 0 && !url.contains("useServerPrepStmts")) {
+                props.setProperty("useServerPrepStmts", "true");
+            }
+            Connection physical = DriverManager.getConnection(url, props);
+            created.increment();
+            return new PooledConnection(physical, nextConnectionId.incrementAndGet());
+        } catch (SQLException | RuntimeException e) {
+            lock.lock();
+            try {
+                total--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private boolean validate(PooledConnection pc) {
+        if (pc.broken) {
+            return false;
+        }
+        if (System.nanoTime() - pc.lastUsed < validationIntervalNanos) {
+            return true;
+        }
+        try {
+            return pc.physical.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        inUse.remove(pc);
+        if (pc.statements != null) {
+            pc.statements.reclaim();
+        }
+        if (pc.broken || closed || !resetState(pc)) {
+            discard(pc);
+            return;
+        }
+        pc.lastUsed = System.nanoTime();
+        pc.borrowStack = null;
+        lock.lock();
+        try {
+            idle.addFirst(pc);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean resetState(PooledConnection pc) {
+        try {
+            if (pc.physical.isClosed()) {
+                return false;
+            }
+            if (!pc.physical.getAutoCommit()) {
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+            if (pc.physical.isReadOnly()) {
+                pc.physical.setReadOnly(false);
+            }
+            pc.physical.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Erro ao restaurar conexao do pool: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pc) {
+        inUse.remove(pc);
+        closeQuietly(pc.physical);
+        discarded.increment();
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void housekeeping() {
+        try {
+            evictIdle();
+            fillToMinimum();
+            detectLeaks();
+        } catch (RuntimeException e) {
+            System.err.println("Erro na manutencao do pool de conexoes: " + e.getMessage());
+        }
+    }
+
+    private void evictIdle() {
+        if (idleTimeoutNanos <= 0) {
+            return;
+        }
+        List<PooledConnection> expired = new ArrayList<>();
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            // As conexoes menos usadas ficam no fim da fila
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && total - expired.size() > minSize) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastUsed > idleTimeoutNanos) {
+                    it.remove();
+                    expired.add(pc);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pc : expired) {
+            discard(pc);
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!closed) {
+            lock.lock();
+            try {
+                if (total >= minSize) {
+                    return;
+                }
+                total++;
+            } finally {
+                lock.unlock();
+            }
+            PooledConnection pc;
+            try {
+                pc = openPhysical();
+            } catch (SQLException e) {
+                System.err.println("Erro ao abrir conexao minima do pool: " + e.getMessage());
+                return;
+            }
+            pc.lastUsed = System.nanoTime();
+            lock.lock();
+            try {
+                idle.addLast(pc);
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void detectLeaks() {
+        if (leakThresholdNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (PooledConnection pc : inUse) {
+            if (!pc.leakReported && now - pc.borrowedAt > leakThresholdNanos) {
+                pc.leakReported = true;
+                leaks.increment();
+                System.err.println("Possivel vazamento de conexao: emprestada ha "
+                    + TimeUnit.NANOSECONDS.toMillis(now - pc.borrowedAt) + " ms sem devolucao.");
+                Throwable stack = pc.borrowStack;
+                if (stack != null) {
+                    stack.printStackTrace();
+                } else {
+                    System.err.println("Ligue db.pool.leakStackTrace para ver onde a conexao foi emprestada.");
+                }
+            }
+        }
+    }
+
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            long count = borrowed.sum();
+            long waitNanos = totalWaitNanos.sum();
+            List<StatementCacheStats> statementStats = new ArrayList<>();
+            if (statementCacheSize > 0) {
+                for (PooledConnection pc : idle) {
+                    statementStats.add(pc.statements.getStats());
+                }
+                for (PooledConnection pc : inUse) {
+                    statementStats.add(pc.statements.getStats());
+                }
+                statementStats.sort((a, b) -> Integer.compare(a.getConnectionId(), b.getConnectionId()));
+            }
+            return new PoolStats(
+                inUse.size(), idle.size(), total, waiters, minSize, maxSize,
+                count, created.sum(), discarded.sum(), timeouts.sum(), leaks.sum(),
+                TimeUnit.NANOSECONDS.toMillis(waitNanos),
+                count > 0 ? TimeUnit.NANOSECONDS.toMicros(waitNanos / count) / 1000.0 : 0.0,
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()),
+                statementStats);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pc : toClose) {
+            discard(pc);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Erro ao fechar conexao fisica: " + e.getMessage());
+        }
+    }
+
+    private static Statement comConexao(Statement statement, Connection conexao) {
+        Class<?> tipo = statement instanceof CallableStatement ? CallableStatement.class
+            : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { tipo },
+            (proxy, method, args) -> {
+                if (method.getName().equals("getConnection")) {
+                    return conexao;
+                }
+                try {
+                    return method.invoke(statement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+
+    private final class PooledConnection {
+        final Connection physical;
+        final StatementCache statements;
+        volatile long lastUsed = System.nanoTime();
+        volatile long borrowedAt;
+        volatile Throwable borrowStack;
+        volatile boolean leakReported;
+        volatile boolean broken;
+
+        PooledConnection(Connection physical, int id) {
+            this.physical = physical;
+            this.statements = statementCacheSize > 0 ? new StatementCache(id, statementCacheSize) : null;
+        }
+
+        Connection lend() {
+            return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new LentConnection(this));
+        }
+    }
+
+    private final class LentConnection implements InvocationHandler {
+        private final PooledConnection pc;
+        // A conexao pode ser fechada em duas threads ao mesmo tempo: so uma devolve ao pool
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        LentConnection(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConexaoDoPool[" + pc.physical + "]";
+                default:
+                    break;
+            }
+            if (returned.get()) {
+                throw new SQLException("Conexao ja devolvida ao pool.");
+            }
+            try {
+                Object resultado;
+                if (pc.statements != null && method.getName().equals("prepareStatement")) {
+                    resultado = pc.statements.prepare((Connection) proxy, pc.physical, method, args);
+                } else {
+                    resultado = method.invoke(pc.physical, args);
+                }
+                // Os statements do cache ja devolvem o proxy; os do driver ganham um que devolve
+                if (resultado instanceof Statement && ((Statement) resultado).getConnection() != proxy) {
+                    return comConexao((Statement) resultado, (Connection) proxy);
+                }
+                return resultado;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    // SQLState classe 08: falha de comunicacao, a conexao nao e reaproveitavel
+                    if (state != null && state.startsWith("08")) {
+                        pc.broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+}
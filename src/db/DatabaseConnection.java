@@ -1,14 +1,27 @@
 package db;
 
+import util.ConfigUtil;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class DatabaseConnection {
     private static DatabaseConnection instance;
-    private static final String URL = "jdbc:mysql://localhost:3306/db_petshop";
-    private static final String USER = "root";
-    private static final String PASSWORD = "";
+    private static final String URL = ConfigUtil.getString("db.url", "jdbc:mysql://localhost:3306/db_petshop");
+    private static final String USER = ConfigUtil.getString("db.user", "root");
+    private static final String PASSWORD = ConfigUtil.getString("db.password", "");
+    
+    private static final int POOL_MIN = ConfigUtil.getInt("db.pool.min", 2);
+    private static final int POOL_MAX = ConfigUtil.getInt("db.pool.max", 10);
+    private static final long POOL_ACQUIRE_TIMEOUT_MS = ConfigUtil.getLong("db.pool.acquireTimeoutMs", 5000);
+    private static final long POOL_IDLE_TIMEOUT_MS = ConfigUtil.getLong("db.pool.idleTimeoutMs", 300000);
+    private static final long POOL_LEAK_THRESHOLD_MS = ConfigUtil.getLong("db.pool.leakThresholdMs", 30000);
+    private static final boolean POOL_LEAK_STACK_TRACE = ConfigUtil.getBoolean("db.pool.leakStackTrace", false);
+    private static final long POOL_VALIDATION_INTERVAL_MS = ConfigUtil.getLong("db.pool.validationIntervalMs", 5000);
+    private static final long POOL_HOUSEKEEPING_MS = ConfigUtil.getLong("db.pool.housekeepingMs", 5000);
+    private static final int POOL_STATEMENT_CACHE_SIZE = ConfigUtil.getInt("db.pool.statementCacheSize", 64);
+    
+    private final ConnectionPool pool;
     
     private DatabaseConnection() {
         try {
@@ -16,6 +29,9 @@ public class DatabaseConnection {
         } catch (ClassNotFoundException e) {
             System.err.println("Erro ao carregar driver MySQL: " + e.getMessage());
         }
+        this.pool = new ConnectionPool(URL, USER, PASSWORD, POOL_MIN, POOL_MAX,
+            POOL_ACQUIRE_TIMEOUT_MS, POOL_IDLE_TIMEOUT_MS, POOL_LEAK_THRESHOLD_MS, POOL_LEAK_STACK_TRACE,
+            POOL_VALIDATION_INTERVAL_MS, POOL_HOUSEKEEPING_MS, POOL_STATEMENT_CACHE_SIZE);
     }
     
     public static synchronized DatabaseConnection getInstance() {
@@ -26,10 +42,29 @@ public class DatabaseConnection {
     }
     
     public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        UnitOfWork escopo = UnitOfWork.atual();
+        if (escopo != null) {
+            return escopo.conexao(pool);
+        }
+        return pool.getConnection();
     }
     
+    public PoolStats getPoolStats() {
+        return pool.getStats();
+    }
+    
+    public void shutdown() {
+        pool.close();
+    }
+    
+    // A conexao de uma UnitOfWork so volta ao pool quando ninguem mais a usa.
+    // A conexao de uma UnitOfWork so e devolvida quando o escopo termina.
     public void closeConnection(Connection connection) {
+        UnitOfWork escopo = UnitOfWork.atual();
+        if (escopo != null && escopo.possui(connection)) {
+            escopo.liberar();
+            return;
+        }
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
@@ -0,0 +1,217 @@
+package db;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Aplica as migracoes de esquema em ordem de versao.
+ * Cada arquivo V<versao>__<descricao>.sql do diretorio e aplicado uma unica
+ * vez; a versao, o checksum e a duracao ficam registrados em TB_MIGRACAO.
+ * Um arquivo ja aplicado que teve o conteudo alterado interrompe a execucao,
+ * assim como qualquer erro de SQL: as migracoes seguintes nao rodam.
+ *
+ * No MySQL, DDL faz commit implicito, entao uma migracao que falha no meio
+ * nao e desfeita. Por isso cada arquivo deve ter uma unica mudanca logica.
+ */
+public class MigrationRunner {
+
+    private static final Pattern NOME_ARQUIVO = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private static final String SQL_CRIAR_HISTORICO =
+        "CREATE TABLE IF NOT EXISTS TB_MIGRACAO (" +
+        "versao INT PRIMARY KEY, " +
+        "descricao VARCHAR(200) NOT NULL, " +
+        "checksum CHAR(64) NOT NULL, " +
+        "duracao_ms BIGINT NOT NULL, " +
+        "aplicada_em TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)";
+
+    private static final String SQL_REGISTRAR =
+        "INSERT INTO TB_MIGRACAO (versao, descricao, checksum, duracao_ms) VALUES (?, ?, ?, ?)";
+
+    // Impede que dois processos apliquem as mesmas migracoes ao mesmo tempo
+    private static final String LOCK = "petshop_migracoes";
+    private static final int LOCK_TIMEOUT_S = 30;
+
+    /** Uma migracao lida do diretorio. */
+    public static final class Migracao {
+        private final int versao;
+        private final String descricao;
+        private final String checksum;
+        private final List<String> comandos;
+
+        Migracao(int versao, String descricao, String checksum, List<String> comandos) {
+            this.versao = versao;
+            this.descricao = descricao;
+            this.checksum = checksum;
+            this.comandos = comandos;
+        }
+
+        public int getVersao() {
+            return versao;
+        }
+
+        public String getDescricao() {
+            return descricao;
+        }
+
+        public int getTotalComandos() {
+            return comandos.size();
+        }
+    }
+
+    private final Path diretorio;
+
+    public MigrationRunner(Path diretorio) {
+        this.diretorio = diretorio;
+    }
+
+    /**
+     * Aplica as migracoes pendentes e devolve as que foram aplicadas agora.
+     */
+    public List<Migracao> migrar(Connection conn) throws SQLException, IOException {
+        List<Migracao> migracoes = carregar();
+        List<Migracao> aplicadas = new ArrayList<>();
+
+        adquirirLock(conn);
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(SQL_CRIAR_HISTORICO);
+            }
+            Map<Integer, String> historico = lerHistorico(conn);
+
+            for (Migracao migracao : migracoes) {
+                String checksum = historico.get(migracao.versao);
+                if (checksum == null) {
+                    aplicar(conn, migracao);
+                    aplicadas.add(migracao);
+                } else if (!checksum.equals(migracao.checksum)) {
+                    throw new SQLException("Migracao V" + migracao.versao + " (" + migracao.descricao
+                        + ") foi alterada depois de aplicada. Crie uma nova versao em vez de editar esta.");
+                }
+            }
+        } finally {
+            liberarLock(conn);
+        }
+        return aplicadas;
+    }
+
+    /**
+     * Le e valida os arquivos do diretorio, em ordem de versao.
+     */
+    public List<Migracao> carregar() throws IOException {
+        Map<Integer, Migracao> porVersao = new HashMap<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(diretorio, "*.sql")) {
+            for (Path arquivo : arquivos) {
+                String nome = arquivo.getFileName().toString();
+                Matcher m = NOME_ARQUIVO.matcher(nome);
+                if (!m.matches()) {
+                    throw new IOException("Nome de migracao invalido: " + nome + ". Use V<versao>__<descricao>.sql.");
+                }
+                int versao = Integer.parseInt(m.group(1));
+                // Quebras de linha normalizadas: o checkout no Windows nao muda o checksum
+                String conteudo = Files.readString(arquivo, StandardCharsets.UTF_8).replace("\r\n", "\n");
+                List<String> comandos;
+                try {
+                    comandos = SqlScriptParser.dividir(conteudo);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Erro ao ler " + nome + ": " + e.getMessage(), e);
+                }
+                Migracao migracao = new Migracao(versao, m.group(2).replace('_', ' '), sha256(conteudo), comandos);
+                if (porVersao.put(versao, migracao) != null) {
+                    throw new IOException("Versao de migracao repetida: V" + versao + ".");
+                }
+            }
+        }
+
+        List<Migracao> migracoes = new ArrayList<>(porVersao.values());
+        migracoes.sort((a, b) -> Integer.compare(a.versao, b.versao));
+        return migracoes;
+    }
+
+    private void aplicar(Connection conn, Migracao migracao) throws SQLException {
+        long inicio = System.nanoTime();
+        try (Statement stmt = conn.createStatement()) {
+            for (int i = 0; i < migracao.comandos.size(); i++) {
+                String comando = migracao.comandos.get(i);
+                try {
+                    stmt.execute(comando);
+                } catch (SQLException e) {
+                    throw new SQLException("Migracao V" + migracao.versao + " falhou no comando " + (i + 1)
+                        + " (" + resumo(comando) + "): " + e.getMessage(), e.getSQLState(), e.getErrorCode(), e);
+                }
+            }
+        }
+        long duracaoMs = (System.nanoTime() - inicio) / 1_000_000;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_REGISTRAR)) {
+            pstmt.setInt(1, migracao.versao);
+            pstmt.setString(2, migracao.descricao);
+            pstmt.setString(3, migracao.checksum);
+            pstmt.setLong(4, duracaoMs);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private Map<Integer, String> lerHistorico(Connection conn) throws SQLException {
+        Map<Integer, String> historico = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT versao, checksum FROM TB_MIGRACAO")) {
+            while (rs.next()) {
+                historico.put(rs.getInt(1), rs.getString(2));
+            }
+        }
+        return historico;
+    }
+
+    private void adquirirLock(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            pstmt.setString(1, LOCK);
+            pstmt.setInt(2, LOCK_TIMEOUT_S);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Outro processo esta aplicando migracoes; tente novamente.");
+                }
+            }
+        }
+    }
+
+    private void liberarLock(Connection conn) {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            pstmt.setString(1, LOCK);
+            pstmt.executeQuery().close();
+        } catch (SQLException e) {
+            System.err.println("Erro ao liberar lock de migracao: " + e.getMessage());
+        }
+    }
+
+    private static String resumo(String comando) {
+        String linha = comando.replaceAll("\\s+", " ");
+        return linha.length() > 60 ? linha.substring(0, 60) + "..." : linha;
+    }
+
+    private static String sha256(String conteudo) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(conteudo.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package db;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Fotografia das estatisticas do pool de conexoes num instante.
+ */
+public class PoolStats {
+
+    private final int active;
+    private final int idle;
+    private final int total;
+    private final int waiters;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowed;
+    private final long created;
+    private final long discarded;
+    private final long timeouts;
+    private final long leaks;
+    private final long totalWaitMs;
+    private final double averageWaitMs;
+    private final long maxWaitMs;
+    private final List<StatementCacheStats> statementCaches;
+
+    public PoolStats(int active, int idle, int total, int waiters, int minSize, int maxSize,
+                     long borrowed, long created, long discarded, long timeouts, long leaks,
+                     long totalWaitMs, double averageWaitMs, long maxWaitMs,
+                     List<StatementCacheStats> statementCaches) {
+        this.active = active;
+        this.idle = idle;
+        this.total = total;
+        this.waiters = waiters;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowed = borrowed;
+        this.created = created;
+        this.discarded = discarded;
+        this.timeouts = timeouts;
+        this.leaks = leaks;
+        this.totalWaitMs = totalWaitMs;
+        this.averageWaitMs = averageWaitMs;
+        this.maxWaitMs = maxWaitMs;
+        this.statementCaches = statementCaches;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getWaiters() {
+        return waiters;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getBorrowed() {
+        return borrowed;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getDiscarded() {
+        return discarded;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getLeaks() {
+        return leaks;
+    }
+
+    public long getTotalWaitMs() {
+        return totalWaitMs;
+    }
+
+    public double getAverageWaitMs() {
+        return averageWaitMs;
+    }
+
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    public List<StatementCacheStats> getStatementCaches() {
+        return statementCaches;
+    }
+
+    public String toJson() {
+        return "{" +
+            "\"ativas\":" + active + "," +
+            "\"ociosas\":" + idle + "," +
+            "\"total\":" + total + "," +
+            "\"aguardando\":" + waiters + "," +
+            "\"minimo\":" + minSize + "," +
+            "\"maximo\":" + maxSize + "," +
+            "\"emprestimos\":" + borrowed + "," +
+            "\"criadas\":" + created + "," +
+            "\"descartadas\":" + discarded + "," +
+            "\"timeouts\":" + timeouts + "," +
+            "\"vazamentos\":" + leaks + "," +
+            "\"esperaTotalMs\":" + totalWaitMs + "," +
+            "\"esperaMediaMs\":" + averageWaitMs + "," +
+            "\"esperaMaximaMs\":" + maxWaitMs + "," +
+            "\"statements\":" + statementsJson() +
+            "}";
+    }
+
+    private String statementsJson() {
+        long hits = 0;
+        long misses = 0;
+        StringBuilder porConexao = new StringBuilder("[");
+        for (StatementCacheStats stats : statementCaches) {
+            hits += stats.getHits();
+            misses += stats.getMisses();
+            if (porConexao.length() > 1) porConexao.append(",");
+            porConexao.append(stats.toJson());
+        }
+        porConexao.append("]");
+        double hitRate = hits + misses > 0 ? (double) hits / (hits + misses) : 0.0;
+        return "{" +
+            "\"acertos\":" + hits + "," +
+            "\"faltas\":" + misses + "," +
+            "\"taxaAcerto\":" + String.format(Locale.ROOT, "%.4f", hitRate) + "," +
+            "\"porConexao\":" + porConexao +
+            "}";
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PoolStats [Ativas: %d, Ociosas: %d, Total: %d/%d, Aguardando: %d, " +
+                "Espera media: %.3f ms, Espera maxima: %d ms, Timeouts: %d, Vazamentos: %d]",
+                active, idle, total, maxSize, waiters, averageWaitMs, maxWaitMs, timeouts, leaks);
+    }
+}
@@ -0,0 +1,118 @@
+package db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Divide um script SQL em comandos individuais.
+ * Um ';' so encerra o comando quando esta fora de strings ('...', "..."),
+ * identificadores (`...`) e comentarios (-- , # e barra-asterisco). Comentarios
+ * comuns sao descartados; os condicionais do MySQL (barra-asterisco-exclamacao)
+ * fazem parte do comando e sao mantidos. A diretiva DELIMITER do cliente
+ * mysql tambem e aceita, para scripts com procedures ou triggers.
+ */
+final class SqlScriptParser {
+
+    private SqlScriptParser() {
+    }
+
+    static List<String> dividir(String script) {
+        List<String> comandos = new ArrayList<>();
+        StringBuilder atual = new StringBuilder();
+        String delimitador = ";";
+        int n = script.length();
+        int i = 0;
+
+        while (i < n) {
+            char c = script.charAt(i);
+
+            // DELIMITER so vale no inicio de uma linha, fora de qualquer comando
+            if (comecaCom(script, i, "DELIMITER ") && inicioDeLinha(script, i) && atual.toString().trim().isEmpty()) {
+                int fim = fimDaLinha(script, i);
+                String novo = script.substring(i + "DELIMITER ".length(), fim).trim();
+                if (novo.isEmpty()) {
+                    throw new IllegalArgumentException("DELIMITER sem valor na posicao " + i + ".");
+                }
+                delimitador = novo;
+                atual.setLength(0);
+                i = fim;
+                continue;
+            }
+
+            if (c == '\'' || c == '"' || c == '`') {
+                int fim = fimDoTexto(script, i, c);
+                atual.append(script, i, fim);
+                i = fim;
+            } else if (c == '#' || (c == '-' && comecaCom(script, i, "--")
+                    && (i + 2 >= n || Character.isWhitespace(script.charAt(i + 2))))) {
+                i = fimDaLinha(script, i);
+            } else if (c == '/' && comecaCom(script, i, "/*")) {
+                int fim = script.indexOf("*/", i + 2);
+                if (fim < 0) {
+                    throw new IllegalArgumentException("Comentario nao fechado na posicao " + i + ".");
+                }
+                fim += 2;
+                if (comecaCom(script, i, "/*!")) {
+                    atual.append(script, i, fim);
+                } else {
+                    atual.append(' ');
+                }
+                i = fim;
+            } else if (comecaCom(script, i, delimitador)) {
+                adicionar(comandos, atual);
+                i += delimitador.length();
+            } else {
+                atual.append(c);
+                i++;
+            }
+        }
+        adicionar(comandos, atual);
+        return comandos;
+    }
+
+    private static void adicionar(List<String> comandos, StringBuilder atual) {
+        String comando = atual.toString().trim();
+        if (!comando.isEmpty()) {
+            comandos.add(comando);
+        }
+        atual.setLength(0);
+    }
+
+    // Posicao logo apos a aspa que fecha o texto aberto em 'inicio'.
+    // Aceita tanto a aspa duplicada ('') quanto a barra invertida como escape.
+    private static int fimDoTexto(String script, int inicio, char aspa) {
+        int i = inicio + 1;
+        while (i < script.length()) {
+            char c = script.charAt(i);
+            if (c == '\\' && aspa != '`') {
+                i += 2;
+            } else if (c == aspa) {
+                if (i + 1 < script.length() && script.charAt(i + 1) == aspa) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        throw new IllegalArgumentException("Texto nao fechado na posicao " + inicio + ".");
+    }
+
+    private static int fimDaLinha(String script, int i) {
+        int fim = script.indexOf('\n', i);
+        return fim < 0 ? script.length() : fim;
+    }
+
+    private static boolean inicioDeLinha(String script, int i) {
+        int j = i - 1;
+        while (j >= 0 && (script.charAt(j) == ' ' || script.charAt(j) == '\t')) {
+            j--;
+        }
+        return j < 0 || script.charAt(j) == '\n' || script.charAt(j) == '\r';
+    }
+
+    private static boolean comecaCom(String script, int i, String prefixo) {
+        return script.regionMatches(true, i, prefixo, 0, prefixo.length());
+    }
+}
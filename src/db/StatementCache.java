@@ -0,0 +1,242 @@
+package db;
+
+import util.Histogram;
+import util.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache LRU de PreparedStatements de uma conexao fisica, pela SQL (e pelos
+ * demais argumentos de prepareStatement). Com useServerPrepStmts o MySQL
+ * analisa e planeja cada SQL uma vez por conexao; o DAO recebe um proxy cujo
+ * close() so limpa os parametros e devolve o statement ao cache.
+ * Uma conexao e usada por uma thread por vez, entao o mapa nao e sincronizado;
+ * so os contadores sao lidos por outras threads.
+ */
+final class StatementCache {
+
+    // Tempo das chamadas execute* no driver, por tipo; exportado em /metrics
+    private static final Histogram EXECUTE_QUERY = execucao("executeQuery");
+    private static final Histogram EXECUTE_UPDATE = execucao("executeUpdate");
+    private static final Histogram EXECUTE_BATCH = execucao("executeBatch");
+    private static final Histogram EXECUTE = execucao("execute");
+
+    private final int connectionId;
+    private final int maxSize;
+    private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile int size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    StatementCache(int connectionId, int maxSize) {
+        this.connectionId = connectionId;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Prepara via {@code method} (um dos prepareStatement de Connection).
+     * Erros do driver saem como InvocationTargetException, como no proxy da conexao.
+     */
+    PreparedStatement prepare(Connection lentConnection, Connection physical, Method method, Object[] args)
+            throws IllegalAccessException, InvocationTargetException {
+        String key = key(args);
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            hits.increment();
+            return cached.lend(lentConnection);
+        }
+
+        misses.increment();
+        PreparedStatement physicalStatement = (PreparedStatement) method.invoke(physical, args);
+        if (cached != null) {
+            // A mesma SQL ja esta aberta nesta conexao: este fica fora do cache
+            return physicalStatement;
+        }
+
+        cached = new CachedStatement(key, physicalStatement);
+        statements.put(key, cached);
+        evictExcess();
+        size = statements.size();
+        return cached.lend(lentConnection);
+    }
+
+    /**
+     * Chamado quando a conexao volta ao pool: statements que o DAO esqueceu
+     * abertos sao recolhidos para nao serem usados pelo proximo emprestimo.
+     */
+    void reclaim() {
+        Iterator<CachedStatement> it = statements.values().iterator();
+        while (it.hasNext()) {
+            CachedStatement cached = it.next();
+            if (cached.inUse && !cached.recycle()) {
+                it.remove();
+            }
+        }
+        size = statements.size();
+    }
+
+    StatementCacheStats getStats() {
+        return new StatementCacheStats(connectionId, size, maxSize, hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private void evictExcess() {
+        Iterator<CachedStatement> it = statements.values().iterator();
+        while (statements.size() > maxSize && it.hasNext()) {
+            CachedStatement eldest = it.next();
+            if (eldest.inUse) {
+                continue;
+            }
+            it.remove();
+            closeQuietly(eldest.physical);
+            evictions.increment();
+        }
+    }
+
+    private static String key(Object[] args) {
+        String sql = (String) args[0];
+        if (args.length == 1) {
+            return sql;
+        }
+        // Variantes com chaves geradas ou tipo de ResultSet sao statements diferentes
+        return sql + '\u0000' + Arrays.deepToString(Arrays.copyOfRange(args, 1, args.length));
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.err.println("Erro ao fechar statement do cache: " + e.getMessage());
+        }
+    }
+
+    private final class CachedStatement {
+        final String key;
+        final PreparedStatement physical;
+        boolean inUse;
+        Lease lease;
+
+        CachedStatement(String key, PreparedStatement physical) {
+            this.key = key;
+            this.physical = physical;
+        }
+
+        PreparedStatement lend(Connection lentConnection) {
+            inUse = true;
+            lease = new Lease(this, lentConnection);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                lease);
+        }
+
+        // Deixa o statement pronto para o proximo uso; false se precisou ser descartado
+        boolean recycle() {
+            if (lease != null) {
+                lease.closed = true;
+                lease = null;
+            }
+            try {
+                ResultSet rs = physical.getResultSet();
+                if (rs != null) {
+                    rs.close();
+                }
+                physical.clearParameters();
+                physical.clearBatch();
+                physical.clearWarnings();
+                if (physical.getFetchSize() != 0) {
+                    physical.setFetchSize(0);
+                }
+                inUse = false;
+                return true;
+            } catch (SQLException e) {
+                closeQuietly(physical);
+                return false;
+            }
+        }
+    }
+
+    private static Histogram execucao(String operacao) {
+        return Metrics.histograma("petshop_jdbc_execute_seconds",
+            "Tempo das chamadas execute* no driver JDBC, em statements do cache",
+            Histogram.latencia(), "operacao", operacao);
+    }
+
+    private static Histogram medidaDe(String metodo) {
+        switch (metodo) {
+            case "executeQuery":
+                return EXECUTE_QUERY;
+            case "executeUpdate":
+            case "executeLargeUpdate":
+                return EXECUTE_UPDATE;
+            case "executeBatch":
+            case "executeLargeBatch":
+                return EXECUTE_BATCH;
+            case "execute":
+                return EXECUTE;
+            default:
+                return null;
+        }
+    }
+
+    private final class Lease implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection lentConnection;
+        boolean closed;
+
+        Lease(CachedStatement cached, Connection lentConnection) {
+            this.cached = cached;
+            this.lentConnection = lentConnection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed && !cached.recycle()) {
+                        statements.remove(cached.key);
+                        size = statements.size();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return lentConnection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "StatementDoCache[" + cached.key + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement ja fechado.");
+            }
+            Histogram medida = medidaDe(method.getName());
+            long inicio = medida != null ? System.nanoTime() : 0;
+            try {
+                return method.invoke(cached.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (medida != null) {
+                    medida.registrarDesde(inicio);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package db;
+
+import java.util.Locale;
+
+/**
+ * Fotografia do cache de statements de uma conexao fisica do pool.
+ */
+public class StatementCacheStats {
+
+    private final int connectionId;
+    private final int statements;
+    private final int maxSize;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    public StatementCacheStats(int connectionId, int statements, int maxSize,
+                               long hits, long misses, long evictions) {
+        this.connectionId = connectionId;
+        this.statements = statements;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public int getConnectionId() {
+        return connectionId;
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public double getHitRate() {
+        long total = hits + misses;
+        return total > 0 ? (double) hits / total : 0.0;
+    }
+
+    public String toJson() {
+        return "{" +
+            "\"conexao\":" + connectionId + "," +
+            "\"statements\":" + statements + "," +
+            "\"maximo\":" + maxSize + "," +
+            "\"acertos\":" + hits + "," +
+            "\"faltas\":" + misses + "," +
+            "\"evicoes\":" + evictions + "," +
+            "\"taxaAcerto\":" + String.format(Locale.ROOT, "%.4f", getHitRate()) +
+            "}";
+    }
+}
@@ -0,0 +1,111 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Liga uma conexao do pool a thread que esta atendendo uma requisicao.
+ * Dentro de {@link #executar}, todas as chamadas a
+ * {@link DatabaseConnection#getConnection()} feitas enquanto a conexao esta
+ * em uso devolvem a mesma conexao, entao chamadas aninhadas participam da
+ * transacao de quem as chamou. Quando o ultimo usuario a "fecha", a transacao
+ * pendente e desfeita e a conexao volta ao pool, para nao ficar presa enquanto
+ * a resposta e escrita para um cliente lento; o proximo uso pega outra.
+ */
+public final class UnitOfWork {
+    
+    @FunctionalInterface
+    public interface Trabalho<X extends Exception> {
+        void executar() throws X;
+    }
+    
+    private static final ThreadLocal<UnitOfWork> ATUAL = new ThreadLocal<>();
+    
+    private static final LongAdder escopos = new LongAdder();
+    private static final LongAdder conexoesObtidas = new LongAdder();
+    private static final LongAdder reutilizacoes = new LongAdder();
+    
+    private Connection conexao;
+    private int emUso;
+    
+    private UnitOfWork() {
+    }
+    
+    public static <X extends Exception> void executar(Trabalho<X> trabalho) throws X {
+        if (ATUAL.get() != null) {
+            // Ja dentro de um escopo: reaproveita o de fora
+            trabalho.executar();
+            return;
+        }
+        
+        UnitOfWork escopo = new UnitOfWork();
+        ATUAL.set(escopo);
+        escopos.increment();
+        try {
+            trabalho.executar();
+        } finally {
+            ATUAL.remove();
+            escopo.encerrar();
+        }
+    }
+    
+    public static String toJson() {
+        return "{" +
+            "\"escopos\":" + escopos.sum() + "," +
+            "\"conexoesObtidas\":" + conexoesObtidas.sum() + "," +
+            "\"reutilizacoes\":" + reutilizacoes.sum() +
+            "}";
+    }
+    
+    static UnitOfWork atual() {
+        return ATUAL.get();
+    }
+    
+    Connection conexao(ConnectionPool pool) throws SQLException {
+        // Uma conexao quebrada (ou ja devolvida) e trocada por outra do pool
+        if (conexao != null && !conexao.isClosed()) {
+            reutilizacoes.increment();
+            emUso++;
+            return conexao;
+        }
+        conexao = pool.getConnection();
+        conexoesObtidas.increment();
+        emUso = 1;
+        return conexao;
+    }
+    
+    boolean possui(Connection connection) {
+        return connection != null && connection == conexao;
+    }
+    
+    // Chamado quando o DAO termina de usar a conexao compartilhada
+    void liberar() {
+        if (--emUso > 0) {
+            // Ainda em uso por quem chamou este DAO
+            return;
+        }
+        try {
+            if (!conexao.isClosed() && !conexao.getAutoCommit()) {
+                conexao.rollback();
+                conexao.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Erro ao restaurar conexão da requisição: " + e.getMessage());
+        }
+        encerrar();
+    }
+    
+    private void encerrar() {
+        if (conexao == null) {
+            return;
+        }
+        try {
+            conexao.close();
+        } catch (SQLException e) {
+            System.err.println("Erro ao fechar conexão: " + e.getMessage());
+        }
+        conexao = null;
+        emUso = 0;
+    }
+}
@@ -1,6 +1,6 @@
 package exception;
 
-public class ClienteNaoEncontradoException extends Exception {
+public class ClienteNaoEncontradoException extends RegistroNaoEncontradoException {
     
     public ClienteNaoEncontradoException(String mensagem) {
         super(mensagem);
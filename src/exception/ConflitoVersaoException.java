@@ -0,0 +1,30 @@
+package exception;
+
+public class ConflitoVersaoException extends Exception {
+    
+    private final Integer id;
+    private final int versaoEsperada;
+    private final int versaoAtual;
+    
+    // Sem stack trace: conflito de edicao e um resultado esperado, nao um erro de programa
+    public ConflitoVersaoException(String entidade, Integer id, int versaoEsperada, int versaoAtual) {
+        super(String.format("%s com ID %d foi alterado por outra pessoa (versão enviada: %d, atual: %d). "
+            + "Recarregue o registro e tente novamente.", entidade, id, versaoEsperada, versaoAtual),
+            null, false, false);
+        this.id = id;
+        this.versaoEsperada = versaoEsperada;
+        this.versaoAtual = versaoAtual;
+    }
+    
+    public Integer getId() {
+        return id;
+    }
+    
+    public int getVersaoEsperada() {
+        return versaoEsperada;
+    }
+    
+    public int getVersaoAtual() {
+        return versaoAtual;
+    }
+}
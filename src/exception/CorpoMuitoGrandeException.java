@@ -0,0 +1,15 @@
+package exception;
+
+public class CorpoMuitoGrandeException extends Exception {
+    
+    private final int limiteBytes;
+    
+    public CorpoMuitoGrandeException(int limiteBytes) {
+        super("Corpo da requisição maior que o limite de " + limiteBytes + " bytes.");
+        this.limiteBytes = limiteBytes;
+    }
+    
+    public int getLimiteBytes() {
+        return limiteBytes;
+    }
+}
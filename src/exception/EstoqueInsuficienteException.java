@@ -0,0 +1,28 @@
+package exception;
+
+public class EstoqueInsuficienteException extends Exception {
+    
+    private final Integer idProduto;
+    private final int disponivel;
+    private final int solicitado;
+    
+    public EstoqueInsuficienteException(Integer idProduto, int disponivel, int solicitado) {
+        super(String.format("Estoque insuficiente para o produto %d. Disponível: %d, Solicitado: %d",
+            idProduto, disponivel, solicitado));
+        this.idProduto = idProduto;
+        this.disponivel = disponivel;
+        this.solicitado = solicitado;
+    }
+    
+    public Integer getIdProduto() {
+        return idProduto;
+    }
+    
+    public int getDisponivel() {
+        return disponivel;
+    }
+    
+    public int getSolicitado() {
+        return solicitado;
+    }
+}
@@ -1,6 +1,6 @@
 package exception;
 
-public class FuncionarioNaoEncontradoException extends Exception {
+public class FuncionarioNaoEncontradoException extends RegistroNaoEncontradoException {
     
     public FuncionarioNaoEncontradoException(String mensagem) {
         super(mensagem);
@@ -0,0 +1,8 @@
+package exception;
+
+public class JsonInvalidoException extends IllegalArgumentException {
+    
+    public JsonInvalidoException(String mensagem) {
+        super("JSON invalido: " + mensagem);
+    }
+}
@@ -0,0 +1,21 @@
+package exception;
+
+public class LoteException extends Exception {
+    
+    private final int[] linhasConfirmadas;
+    
+    public LoteException(String mensagem, int[] linhasConfirmadas, Throwable causa) {
+        super(mensagem, causa);
+        this.linhasConfirmadas = linhasConfirmadas;
+    }
+    
+    // Quantidade de registros do inicio da lista que ja foram gravados
+    public int getConfirmados() {
+        return linhasConfirmadas.length;
+    }
+    
+    // Linhas afetadas por registro confirmado (0 quando o UPDATE nao achou a linha)
+    public int[] getLinhasConfirmadas() {
+        return linhasConfirmadas;
+    }
+}
@@ -1,6 +1,6 @@
 package exception;
 
-public class PetNaoEncontradoException extends Exception {
+public class PetNaoEncontradoException extends RegistroNaoEncontradoException {
     
     public PetNaoEncontradoException(String mensagem) {
         super(mensagem);
@@ -1,6 +1,6 @@
 package exception;
 
-public class ProdutoNaoEncontradoException extends Exception {
+public class ProdutoNaoEncontradoException extends RegistroNaoEncontradoException {
     
     public ProdutoNaoEncontradoException(String mensagem) {
         super(mensagem);
@@ -0,0 +1,9 @@
+package exception;
+
+public class RegistroNaoEncontradoException extends Exception {
+    
+    // Sem stack trace: e um resultado esperado (id inexistente), nao um erro de programa
+    public RegistroNaoEncontradoException(String mensagem) {
+        super(mensagem, null, false, false);
+    }
+}
@@ -0,0 +1,18 @@
+package exception;
+
+public class VersaoObrigatoriaException extends Exception {
+    
+    private final Integer id;
+    
+    // Sem a versao lida, a gravacao poderia sobrescrever a edicao de outra pessoa sem perceber
+    public VersaoObrigatoriaException(String entidade, Integer id) {
+        super(String.format("Informe a versão de %s com ID %d: envie o campo versao ou o If-Match "
+            + "com o ETag devolvido pelo GET do registro.", entidade, id),
+            null, false, false);
+        this.id = id;
+    }
+    
+    public Integer getId() {
+        return id;
+    }
+}
@@ -1,10 +1,14 @@
 package model;
 
 import java.time.LocalDateTime;
+import java.util.regex.Pattern;
 
 
 public class Cliente {
     
+    private static final Pattern EMAIL = Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
+    private static final Pattern DIGITOS_REPETIDOS = Pattern.compile("(\\d)\\1{10}");
+    
     private Integer idCliente;
     private String nome;
     private String cpf;
@@ -12,6 +16,8 @@ public class Cliente {
     private String email;
     private String endereco;
     private LocalDateTime dataCadastro;
+    // Controle de concorrencia otimista; incrementada a cada UPDATE
+    private Integer versao;
     
     public Cliente() {
     }
@@ -130,6 +136,24 @@ public class Cliente {
         this.dataCadastro = dataCadastro;
     }
     
+    public Integer getVersao() {
+        return versao;
+    }
+    
+    public void setVersao(Integer versao) {
+        if (versao != null && versao < 0) {
+            throw new IllegalArgumentException("Versão não pode ser negativa.");
+        }
+        this.versao = versao;
+    }
+    
+    // Objetos do cache sao compartilhados: uma edicao parte de uma copia
+    public Cliente copiar() {
+        Cliente copia = new Cliente(idCliente, nome, cpf, telefone, email, endereco, dataCadastro);
+        copia.versao = versao;
+        return copia;
+    }
+    
     // Métodos para carregar dados do banco sem validação (uso do DAO)
     // Estes métodos permitem carregar dados do banco mesmo que estejam em formato inválido
     public void setCpfFromDB(String cpf) {
@@ -158,7 +182,7 @@ public class Cliente {
         if (cpf == null || cpf.length() != 11) {
             return false;
         }
-        if (cpf.matches("(\\d)\\1{10}")) {
+        if (DIGITOS_REPETIDOS.matcher(cpf).matches()) {
             return false;
         }
         try {
@@ -193,8 +217,7 @@ public class Cliente {
         if (email == null || email.trim().isEmpty()) {
             return false;
         }
-        String regex = "^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$";
-        return email.matches(regex);
+        return EMAIL.matcher(email).matches();
     }
     
     @Override
@@ -2,10 +2,21 @@ package model;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 
 public abstract class Funcionario {
 
+    private static final Pattern EMAIL = Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
+
+    // Cargo -> construtor da subclasse; cargos desconhecidos viram Atendente
+    private static final Map<String, Supplier<Funcionario>> POR_CARGO = Map.of(
+        "VETERINARIO", Veterinario::new,
+        "TOSADOR", Tosador::new,
+        "ATENDENTE", Atendente::new);
+
     protected Integer idFuncionario;
     protected String nome;
     protected String cpf;
@@ -16,11 +27,18 @@ public abstract class Funcionario {
     protected LocalDate dataContratacao;
     protected Boolean ativo;
     protected LocalDateTime dataCadastro;
+    // Controle de concorrencia otimista; incrementada a cada UPDATE
+    protected Integer versao;
 
     protected Funcionario() {
         this.ativo = true;
     }
     
+    public static Funcionario criarPorCargo(String cargo) {
+        Supplier<Funcionario> construtor = cargo != null ? POR_CARGO.get(cargo.trim().toUpperCase()) : null;
+        return construtor != null ? construtor.get() : new Atendente();
+    }
+    
     protected Funcionario(String nome, String cpf, String telefone, String email, 
                          String cargo, Double salarioBase, LocalDate dataContratacao) {
         this.nome = nome;
@@ -113,7 +131,7 @@ public abstract class Funcionario {
         if (email == null || email.trim().isEmpty()) {
             throw new IllegalArgumentException("Email não pode ser vazio.");
         }
-        if (!email.matches("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$")) {
+        if (!EMAIL.matcher(email).matches()) {
             throw new IllegalArgumentException("Email inválido.");
         }
         if (email.length() > 100) {
@@ -173,6 +191,34 @@ public abstract class Funcionario {
     public void setDataCadastro(LocalDateTime dataCadastro) {
         this.dataCadastro = dataCadastro;
     }
+    
+    public Integer getVersao() {
+        return versao;
+    }
+    
+    public void setVersao(Integer versao) {
+        if (versao != null && versao < 0) {
+            throw new IllegalArgumentException("Versão não pode ser negativa.");
+        }
+        this.versao = versao;
+    }
+    
+    // Objetos do cache sao compartilhados: uma edicao parte de uma copia.
+    // O cargo define a subclasse, entao mudar de cargo gera outra instancia.
+    public Funcionario copiarComo(String novoCargo) {
+        Funcionario copia = criarPorCargo(novoCargo);
+        copia.idFuncionario = idFuncionario;
+        copia.nome = nome;
+        copia.cpf = cpf;
+        copia.telefone = telefone;
+        copia.email = email;
+        copia.salarioBase = salarioBase;
+        copia.dataContratacao = dataContratacao;
+        copia.ativo = ativo;
+        copia.dataCadastro = dataCadastro;
+        copia.versao = versao;
+        return copia;
+    }
 
     public abstract Double calcularSalario();
     
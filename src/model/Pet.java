@@ -17,6 +17,8 @@ public class Pet {
     private Double peso;
     private String observacoes;
     private LocalDateTime dataCadastro;
+    // Controle de concorrencia otimista; incrementada a cada UPDATE
+    private Integer versao;
 
     public Pet() {
     }
@@ -157,6 +159,25 @@ public class Pet {
     public void setDataCadastro(LocalDateTime dataCadastro) {
         this.dataCadastro = dataCadastro;
     }
+    
+    public Integer getVersao() {
+        return versao;
+    }
+    
+    public void setVersao(Integer versao) {
+        if (versao != null && versao < 0) {
+            throw new IllegalArgumentException("Versão não pode ser negativa.");
+        }
+        this.versao = versao;
+    }
+    
+    // Objetos do cache sao compartilhados: uma edicao parte de uma copia
+    public Pet copiar() {
+        Pet copia = new Pet(idPet, idCliente, nome, especie, raca, dataNascimento, peso, observacoes, dataCadastro);
+        copia.cliente = cliente;
+        copia.versao = versao;
+        return copia;
+    }
 
     public Integer calcularIdade() {
         if (dataNascimento == null) {
@@ -13,6 +13,8 @@ public class Produto {
     private String categoria;
     private Boolean ativo;
     private LocalDateTime dataCadastro;
+    // Controle de concorrencia otimista; incrementada a cada UPDATE
+    private Integer versao;
 
     public Produto() {
         this.estoque = 0;
@@ -132,6 +134,24 @@ public class Produto {
     public void setDataCadastro(LocalDateTime dataCadastro) {
         this.dataCadastro = dataCadastro;
     }
+    
+    public Integer getVersao() {
+        return versao;
+    }
+    
+    public void setVersao(Integer versao) {
+        if (versao != null && versao < 0) {
+            throw new IllegalArgumentException("Versão não pode ser negativa.");
+        }
+        this.versao = versao;
+    }
+    
+    // Objetos do cache sao compartilhados: uma edicao parte de uma copia
+    public Produto copiar() {
+        Produto copia = new Produto(idProduto, nome, descricao, preco, estoque, categoria, ativo, dataCadastro);
+        copia.versao = versao;
+        return copia;
+    }
 
     public boolean validarPreco() {
         return preco != null && preco >= 0 && preco <= 999999.99;
@@ -0,0 +1,98 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import exception.CorpoMuitoGrandeException;
+import util.ConfigUtil;
+import util.JsonUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+public class AdmissaoApiHandler implements HttpHandler {
+    
+    private static final String TOKEN = ConfigUtil.getString("http.admissao.token", "");
+    
+    private final AdmissionController admission;
+    
+    public AdmissaoApiHandler(AdmissionController admission) {
+        this.admission = admission;
+    }
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        
+        try {
+            switch (method) {
+                case "OPTIONS":
+                    WebServer.sendResponse(exchange, 200, "application/json", "");
+                    break;
+                case "GET":
+                    WebServer.sendResponse(exchange, 200, "application/json", admission.toJson());
+                    break;
+                case "PUT":
+                    if (!autorizado(exchange)) {
+                        WebServer.sendResponse(exchange, 403, "application/json",
+                            "{\"erro\":\"Ajuste de admissao nao autorizado\"}");
+                        break;
+                    }
+                    handlePut(exchange);
+                    break;
+                default:
+                    WebServer.sendResponse(exchange, 405, "text/plain", "Metodo nao permitido");
+            }
+        } catch (CorpoMuitoGrandeException e) {
+            WebServer.sendResponse(exchange, 413, "application/json",
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"limiteBytes\":" + e.getLimiteBytes() + "}");
+        } catch (IllegalArgumentException e) {
+            WebServer.sendResponse(exchange, 400, "application/json",
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"}");
+        }
+    }
+    
+    // O PUT muda quanto trafego o servidor aceita: exige o token de http.admissao.token
+    // em "Authorization: Bearer <token>" ou, sem token configurado, uma conexao local
+    private static boolean autorizado(HttpExchange exchange) {
+        if (TOKEN.isEmpty()) {
+            InetSocketAddress remoto = exchange.getRemoteAddress();
+            return remoto != null && remoto.getAddress() != null && remoto.getAddress().isLoopbackAddress();
+        }
+        String cabecalho = exchange.getRequestHeaders().getFirst("Authorization");
+        if (cabecalho == null || !cabecalho.startsWith("Bearer ")) {
+            return false;
+        }
+        // Comparacao em tempo constante: o tempo de resposta nao revela o prefixo certo
+        return MessageDigest.isEqual(cabecalho.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8),
+            TOKEN.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    // PUT /api/admissao {"rota":"/api/pets","limite":8,"fila":16,"esperaMs":50}
+    private void handlePut(HttpExchange exchange) throws IOException, CorpoMuitoGrandeException {
+        Map<String, String> jsonMap = RequestBody.lerJson(exchange, JsonUtil::jsonToMap);
+        String rota = jsonMap.get("rota");
+        if (rota == null || rota.isEmpty()) {
+            throw new IllegalArgumentException("Rota deve ser informada.");
+        }
+        
+        try {
+            Integer limite = jsonMap.containsKey("limite") ? Integer.valueOf(jsonMap.get("limite")) : null;
+            Integer fila = jsonMap.containsKey("fila") ? Integer.valueOf(jsonMap.get("fila")) : null;
+            Long esperaMs = jsonMap.containsKey("esperaMs") ? Long.valueOf(jsonMap.get("esperaMs")) : null;
+            
+            if (!admission.ajustar(rota, limite, fila, esperaMs)) {
+                WebServer.sendResponse(exchange, 404, "application/json",
+                    "{\"erro\":\"Rota nao encontrada\"}");
+                return;
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Limites devem ser numericos.");
+        }
+        
+        WebServer.sendResponse(exchange, 200, "application/json", admission.toJson());
+    }
+}
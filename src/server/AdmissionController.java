@@ -0,0 +1,223 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import util.ConfigUtil;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Controle de admissao por contexto HTTP.
+ * Cada rota tem um limite de requisicoes simultaneas e uma fila curta; o que
+ * passar disso recebe 503 com Retry-After imediatamente, em vez de acumular
+ * threads esperando pelo banco. Requisicoes que o ServerExecutor so aceitou
+ * no pool de descarte (pool principal cheio) recebem 503 direto.
+ */
+public class AdmissionController {
+
+    private final Map<String, RouteLimiter> routes = new ConcurrentSkipListMap<>();
+    private final int defaultLimit;
+    private final int defaultQueue;
+    private final long defaultWaitMs;
+    private final int retryAfterSeconds;
+
+    public AdmissionController(int defaultLimit, int defaultQueue, long defaultWaitMs, int retryAfterSeconds) {
+        validarLimites(defaultLimit, defaultQueue, defaultWaitMs);
+        this.defaultLimit = defaultLimit;
+        this.defaultQueue = defaultQueue;
+        this.defaultWaitMs = defaultWaitMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public static AdmissionController fromConfig() {
+        return new AdmissionController(
+            ConfigUtil.getInt("http.admission.limit", 16),
+            ConfigUtil.getInt("http.admission.queue", 32),
+            ConfigUtil.getLong("http.admission.waitMs", 100),
+            ConfigUtil.getInt("http.admission.retryAfter", 1));
+    }
+
+    public HttpHandler wrap(String route, HttpHandler handler) {
+        RouteLimiter limiter = new RouteLimiter(route, handler, defaultLimit, defaultQueue, defaultWaitMs);
+        routes.put(route, limiter);
+        return limiter;
+    }
+
+    public boolean ajustar(String route, Integer limite, Integer fila, Long esperaMs) {
+        RouteLimiter limiter = routes.get(route);
+        if (limiter == null) {
+            return false;
+        }
+        limiter.ajustar(
+            limite != null ? limite : limiter.limit,
+            fila != null ? fila : limiter.queue,
+            esperaMs != null ? esperaMs : limiter.waitMs);
+        return true;
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        boolean primeiro = true;
+        for (RouteLimiter limiter : routes.values()) {
+            if (!primeiro) json.append(",");
+            primeiro = false;
+            json.append("\"").append(limiter.route).append("\":").append(limiter.toJson());
+        }
+        json.append("}");
+        return json.toString();
+    }
+
+    private static void validarLimites(int limite, int fila, long esperaMs) {
+        if (limite <= 0) {
+            throw new IllegalArgumentException("Limite de requisicoes simultaneas deve ser positivo.");
+        }
+        if (fila < 0) {
+            throw new IllegalArgumentException("Tamanho da fila nao pode ser negativo.");
+        }
+        if (esperaMs < 0) {
+            throw new IllegalArgumentException("Tempo de espera na fila nao pode ser negativo.");
+        }
+    }
+
+    private class RouteLimiter implements HttpHandler {
+        private final String route;
+        private final HttpHandler delegate;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition slotFree = lock.newCondition();
+
+        private volatile int limit;
+        private volatile int queue;
+        private volatile long waitMs;
+        private int inFlight;
+        private int queued;
+        private int peakInFlight;
+
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder admittedAfterWait = new LongAdder();
+        private final LongAdder shedQueueFull = new LongAdder();
+        private final LongAdder shedTimeout = new LongAdder();
+        private final LongAdder shedOverload = new LongAdder();
+
+        RouteLimiter(String route, HttpHandler delegate, int limit, int queue, long waitMs) {
+            this.route = route;
+            this.delegate = delegate;
+            this.limit = limit;
+            this.queue = queue;
+            this.waitMs = waitMs;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            boolean sobrecarga = ServerExecutor.emSobrecarga();
+            if (sobrecarga) {
+                shedOverload.increment();
+            }
+            if (sobrecarga || !acquire()) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                WebServer.sendResponse(exchange, 503, "application/json",
+                    "{\"erro\":\"Servidor sobrecarregado, tente novamente em instantes\"}");
+                return;
+            }
+            try {
+                delegate.handle(exchange);
+            } finally {
+                release();
+            }
+        }
+
+        private boolean acquire() {
+            lock.lock();
+            try {
+                if (inFlight < limit) {
+                    admit();
+                    return true;
+                }
+                if (queued >= queue) {
+                    shedQueueFull.increment();
+                    return false;
+                }
+                queued++;
+                try {
+                    long remaining = TimeUnit.MILLISECONDS.toNanos(waitMs);
+                    while (inFlight >= limit) {
+                        if (remaining <= 0) {
+                            shedTimeout.increment();
+                            return false;
+                        }
+                        remaining = slotFree.awaitNanos(remaining);
+                    }
+                    admittedAfterWait.increment();
+                    admit();
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    shedTimeout.increment();
+                    return false;
+                } finally {
+                    queued--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void admit() {
+            inFlight++;
+            if (inFlight > peakInFlight) {
+                peakInFlight = inFlight;
+            }
+            admitted.increment();
+        }
+
+        private void release() {
+            lock.lock();
+            try {
+                inFlight--;
+                slotFree.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void ajustar(int novoLimite, int novaFila, long novaEsperaMs) {
+            validarLimites(novoLimite, novaFila, novaEsperaMs);
+            lock.lock();
+            try {
+                limit = novoLimite;
+                queue = novaFila;
+                waitMs = novaEsperaMs;
+                slotFree.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        String toJson() {
+            lock.lock();
+            try {
+                return "{" +
+                    "\"limite\":" + limit + "," +
+                    "\"fila\":" + queue + "," +
+                    "\"esperaMs\":" + waitMs + "," +
+                    "\"emAndamento\":" + inFlight + "," +
+                    "\"naFila\":" + queued + "," +
+                    "\"picoEmAndamento\":" + peakInFlight + "," +
+                    "\"admitidas\":" + admitted.sum() + "," +
+                    "\"admitidasAposEspera\":" + admittedAfterWait.sum() + "," +
+                    "\"descartadasFilaCheia\":" + shedQueueFull.sum() + "," +
+                    "\"descartadasTimeout\":" + shedTimeout.sum() + "," +
+                    "\"descartadasSobrecarga\":" + shedOverload.sum() + "," +
+                    "\"descartadas\":" + (shedQueueFull.sum() + shedTimeout.sum() + shedOverload.sum()) +
+                    "}";
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
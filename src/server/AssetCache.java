@@ -0,0 +1,350 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache em memoria dos arquivos estaticos do diretorio web.
+ * Guarda os bytes originais, a variante gzip pre-calculada e o ETag de cada
+ * arquivo. Um WatchService invalida as entradas quando os arquivos mudam.
+ *
+ * O total guardado (bytes originais mais gzip) fica abaixo de maxTotalBytes:
+ * ao passar do limite saem as entradas acessadas ha mais tempo. Cada
+ * invalidacao avanca a geracao do cache, e um arquivo lido antes dela nao
+ * fica guardado, para uma carga lenta nao trazer de volta o conteudo antigo.
+ *
+ * Arquivos maiores que maxCachedSize nunca sao guardados: nao sao lidos,
+ * comprimidos nem hasheados a cada requisicao, e sim enviados direto do disco
+ * com um ETag de tamanho e data de modificacao.
+ */
+public class AssetCache {
+
+    private static final DateTimeFormatter HTTP_DATE =
+        DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private final Path root;
+    private final int maxCachedSize;
+    private final int gzipMinSize;
+    private final long maxTotalBytes;
+    private final Map<String, Asset> cache = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    private WatchService watcher;
+
+    public AssetCache(Path root, int maxCachedSize, int gzipMinSize, long maxTotalBytes) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxCachedSize = maxCachedSize;
+        this.gzipMinSize = gzipMinSize;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public void startWatching() {
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            registerTree(root);
+        } catch (IOException e) {
+            System.err.println("Nao foi possivel observar o diretorio web, cache sem invalidacao: " + e.getMessage());
+            watcher = null;
+            return;
+        }
+        Thread t = new Thread(this::watchLoop, "asset-cache-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void stopWatching() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                System.err.println("Erro ao encerrar observador do diretorio web: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Retorna o arquivo para o caminho da requisicao ou null se nao existir
+     * (ou estiver fora do diretorio web).
+     */
+    public Asset get(String requestPath) throws IOException {
+        Path file = root.resolve(requestPath.startsWith("/") ? requestPath.substring(1) : requestPath).normalize();
+        if (!file.startsWith(root)) {
+            return null;
+        }
+        String key = root.relativize(file).toString();
+
+        Asset asset = cache.get(key);
+        if (asset != null) {
+            asset.lastAccess = System.nanoTime();
+            return asset;
+        }
+        // Lida antes do arquivo: se uma invalidacao acontecer durante a carga, a geracao muda
+        long loadedAt = generation.get();
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        long length = Files.size(file);
+        if (length > maxCachedSize || length > maxTotalBytes) {
+            return stat(file, length);
+        }
+        asset = load(file);
+        if (asset.size() <= maxTotalBytes) {
+            store(key, asset, loadedAt);
+        }
+        return asset;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private void store(String key, Asset asset, long loadedAt) {
+        Asset previous = cache.put(key, asset);
+        totalBytes.addAndGet(asset.size() - (previous != null ? previous.size() : 0));
+        // A invalidacao avanca a geracao antes de remover; conferir depois do put
+        // garante que ou ela remove esta entrada ou a propria carga desiste dela
+        if (generation.get() != loadedAt) {
+            remove(key, asset);
+            return;
+        }
+        if (totalBytes.get() > maxTotalBytes) {
+            evict();
+        }
+    }
+
+    // Tira as entradas acessadas ha mais tempo ate o total voltar ao limite
+    private synchronized void evict() {
+        while (totalBytes.get() > maxTotalBytes) {
+            Map.Entry<String, Asset> oldest = null;
+            for (Map.Entry<String, Asset> entry : cache.entrySet()) {
+                if (oldest == null || entry.getValue().lastAccess < oldest.getValue().lastAccess) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    private void remove(String key, Asset asset) {
+        if (cache.remove(key, asset)) {
+            totalBytes.addAndGet(-asset.size());
+        }
+    }
+
+    private void invalidate(Predicate<String> keys) {
+        generation.incrementAndGet();
+        for (Map.Entry<String, Asset> entry : cache.entrySet()) {
+            if (keys.test(entry.getKey())) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private Asset load(Path file) throws IOException {
+        long lastModified = Files.getLastModifiedTime(file).toMillis() / 1000 * 1000;
+        byte[] bytes = Files.readAllBytes(file);
+        String contentType = contentTypeOf(file.getFileName().toString());
+
+        byte[] gzip = null;
+        if (bytes.length >= gzipMinSize && isCompressible(contentType)) {
+            byte[] compressed = gzip(bytes);
+            if (compressed.length < bytes.length) {
+                gzip = compressed;
+            }
+        }
+
+        String hash = hash(bytes);
+        return new Asset(bytes, gzip, contentType, "\"" + hash + "\"",
+            gzip != null ? "\"" + hash + "-gz\"" : null, lastModified);
+    }
+
+    // Arquivo que nao cabe no cache: so os metadados, o conteudo sai do disco
+    private Asset stat(Path file, long length) throws IOException {
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        String etag = "\"" + Long.toHexString(modified) + "-" + Long.toHexString(length) + "\"";
+        return new Asset(file, length, contentTypeOf(file.getFileName().toString()), etag, modified / 1000 * 1000);
+    }
+
+    private void registerTree(Path dir) throws IOException {
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (Path d : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    invalidate(k -> true);
+                    continue;
+                }
+                Path changed = dir.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                    try {
+                        registerTree(changed);
+                    } catch (IOException e) {
+                        System.err.println("Erro ao observar novo diretorio " + changed + ": " + e.getMessage());
+                    }
+                }
+                String prefix = root.relativize(changed).toString();
+                invalidate(k -> k.equals(prefix) || k.startsWith(prefix + changed.getFileSystem().getSeparator()));
+            }
+            if (!key.reset()) {
+                invalidate(k -> root.resolve(k).startsWith(dir));
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponivel", e);
+        }
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/")
+            || contentType.startsWith("application/javascript")
+            || contentType.startsWith("application/json")
+            || contentType.startsWith("image/svg+xml");
+    }
+
+    private static String contentTypeOf(String filename) {
+        if (filename.endsWith(".html")) return "text/html; charset=UTF-8";
+        if (filename.endsWith(".css")) return "text/css; charset=UTF-8";
+        if (filename.endsWith(".js")) return "application/javascript; charset=UTF-8";
+        if (filename.endsWith(".json")) return "application/json; charset=UTF-8";
+        if (filename.endsWith(".svg")) return "image/svg+xml";
+        if (filename.endsWith(".png")) return "image/png";
+        if (filename.endsWith(".jpg") || filename.endsWith(".jpeg")) return "image/jpeg";
+        if (filename.endsWith(".gif")) return "image/gif";
+        if (filename.endsWith(".ico")) return "image/x-icon";
+        if (filename.endsWith(".woff2")) return "font/woff2";
+        if (filename.endsWith(".txt")) return "text/plain; charset=UTF-8";
+        return "application/octet-stream";
+    }
+
+    public static class Asset {
+        private final Path file;
+        private final long length;
+        private final byte[] bytes;
+        private final byte[] gzip;
+        private final String contentType;
+        private final String etag;
+        private final String gzipEtag;
+        private final long lastModified;
+        private final String lastModifiedHttp;
+        private volatile long lastAccess = System.nanoTime();
+
+        Asset(byte[] bytes, byte[] gzip, String contentType, String etag, String gzipEtag, long lastModified) {
+            this(null, bytes.length, bytes, gzip, contentType, etag, gzipEtag, lastModified);
+        }
+
+        Asset(Path file, long length, String contentType, String etag, long lastModified) {
+            this(file, length, null, null, contentType, etag, null, lastModified);
+        }
+
+        private Asset(Path file, long length, byte[] bytes, byte[] gzip, String contentType,
+                      String etag, String gzipEtag, long lastModified) {
+            this.file = file;
+            this.length = length;
+            this.bytes = bytes;
+            this.gzip = gzip;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.gzipEtag = gzipEtag;
+            this.lastModified = lastModified;
+            this.lastModifiedHttp = HTTP_DATE.format(Instant.ofEpochMilli(lastModified));
+        }
+
+        // null quando o arquivo nao esta em memoria: o conteudo fica em getFile()
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public byte[] getGzip() {
+            return gzip;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getGzipEtag() {
+            return gzipEtag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getLastModifiedHttp() {
+            return lastModifiedHttp;
+        }
+
+        long size() {
+            return length + (gzip != null ? gzip.length : 0);
+        }
+    }
+}
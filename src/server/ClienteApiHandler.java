@@ -3,50 +3,72 @@ package server;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import dao.ClienteDAO;
+import dao.CachedDAO;
+import dao.Consulta;
+import dao.Pagina;
+import exception.ClienteNaoEncontradoException;
+import exception.ConflitoVersaoException;
+import exception.CorpoMuitoGrandeException;
+import exception.RegistroNaoEncontradoException;
+import exception.VersaoObrigatoriaException;
 import model.Cliente;
+import util.CsvUtil;
 import util.JsonUtil;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.Map;
 
 public class ClienteApiHandler implements HttpHandler {
     
     private ClienteDAO clienteDAO;
+    private CachedDAO<Cliente> clienteCache;
+    private ResponseCache respostas;
+    private Router rotas;
     
-    public ClienteApiHandler() {
+    public ClienteApiHandler(Router rotas) {
         this.clienteDAO = new ClienteDAO();
+        this.clienteCache = new CachedDAO<>("clientes", ClienteDAO.TABELA, clienteDAO, ClienteNaoEncontradoException::new);
+        this.respostas = new ResponseCache("clientes", ClienteDAO.TABELA);
+        this.rotas = rotas;
+        
+        rotas.adicionar("GET", "/api/clientes", this::listar)
+            .adicionar("GET", "/api/clientes/{id:int}", this::buscar)
+            .adicionar("GET", "/api/clientes/exportar", this::exportar)
+            .adicionar("POST", "/api/clientes", this::inserir)
+            .adicionar("POST", "/api/clientes/importar", this::importar)
+            .adicionar("PUT", "/api/clientes/{id:int}", this::atualizar)
+            .adicionar("PATCH", "/api/clientes/{id:int}", this::atualizarParcial)
+            .adicionar("DELETE", "/api/clientes/{id:int}", this::deletar);
     }
     
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        String method = exchange.getRequestMethod();
-        String path = exchange.getRequestURI().getPath();
-        
         try {
-            if ("OPTIONS".equals(method)) {
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
                 WebServer.sendResponse(exchange, 200, "application/json", "");
                 return;
             }
             
-            switch (method) {
-                case "GET":
-                    handleGet(exchange, path);
-                    break;
-                case "POST":
-                    handlePost(exchange);
-                    break;
-                case "PUT":
-                    handlePut(exchange, path);
-                    break;
-                case "DELETE":
-                    handleDelete(exchange, path);
-                    break;
-                default:
-                    WebServer.sendResponse(exchange, 405, "text/plain", "Metodo nao permitido");
-            }
+            rotas.despachar(exchange);
+        } catch (ConflitoVersaoException e) {
+            WebServer.sendResponse(exchange, 409, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"id\":" + e.getId() + "," +
+                "\"versaoEnviada\":" + e.getVersaoEsperada() + "," +
+                "\"versaoAtual\":" + e.getVersaoAtual() + "}");
+        } catch (VersaoObrigatoriaException e) {
+            WebServer.sendResponse(exchange, 428, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"id\":" + e.getId() + "}");
+        } catch (CorpoMuitoGrandeException e) {
+            WebServer.sendResponse(exchange, 413, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"limiteBytes\":" + e.getLimiteBytes() + "}");
+        } catch (RegistroNaoEncontradoException e) {
+            WebServer.sendResponse(exchange, 404, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"}");
+        } catch (IllegalArgumentException e) {
+            WebServer.sendResponse(exchange, 400, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"}");
         } catch (Exception e) {
             e.printStackTrace();
             String errorMsg = e.getMessage() != null ? e.getMessage().replace("\"", "\\\"") : "Erro desconhecido";
@@ -55,53 +77,76 @@ public class ClienteApiHandler implements HttpHandler {
         }
     }
     
-    private void handleGet(HttpExchange exchange, String path) throws Exception {
-        // GET /api/clientes/{id}
-        if (path.matches("/api/clientes/\\d+")) {
-            String[] parts = path.split("/");
-            int id = Integer.parseInt(parts[parts.length - 1]);
-            
-            Cliente cliente = clienteDAO.buscarPorId(id);
-            String json = JsonUtil.clienteToJson(cliente);
-            WebServer.sendResponse(exchange, 200, "application/json", json);
-        }
-        // GET /api/clientes
-        else {
-            List<Cliente> clientes = clienteDAO.listarTodos();
-            String json = JsonUtil.clientesToJson(clientes);
-            WebServer.sendResponse(exchange, 200, "application/json", json);
+    // GET /api/clientes e GET /api/clientes?limite=&cursor=&ordem=&direcao=&<filtro>=
+    private void listar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            Consulta consulta = Consulta.de(WebServer.parseQuery(query));
+            respostas.enviar(exchange, w -> {
+                Pagina<Cliente> pagina = clienteDAO.listarPaginado(consulta);
+                JsonUtil.writePagina(w, pagina.getItens(), pagina.getProximoCursor(), pagina.getLimite(), JsonUtil::writeClientes);
+            });
+        } else {
+            respostas.enviar(exchange, w -> JsonUtil.writeClientes(w, clienteDAO.listarTodos()));
         }
     }
     
-    private void handlePost(HttpExchange exchange) throws Exception {
-        String body = readRequestBody(exchange);
-        Map<String, String> jsonMap = JsonUtil.jsonToMap(body);
-        Cliente cliente = JsonUtil.jsonToCliente(jsonMap);
+    // GET /api/clientes/{id}
+    private void buscar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Cliente cliente = clienteCache.buscarPorId(parametros.inteiro(0));
+        respostas.enviarRegistro(exchange, cliente.getVersao(), w -> JsonUtil.writeCliente(w, cliente));
+    }
+    
+    // GET /api/clientes/exportar?formato=ndjson|csv
+    private void exportar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Exportacao.enviar(exchange, "clientes", clienteDAO::exportar,
+            JsonUtil::writeCliente, CsvUtil.CABECALHO_CLIENTE, CsvUtil::writeCliente);
+    }
+    
+    // POST /api/clientes/importar?modo=inserir|atualizar (NDJSON)
+    private void importar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Importacao.receber(exchange, clienteDAO, JsonUtil::readCliente, Cliente::getVersao);
+    }
+    
+    // POST /api/clientes
+    private void inserir(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Cliente cliente = RequestBody.lerJson(exchange, JsonUtil::jsonToCliente);
         
         Cliente clienteInserido = clienteDAO.inserir(cliente);
         String json = JsonUtil.clienteToJson(clienteInserido);
         WebServer.sendResponse(exchange, 201, "application/json", json);
     }
     
-    private void handlePut(HttpExchange exchange, String path) throws Exception {
-        String[] parts = path.split("/");
-        int id = Integer.parseInt(parts[parts.length - 1]);
+    // PUT /api/clientes/{id}
+    private void atualizar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        int id = parametros.inteiro(0);
         
-        String body = readRequestBody(exchange);
-        Map<String, String> jsonMap = JsonUtil.jsonToMap(body);
-        Cliente cliente = JsonUtil.jsonToCliente(jsonMap);
+        Cliente cliente = RequestBody.lerJson(exchange, JsonUtil::jsonToCliente);
         cliente.setIdCliente(id);
+        // A data de cadastro nao e editavel: vem do cache, e so na falta dele o DAO a le
+        cliente.setDataCadastro(clienteCache.buscarOpcional(id).map(Cliente::getDataCadastro).orElse(null));
+        // Versao esperada: a do corpo ou, na falta dela, a do If-Match; sem nenhuma o DAO recusa (428)
+        if (cliente.getVersao() == null) {
+            cliente.setVersao(ResponseCache.versaoIfMatch(exchange));
+        }
         
         Cliente clienteAtualizado = clienteDAO.atualizar(cliente);
+        if (clienteAtualizado.getVersao() != null) {
+            exchange.getResponseHeaders().set("ETag", ResponseCache.etagRegistro(clienteAtualizado.getVersao()));
+        }
         String json = JsonUtil.clienteToJson(clienteAtualizado);
         WebServer.sendResponse(exchange, 200, "application/json", json);
     }
     
-    private void handleDelete(HttpExchange exchange, String path) throws Exception {
-        String[] parts = path.split("/");
-        int id = Integer.parseInt(parts[parts.length - 1]);
-        
-        boolean deletado = clienteDAO.deletar(id);
+    // PATCH /api/clientes/{id}: so os campos enviados mudam; null mantem o valor atual
+    private void atualizarParcial(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        EdicaoParcial.enviar(exchange, parametros.inteiro(0), "Cliente", clienteCache, Cliente::getVersao,
+            JsonUtil::jsonToCliente, clienteDAO::atualizarParcial, JsonUtil::clienteToJson);
+    }
+    
+    // DELETE /api/clientes/{id}
+    private void deletar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        boolean deletado = clienteDAO.deletar(parametros.inteiro(0));
         if (deletado) {
             WebServer.sendResponse(exchange, 200, "application/json", 
                 "{\"mensagem\":\"Cliente deletado com sucesso\"}");
@@ -110,16 +155,4 @@ public class ClienteApiHandler implements HttpHandler {
                 "{\"erro\":\"Cliente nao encontrado\"}");
         }
     }
-    
-    private String readRequestBody(HttpExchange exchange) throws IOException {
-        InputStream is = exchange.getRequestBody();
-        byte[] buffer = new byte[1024];
-        StringBuilder sb = new StringBuilder();
-        int bytesRead;
-        while ((bytesRead = is.read(buffer)) != -1) {
-            sb.append(new String(buffer, 0, bytesRead, StandardCharsets.UTF_8));
-        }
-        return sb.toString();
-    }
 }
-
@@ -0,0 +1,48 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool de ByteBuffers diretos de tamanho fixo. Buffers diretos sao caros de
+ * alocar e liberados so pelo GC, entao cada um e reaproveitado; quando o pool
+ * esta vazio um novo e alocado, e o excedente e descartado na devolucao.
+ */
+final class DirectBufferPool {
+    
+    private final int tamanho;
+    private final ArrayBlockingQueue<ByteBuffer> livres;
+    private final LongAdder alocados = new LongAdder();
+    
+    DirectBufferPool(int tamanho, int maximo) {
+        this.tamanho = tamanho;
+        this.livres = new ArrayBlockingQueue<>(Math.max(maximo, 1));
+    }
+    
+    ByteBuffer emprestar() {
+        ByteBuffer buffer = livres.poll();
+        if (buffer == null) {
+            alocados.increment();
+            return ByteBuffer.allocateDirect(tamanho);
+        }
+        return buffer;
+    }
+    
+    void devolver(ByteBuffer buffer) {
+        buffer.clear();
+        livres.offer(buffer);
+    }
+    
+    int getTamanho() {
+        return tamanho;
+    }
+    
+    String toJson() {
+        return "{" +
+            "\"tamanhoBuffer\":" + tamanho + "," +
+            "\"livres\":" + livres.size() + "," +
+            "\"alocados\":" + alocados.sum() +
+            "}";
+    }
+}
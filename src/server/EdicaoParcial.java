@@ -0,0 +1,80 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import dao.CachedDAO;
+import exception.ConflitoVersaoException;
+import exception.VersaoObrigatoriaException;
+import util.JsonReader;
+import util.JsonUtil;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * PATCH de um registro: o corpo traz so os campos que mudam e e aplicado
+ * sobre o registro atual (do cache). O DAO grava apenas as colunas que de
+ * fato ficaram diferentes, conferindo a versao no mesmo UPDATE, entao a
+ * resposta sai sem reler o registro do banco.
+ */
+final class EdicaoParcial {
+    
+    @FunctionalInterface
+    interface Mesclador<T> {
+        T mesclar(JsonReader corpo, T base) throws IOException;
+    }
+    
+    @FunctionalInterface
+    interface Gravador<T> {
+        T gravar(T atual, T alterado) throws Exception;
+    }
+    
+    private EdicaoParcial() {
+    }
+    
+    /**
+     * Versao esperada: a do If-Match ou, na falta dele, a do corpo; sem
+     * nenhuma das duas o PATCH e recusado (428), ja que a versao do cache nao
+     * diz o que o cliente leu. Responde 200 com o registro mesclado e a nova
+     * ETag, ou 409 se a versao nao bater.
+     */
+    static <T> void enviar(HttpExchange exchange, int id, String entidade, CachedDAO<T> cache,
+                           Function<T, Integer> versaoDe, Mesclador<T> mesclador,
+                           Gravador<T> gravador, Function<T, String> json) throws Exception {
+        Integer versaoIfMatch = ResponseCache.versaoIfMatch(exchange);
+        T base;
+        T alterado;
+        
+        // O buffer do corpo volta ao pool antes da gravacao
+        try (RequestBody corpo = RequestBody.ler(exchange)) {
+            Integer esperada = versaoIfMatch != null ? versaoIfMatch : JsonUtil.lerVersao(corpo.json());
+            if (esperada == null) {
+                throw new VersaoObrigatoriaException(entidade, id);
+            }
+            base = cache.buscarPorId(id);
+            alterado = mesclador.mesclar(corpo.json(), base);
+            
+            if (!Objects.equals(esperada, versaoDe.apply(base))) {
+                // O cache pode estar atras de uma gravacao feita fora deste processo: confere no banco uma vez
+                cache.getCache().invalidar(id);
+                base = cache.buscarPorId(id);
+                if (!Objects.equals(esperada, versaoDe.apply(base))) {
+                    throw new ConflitoVersaoException(entidade, id, esperada, versaoDe.apply(base));
+                }
+                alterado = mesclador.mesclar(corpo.json(), base);
+            }
+        }
+        
+        T gravado;
+        try {
+            gravado = gravador.gravar(base, alterado);
+        } catch (ConflitoVersaoException e) {
+            // A proxima leitura do cliente deve ver a versao do banco
+            cache.getCache().invalidar(id);
+            throw e;
+        }
+        
+        exchange.getResponseHeaders().set("ETag", ResponseCache.etagRegistro(versaoDe.apply(gravado)));
+        WebServer.sendResponse(exchange, 200, "application/json", json.apply(gravado));
+    }
+}
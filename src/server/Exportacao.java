@@ -0,0 +1,92 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import dao.RowConsumer;
+import util.CsvWriter;
+import util.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Envia uma tabela inteira como NDJSON ou CSV em transferencia chunked.
+ * Cada registro e escrito assim que sai do ResultSet, entao a memoria usada
+ * nao depende do tamanho da tabela. Se o cliente desconectar, a escrita
+ * falha e a consulta e cancelada pelo DAO. Se o banco falhar no meio, a
+ * conexao e cortada sem o chunk final, para o cliente nao tomar o arquivo
+ * truncado por completo.
+ */
+final class Exportacao {
+    
+    @FunctionalInterface
+    interface Fonte<T> {
+        long exportar(RowConsumer<T> consumidor) throws Exception;
+    }
+    
+    @FunctionalInterface
+    interface ItemJson<T> {
+        void write(JsonWriter w, T item) throws IOException;
+    }
+    
+    @FunctionalInterface
+    interface ItemCsv<T> {
+        void write(CsvWriter w, T item) throws IOException;
+    }
+    
+    private Exportacao() {
+    }
+    
+    static <T> void enviar(HttpExchange exchange, String nome, Fonte<T> fonte,
+                           ItemJson<T> json, String[] cabecalhoCsv, ItemCsv<T> csv) throws IOException {
+        String formato = WebServer.parseQuery(exchange.getRequestURI().getRawQuery())
+            .getOrDefault("formato", "ndjson");
+        boolean emCsv;
+        if (formato.equalsIgnoreCase("csv")) {
+            emCsv = true;
+        } else if (formato.equalsIgnoreCase("ndjson")) {
+            emCsv = false;
+        } else {
+            throw new IllegalArgumentException("Formato de exportacao invalido: " + formato + ". Use ndjson ou csv.");
+        }
+        
+        exchange.getResponseHeaders().set("Content-Disposition",
+            "attachment; filename=\"" + nome + (emCsv ? ".csv" : ".ndjson") + "\"");
+        OutputStream os = WebServer.sendChunkedHeaders(exchange, 200,
+            emCsv ? "text/csv; charset=UTF-8" : "application/x-ndjson");
+        if (os == null) {
+            return;
+        }
+        
+        long inicio = System.nanoTime();
+        boolean interrompida = false;
+        try {
+            long linhas;
+            if (emCsv) {
+                CsvWriter writer = new CsvWriter(os);
+                writer.linha(cabecalhoCsv);
+                linhas = fonte.exportar(item -> csv.write(writer, item));
+                writer.close();
+            } else {
+                JsonWriter writer = new JsonWriter(os);
+                linhas = fonte.exportar(item -> {
+                    json.write(writer, item);
+                    writer.newline();
+                });
+                writer.close();
+            }
+            System.out.println("Exportacao de " + nome + " concluida: " + linhas + " linhas em "
+                + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            System.err.println("Exportacao de " + nome + " interrompida pelo cliente: " + e.getMessage());
+        } catch (Exception e) {
+            // Os cabecalhos ja foram enviados, nao da para responder 500
+            System.err.println("Erro na exportacao de " + nome + ": " + e.getMessage());
+            interrompida = true;
+            WebServer.interromperChunked(os, "Exportacao de " + nome + " interrompida", e);
+        } finally {
+            if (!interrompida) {
+                exchange.close();
+            }
+        }
+    }
+}
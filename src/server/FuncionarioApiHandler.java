@@ -3,54 +3,71 @@ package server;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import dao.FuncionarioDAO;
+import dao.CachedDAO;
+import dao.Consulta;
+import dao.Pagina;
+import exception.ConflitoVersaoException;
+import exception.CorpoMuitoGrandeException;
+import exception.FuncionarioNaoEncontradoException;
+import exception.RegistroNaoEncontradoException;
+import exception.VersaoObrigatoriaException;
 import model.Funcionario;
-import model.Veterinario;
-import model.Tosador;
-import model.Atendente;
 import util.JsonUtil;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.util.List;
-import java.util.Map;
 
 public class FuncionarioApiHandler implements HttpHandler {
     
     private FuncionarioDAO funcionarioDAO;
+    private CachedDAO<Funcionario> funcionarioCache;
+    private ResponseCache respostas;
+    private Router rotas;
     
-    public FuncionarioApiHandler() {
+    public FuncionarioApiHandler(Router rotas) {
         this.funcionarioDAO = new FuncionarioDAO();
+        this.funcionarioCache = new CachedDAO<>("funcionarios", FuncionarioDAO.TABELA, funcionarioDAO, FuncionarioNaoEncontradoException::new);
+        this.respostas = new ResponseCache("funcionarios", FuncionarioDAO.TABELA);
+        this.rotas = rotas;
+        
+        rotas.adicionar("GET", "/api/funcionarios", this::listar)
+            .adicionar("GET", "/api/funcionarios/{id:int}", this::buscar)
+            .adicionar("GET", "/api/funcionarios/cargo/{cargo}", this::listarPorCargo)
+            .adicionar("POST", "/api/funcionarios", this::inserir)
+            .adicionar("POST", "/api/funcionarios/importar", this::importar)
+            .adicionar("PUT", "/api/funcionarios/{id:int}", this::atualizar)
+            .adicionar("PATCH", "/api/funcionarios/{id:int}", this::atualizarParcial)
+            .adicionar("DELETE", "/api/funcionarios/{id:int}", this::deletar);
     }
     
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        String method = exchange.getRequestMethod();
-        String path = exchange.getRequestURI().getPath();
-        
         try {
-            if ("OPTIONS".equals(method)) {
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
                 WebServer.sendResponse(exchange, 200, "application/json", "");
                 return;
             }
             
-            switch (method) {
-                case "GET":
-                    handleGet(exchange, path);
-                    break;
-                case "POST":
-                    handlePost(exchange);
-                    break;
-                case "PUT":
-                    handlePut(exchange, path);
-                    break;
-                case "DELETE":
-                    handleDelete(exchange, path);
-                    break;
-                default:
-                    WebServer.sendResponse(exchange, 405, "text/plain", "Metodo nao permitido");
-            }
+            rotas.despachar(exchange);
+        } catch (ConflitoVersaoException e) {
+            WebServer.sendResponse(exchange, 409, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"id\":" + e.getId() + "," +
+                "\"versaoEnviada\":" + e.getVersaoEsperada() + "," +
+                "\"versaoAtual\":" + e.getVersaoAtual() + "}");
+        } catch (VersaoObrigatoriaException e) {
+            WebServer.sendResponse(exchange, 428, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"id\":" + e.getId() + "}");
+        } catch (CorpoMuitoGrandeException e) {
+            WebServer.sendResponse(exchange, 413, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"limiteBytes\":" + e.getLimiteBytes() + "}");
+        } catch (RegistroNaoEncontradoException e) {
+            WebServer.sendResponse(exchange, 404, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"}");
+        } catch (IllegalArgumentException e) {
+            WebServer.sendResponse(exchange, 400, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"}");
         } catch (Exception e) {
             e.printStackTrace();
             String errorMsg = e.getMessage() != null ? e.getMessage().replace("\"", "\\\"") : "Erro desconhecido";
@@ -59,60 +76,76 @@ public class FuncionarioApiHandler implements HttpHandler {
         }
     }
     
-    private void handleGet(HttpExchange exchange, String path) throws Exception {
-        // GET /api/funcionarios/cargo/{cargo}
-        if (path.startsWith("/api/funcionarios/cargo/")) {
-            String cargo = path.substring("/api/funcionarios/cargo/".length());
-            List<Funcionario> funcionarios = funcionarioDAO.buscarPorCargo(cargo);
-            String json = JsonUtil.funcionariosToJson(funcionarios);
-            WebServer.sendResponse(exchange, 200, "application/json", json);
-        }
-        // GET /api/funcionarios/{id}
-        else if (path.matches("/api/funcionarios/\\d+")) {
-            String[] parts = path.split("/");
-            int id = Integer.parseInt(parts[parts.length - 1]);
-            
-            Funcionario funcionario = funcionarioDAO.buscarPorId(id);
-            String json = JsonUtil.funcionarioToJson(funcionario);
-            WebServer.sendResponse(exchange, 200, "application/json", json);
-        }
-        // GET /api/funcionarios
-        else {
-            List<Funcionario> funcionarios = funcionarioDAO.listarTodos();
-            String json = JsonUtil.funcionariosToJson(funcionarios);
-            WebServer.sendResponse(exchange, 200, "application/json", json);
+    // GET /api/funcionarios e GET /api/funcionarios?limite=&cursor=&ordem=&direcao=&<filtro>=
+    private void listar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            Consulta consulta = Consulta.de(WebServer.parseQuery(query));
+            respostas.enviar(exchange, w -> {
+                Pagina<Funcionario> pagina = funcionarioDAO.listarPaginado(consulta);
+                JsonUtil.writePagina(w, pagina.getItens(), pagina.getProximoCursor(), pagina.getLimite(), JsonUtil::writeFuncionarios);
+            });
+        } else {
+            respostas.enviar(exchange, w -> JsonUtil.writeFuncionarios(w, funcionarioDAO.listarTodos()));
         }
     }
     
-    private void handlePost(HttpExchange exchange) throws Exception {
-        String body = readRequestBody(exchange);
-        Map<String, String> jsonMap = JsonUtil.jsonToMap(body);
-        Funcionario funcionario = criarFuncionarioDoJson(jsonMap);
+    // GET /api/funcionarios/{id}
+    private void buscar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Funcionario funcionario = funcionarioCache.buscarPorId(parametros.inteiro(0));
+        respostas.enviarRegistro(exchange, funcionario.getVersao(), w -> JsonUtil.writeFuncionario(w, funcionario));
+    }
+    
+    // GET /api/funcionarios/cargo/{cargo}
+    private void listarPorCargo(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        String cargo = parametros.texto(0);
+        respostas.enviar(exchange, w -> JsonUtil.writeFuncionarios(w, funcionarioDAO.buscarPorCargo(cargo)));
+    }
+    
+    // POST /api/funcionarios/importar?modo=inserir|atualizar (NDJSON)
+    private void importar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Importacao.receber(exchange, funcionarioDAO, JsonUtil::readFuncionario, Funcionario::getVersao);
+    }
+    
+    // POST /api/funcionarios
+    private void inserir(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Funcionario funcionario = RequestBody.lerJson(exchange, JsonUtil::jsonToFuncionario);
         
         Funcionario funcionarioInserido = funcionarioDAO.inserir(funcionario);
         String json = JsonUtil.funcionarioToJson(funcionarioInserido);
         WebServer.sendResponse(exchange, 201, "application/json", json);
     }
     
-    private void handlePut(HttpExchange exchange, String path) throws Exception {
-        String[] parts = path.split("/");
-        int id = Integer.parseInt(parts[parts.length - 1]);
+    // PUT /api/funcionarios/{id}
+    private void atualizar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        int id = parametros.inteiro(0);
         
-        String body = readRequestBody(exchange);
-        Map<String, String> jsonMap = JsonUtil.jsonToMap(body);
-        Funcionario funcionario = criarFuncionarioDoJson(jsonMap);
+        Funcionario funcionario = RequestBody.lerJson(exchange, JsonUtil::jsonToFuncionario);
         funcionario.setIdFuncionario(id);
+        // A data de cadastro nao e editavel: vem do cache, e so na falta dele o DAO a le
+        funcionario.setDataCadastro(funcionarioCache.buscarOpcional(id).map(Funcionario::getDataCadastro).orElse(null));
+        // Versao esperada: a do corpo ou, na falta dela, a do If-Match; sem nenhuma o DAO recusa (428)
+        if (funcionario.getVersao() == null) {
+            funcionario.setVersao(ResponseCache.versaoIfMatch(exchange));
+        }
         
         Funcionario funcionarioAtualizado = funcionarioDAO.atualizar(funcionario);
+        if (funcionarioAtualizado.getVersao() != null) {
+            exchange.getResponseHeaders().set("ETag", ResponseCache.etagRegistro(funcionarioAtualizado.getVersao()));
+        }
         String json = JsonUtil.funcionarioToJson(funcionarioAtualizado);
         WebServer.sendResponse(exchange, 200, "application/json", json);
     }
     
-    private void handleDelete(HttpExchange exchange, String path) throws Exception {
-        String[] parts = path.split("/");
-        int id = Integer.parseInt(parts[parts.length - 1]);
-        
-        boolean deletado = funcionarioDAO.deletar(id);
+    // PATCH /api/funcionarios/{id}: so os campos enviados mudam; null mantem o valor atual
+    private void atualizarParcial(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        EdicaoParcial.enviar(exchange, parametros.inteiro(0), "Funcionário", funcionarioCache, Funcionario::getVersao,
+            JsonUtil::jsonToFuncionario, funcionarioDAO::atualizarParcial, JsonUtil::funcionarioToJson);
+    }
+    
+    // DELETE /api/funcionarios/{id}
+    private void deletar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        boolean deletado = funcionarioDAO.deletar(parametros.inteiro(0));
         if (deletado) {
             WebServer.sendResponse(exchange, 200, "application/json", 
                 "{\"mensagem\":\"Funcionario deletado com sucesso\"}");
@@ -121,72 +154,4 @@ public class FuncionarioApiHandler implements HttpHandler {
                 "{\"erro\":\"Funcionario nao encontrado\"}");
         }
     }
-    
-    private Funcionario criarFuncionarioDoJson(Map<String, String> jsonMap) {
-        String cargo = jsonMap.get("cargo");
-        String nome = jsonMap.get("nome");
-        String cpf = jsonMap.get("cpf");
-        String telefone = jsonMap.get("telefone");
-        String email = jsonMap.get("email");
-        
-        Double salarioBase = null;
-        if (jsonMap.containsKey("salarioBase") && jsonMap.get("salarioBase") != null) {
-            try {
-                salarioBase = Double.parseDouble(jsonMap.get("salarioBase"));
-            } catch (NumberFormatException e) {
-                // Ignora erro de conversão
-            }
-        }
-        
-        LocalDate dataContratacao = null;
-        if (jsonMap.containsKey("dataContratacao") && jsonMap.get("dataContratacao") != null) {
-            try {
-                dataContratacao = LocalDate.parse(jsonMap.get("dataContratacao"));
-            } catch (Exception e) {
-                // Ignora erro de conversão
-            }
-        }
-        
-        if (cargo == null) cargo = "ATENDENTE";
-        
-        if ("VETERINARIO".equalsIgnoreCase(cargo)) {
-            Veterinario vet = new Veterinario();
-            vet.setNome(nome);
-            vet.setCpf(cpf);
-            vet.setTelefone(telefone);
-            vet.setEmail(email);
-            vet.setSalarioBase(salarioBase);
-            vet.setDataContratacao(dataContratacao);
-            return vet;
-        } else if ("TOSADOR".equalsIgnoreCase(cargo)) {
-            Tosador tos = new Tosador();
-            tos.setNome(nome);
-            tos.setCpf(cpf);
-            tos.setTelefone(telefone);
-            tos.setEmail(email);
-            tos.setSalarioBase(salarioBase);
-            tos.setDataContratacao(dataContratacao);
-            return tos;
-        } else {
-            Atendente ate = new Atendente();
-            ate.setNome(nome);
-            ate.setCpf(cpf);
-            ate.setTelefone(telefone);
-            ate.setEmail(email);
-            ate.setSalarioBase(salarioBase);
-            ate.setDataContratacao(dataContratacao);
-            return ate;
-        }
-    }
-    
-    private String readRequestBody(HttpExchange exchange) throws IOException {
-        InputStream is = exchange.getRequestBody();
-        byte[] buffer = new byte[1024];
-        StringBuilder sb = new StringBuilder();
-        int bytesRead;
-        while ((bytesRead = is.read(buffer)) != -1) {
-            sb.append(new String(buffer, 0, bytesRead, StandardCharsets.UTF_8));
-        }
-        return sb.toString();
-    }
 }
@@ -0,0 +1,167 @@
+package server;
+
+import com.sun.net.httpserver.HttpHandler;
+import util.Histogram;
+import util.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metricas HTTP por rota: tempo de atendimento, tamanho do corpo enviado e
+ * contagem por status. Cada contexto do WebServer e envolvido por medir();
+ * quando o Router encontra a rota, troca a serie da requisicao pela da rota,
+ * entao o tempo e o status incluem a resposta de erro montada pelo handler.
+ * Requisicoes sem rota (404, 405, admissao recusada) e contextos sem Router
+ * ficam na serie do contexto.
+ */
+final class HttpMetrics {
+    
+    private static final String DURACAO = "petshop_http_request_duration_seconds";
+    private static final String TAMANHO = "petshop_http_response_size_bytes";
+    private static final String RESPOSTAS = "petshop_http_responses_total";
+    
+    // Serie da requisicao em andamento na thread
+    private static final ThreadLocal<Serie> ATUAL = new ThreadLocal<>();
+    // Contador do corpo em streaming, reaproveitado entre as respostas da thread
+    private static final ThreadLocal<Contador> CONTADOR = ThreadLocal.withInitial(Contador::new);
+    
+    static final class Serie {
+        private final String nome;
+        private final Histogram duracao;
+        private final Histogram tamanho;
+        private final AtomicLongArray porStatus;
+        
+        private Serie(String nome) {
+            this.nome = nome;
+            this.duracao = Metrics.histograma(DURACAO,
+                "Tempo de atendimento da requisicao, do inicio do handler ao fim da resposta",
+                Histogram.latencia(), "rota", nome);
+            this.tamanho = Metrics.histograma(TAMANHO,
+                "Bytes do corpo da resposta, depois da compressao", Histogram.bytes(), "rota", nome);
+            this.porStatus = Metrics.contadorPorStatus(RESPOSTAS, "Respostas enviadas por status", "rota", nome);
+        }
+        
+        private void registrar(int status, long nanos) {
+            duracao.registrar(nanos);
+            porStatus.incrementAndGet(status > 0 && status < Metrics.CODIGOS_STATUS ? status : 0);
+        }
+    }
+    
+    private HttpMetrics() {
+    }
+    
+    /** Serie de uma rota do Router ("GET /api/pets/{id:int}"). */
+    static Serie rota(String chave) {
+        return new Serie(chave);
+    }
+    
+    /** Mede todas as requisicoes de um contexto. */
+    static HttpHandler medir(String contexto, HttpHandler handler) {
+        Serie serie = new Serie(contexto);
+        return exchange -> {
+            long inicio = System.nanoTime();
+            ATUAL.set(serie);
+            try {
+                handler.handle(exchange);
+            } finally {
+                encerrarContador();
+                Serie atendida = ATUAL.get();
+                // set(null) em vez de remove(): a entrada do ThreadLocal fica para a proxima requisicao da thread
+                ATUAL.set(null);
+                atendida.registrar(exchange.getResponseCode(), System.nanoTime() - inicio);
+            }
+        };
+    }
+    
+    /** Chamado pelo Router quando encontra a rota da requisicao. */
+    static void usar(Serie serie) {
+        if (ATUAL.get() != null) {
+            ATUAL.set(serie);
+        }
+    }
+    
+    /** Nome da serie da requisicao em andamento na thread, ou null fora de medir(). */
+    static String rotaAtual() {
+        Serie serie = ATUAL.get();
+        return serie != null ? serie.nome : null;
+    }
+    
+    static void bytesEnviados(long bytes) {
+        Serie serie = ATUAL.get();
+        if (serie != null) {
+            serie.tamanho.registrar(bytes);
+        }
+    }
+    
+    /**
+     * Conta os bytes de um corpo enviado em streaming sem compressao (o
+     * Compressor conta os seus) e registra no close(). O contador e da thread
+     * e volta a ser usado na proxima resposta dela, entao nao ha um stream
+     * novo por resposta; com threads virtuais, uma por requisicao, ele e
+     * criado junto com a thread.
+     */
+    static OutputStream contar(OutputStream destino) {
+        Contador contador = CONTADOR.get();
+        if (contador.destino != null) {
+            // Um corpo ainda aberto nesta thread fica com o contador; este ganha um proprio
+            contador = new Contador();
+        }
+        contador.destino = destino;
+        contador.enviados = 0;
+        return contador;
+    }
+    
+    // Registra o corpo que o handler nao fechou, para o contador nao ficar preso a ele
+    private static void encerrarContador() {
+        Contador contador = CONTADOR.get();
+        if (contador.destino != null) {
+            contador.encerrar();
+        }
+    }
+    
+    private static final class Contador extends OutputStream {
+        private OutputStream destino;
+        private long enviados;
+        
+        @Override
+        public void write(int b) throws IOException {
+            aberto().write(b);
+            enviados++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            aberto().write(b, off, len);
+            enviados += len;
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            aberto().flush();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (destino == null) {
+                return;
+            }
+            OutputStream corpo = destino;
+            encerrar();
+            corpo.close();
+        }
+        
+        private void encerrar() {
+            destino = null;
+            bytesEnviados(enviados);
+        }
+        
+        private OutputStream aberto() throws IOException {
+            if (destino == null) {
+                throw new IOException("Resposta ja encerrada");
+            }
+            return destino;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package server;
+
+import com.sun.net.httpserver.Headers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parser incremental do cabecalho das requisicoes HTTP/1.1 para o
+ * NioServerEngine. Recebe o buffer de entrada da conexao a cada leitura e
+ * devolve a requisicao assim que o cabecalho chegou inteiro; o cabecalho
+ * precisa caber no buffer de entrada. O corpo nao passa por aqui: fica no
+ * buffer e no socket, e o handler o le em streaming pelo NioRequestBody,
+ * que usa a delimitacao (Content-Length ou chunked) decidida aqui.
+ */
+final class HttpRequestParser {
+    
+    private static final int TAMANHO_MAXIMO_LINHA_CHUNK = 1024;
+    
+    static final class Requisicao {
+        final String metodo;
+        final String alvo;
+        final String protocolo;
+        final Headers cabecalhos;
+        final boolean manterConexao;
+        final boolean esperaContinue;
+        // Bytes do corpo pelo Content-Length; CHUNKED quando vem em chunks
+        long tamanhoCorpo;
+        
+        Requisicao(String metodo, String alvo, String protocolo, Headers cabecalhos) {
+            this.metodo = metodo;
+            this.alvo = alvo;
+            this.protocolo = protocolo;
+            this.cabecalhos = cabecalhos;
+            String conexao = cabecalhos.getFirst("Connection");
+            this.manterConexao = "HTTP/1.1".equals(protocolo)
+                ? !"close".equalsIgnoreCase(conexao)
+                : "keep-alive".equalsIgnoreCase(conexao);
+            this.esperaContinue = "100-continue".equalsIgnoreCase(cabecalhos.getFirst("Expect"));
+        }
+    }
+    
+    static final long CHUNKED = -1;
+    
+    /** Requisicao malformada; o motor responde com o status e fecha a conexao. */
+    static final class ErroHttp extends Exception {
+        final int status;
+        
+        ErroHttp(int status, String mensagem) {
+            super(mensagem, null, false, false);
+            this.status = status;
+        }
+    }
+    
+    private HttpRequestParser() {
+    }
+    
+    /**
+     * Consome o cabecalho do buffer (em modo leitura) quando ele chegou
+     * inteiro, ate a linha em branco. Retorna null se ainda faltam bytes.
+     */
+    static Requisicao analisar(ByteBuffer entrada) throws ErroHttp {
+        // Linhas vazias antes da linha de requisicao sao ignoradas (RFC 9112, 2.2)
+        while (entrada.remaining() >= 2 && entrada.get(entrada.position()) == '\r'
+                && entrada.get(entrada.position() + 1) == '\n') {
+            entrada.position(entrada.position() + 2);
+        }
+        
+        int inicio = entrada.position();
+        int fim = -1;
+        for (int i = inicio; i + 3 < entrada.limit(); i++) {
+            if (entrada.get(i) == '\r' && entrada.get(i + 1) == '\n' && entrada.get(i + 2) == '\r' && entrada.get(i + 3) == '\n') {
+                fim = i;
+                break;
+            }
+        }
+        if (fim < 0) {
+            if (entrada.remaining() == entrada.capacity()) {
+                throw new ErroHttp(431, "Cabecalho maior que " + entrada.capacity() + " bytes");
+            }
+            return null;
+        }
+        
+        byte[] bytes = new byte[fim - inicio];
+        entrada.get(bytes);
+        entrada.position(fim + 4);
+        String[] linhas = new String(bytes, StandardCharsets.ISO_8859_1).split("\r\n");
+        
+        String[] partes = linhas[0].split(" ");
+        if (partes.length != 3 || !partes[2].startsWith("HTTP/1.")) {
+            throw new ErroHttp(400, "Linha de requisicao invalida");
+        }
+        Headers cabecalhos = new Headers();
+        for (int i = 1; i < linhas.length; i++) {
+            int doisPontos = linhas[i].indexOf(':');
+            if (doisPontos <= 0) {
+                throw new ErroHttp(400, "Cabecalho invalido");
+            }
+            cabecalhos.add(linhas[i].substring(0, doisPontos).trim(), linhas[i].substring(doisPontos + 1).trim());
+        }
+        Requisicao requisicao = new Requisicao(partes[0], partes[1], partes[2], cabecalhos);
+        
+        String transferencia = cabecalhos.getFirst("Transfer-Encoding");
+        String tamanho = cabecalhos.getFirst("Content-Length");
+        if (transferencia != null) {
+            if (!"chunked".equalsIgnoreCase(transferencia)) {
+                throw new ErroHttp(501, "Transfer-Encoding nao suportado: " + transferencia);
+            }
+            requisicao.tamanhoCorpo = CHUNKED;
+        } else if (tamanho != null) {
+            try {
+                requisicao.tamanhoCorpo = Long.parseLong(tamanho);
+            } catch (NumberFormatException e) {
+                throw new ErroHttp(400, "Content-Length invalido");
+            }
+            if (requisicao.tamanhoCorpo < 0) {
+                throw new ErroHttp(400, "Content-Length invalido");
+            }
+        }
+        return requisicao;
+    }
+    
+    // Linha terminada em CRLF, sem o terminador; null se ainda nao chegou inteira
+    static String lerLinha(ByteBuffer entrada) throws ErroHttp {
+        for (int i = entrada.position(); i + 1 < entrada.limit(); i++) {
+            if (entrada.get(i) == '\r' && entrada.get(i + 1) == '\n') {
+                byte[] bytes = new byte[i - entrada.position()];
+                entrada.get(bytes);
+                entrada.position(i + 2);
+                return new String(bytes, StandardCharsets.ISO_8859_1);
+            }
+        }
+        if (entrada.remaining() > TAMANHO_MAXIMO_LINHA_CHUNK) {
+            throw new ErroHttp(400, "Linha de chunk longa demais");
+        }
+        return null;
+    }
+}
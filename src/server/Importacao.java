@@ -0,0 +1,309 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import dao.IDAO;
+import exception.LoteException;
+import util.ConfigUtil;
+import util.JsonReader;
+import util.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Importacao em massa a partir de um corpo NDJSON (um objeto por linha).
+ * As linhas sao lidas do corpo conforme chegam e gravadas em blocos com
+ * inserirEmLote/atualizarEmLote. Linhas invalidas ou recusadas pelo banco
+ * entram no relatorio de erros sem interromper o restante da importacao.
+ * Na atualizacao cada linha precisa trazer a versao que o cliente leu, como
+ * no PUT; as que vierem sem ela sao recusadas antes de chegar ao banco.
+ */
+final class Importacao<T> {
+    
+    private static final int TAMANHO_BLOCO = ConfigUtil.getInt("http.import.blockSize", 500);
+    private static final int TAMANHO_MAXIMO_LINHA = ConfigUtil.getInt("http.import.maxLineBytes", 64 * 1024);
+    private static final int MAXIMO_ERROS_DETALHADOS = 100;
+    
+    private static final byte[] F_MODO = JsonWriter.name("modo");
+    private static final byte[] F_LINHAS = JsonWriter.name("linhas");
+    private static final byte[] F_GRAVADOS = JsonWriter.name("gravados");
+    private static final byte[] F_ERROS = JsonWriter.name("erros");
+    private static final byte[] F_DETALHES = JsonWriter.name("detalhesErros");
+    private static final byte[] F_LINHA = JsonWriter.name("linha");
+    private static final byte[] F_ERRO = JsonWriter.name("erro");
+    
+    @FunctionalInterface
+    interface Leitor<T> {
+        T ler(JsonReader reader) throws IOException;
+    }
+    
+    private final IDAO<T> dao;
+    private final Function<T, Integer> versaoDe;
+    private final boolean atualizar;
+    
+    private final List<T> bloco = new ArrayList<>(TAMANHO_BLOCO);
+    private final List<Long> linhasDoBloco = new ArrayList<>(TAMANHO_BLOCO);
+    private final List<Long> errosLinha = new ArrayList<>();
+    private final List<String> errosMensagem = new ArrayList<>();
+    private long linhas;
+    private long gravados;
+    private long erros;
+    
+    private Importacao(IDAO<T> dao, Function<T, Integer> versaoDe, boolean atualizar) {
+        this.dao = dao;
+        this.versaoDe = versaoDe;
+        this.atualizar = atualizar;
+    }
+    
+    /**
+     * POST .../importar?modo=inserir|atualizar com corpo NDJSON.
+     * Responde 200 com o resumo, mesmo que algumas linhas tenham falhado.
+     */
+    static <T> void receber(HttpExchange exchange, IDAO<T> dao, Leitor<T> leitor,
+                            Function<T, Integer> versaoDe) throws IOException {
+        String modo = WebServer.parseQuery(exchange.getRequestURI().getRawQuery()).getOrDefault("modo", "inserir");
+        if (!modo.equals("inserir") && !modo.equals("atualizar")) {
+            throw new IllegalArgumentException("Modo de importacao invalido: " + modo + ". Use inserir ou atualizar.");
+        }
+        
+        Importacao<T> importacao = new Importacao<>(dao, versaoDe, modo.equals("atualizar"));
+        importacao.processar(exchange.getRequestBody(), leitor);
+        WebServer.sendJson(exchange, 200, importacao::escreverResumo);
+    }
+    
+    private void processar(InputStream in, Leitor<T> leitor) throws IOException {
+        LeitorLinhas entrada = new LeitorLinhas(in, TAMANHO_MAXIMO_LINHA);
+        while (entrada.proxima()) {
+            linhas++;
+            if (entrada.longaDemais) {
+                registrarErro(linhas, "Linha maior que " + TAMANHO_MAXIMO_LINHA + " bytes.");
+                continue;
+            }
+            if (entrada.vazia()) {
+                continue;
+            }
+            
+            T item;
+            try {
+                JsonReader reader = new JsonReader(entrada.buffer, entrada.inicioLinha, entrada.fimLinha - entrada.inicioLinha);
+                item = leitor.ler(reader);
+                reader.endDocument();
+            } catch (IllegalArgumentException e) {
+                registrarErro(linhas, e.getMessage());
+                continue;
+            }
+            if (atualizar && versaoDe.apply(item) == null) {
+                registrarErro(linhas, "Linha sem versao: a atualizacao exige a versao lida do registro.");
+                continue;
+            }
+            
+            bloco.add(item);
+            linhasDoBloco.add(linhas);
+            if (bloco.size() >= TAMANHO_BLOCO) {
+                gravarBloco();
+            }
+        }
+        gravarBloco();
+    }
+    
+    private void gravarBloco() {
+        if (bloco.isEmpty()) {
+            return;
+        }
+        
+        int inicioIndividual = 0;
+        try {
+            if (atualizar) {
+                conferirAtualizados(dao.atualizarEmLote(bloco));
+            } else {
+                dao.inserirEmLote(bloco);
+                gravados += bloco.size();
+            }
+            inicioIndividual = bloco.size();
+        } catch (LoteException e) {
+            if (atualizar) {
+                conferirAtualizados(e.getLinhasConfirmadas());
+            } else {
+                gravados += e.getConfirmados();
+            }
+            inicioIndividual = e.getConfirmados();
+        } catch (Exception e) {
+            // Recusado pelo DAO antes do primeiro executeBatch (ex.: registro sem ID): nada foi gravado.
+            // Falhas depois disso chegam como LoteException, com os registros ja confirmados
+        }
+        
+        // O lote falhou: grava o restante um a um para descobrir quais linhas o banco recusa
+        for (int i = inicioIndividual; i < bloco.size(); i++) {
+            if (atualizar) {
+                atualizarIndividual(i);
+                continue;
+            }
+            try {
+                dao.inserir(bloco.get(i));
+                gravados++;
+            } catch (Exception e) {
+                registrarErro(linhasDoBloco.get(i), e.getMessage());
+            }
+        }
+        
+        bloco.clear();
+        linhasDoBloco.clear();
+    }
+    
+    // afetadas cobre o inicio do bloco, na mesma ordem
+    private void conferirAtualizados(int[] afetadas) {
+        for (int i = 0; i < afetadas.length; i++) {
+            if (afetadas[i] > 0) {
+                gravados++;
+            } else {
+                // Nenhuma linha: ID inexistente ou versao desatualizada. O atualizar
+                // individual consulta o registro e lanca a excecao certa para o relatorio
+                atualizarIndividual(i);
+            }
+        }
+    }
+    
+    private void atualizarIndividual(int indice) {
+        try {
+            dao.atualizar(bloco.get(indice));
+            gravados++;
+        } catch (Exception e) {
+            registrarErro(linhasDoBloco.get(indice), e.getMessage());
+        }
+    }
+    
+    private void registrarErro(long linha, String mensagem) {
+        erros++;
+        if (errosLinha.size() < MAXIMO_ERROS_DETALHADOS) {
+            errosLinha.add(linha);
+            errosMensagem.add(mensagem != null ? mensagem : "Erro desconhecido");
+        }
+    }
+    
+    private void escreverResumo(JsonWriter w) throws IOException {
+        w.beginObject();
+        w.name(F_MODO).value(atualizar ? "atualizar" : "inserir");
+        w.name(F_LINHAS).value(linhas);
+        w.name(F_GRAVADOS).value(gravados);
+        w.name(F_ERROS).value(erros);
+        w.name(F_DETALHES).beginArray();
+        for (int i = 0; i < errosLinha.size(); i++) {
+            w.beginObject();
+            w.name(F_LINHA).value(errosLinha.get(i));
+            w.name(F_ERRO).value(errosMensagem.get(i));
+            w.endObject();
+        }
+        w.endArray();
+        w.endObject();
+    }
+    
+    /**
+     * Separa o corpo em linhas sem converter para String; a linha atual fica
+     * em buffer[inicioLinha, fimLinha) ate a proxima chamada.
+     */
+    private static final class LeitorLinhas {
+        private final InputStream in;
+        private final int tamanhoMaximo;
+        private byte[] buffer = new byte[8192];
+        private int inicio;
+        private int fim;
+        private boolean eof;
+        
+        int inicioLinha;
+        int fimLinha;
+        boolean longaDemais;
+        
+        LeitorLinhas(InputStream in, int tamanhoMaximo) {
+            this.in = in;
+            this.tamanhoMaximo = tamanhoMaximo;
+        }
+        
+        boolean proxima() throws IOException {
+            longaDemais = false;
+            int busca = inicio;
+            while (true) {
+                for (int i = busca; i < fim; i++) {
+                    if (buffer[i] == '\n') {
+                        definirLinha(inicio, i);
+                        inicio = i + 1;
+                        return true;
+                    }
+                }
+                busca = fim;
+                
+                if (eof) {
+                    if (inicio < fim) {
+                        definirLinha(inicio, fim);
+                        inicio = fim;
+                        return true;
+                    }
+                    return false;
+                }
+                if (fim - inicio >= tamanhoMaximo) {
+                    longaDemais = true;
+                    descartarAteQuebra();
+                    return true;
+                }
+                
+                if (inicio > 0) {
+                    System.arraycopy(buffer, inicio, buffer, 0, fim - inicio);
+                    busca -= inicio;
+                    fim -= inicio;
+                    inicio = 0;
+                }
+                if (fim == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, tamanhoMaximo));
+                }
+                ler();
+            }
+        }
+        
+        boolean vazia() {
+            for (int i = inicioLinha; i < fimLinha; i++) {
+                byte b = buffer[i];
+                if (b != ' ' && b != '\t' && b != '\r') {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private void definirLinha(int de, int ate) {
+            if (ate > de && buffer[ate - 1] == '\r') {
+                ate--;
+            }
+            inicioLinha = de;
+            fimLinha = ate;
+        }
+        
+        private void descartarAteQuebra() throws IOException {
+            while (true) {
+                for (int i = inicio; i < fim; i++) {
+                    if (buffer[i] == '\n') {
+                        inicio = i + 1;
+                        return;
+                    }
+                }
+                inicio = 0;
+                fim = 0;
+                if (eof) {
+                    return;
+                }
+                ler();
+            }
+        }
+        
+        private void ler() throws IOException {
+            int n = in.read(buffer, fim, buffer.length - fim);
+            if (n < 0) {
+                eof = true;
+            } else {
+                fim += n;
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package server;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+/** Motor sobre o com.sun.net.httpserver.HttpServer do JDK. */
+class JdkServerEngine implements ServerEngine {
+    
+    private final HttpServer server;
+    
+    JdkServerEngine(InetSocketAddress address, Executor executor) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+    }
+    
+    @Override
+    public void createContext(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+    
+    @Override
+    public void start() {
+        server.start();
+    }
+    
+    @Override
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+    }
+    
+    @Override
+    public String getName() {
+        return JDK;
+    }
+    
+    @Override
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+    
+    @Override
+    public String toJson() {
+        return "{\"motor\":\"" + JDK + "\"}";
+    }
+}
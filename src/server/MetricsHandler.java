@@ -0,0 +1,28 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import util.Metrics;
+
+import java.io.IOException;
+
+/**
+ * GET /metrics: todas as metricas registradas em util.Metrics, no formato
+ * texto do Prometheus.
+ */
+public class MetricsHandler implements HttpHandler {
+    
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            WebServer.sendResponse(exchange, 405, "text/plain", "Metodo nao permitido");
+            return;
+        }
+        
+        StringBuilder out = new StringBuilder(64 * 1024);
+        Metrics.escrever(out);
+        WebServer.sendResponse(exchange, 200, CONTENT_TYPE, out.toString());
+    }
+}
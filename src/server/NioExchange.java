@@ -0,0 +1,403 @@
+package server;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HttpExchange do NioServerEngine. O corpo da requisicao e lido do socket
+ * conforme o handler consome (NioRequestBody) e a resposta e escrita num buffer
+ * direto do pool, enviado ao socket quando enche ou no close(). Segue as
+ * regras do HttpServer do JDK para sendResponseHeaders: tamanho 0 e corpo
+ * chunked, -1 e sem corpo.
+ */
+final class NioExchange extends HttpExchange {
+    
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] FIM_CHUNKED = { '0', '\r', '\n', '\r', '\n' };
+    
+    /** HttpContext minimo: so caminho, handler e atributos. */
+    static final class Contexto extends HttpContext {
+        private final String path;
+        private HttpHandler handler;
+        private final Map<String, Object> atributos = new HashMap<>();
+        private final List<Filter> filtros = new ArrayList<>();
+        
+        Contexto(String path, HttpHandler handler) {
+            this.path = path;
+            this.handler = handler;
+        }
+        
+        @Override
+        public HttpHandler getHandler() {
+            return handler;
+        }
+        
+        @Override
+        public void setHandler(HttpHandler handler) {
+            this.handler = handler;
+        }
+        
+        @Override
+        public String getPath() {
+            return path;
+        }
+        
+        // Nao ha HttpServer por baixo deste motor
+        @Override
+        public HttpServer getServer() {
+            return null;
+        }
+        
+        @Override
+        public Map<String, Object> getAttributes() {
+            return atributos;
+        }
+        
+        @Override
+        public List<Filter> getFilters() {
+            return filtros;
+        }
+        
+        @Override
+        public Authenticator setAuthenticator(Authenticator auth) {
+            throw new UnsupportedOperationException("Autenticacao nao suportada no motor nio");
+        }
+        
+        @Override
+        public Authenticator getAuthenticator() {
+            return null;
+        }
+    }
+    
+    private final NioServerEngine.Conexao conexao;
+    private final HttpRequestParser.Requisicao requisicao;
+    private final Contexto contexto;
+    private final URI uri;
+    private final Headers cabecalhosResposta = new Headers();
+    private final Map<String, Object> atributos = new HashMap<>();
+    
+    private final NioRequestBody corpoRequisicao;
+    private InputStream entrada;
+    private OutputStream saida;
+    private final Saida saidaOriginal = new Saida();
+    
+    private int codigo = -1;
+    private boolean chunked;
+    private boolean semCorpo;
+    private long restante;
+    private boolean fecharConexao;
+    private boolean finalizado;
+    private ByteBuffer cabecalhoPendente;
+    private ByteBuffer buffer;
+    
+    NioExchange(NioServerEngine.Conexao conexao, HttpRequestParser.Requisicao requisicao,
+                Contexto contexto, URI uri) {
+        this.conexao = conexao;
+        this.requisicao = requisicao;
+        this.contexto = contexto;
+        this.uri = uri;
+        this.corpoRequisicao = new NioRequestBody(conexao, requisicao);
+        this.entrada = corpoRequisicao;
+        this.saida = saidaOriginal;
+        this.fecharConexao = !requisicao.manterConexao;
+    }
+    
+    @Override
+    public Headers getRequestHeaders() {
+        return requisicao.cabecalhos;
+    }
+    
+    @Override
+    public Headers getResponseHeaders() {
+        return cabecalhosResposta;
+    }
+    
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+    
+    @Override
+    public String getRequestMethod() {
+        return requisicao.metodo;
+    }
+    
+    @Override
+    public HttpContext getHttpContext() {
+        return contexto;
+    }
+    
+    @Override
+    public InputStream getRequestBody() {
+        return entrada;
+    }
+    
+    @Override
+    public OutputStream getResponseBody() {
+        return saida;
+    }
+    
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (codigo != -1) {
+            throw new IOException("Cabecalhos da resposta ja foram enviados");
+        }
+        codigo = rCode;
+        boolean statusSemCorpo = rCode < 200 || rCode == 204 || rCode == 304;
+        boolean head = "HEAD".equals(requisicao.metodo);
+        semCorpo = responseLength < 0 || statusSemCorpo || head;
+        chunked = !semCorpo && responseLength == 0;
+        restante = semCorpo ? 0 : responseLength;
+        
+        boolean tamanhoIndefinido = chunked && "HTTP/1.0".equals(requisicao.protocolo);
+        if (tamanhoIndefinido) {
+            // Cliente HTTP/1.0 nao entende chunked: o fim do corpo e o fim da conexao
+            chunked = false;
+            restante = Long.MAX_VALUE;
+            fecharConexao = true;
+        }
+        
+        if ("close".equalsIgnoreCase(cabecalhosResposta.getFirst("Connection"))) {
+            fecharConexao = true;
+        }
+        cabecalhosResposta.set("Date", NioServerEngine.dataAtual());
+        String tamanhoDoHandler = cabecalhosResposta.getFirst("Content-length");
+        cabecalhosResposta.remove("Content-length");
+        cabecalhosResposta.remove("Transfer-encoding");
+        if (chunked) {
+            cabecalhosResposta.set("Transfer-encoding", "chunked");
+        } else if (head) {
+            // HEAD anuncia o tamanho que o GET teria: o que o handler informou ou o
+            // responseLength; sem nenhum dos dois, nao anuncia tamanho
+            String tamanho = tamanhoDoHandler != null ? tamanhoDoHandler
+                : responseLength > 0 ? Long.toString(responseLength) : null;
+            if (tamanho != null && !statusSemCorpo) {
+                cabecalhosResposta.set("Content-length", tamanho);
+            }
+        } else if (!statusSemCorpo && !tamanhoIndefinido) {
+            cabecalhosResposta.set("Content-length", Long.toString(Math.max(responseLength, 0)));
+        }
+        if (fecharConexao) {
+            cabecalhosResposta.set("Connection", "close");
+        }
+        
+        StringBuilder cabecalho = new StringBuilder(256)
+            .append("HTTP/1.1 ").append(rCode).append(' ').append(NioServerEngine.motivo(rCode)).append("\r\n");
+        for (Map.Entry<String, List<String>> campo : cabecalhosResposta.entrySet()) {
+            for (String valor : campo.getValue()) {
+                cabecalho.append(campo.getKey()).append(": ").append(valor).append("\r\n");
+            }
+        }
+        cabecalho.append("\r\n");
+        cabecalhoPendente = ByteBuffer.wrap(cabecalho.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+    
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return conexao.getEnderecoRemoto();
+    }
+    
+    @Override
+    public int getResponseCode() {
+        return codigo;
+    }
+    
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return conexao.getEnderecoLocal();
+    }
+    
+    @Override
+    public String getProtocol() {
+        return requisicao.protocolo;
+    }
+    
+    @Override
+    public Object getAttribute(String name) {
+        return atributos.get(name);
+    }
+    
+    @Override
+    public void setAttribute(String name, Object value) {
+        atributos.put(name, value);
+    }
+    
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            entrada = i;
+        }
+        if (o != null) {
+            saida = o;
+        }
+    }
+    
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+    
+    @Override
+    public void close() {
+        try {
+            saida.close();
+        } catch (IOException e) {
+            fecharConexao = true;
+        }
+    }
+    
+    /**
+     * Chamado pelo motor depois do handler. Garante que a resposta foi
+     * encerrada e devolve se a conexao pode receber a proxima requisicao.
+     */
+    boolean finalizar() {
+        if (!finalizado) {
+            close();
+        }
+        if (codigo == -1) {
+            // O handler nao respondeu: sem resposta valida, a conexao nao pode continuar
+            fecharConexao = true;
+        }
+        if (!fecharConexao && !corpoRequisicao.descartarRestante()) {
+            // A proxima requisicao so comeca depois do corpo desta
+            fecharConexao = true;
+        }
+        if (buffer != null) {
+            conexao.getMotor().devolverSaida(buffer);
+            buffer = null;
+        }
+        return !fecharConexao;
+    }
+    
+    // Um handler que falhou antes de responder recebe 500; depois disso so resta fechar,
+    // sem enviar o resto do buffer nem o chunk final: o cliente percebe o corpo truncado
+    void falhar() {
+        if (codigo == -1) {
+            try {
+                sendResponseHeaders(500, -1);
+            } catch (IOException e) {
+                fecharConexao = true;
+            }
+        } else {
+            fecharConexao = true;
+            finalizado = true;
+        }
+    }
+    
+    private void enviar(boolean ultimo) throws IOException {
+        List<ByteBuffer> partes = new ArrayList<>(4);
+        if (cabecalhoPendente != null) {
+            partes.add(cabecalhoPendente);
+            cabecalhoPendente = null;
+        }
+        if (buffer != null && buffer.position() > 0) {
+            buffer.flip();
+            if (chunked) {
+                partes.add(ByteBuffer.wrap((Integer.toHexString(buffer.remaining()) + "\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1)));
+                partes.add(buffer);
+                partes.add(ByteBuffer.wrap(CRLF));
+            } else {
+                partes.add(buffer);
+            }
+        }
+        if (ultimo && chunked) {
+            partes.add(ByteBuffer.wrap(FIM_CHUNKED));
+        }
+        if (!partes.isEmpty()) {
+            conexao.escrever(partes.toArray(new ByteBuffer[0]));
+        }
+        if (buffer != null) {
+            buffer.clear();
+        }
+    }
+    
+    private final class Saida extends OutputStream {
+        private final byte[] umByte = new byte[1];
+        
+        @Override
+        public void write(int b) throws IOException {
+            umByte[0] = (byte) b;
+            write(umByte, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (finalizado) {
+                throw new IOException("Resposta ja encerrada");
+            }
+            if (codigo == -1) {
+                throw new IOException("sendResponseHeaders deve ser chamado antes de escrever o corpo");
+            }
+            if (len == 0) {
+                return;
+            }
+            if (semCorpo) {
+                if ("HEAD".equals(requisicao.metodo)) {
+                    return;
+                }
+                throw new IOException("Resposta sem corpo");
+            }
+            if (!chunked) {
+                if (len > restante) {
+                    fecharConexao = true;
+                    throw new IOException("Corpo maior que o Content-Length informado");
+                }
+                restante -= len;
+            }
+            if (buffer == null) {
+                buffer = conexao.getMotor().emprestarSaida();
+            }
+            while (len > 0) {
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+                if (!buffer.hasRemaining()) {
+                    enviar(false);
+                }
+            }
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            if (!finalizado && codigo != -1) {
+                enviar(false);
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (finalizado) {
+                return;
+            }
+            finalizado = true;
+            if (codigo == -1) {
+                return;
+            }
+            if (restante > 0) {
+                // Menos bytes que o Content-Length: o cliente ficaria esperando o resto
+                fecharConexao = true;
+            }
+            enviar(true);
+        }
+    }
+}
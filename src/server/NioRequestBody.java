@@ -0,0 +1,170 @@
+package server;
+
+import util.ConfigUtil;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Corpo de uma requisicao do NioServerEngine, lido em streaming pela thread
+ * do handler: primeiro os bytes que ja estao no buffer de entrada da conexao,
+ * depois direto do socket. Decodifica Content-Length ou chunked e para no fim
+ * do corpo, deixando no buffer o que vier depois (pipelining). O 100 Continue
+ * sai na primeira leitura, entao um handler que responde sem ler o corpo nao
+ * pede ao cliente para envia-lo.
+ *
+ * Como no motor jdk, nao ha limite de tamanho aqui: quem le o corpo inteiro
+ * para a memoria (RequestBody) aplica o seu.
+ */
+final class NioRequestBody extends InputStream {
+    
+    // Corpo que o handler nao leu: ate este tanto e descartado para manter a conexao
+    private static final long DESCARTE_MAXIMO = ConfigUtil.getLong("http.nio.drainBytes", 64 * 1024);
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    
+    private final NioServerEngine.Conexao conexao;
+    private final boolean chunked;
+    private final boolean esperaContinue;
+    private final byte[] umByte = new byte[1];
+    // Bytes que faltam do corpo (Content-Length) ou do chunk atual
+    private long restante;
+    private boolean chunkIniciado;
+    private boolean continueEnviado;
+    private boolean fim;
+    private boolean falhou;
+    
+    NioRequestBody(NioServerEngine.Conexao conexao, HttpRequestParser.Requisicao requisicao) {
+        this.conexao = conexao;
+        this.chunked = requisicao.tamanhoCorpo == HttpRequestParser.CHUNKED;
+        this.esperaContinue = requisicao.esperaContinue;
+        this.restante = chunked ? 0 : requisicao.tamanhoCorpo;
+        this.fim = !chunked && restante == 0;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        int n = read(umByte, 0, 1);
+        return n < 0 ? -1 : umByte[0] & 0xff;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (falhou) {
+            throw new IOException("Corpo da requisicao interrompido");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (fim) {
+            return -1;
+        }
+        try {
+            if (esperaContinue && !continueEnviado) {
+                continueEnviado = true;
+                conexao.escrever(new ByteBuffer[] { ByteBuffer.wrap(CONTINUE) });
+            }
+            if (chunked && restante == 0 && !proximoChunk()) {
+                return -1;
+            }
+            return copiar(b, off, len);
+        } catch (IOException e) {
+            falhou = true;
+            throw e;
+        }
+    }
+    
+    /**
+     * Chamado pelo motor depois do handler: descarta o resto do corpo, se for
+     * pequeno, para a conexao seguir para a proxima requisicao. Devolve false
+     * se a conexao precisa ser fechada.
+     */
+    boolean descartarRestante() {
+        if (fim) {
+            return true;
+        }
+        if (falhou || (esperaContinue && !continueEnviado)) {
+            // Sem o 100 Continue o cliente pode nao enviar o corpo: nao da para saber onde ele termina
+            return false;
+        }
+        byte[] descarte = new byte[4096];
+        long descartados = 0;
+        try {
+            while (!fim && descartados < DESCARTE_MAXIMO) {
+                int n = read(descarte, 0, descarte.length);
+                if (n > 0) {
+                    descartados += n;
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return fim;
+    }
+    
+    private int copiar(byte[] b, int off, int len) throws IOException {
+        ByteBuffer entrada = conexao.getEntrada();
+        if (entrada.position() == 0 && !conexao.lerMais()) {
+            throw new EOFException("Conexao fechada no meio do corpo da requisicao");
+        }
+        entrada.flip();
+        int n = (int) Math.min(Math.min(len, restante), entrada.remaining());
+        entrada.get(b, off, n);
+        entrada.compact();
+        restante -= n;
+        if (!chunked && restante == 0) {
+            fim = true;
+        }
+        return n;
+    }
+    
+    // Le o tamanho do proximo chunk; no chunk final consome o trailer e devolve false
+    private boolean proximoChunk() throws IOException {
+        if (chunkIniciado && !linha().isEmpty()) {
+            throw new IOException("Chunk sem CRLF no final");
+        }
+        chunkIniciado = true;
+        String linha = linha();
+        int extensao = linha.indexOf(';');
+        try {
+            restante = Long.parseLong((extensao >= 0 ? linha.substring(0, extensao) : linha).trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Tamanho de chunk invalido");
+        }
+        if (restante < 0) {
+            throw new IOException("Tamanho de chunk invalido");
+        }
+        if (restante > 0) {
+            return true;
+        }
+        while (!linha().isEmpty()) {
+            // Campos de trailer sao ignorados
+        }
+        fim = true;
+        return false;
+    }
+    
+    // Linha de controle do chunked, lendo mais do socket ate ela chegar inteira
+    private String linha() throws IOException {
+        while (true) {
+            ByteBuffer entrada = conexao.getEntrada();
+            entrada.flip();
+            String linha;
+            try {
+                linha = HttpRequestParser.lerLinha(entrada);
+            } catch (HttpRequestParser.ErroHttp e) {
+                throw new IOException(e.getMessage());
+            } finally {
+                entrada.compact();
+            }
+            if (linha != null) {
+                return linha;
+            }
+            if (!conexao.lerMais()) {
+                throw new EOFException("Conexao fechada no meio do corpo da requisicao");
+            }
+        }
+    }
+}
@@ -0,0 +1,614 @@
+package server;
+
+import com.sun.net.httpserver.HttpHandler;
+import util.ConfigUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Motor HTTP/1.1 sobre java.nio: uma thread com Selector aceita as conexoes,
+ * le os bytes em buffers diretos do pool e monta o cabecalho das requisicoes
+ * com o HttpRequestParser. Assim que o cabecalho chega, a requisicao vai para
+ * o mesmo executor do motor jdk, e o handler le o corpo em streaming
+ * (NioRequestBody). Enquanto ela e atendida o selector nao le a conexao, e ao
+ * terminar a thread do selector continua pelos bytes que ja estavam no buffer
+ * (pipelining) ou volta a esperar a proxima requisicao (keep-alive).
+ *
+ * O buffer de entrada so fica com a conexao enquanto ha bytes pendentes;
+ * conexoes ociosas nao prendem memoria. O corpo e as respostas sao lidos e
+ * escritos pela thread do handler, direto no socket. O que a propria thread
+ * do selector escreve (erros antes do handler) nunca espera pelo cliente: o
+ * que o socket nao aceitar fica pendente e sai com OP_WRITE no selector
+ * principal.
+ */
+final class NioServerEngine implements ServerEngine {
+    
+    private static final int TAMANHO_ENTRADA = ConfigUtil.getInt("http.nio.inputBufferBytes", 16 * 1024);
+    private static final int TAMANHO_SAIDA = ConfigUtil.getInt("http.nio.outputBufferBytes", 16 * 1024);
+    private static final int MAXIMO_BUFFERS = ConfigUtil.getInt("http.nio.bufferPoolSize", 256);
+    private static final long TIMEOUT_OCIOSO_MS = ConfigUtil.getLong("http.nio.idleTimeoutMs", 30_000);
+    private static final long TIMEOUT_ESCRITA_MS = ConfigUtil.getLong("http.nio.writeTimeoutMs", 30_000);
+    
+    private static final DateTimeFormatter FORMATO_DATA =
+        DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+    
+    private static volatile String data;
+    private static volatile long segundoData = -1;
+    
+    /** Estado de um socket aceito. So a thread do selector mexe nele fora do atendimento. */
+    final class Conexao {
+        private final SocketChannel canal;
+        private final SelectionKey chave;
+        private final InetSocketAddress enderecoRemoto;
+        private final InetSocketAddress enderecoLocal;
+        private ByteBuffer entrada;
+        private long ultimoUso = System.currentTimeMillis();
+        private long atendidas;
+        private boolean ocupada;
+        private boolean manter;
+        // Resposta de erro que o socket ainda nao aceitou; a conexao fecha quando ela terminar
+        private ByteBuffer[] pendente;
+        // So a thread do handler usa; criados na primeira vez que o socket nao aceita ou nao tem bytes
+        private Selector seletorEscrita;
+        private Selector seletorLeitura;
+        
+        Conexao(SocketChannel canal) throws IOException {
+            this.canal = canal;
+            this.enderecoRemoto = (InetSocketAddress) canal.getRemoteAddress();
+            this.enderecoLocal = (InetSocketAddress) canal.getLocalAddress();
+            this.chave = canal.register(selector, SelectionKey.OP_READ, this);
+        }
+        
+        InetSocketAddress getEnderecoRemoto() {
+            return enderecoRemoto;
+        }
+        
+        InetSocketAddress getEnderecoLocal() {
+            return enderecoLocal;
+        }
+        
+        NioServerEngine getMotor() {
+            return NioServerEngine.this;
+        }
+        
+        /**
+         * Escreve todos os buffers. O socket e nao bloqueante: quando ele nao
+         * aceita mais bytes, a thread espera num selector proprio da conexao,
+         * ate http.nio.writeTimeoutMs sem progresso.
+         */
+        void escrever(ByteBuffer[] buffers) throws IOException {
+            int primeiro = 0;
+            long limite = 0;
+            while (primeiro < buffers.length) {
+                long escritos = canal.write(buffers, primeiro, buffers.length - primeiro);
+                while (primeiro < buffers.length && !buffers[primeiro].hasRemaining()) {
+                    primeiro++;
+                }
+                if (escritos > 0) {
+                    limite = 0;
+                    continue;
+                }
+                if (primeiro == buffers.length) {
+                    break;
+                }
+                
+                if (seletorEscrita == null) {
+                    seletorEscrita = Selector.open();
+                    canal.register(seletorEscrita, SelectionKey.OP_WRITE);
+                }
+                long agora = System.currentTimeMillis();
+                if (limite == 0) {
+                    limite = agora + TIMEOUT_ESCRITA_MS;
+                } else if (agora >= limite) {
+                    throw new IOException("Cliente parou de receber a resposta");
+                }
+                seletorEscrita.select(limite - agora);
+                seletorEscrita.selectedKeys().clear();
+            }
+        }
+        
+        /** Buffer de entrada da conexao, em modo escrita; emprestado do pool se ela nao tinha. */
+        ByteBuffer getEntrada() {
+            if (entrada == null) {
+                entrada = buffersEntrada.emprestar();
+            }
+            return entrada;
+        }
+        
+        /**
+         * Le mais bytes do socket para o buffer de entrada, na thread do
+         * handler (corpo da requisicao). Espera num selector proprio da
+         * conexao, ate http.nio.idleTimeoutMs sem dados. Devolve false se o
+         * cliente fechou a conexao.
+         */
+        boolean lerMais() throws IOException {
+            ByteBuffer buffer = getEntrada();
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Buffer de entrada cheio");
+            }
+            long limite = System.currentTimeMillis() + TIMEOUT_OCIOSO_MS;
+            while (true) {
+                int lidos = canal.read(buffer);
+                if (lidos != 0) {
+                    return lidos > 0;
+                }
+                if (seletorLeitura == null) {
+                    seletorLeitura = Selector.open();
+                    canal.register(seletorLeitura, SelectionKey.OP_READ);
+                }
+                long agora = System.currentTimeMillis();
+                if (agora >= limite) {
+                    throw new IOException("Cliente parou de enviar o corpo da requisicao");
+                }
+                seletorLeitura.select(limite - agora);
+                seletorLeitura.selectedKeys().clear();
+            }
+        }
+    }
+    
+    private final Executor executor;
+    private final ServerSocketChannel canalServidor;
+    private final Selector selector;
+    private final DirectBufferPool buffersEntrada = new DirectBufferPool(TAMANHO_ENTRADA, MAXIMO_BUFFERS);
+    private final DirectBufferPool buffersSaida = new DirectBufferPool(TAMANHO_SAIDA, MAXIMO_BUFFERS);
+    private final ConcurrentLinkedQueue<Conexao> concluidas = new ConcurrentLinkedQueue<>();
+    private volatile NioExchange.Contexto[] contextos = new NioExchange.Contexto[0];
+    private Thread thread;
+    private volatile boolean rodando;
+    
+    private final LongAdder conexoesAceitas = new LongAdder();
+    private final AtomicInteger conexoesAbertas = new AtomicInteger();
+    private final LongAdder requisicoes = new LongAdder();
+    private final LongAdder reaproveitadas = new LongAdder();
+    private final LongAdder pipelined = new LongAdder();
+    private final LongAdder recusadas = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+    private final LongAdder ociosasFechadas = new LongAdder();
+    private final AtomicInteger emAndamento = new AtomicInteger();
+    
+    NioServerEngine(InetSocketAddress address, Executor executor) throws IOException {
+        this.executor = executor;
+        this.selector = Selector.open();
+        this.canalServidor = ServerSocketChannel.open();
+        try {
+            canalServidor.bind(address);
+            canalServidor.configureBlocking(false);
+        } catch (IOException e) {
+            canalServidor.close();
+            selector.close();
+            throw e;
+        }
+    }
+    
+    @Override
+    public synchronized void createContext(String path, HttpHandler handler) {
+        for (NioExchange.Contexto contexto : contextos) {
+            if (contexto.getPath().equals(path)) {
+                throw new IllegalArgumentException("Contexto ja existe: " + path);
+            }
+        }
+        NioExchange.Contexto[] novos = Arrays.copyOf(contextos, contextos.length + 1);
+        novos[novos.length - 1] = new NioExchange.Contexto(path, handler);
+        // O prefixo mais longo vence, como no HttpServer do JDK
+        Arrays.sort(novos, Comparator.comparingInt((NioExchange.Contexto c) -> c.getPath().length()).reversed());
+        contextos = novos;
+    }
+    
+    @Override
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("Motor nio ja iniciado");
+        }
+        canalServidor.register(selector, SelectionKey.OP_ACCEPT);
+        rodando = true;
+        thread = new Thread(this::executar, "http-nio-selector");
+        thread.start();
+    }
+    
+    /**
+     * Para de aceitar conexoes, espera ate delaySeconds pelas requisicoes em
+     * andamento e fecha o que restou.
+     */
+    @Override
+    public void stop(int delaySeconds) {
+        try {
+            canalServidor.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar o socket do servidor: " + e.getMessage());
+        }
+        long limite = System.currentTimeMillis() + delaySeconds * 1000L;
+        while (emAndamento.get() > 0 && System.currentTimeMillis() < limite) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        
+        rodando = false;
+        selector.wakeup();
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    @Override
+    public String getName() {
+        return NIO;
+    }
+    
+    @Override
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) canalServidor.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    ByteBuffer emprestarSaida() {
+        return buffersSaida.emprestar();
+    }
+    
+    void devolverSaida(ByteBuffer buffer) {
+        buffersSaida.devolver(buffer);
+    }
+    
+    private void executar() {
+        long proximaVarredura = System.currentTimeMillis() + 1000;
+        while (rodando) {
+            try {
+                selector.select(1000);
+            } catch (IOException e) {
+                System.err.println("Erro no selector do motor nio: " + e.getMessage());
+                break;
+            }
+            
+            Conexao conexao;
+            while ((conexao = concluidas.poll()) != null) {
+                retomar(conexao);
+            }
+            
+            Iterator<SelectionKey> chaves = selector.selectedKeys().iterator();
+            while (chaves.hasNext()) {
+                SelectionKey chave = chaves.next();
+                chaves.remove();
+                if (!chave.isValid()) {
+                    continue;
+                }
+                if (chave.isAcceptable()) {
+                    aceitar();
+                    continue;
+                }
+                Conexao pronta = (Conexao) chave.attachment();
+                if (chave.isWritable()) {
+                    enviarPendente(pronta);
+                }
+                if (chave.isValid() && chave.isReadable()) {
+                    ler(pronta);
+                }
+            }
+            
+            long agora = System.currentTimeMillis();
+            if (agora >= proximaVarredura) {
+                fecharOciosas(agora);
+                proximaVarredura = agora + 1000;
+            }
+        }
+        
+        for (SelectionKey chave : selector.keys()) {
+            if (chave.attachment() instanceof Conexao) {
+                fechar((Conexao) chave.attachment());
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar o selector do motor nio: " + e.getMessage());
+        }
+    }
+    
+    private void aceitar() {
+        SocketChannel canal;
+        try {
+            while ((canal = canalServidor.accept()) != null) {
+                try {
+                    canal.configureBlocking(false);
+                    canal.socket().setTcpNoDelay(true);
+                    new Conexao(canal);
+                    conexoesAceitas.increment();
+                    conexoesAbertas.incrementAndGet();
+                } catch (IOException e) {
+                    canal.close();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao aceitar conexao: " + e.getMessage());
+        }
+    }
+    
+    private void ler(Conexao conexao) {
+        if (conexao.entrada == null) {
+            conexao.entrada = buffersEntrada.emprestar();
+        }
+        int lidos;
+        try {
+            lidos = conexao.canal.read(conexao.entrada);
+        } catch (IOException e) {
+            fechar(conexao);
+            return;
+        }
+        if (lidos < 0) {
+            fechar(conexao);
+            return;
+        }
+        if (lidos > 0) {
+            conexao.ultimoUso = System.currentTimeMillis();
+            processar(conexao);
+        }
+    }
+    
+    // Analisa o que ha no buffer e despacha a requisicao, se o cabecalho ja chegou inteiro
+    private void processar(Conexao conexao) {
+        ByteBuffer entrada = conexao.entrada;
+        HttpRequestParser.Requisicao requisicao;
+        entrada.flip();
+        try {
+            requisicao = HttpRequestParser.analisar(entrada);
+        } catch (HttpRequestParser.ErroHttp e) {
+            entrada.compact();
+            responderErro(conexao, e.status, e.getMessage());
+            return;
+        }
+        entrada.compact();
+        if (entrada.position() == 0) {
+            buffersEntrada.devolver(entrada);
+            conexao.entrada = null;
+        }
+        
+        if (requisicao == null) {
+            return;
+        }
+        despachar(conexao, requisicao);
+    }
+    
+    private void despachar(Conexao conexao, HttpRequestParser.Requisicao requisicao) {
+        URI uri;
+        try {
+            uri = new URI(requisicao.alvo);
+        } catch (URISyntaxException e) {
+            responderErro(conexao, 400, "URI invalida");
+            return;
+        }
+        NioExchange.Contexto contexto = contexto(uri.getPath());
+        if (contexto == null) {
+            responderErro(conexao, 404, "Nenhum contexto para " + uri.getPath());
+            return;
+        }
+        
+        requisicoes.increment();
+        if (conexao.atendidas++ > 0) {
+            reaproveitadas.increment();
+        }
+        NioExchange exchange = new NioExchange(conexao, requisicao, contexto, uri);
+        conexao.ocupada = true;
+        conexao.chave.interestOps(0);
+        emAndamento.incrementAndGet();
+        try {
+            executor.execute(() -> atender(conexao, exchange));
+        } catch (RejectedExecutionException e) {
+            emAndamento.decrementAndGet();
+            conexao.ocupada = false;
+            responderErro(conexao, 503, rodando ? "Servidor sobrecarregado" : "Servidor parando");
+        }
+    }
+    
+    // Roda na thread do executor; devolve a conexao ao selector no final
+    private void atender(Conexao conexao, NioExchange exchange) {
+        try {
+            exchange.getHttpContext().getHandler().handle(exchange);
+        } catch (Exception e) {
+            falhas.increment();
+            exchange.falhar();
+        } finally {
+            conexao.manter = exchange.finalizar();
+            emAndamento.decrementAndGet();
+            concluidas.add(conexao);
+            selector.wakeup();
+        }
+    }
+    
+    private void retomar(Conexao conexao) {
+        conexao.ocupada = false;
+        if (!conexao.manter || !conexao.canal.isOpen()) {
+            fechar(conexao);
+            return;
+        }
+        conexao.ultimoUso = System.currentTimeMillis();
+        if (conexao.entrada != null) {
+            // A proxima requisicao ja chegou junto com a anterior
+            processar(conexao);
+            if (conexao.ocupada) {
+                pipelined.increment();
+                return;
+            }
+        }
+        if (conexao.chave.isValid()) {
+            conexao.chave.interestOps(SelectionKey.OP_READ);
+        }
+    }
+    
+    private NioExchange.Contexto contexto(String caminho) {
+        if (caminho == null) {
+            return null;
+        }
+        for (NioExchange.Contexto contexto : contextos) {
+            if (caminho.startsWith(contexto.getPath())) {
+                return contexto;
+            }
+        }
+        return null;
+    }
+    
+    // Erro antes do handler (requisicao malformada, sem contexto): responde e fecha
+    private void responderErro(Conexao conexao, int status, String mensagem) {
+        recusadas.increment();
+        byte[] corpo = mensagem.getBytes(StandardCharsets.UTF_8);
+        String cabecalho = "HTTP/1.1 " + status + " " + motivo(status) + "\r\n" +
+            "Date: " + dataAtual() + "\r\n" +
+            "Content-Type: text/plain; charset=utf-8\r\n" +
+            "Content-Length: " + corpo.length + "\r\n" +
+            "Connection: close\r\n\r\n";
+        conexao.pendente = new ByteBuffer[] {
+            ByteBuffer.wrap(cabecalho.getBytes(StandardCharsets.ISO_8859_1)), ByteBuffer.wrap(corpo)
+        };
+        enviarPendente(conexao);
+    }
+    
+    /**
+     * Escrita feita pela thread do selector: envia o que o socket aceitar agora
+     * e deixa o resto pendente, com OP_WRITE. A conexao para de ser lida ate o
+     * envio terminar; um cliente que nao recebe cai no timeout de ociosidade.
+     */
+    private void enviarPendente(Conexao conexao) {
+        ByteBuffer[] buffers = conexao.pendente;
+        if (buffers == null) {
+            return;
+        }
+        try {
+            if (conexao.canal.write(buffers) > 0) {
+                conexao.ultimoUso = System.currentTimeMillis();
+            }
+        } catch (IOException e) {
+            // O cliente ja foi embora; so resta fechar
+            fechar(conexao);
+            return;
+        }
+        if (buffers[buffers.length - 1].hasRemaining()) {
+            conexao.chave.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        fechar(conexao);
+    }
+    
+    private void fecharOciosas(long agora) {
+        for (SelectionKey chave : selector.keys()) {
+            if (chave.attachment() instanceof Conexao) {
+                Conexao conexao = (Conexao) chave.attachment();
+                if (!conexao.ocupada && agora - conexao.ultimoUso > TIMEOUT_OCIOSO_MS) {
+                    ociosasFechadas.increment();
+                    fechar(conexao);
+                }
+            }
+        }
+    }
+    
+    private void fechar(Conexao conexao) {
+        if (!conexao.canal.isOpen()) {
+            return;
+        }
+        conexao.chave.cancel();
+        conexao.pendente = null;
+        try {
+            conexao.canal.close();
+        } catch (IOException e) {
+            // Nada a fazer com um socket que nao fecha
+        }
+        if (!conexao.ocupada) {
+            // Com a conexao em atendimento, o buffer e os selectors proprios ainda sao da thread do handler
+            fecharSeletor(conexao.seletorEscrita);
+            fecharSeletor(conexao.seletorLeitura);
+        }
+        if (conexao.entrada != null && !conexao.ocupada) {
+            buffersEntrada.devolver(conexao.entrada);
+            conexao.entrada = null;
+        }
+        conexoesAbertas.decrementAndGet();
+    }
+    
+    private static void fecharSeletor(Selector seletor) {
+        if (seletor != null) {
+            try {
+                seletor.close();
+            } catch (IOException e) {
+                // Nada a fazer com um selector que nao fecha
+            }
+        }
+    }
+    
+    /** Valor do cabecalho Date, formatado no maximo uma vez por segundo. */
+    static String dataAtual() {
+        long segundo = System.currentTimeMillis() / 1000;
+        if (segundo != segundoData) {
+            data = FORMATO_DATA.format(ZonedDateTime.now(ZoneOffset.UTC));
+            segundoData = segundo;
+        }
+        return data;
+    }
+    
+    static String motivo(int status) {
+        switch (status) {
+            case 100: return "Continue";
+            case 200: return "OK";
+            case 201: return "Created";
+            case 204: return "No Content";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 409: return "Conflict";
+            case 412: return "Precondition Failed";
+            case 413: return "Content Too Large";
+            case 429: return "Too Many Requests";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 503: return "Service Unavailable";
+            default: return "";
+        }
+    }
+    
+    @Override
+    public String toJson() {
+        return "{" +
+            "\"motor\":\"" + NIO + "\"," +
+            "\"conexoesAceitas\":" + conexoesAceitas.sum() + "," +
+            "\"conexoesAbertas\":" + conexoesAbertas.get() + "," +
+            "\"ociosasFechadas\":" + ociosasFechadas.sum() + "," +
+            "\"requisicoes\":" + requisicoes.sum() + "," +
+            "\"emAndamento\":" + emAndamento.get() + "," +
+            "\"keepAliveReaproveitadas\":" + reaproveitadas.sum() + "," +
+            "\"pipelined\":" + pipelined.sum() + "," +
+            "\"recusadas\":" + recusadas.sum() + "," +
+            "\"falhasHandler\":" + falhas.sum() + "," +
+            "\"buffersEntrada\":" + buffersEntrada.toJson() + "," +
+            "\"buffersSaida\":" + buffersSaida.toJson() +
+            "}";
+    }
+}
@@ -3,51 +3,73 @@ package server;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import dao.PetDAO;
+import dao.CachedDAO;
+import dao.Consulta;
+import dao.Pagina;
+import exception.ConflitoVersaoException;
+import exception.CorpoMuitoGrandeException;
+import exception.PetNaoEncontradoException;
+import exception.RegistroNaoEncontradoException;
+import exception.VersaoObrigatoriaException;
 import model.Pet;
+import util.CsvUtil;
 import util.JsonUtil;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.util.List;
-import java.util.Map;
 
 public class PetApiHandler implements HttpHandler {
     
     private PetDAO petDAO;
+    private CachedDAO<Pet> petCache;
+    private ResponseCache respostas;
+    private Router rotas;
     
-    public PetApiHandler() {
+    public PetApiHandler(Router rotas) {
         this.petDAO = new PetDAO();
+        this.petCache = new CachedDAO<>("pets", PetDAO.TABELA, petDAO, PetNaoEncontradoException::new);
+        this.respostas = new ResponseCache("pets", PetDAO.TABELA);
+        this.rotas = rotas;
+        
+        rotas.adicionar("GET", "/api/pets", this::listar)
+            .adicionar("GET", "/api/pets/{id:int}", this::buscar)
+            .adicionar("GET", "/api/pets/exportar", this::exportar)
+            .adicionar("GET", "/api/pets/cliente/{idCliente:int}", this::listarPorCliente)
+            .adicionar("POST", "/api/pets", this::inserir)
+            .adicionar("POST", "/api/pets/importar", this::importar)
+            .adicionar("PUT", "/api/pets/{id:int}", this::atualizar)
+            .adicionar("PATCH", "/api/pets/{id:int}", this::atualizarParcial)
+            .adicionar("DELETE", "/api/pets/{id:int}", this::deletar);
     }
     
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        String method = exchange.getRequestMethod();
-        String path = exchange.getRequestURI().getPath();
-        
         try {
-            if ("OPTIONS".equals(method)) {
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
                 WebServer.sendResponse(exchange, 200, "application/json", "");
                 return;
             }
             
-            switch (method) {
-                case "GET":
-                    handleGet(exchange, path);
-                    break;
-                case "POST":
-                    handlePost(exchange);
-                    break;
-                case "PUT":
-                    handlePut(exchange, path);
-                    break;
-                case "DELETE":
-                    handleDelete(exchange, path);
-                    break;
-                default:
-                    WebServer.sendResponse(exchange, 405, "text/plain", "Metodo nao permitido");
-            }
+            rotas.despachar(exchange);
+        } catch (ConflitoVersaoException e) {
+            WebServer.sendResponse(exchange, 409, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"id\":" + e.getId() + "," +
+                "\"versaoEnviada\":" + e.getVersaoEsperada() + "," +
+                "\"versaoAtual\":" + e.getVersaoAtual() + "}");
+        } catch (VersaoObrigatoriaException e) {
+            WebServer.sendResponse(exchange, 428, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"id\":" + e.getId() + "}");
+        } catch (CorpoMuitoGrandeException e) {
+            WebServer.sendResponse(exchange, 413, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"limiteBytes\":" + e.getLimiteBytes() + "}");
+        } catch (RegistroNaoEncontradoException e) {
+            WebServer.sendResponse(exchange, 404, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"}");
+        } catch (IllegalArgumentException e) {
+            WebServer.sendResponse(exchange, 400, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"}");
         } catch (Exception e) {
             e.printStackTrace();
             String errorMsg = e.getMessage() != null ? e.getMessage().replace("\"", "\\\"") : "Erro desconhecido";
@@ -56,62 +78,82 @@ public class PetApiHandler implements HttpHandler {
         }
     }
     
-    private void handleGet(HttpExchange exchange, String path) throws Exception {
-        // GET /api/pets/cliente/{idCliente}
-        if (path.startsWith("/api/pets/cliente/")) {
-            String[] parts = path.split("/");
-            int idCliente = Integer.parseInt(parts[parts.length - 1]);
-            
-            List<Pet> pets = petDAO.buscarPorCliente(idCliente);
-            String json = JsonUtil.petsToJson(pets);
-            WebServer.sendResponse(exchange, 200, "application/json", json);
-        }
-        // GET /api/pets/{id}
-        else if (path.matches("/api/pets/\\d+")) {
-            String[] parts = path.split("/");
-            int id = Integer.parseInt(parts[parts.length - 1]);
-            
-            Pet pet = petDAO.buscarPorId(id);
-            String json = JsonUtil.petToJson(pet);
-            WebServer.sendResponse(exchange, 200, "application/json", json);
-        }
-        // GET /api/pets
-        else {
-            List<Pet> pets = petDAO.listarTodos();
-            String json = JsonUtil.petsToJson(pets);
-            WebServer.sendResponse(exchange, 200, "application/json", json);
+    // GET /api/pets e GET /api/pets?limite=&cursor=&ordem=&direcao=&<filtro>=
+    private void listar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            Consulta consulta = Consulta.de(WebServer.parseQuery(query));
+            respostas.enviar(exchange, w -> {
+                Pagina<Pet> pagina = petDAO.listarPaginado(consulta);
+                JsonUtil.writePagina(w, pagina.getItens(), pagina.getProximoCursor(), pagina.getLimite(), JsonUtil::writePets);
+            });
+        } else {
+            respostas.enviar(exchange, w -> JsonUtil.writePets(w, petDAO.listarTodos()));
         }
     }
     
-    private void handlePost(HttpExchange exchange) throws Exception {
-        String body = readRequestBody(exchange);
-        Map<String, String> jsonMap = JsonUtil.jsonToMap(body);
-        Pet pet = criarPetDoJson(jsonMap);
+    // GET /api/pets/{id}
+    private void buscar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Pet pet = petCache.buscarPorId(parametros.inteiro(0));
+        respostas.enviarRegistro(exchange, pet.getVersao(), w -> JsonUtil.writePet(w, pet));
+    }
+    
+    // GET /api/pets/exportar?formato=ndjson|csv
+    private void exportar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Exportacao.enviar(exchange, "pets", petDAO::exportar,
+            JsonUtil::writePet, CsvUtil.CABECALHO_PET, CsvUtil::writePet);
+    }
+    
+    // GET /api/pets/cliente/{idCliente}
+    private void listarPorCliente(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        int idCliente = parametros.inteiro(0);
+        respostas.enviar(exchange, w -> JsonUtil.writePets(w, petDAO.buscarPorCliente(idCliente)));
+    }
+    
+    // POST /api/pets/importar?modo=inserir|atualizar (NDJSON)
+    private void importar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Importacao.receber(exchange, petDAO, JsonUtil::readPet, Pet::getVersao);
+    }
+    
+    // POST /api/pets
+    private void inserir(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Pet pet = RequestBody.lerJson(exchange, JsonUtil::jsonToPet);
         
         Pet petInserido = petDAO.inserir(pet);
         String json = JsonUtil.petToJson(petInserido);
         WebServer.sendResponse(exchange, 201, "application/json", json);
     }
     
-    private void handlePut(HttpExchange exchange, String path) throws Exception {
-        String[] parts = path.split("/");
-        int id = Integer.parseInt(parts[parts.length - 1]);
+    // PUT /api/pets/{id}
+    private void atualizar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        int id = parametros.inteiro(0);
         
-        String body = readRequestBody(exchange);
-        Map<String, String> jsonMap = JsonUtil.jsonToMap(body);
-        Pet pet = criarPetDoJson(jsonMap);
+        Pet pet = RequestBody.lerJson(exchange, JsonUtil::jsonToPet);
         pet.setIdPet(id);
+        // A data de cadastro nao e editavel: vem do cache, e so na falta dele o DAO a le
+        pet.setDataCadastro(petCache.buscarOpcional(id).map(Pet::getDataCadastro).orElse(null));
+        // Versao esperada: a do corpo ou, na falta dela, a do If-Match; sem nenhuma o DAO recusa (428)
+        if (pet.getVersao() == null) {
+            pet.setVersao(ResponseCache.versaoIfMatch(exchange));
+        }
         
         Pet petAtualizado = petDAO.atualizar(pet);
+        if (petAtualizado.getVersao() != null) {
+            exchange.getResponseHeaders().set("ETag", ResponseCache.etagRegistro(petAtualizado.getVersao()));
+        }
         String json = JsonUtil.petToJson(petAtualizado);
         WebServer.sendResponse(exchange, 200, "application/json", json);
     }
     
-    private void handleDelete(HttpExchange exchange, String path) throws Exception {
-        String[] parts = path.split("/");
-        int id = Integer.parseInt(parts[parts.length - 1]);
-        
-        boolean deletado = petDAO.deletar(id);
+    // PATCH /api/pets/{id}: so os campos enviados mudam; null mantem o valor atual
+    private void atualizarParcial(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        EdicaoParcial.enviar(exchange, parametros.inteiro(0), "Pet", petCache, Pet::getVersao,
+            JsonUtil::jsonToPet, petDAO::atualizarParcial, JsonUtil::petToJson);
+    }
+    
+    // DELETE /api/pets/{id}
+    private void deletar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        boolean deletado = petDAO.deletar(parametros.inteiro(0));
         if (deletado) {
             WebServer.sendResponse(exchange, 200, "application/json", 
                 "{\"mensagem\":\"Pet deletado com sucesso\"}");
@@ -120,55 +162,4 @@ public class PetApiHandler implements HttpHandler {
                 "{\"erro\":\"Pet nao encontrado\"}");
         }
     }
-    
-    private Pet criarPetDoJson(Map<String, String> jsonMap) {
-        Pet pet = new Pet();
-        
-        if (jsonMap.containsKey("idCliente")) {
-            try {
-                pet.setIdCliente(Integer.parseInt(jsonMap.get("idCliente")));
-            } catch (NumberFormatException e) {
-                // Ignora erro de conversão
-            }
-        }
-        
-        if (jsonMap.containsKey("nome")) pet.setNome(jsonMap.get("nome"));
-        if (jsonMap.containsKey("especie")) pet.setEspecie(jsonMap.get("especie"));
-        if (jsonMap.containsKey("raca") && !jsonMap.get("raca").equals("null")) {
-            pet.setRaca(jsonMap.get("raca"));
-        }
-        
-        if (jsonMap.containsKey("dataNascimento") && !jsonMap.get("dataNascimento").equals("null")) {
-            try {
-                pet.setDataNascimento(LocalDate.parse(jsonMap.get("dataNascimento")));
-            } catch (Exception e) {
-                // Ignora erro de conversão
-            }
-        }
-        
-        if (jsonMap.containsKey("peso")) {
-            try {
-                pet.setPeso(Double.parseDouble(jsonMap.get("peso")));
-            } catch (NumberFormatException e) {
-                // Ignora erro de conversão
-            }
-        }
-        
-        if (jsonMap.containsKey("observacoes") && !jsonMap.get("observacoes").equals("null")) {
-            pet.setObservacoes(jsonMap.get("observacoes"));
-        }
-        
-        return pet;
-    }
-    
-    private String readRequestBody(HttpExchange exchange) throws IOException {
-        InputStream is = exchange.getRequestBody();
-        byte[] buffer = new byte[1024];
-        StringBuilder sb = new StringBuilder();
-        int bytesRead;
-        while ((bytesRead = is.read(buffer)) != -1) {
-            sb.append(new String(buffer, 0, bytesRead, StandardCharsets.UTF_8));
-        }
-        return sb.toString();
-    }
 }
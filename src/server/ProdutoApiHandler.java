@@ -3,50 +3,83 @@ package server;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import dao.ProdutoDAO;
+import dao.CachedDAO;
+import dao.Consulta;
+import dao.Pagina;
+import exception.ConflitoVersaoException;
+import exception.CorpoMuitoGrandeException;
+import exception.EstoqueInsuficienteException;
+import exception.ProdutoNaoEncontradoException;
+import exception.RegistroNaoEncontradoException;
+import exception.VersaoObrigatoriaException;
 import model.Produto;
+import util.CsvUtil;
 import util.JsonUtil;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
 import java.util.Map;
 
 public class ProdutoApiHandler implements HttpHandler {
     
     private ProdutoDAO produtoDAO;
+    private CachedDAO<Produto> produtoCache;
+    private ResponseCache respostas;
+    private Router rotas;
     
-    public ProdutoApiHandler() {
+    public ProdutoApiHandler(Router rotas) {
         this.produtoDAO = new ProdutoDAO();
+        this.produtoCache = new CachedDAO<>("produtos", ProdutoDAO.TABELA, produtoDAO, ProdutoNaoEncontradoException::new);
+        this.respostas = new ResponseCache("produtos", ProdutoDAO.TABELA);
+        this.rotas = rotas;
+        
+        rotas.adicionar("GET", "/api/produtos", this::listar)
+            .adicionar("GET", "/api/produtos/{id:int}", this::buscar)
+            .adicionar("GET", "/api/produtos/exportar", this::exportar)
+            .adicionar("GET", "/api/produtos/categoria/{categoria}", this::listarPorCategoria)
+            .adicionar("POST", "/api/produtos", this::inserir)
+            .adicionar("POST", "/api/produtos/importar", this::importar)
+            .adicionar("POST", "/api/produtos/{id:int}/estoque", this::movimentarEstoque)
+            .adicionar("POST", "/api/produtos/estoque/baixa", this::baixarEstoque)
+            .adicionar("PUT", "/api/produtos/{id:int}", this::atualizar)
+            .adicionar("PATCH", "/api/produtos/{id:int}", this::atualizarParcial)
+            .adicionar("DELETE", "/api/produtos/{id:int}", this::deletar);
     }
     
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        String method = exchange.getRequestMethod();
-        String path = exchange.getRequestURI().getPath();
-        
         try {
-            if ("OPTIONS".equals(method)) {
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
                 WebServer.sendResponse(exchange, 200, "application/json", "");
                 return;
             }
             
-            switch (method) {
-                case "GET":
-                    handleGet(exchange, path);
-                    break;
-                case "POST":
-                    handlePost(exchange);
-                    break;
-                case "PUT":
-                    handlePut(exchange, path);
-                    break;
-                case "DELETE":
-                    handleDelete(exchange, path);
-                    break;
-                default:
-                    WebServer.sendResponse(exchange, 405, "text/plain", "Metodo nao permitido");
-            }
+            rotas.despachar(exchange);
+        } catch (EstoqueInsuficienteException e) {
+            WebServer.sendResponse(exchange, 409, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"idProduto\":" + e.getIdProduto() + "," +
+                "\"disponivel\":" + e.getDisponivel() + "," +
+                "\"solicitado\":" + e.getSolicitado() + "}");
+        } catch (ConflitoVersaoException e) {
+            WebServer.sendResponse(exchange, 409, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"id\":" + e.getId() + "," +
+                "\"versaoEnviada\":" + e.getVersaoEsperada() + "," +
+                "\"versaoAtual\":" + e.getVersaoAtual() + "}");
+        } catch (VersaoObrigatoriaException e) {
+            WebServer.sendResponse(exchange, 428, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"id\":" + e.getId() + "}");
+        } catch (CorpoMuitoGrandeException e) {
+            WebServer.sendResponse(exchange, 413, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"," +
+                "\"limiteBytes\":" + e.getLimiteBytes() + "}");
+        } catch (RegistroNaoEncontradoException e) {
+            WebServer.sendResponse(exchange, 404, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"}");
+        } catch (IllegalArgumentException e) {
+            WebServer.sendResponse(exchange, 400, "application/json", 
+                "{\"erro\":\"" + e.getMessage().replace("\"", "\\\"") + "\"}");
         } catch (Exception e) {
             e.printStackTrace();
             String errorMsg = e.getMessage() != null ? e.getMessage().replace("\"", "\\\"") : "Erro desconhecido";
@@ -55,60 +88,119 @@ public class ProdutoApiHandler implements HttpHandler {
         }
     }
     
-    private void handleGet(HttpExchange exchange, String path) throws Exception {
-        // GET /api/produtos/categoria/{categoria}
-        if (path.startsWith("/api/produtos/categoria/")) {
-            String categoria = path.substring("/api/produtos/categoria/".length());
-            List<Produto> produtos = produtoDAO.buscarPorCategoria(categoria);
-            String json = JsonUtil.produtosToJson(produtos);
-            WebServer.sendResponse(exchange, 200, "application/json", json);
-        }
-        // GET /api/produtos/{id}
-        else if (path.matches("/api/produtos/\\d+")) {
-            String[] parts = path.split("/");
-            int id = Integer.parseInt(parts[parts.length - 1]);
-            
-            Produto produto = produtoDAO.buscarPorId(id);
-            String json = JsonUtil.produtoToJson(produto);
-            WebServer.sendResponse(exchange, 200, "application/json", json);
-        }
-        // GET /api/produtos
-        else {
-            List<Produto> produtos = produtoDAO.listarTodos();
-            String json = JsonUtil.produtosToJson(produtos);
-            WebServer.sendResponse(exchange, 200, "application/json", json);
+    // GET /api/produtos e GET /api/produtos?limite=&cursor=&ordem=&direcao=&<filtro>=
+    private void listar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            Consulta consulta = Consulta.de(WebServer.parseQuery(query));
+            respostas.enviar(exchange, w -> {
+                Pagina<Produto> pagina = produtoDAO.listarPaginado(consulta);
+                JsonUtil.writePagina(w, pagina.getItens(), pagina.getProximoCursor(), pagina.getLimite(), JsonUtil::writeProdutos);
+            });
+        } else {
+            respostas.enviar(exchange, w -> JsonUtil.writeProdutos(w, produtoDAO.listarTodos()));
         }
     }
     
-    private void handlePost(HttpExchange exchange) throws Exception {
-        String body = readRequestBody(exchange);
-        Map<String, String> jsonMap = JsonUtil.jsonToMap(body);
-        Produto produto = JsonUtil.jsonToProduto(jsonMap);
+    // GET /api/produtos/{id}
+    private void buscar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Produto produto = produtoCache.buscarPorId(parametros.inteiro(0));
+        respostas.enviarRegistro(exchange, produto.getVersao(), w -> JsonUtil.writeProduto(w, produto));
+    }
+    
+    // GET /api/produtos/exportar?formato=ndjson|csv
+    private void exportar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Exportacao.enviar(exchange, "produtos", produtoDAO::exportar,
+            JsonUtil::writeProduto, CsvUtil.CABECALHO_PRODUTO, CsvUtil::writeProduto);
+    }
+    
+    // GET /api/produtos/categoria/{categoria}
+    private void listarPorCategoria(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        String categoria = parametros.texto(0);
+        respostas.enviar(exchange, w -> JsonUtil.writeProdutos(w, produtoDAO.buscarPorCategoria(categoria)));
+    }
+    
+    // POST /api/produtos/importar?modo=inserir|atualizar (NDJSON)
+    private void importar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Importacao.receber(exchange, produtoDAO, JsonUtil::readProduto, Produto::getVersao);
+    }
+    
+    // POST /api/produtos/estoque/baixa {"itens":[{"idProduto":1,"quantidade":2}]}
+    private void baixarEstoque(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Map<Integer, Integer> itens = RequestBody.lerJson(exchange, JsonUtil::jsonToItensEstoque);
+        Map<Integer, Integer> saldos = produtoDAO.removerEstoque(itens);
+        WebServer.sendJson(exchange, 200, w -> JsonUtil.writeSaldosEstoque(w, saldos));
+    }
+    
+    // POST /api/produtos
+    private void inserir(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        Produto produto = RequestBody.lerJson(exchange, JsonUtil::jsonToProduto);
         
         Produto produtoInserido = produtoDAO.inserir(produto);
         String json = JsonUtil.produtoToJson(produtoInserido);
         WebServer.sendResponse(exchange, 201, "application/json", json);
     }
     
-    private void handlePut(HttpExchange exchange, String path) throws Exception {
-        String[] parts = path.split("/");
-        int id = Integer.parseInt(parts[parts.length - 1]);
+    // POST /api/produtos/{id}/estoque {"operacao":"adicionar|remover|definir","quantidade":N}
+    private void movimentarEstoque(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        int id = parametros.inteiro(0);
         
-        String body = readRequestBody(exchange);
-        Map<String, String> jsonMap = JsonUtil.jsonToMap(body);
-        Produto produto = JsonUtil.jsonToProduto(jsonMap);
+        Map<String, String> dados = RequestBody.lerJson(exchange, JsonUtil::jsonToMap);
+        String operacao = dados.getOrDefault("operacao", "");
+        int quantidade;
+        try {
+            quantidade = Integer.parseInt(dados.getOrDefault("quantidade", ""));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Quantidade deve ser um numero inteiro.");
+        }
+        
+        int estoque;
+        switch (operacao) {
+            case "adicionar":
+                estoque = produtoDAO.adicionarEstoque(id, quantidade);
+                break;
+            case "remover":
+                estoque = produtoDAO.removerEstoque(id, quantidade);
+                break;
+            case "definir":
+                estoque = produtoDAO.atualizarEstoque(id, quantidade).getEstoque();
+                break;
+            default:
+                throw new IllegalArgumentException("Operacao de estoque invalida. Use adicionar, remover ou definir.");
+        }
+        WebServer.sendJson(exchange, 200, w -> JsonUtil.writeSaldoEstoque(w, id, estoque));
+    }
+    
+    // PUT /api/produtos/{id}
+    private void atualizar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        int id = parametros.inteiro(0);
+        
+        Produto produto = RequestBody.lerJson(exchange, JsonUtil::jsonToProduto);
         produto.setIdProduto(id);
+        // A data de cadastro nao e editavel: vem do cache, e so na falta dele o DAO a le
+        produto.setDataCadastro(produtoCache.buscarOpcional(id).map(Produto::getDataCadastro).orElse(null));
+        // Versao esperada: a do corpo ou, na falta dela, a do If-Match; sem nenhuma o DAO recusa (428)
+        if (produto.getVersao() == null) {
+            produto.setVersao(ResponseCache.versaoIfMatch(exchange));
+        }
         
         Produto produtoAtualizado = produtoDAO.atualizar(produto);
+        if (produtoAtualizado.getVersao() != null) {
+            exchange.getResponseHeaders().set("ETag", ResponseCache.etagRegistro(produtoAtualizado.getVersao()));
+        }
         String json = JsonUtil.produtoToJson(produtoAtualizado);
         WebServer.sendResponse(exchange, 200, "application/json", json);
     }
     
-    private void handleDelete(HttpExchange exchange, String path) throws Exception {
-        String[] parts = path.split("/");
-        int id = Integer.parseInt(parts[parts.length - 1]);
-        
-        boolean deletado = produtoDAO.deletar(id);
+    // PATCH /api/produtos/{id}: so os campos enviados mudam; null mantem o valor atual
+    private void atualizarParcial(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        EdicaoParcial.enviar(exchange, parametros.inteiro(0), "Produto", produtoCache, Produto::getVersao,
+            JsonUtil::jsonToProduto, produtoDAO::atualizarParcial, JsonUtil::produtoToJson);
+    }
+    
+    // DELETE /api/produtos/{id}
+    private void deletar(HttpExchange exchange, Router.Parametros parametros) throws Exception {
+        boolean deletado = produtoDAO.deletar(parametros.inteiro(0));
         if (deletado) {
             WebServer.sendResponse(exchange, 200, "application/json", 
                 "{\"mensagem\":\"Produto deletado com sucesso\"}");
@@ -117,16 +209,4 @@ public class ProdutoApiHandler implements HttpHandler {
                 "{\"erro\":\"Produto nao encontrado\"}");
         }
     }
-    
-    private String readRequestBody(HttpExchange exchange) throws IOException {
-        InputStream is = exchange.getRequestBody();
-        byte[] buffer = new byte[1024];
-        StringBuilder sb = new StringBuilder();
-        int bytesRead;
-        while ((bytesRead = is.read(buffer)) != -1) {
-            sb.append(new String(buffer, 0, bytesRead, StandardCharsets.UTF_8));
-        }
-        return sb.toString();
-    }
 }
-
@@ -0,0 +1,184 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import exception.CorpoMuitoGrandeException;
+import util.ConfigUtil;
+import util.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Corpo de uma requisicao lido inteiro para memoria, com limite de tamanho.
+ * Corpos de ate http.body.bufferBytes usam buffers reaproveitados de um pool;
+ * com Content-Length maior o buffer ja e alocado do tamanho exato. Acima de
+ * http.body.maxBytes a leitura para e o handler responde 413. Os bytes vao
+ * direto para o JsonReader, que decodifica o UTF-8 no documento inteiro.
+ *
+ * O buffer volta ao pool no close(); nada lido dele pode ser guardado depois.
+ */
+final class RequestBody implements AutoCloseable {
+    
+    private static final int TAMANHO_MAXIMO = ConfigUtil.getInt("http.body.maxBytes", 1024 * 1024);
+    private static final int TAMANHO_BUFFER = ConfigUtil.getInt("http.body.bufferBytes", 16 * 1024);
+    // Corpo recusado: ate este tanto e lido e descartado para o cliente receber o 413
+    private static final long DESCARTE_MAXIMO = ConfigUtil.getLong("http.body.drainBytes", 8L * 1024 * 1024);
+    private static final ArrayBlockingQueue<byte[]> POOL =
+        new ArrayBlockingQueue<>(Math.max(ConfigUtil.getInt("http.body.poolSize", 32), 1));
+    
+    private static final LongAdder LIDOS = new LongAdder();
+    private static final LongAdder BYTES = new LongAdder();
+    private static final LongAdder RECUSADOS = new LongAdder();
+    private static final LongAdder BUFFERS_NOVOS = new LongAdder();
+    
+    @FunctionalInterface
+    interface Leitor<T> {
+        T ler(JsonReader reader) throws IOException;
+    }
+    
+    private byte[] buffer;
+    private final int tamanho;
+    
+    private RequestBody(byte[] buffer, int tamanho) {
+        this.buffer = buffer;
+        this.tamanho = tamanho;
+    }
+    
+    /**
+     * Le e converte um corpo JSON, devolvendo o buffer ao pool em seguida.
+     */
+    static <T> T lerJson(HttpExchange exchange, Leitor<T> leitor) throws IOException, CorpoMuitoGrandeException {
+        try (RequestBody corpo = ler(exchange)) {
+            return leitor.ler(corpo.json());
+        }
+    }
+    
+    static RequestBody ler(HttpExchange exchange) throws IOException, CorpoMuitoGrandeException {
+        long declarado = tamanhoDeclarado(exchange);
+        if (declarado > TAMANHO_MAXIMO) {
+            throw recusar(exchange, null);
+        }
+        
+        byte[] buffer = declarado > TAMANHO_BUFFER ? novoBuffer((int) declarado) : emprestar();
+        int total = 0;
+        InputStream in = exchange.getRequestBody();
+        try {
+            while (true) {
+                if (total == buffer.length) {
+                    // Buffer cheio: so cresce se ainda houver dados
+                    int proximo = in.read();
+                    if (proximo < 0) {
+                        break;
+                    }
+                    if (total == TAMANHO_MAXIMO) {
+                        throw recusar(exchange, buffer);
+                    }
+                    byte[] maior = novoBuffer((int) Math.min((long) buffer.length * 2, TAMANHO_MAXIMO));
+                    System.arraycopy(buffer, 0, maior, 0, total);
+                    devolver(buffer);
+                    buffer = maior;
+                    buffer[total++] = (byte) proximo;
+                    continue;
+                }
+                int lidos = in.read(buffer, total, buffer.length - total);
+                if (lidos < 0) {
+                    break;
+                }
+                total += lidos;
+                if (total > TAMANHO_MAXIMO) {
+                    throw recusar(exchange, buffer);
+                }
+            }
+        } catch (IOException | CorpoMuitoGrandeException | RuntimeException e) {
+            devolver(buffer);
+            throw e;
+        }
+        
+        LIDOS.increment();
+        BYTES.add(total);
+        return new RequestBody(buffer, total);
+    }
+    
+    /** Leitor sobre os bytes do corpo, sem copia. */
+    JsonReader json() {
+        return new JsonReader(buffer, 0, tamanho);
+    }
+    
+    int tamanho() {
+        return tamanho;
+    }
+    
+    @Override
+    public void close() {
+        if (buffer != null) {
+            devolver(buffer);
+            buffer = null;
+        }
+    }
+    
+    static String toJson() {
+        return "{" +
+            "\"lidos\":" + LIDOS.sum() + "," +
+            "\"bytes\":" + BYTES.sum() + "," +
+            "\"recusados\":" + RECUSADOS.sum() + "," +
+            "\"buffersNovos\":" + BUFFERS_NOVOS.sum() + "," +
+            "\"buffersNoPool\":" + POOL.size() + "," +
+            "\"limiteBytes\":" + TAMANHO_MAXIMO +
+            "}";
+    }
+    
+    // Sem ler o restante, o servidor fecharia a conexao com dados pendentes e o
+    // cliente poderia receber um reset em vez da resposta
+    private static CorpoMuitoGrandeException recusar(HttpExchange exchange, byte[] buffer) throws IOException {
+        RECUSADOS.increment();
+        byte[] descarte = buffer != null ? buffer : emprestar();
+        try {
+            InputStream in = exchange.getRequestBody();
+            long descartados = 0;
+            int lidos = 0;
+            while (descartados <= DESCARTE_MAXIMO && (lidos = in.read(descarte)) >= 0) {
+                descartados += lidos;
+            }
+            if (lidos >= 0) {
+                exchange.getResponseHeaders().set("Connection", "close");
+            }
+        } finally {
+            if (buffer == null) {
+                devolver(descarte);
+            }
+        }
+        return new CorpoMuitoGrandeException(TAMANHO_MAXIMO);
+    }
+    
+    // -1 quando o cliente nao informou (transferencia chunked) ou informou algo invalido
+    private static long tamanhoDeclarado(HttpExchange exchange) {
+        String valor = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (valor == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(valor.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static byte[] emprestar() {
+        byte[] buffer = POOL.poll();
+        return buffer != null ? buffer : novoBuffer(TAMANHO_BUFFER);
+    }
+    
+    // So buffers do tamanho padrao voltam; os maiores ficam para o GC
+    private static void devolver(byte[] buffer) {
+        if (buffer.length == TAMANHO_BUFFER) {
+            POOL.offer(buffer);
+        }
+    }
+    
+    private static byte[] novoBuffer(int tamanho) {
+        BUFFERS_NOVOS.increment();
+        return new byte[tamanho];
+    }
+}
@@ -0,0 +1,245 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import dao.NotificadorAlteracoes;
+import util.ConfigUtil;
+import util.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache dos bytes JSON ja renderizados das respostas GET de uma API.
+ * O ETag forte de cada resposta e a versao da tabela (NotificadorAlteracoes)
+ * no momento da leitura, entao um If-None-Match atual e respondido com 304
+ * sem consultar o DAO. A chave e o caminho mais a query string.
+ * Um registro unico usa a versao da propria linha como ETag ("v<versao>"),
+ * que so muda quando aquele registro muda e e aceita de volta no If-Match
+ * do PUT.
+ */
+public class ResponseCache {
+    
+    @FunctionalInterface
+    public interface Renderizador {
+        void escrever(JsonWriter writer) throws Exception;
+    }
+    
+    private static final Map<String, ResponseCache> CACHES = new ConcurrentSkipListMap<>();
+    
+    // Distingue versoes de execucoes diferentes do servidor, ja que o contador recomeca do zero
+    private static final String INICIO = Long.toHexString(System.currentTimeMillis());
+    
+    private final String nome;
+    private final String tabela;
+    private final int maxEntradas;
+    private final long maxBytes;
+    private final int maxBytesEntrada;
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytesTotais;
+    
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder naoModificados = new LongAdder();
+    private final LongAdder renderizacoes = new LongAdder();
+    private final LongAdder bytesEconomizados = new LongAdder();
+    
+    private static final class Entrada {
+        final long versao;
+        final byte[] bytes;
+        
+        Entrada(long versao, byte[] bytes) {
+            this.versao = versao;
+            this.bytes = bytes;
+        }
+    }
+    
+    public ResponseCache(String nome, String tabela) {
+        this(nome, tabela,
+            ConfigUtil.getInt("http.respostas.maxEntradas", 512),
+            ConfigUtil.getLong("http.respostas.maxBytes", 8L * 1024 * 1024),
+            ConfigUtil.getInt("http.respostas.maxBytesEntrada", 256 * 1024));
+    }
+    
+    public ResponseCache(String nome, String tabela, int maxEntradas, long maxBytes, int maxBytesEntrada) {
+        this.nome = nome;
+        this.tabela = tabela;
+        this.maxEntradas = maxEntradas;
+        this.maxBytes = maxBytes;
+        this.maxBytesEntrada = maxBytesEntrada;
+        CACHES.put(nome, this);
+    }
+    
+    /**
+     * Responde o GET com 304, com os bytes em cache ou renderizando de novo.
+     * Se o renderizador lancar excecao nada e enviado, para o handler tratar.
+     */
+    public void enviar(HttpExchange exchange, Renderizador renderizador) throws Exception {
+        // Versao lida antes da consulta: o conteudo e no minimo tao novo quanto ela
+        long versao = NotificadorAlteracoes.versao(tabela);
+        String etag = "\"" + INICIO + "-" + versao + "\"";
+        
+        if (naoModificado(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            naoModificados.increment();
+            definirCabecalhos(exchange, etag);
+            WebServer.sendNotModified(exchange);
+            return;
+        }
+        
+        String chave = chave(exchange);
+        Entrada entrada;
+        synchronized (this) {
+            entrada = entradas.get(chave);
+        }
+        if (entrada != null && entrada.versao == versao) {
+            acertos.increment();
+            bytesEconomizados.add(entrada.bytes.length);
+            definirCabecalhos(exchange, etag);
+            WebServer.sendResponse(exchange, 200, "application/json", entrada.bytes);
+            return;
+        }
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            renderizador.escrever(writer);
+        }
+        byte[] bytes = out.toByteArray();
+        renderizacoes.increment();
+        if (bytes.length <= maxBytesEntrada) {
+            guardar(chave, new Entrada(versao, bytes));
+        }
+        definirCabecalhos(exchange, etag);
+        WebServer.sendResponse(exchange, 200, "application/json", bytes);
+    }
+    
+    /**
+     * GET de um registro ja carregado (normalmente do cache de entidades):
+     * o If-None-Match e comparado com a versao da linha, e gravacoes em
+     * outros registros da tabela nao invalidam a copia do cliente. Sem
+     * versao conhecida, cai no ETag da tabela.
+     */
+    public void enviarRegistro(HttpExchange exchange, Integer versao, Renderizador renderizador) throws Exception {
+        if (versao == null) {
+            enviar(exchange, renderizador);
+            return;
+        }
+        String etag = etagRegistro(versao);
+        
+        if (naoModificado(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            naoModificados.increment();
+            definirCabecalhos(exchange, etag);
+            WebServer.sendNotModified(exchange);
+            return;
+        }
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            renderizador.escrever(writer);
+        }
+        renderizacoes.increment();
+        definirCabecalhos(exchange, etag);
+        WebServer.sendResponse(exchange, 200, "application/json", out.toByteArray());
+    }
+    
+    public static String etagRegistro(int versao) {
+        return "\"v" + versao + "\"";
+    }
+    
+    /**
+     * Versao esperada num PUT a partir do If-Match ("v3" ou W/"v3"), ou null
+     * quando o cabecalho nao veio.
+     */
+    public static Integer versaoIfMatch(HttpExchange exchange) {
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() > 3 && tag.startsWith("\"v") && tag.endsWith("\"")) {
+            try {
+                return Integer.valueOf(tag.substring(2, tag.length() - 1));
+            } catch (NumberFormatException e) {
+                // cai no erro abaixo
+            }
+        }
+        throw new IllegalArgumentException("If-Match invalido: use o ETag devolvido pelo GET do registro.");
+    }
+    
+    public synchronized String toJson() {
+        return "{" +
+            "\"entradas\":" + entradas.size() + "," +
+            "\"bytes\":" + bytesTotais + "," +
+            "\"versaoTabela\":" + NotificadorAlteracoes.versao(tabela) + "," +
+            "\"acertos\":" + acertos.sum() + "," +
+            "\"naoModificados\":" + naoModificados.sum() + "," +
+            "\"renderizacoes\":" + renderizacoes.sum() + "," +
+            "\"bytesEconomizados\":" + bytesEconomizados.sum() +
+            "}";
+    }
+    
+    public static String toJsonTodos() {
+        StringBuilder json = new StringBuilder("{");
+        boolean primeiro = true;
+        for (ResponseCache cache : CACHES.values()) {
+            if (!primeiro) json.append(",");
+            primeiro = false;
+            json.append("\"").append(cache.nome).append("\":").append(cache.toJson());
+        }
+        json.append("}");
+        return json.toString();
+    }
+    
+    private synchronized void guardar(String chave, Entrada nova) {
+        Entrada anterior = entradas.get(chave);
+        // Outra thread pode ter guardado uma versao mais nova enquanto esta renderizava
+        if (anterior != null && anterior.versao > nova.versao) {
+            return;
+        }
+        if (anterior != null) {
+            bytesTotais -= anterior.bytes.length;
+        }
+        entradas.put(chave, nova);
+        bytesTotais += nova.bytes.length;
+        
+        // Remove as menos usadas recentemente (LinkedHashMap em ordem de acesso)
+        Iterator<Entrada> it = entradas.values().iterator();
+        while ((entradas.size() > maxEntradas || bytesTotais > maxBytes) && it.hasNext()) {
+            bytesTotais -= it.next().bytes.length;
+            it.remove();
+        }
+    }
+    
+    // So nas respostas de sucesso; um erro renderizando nao pode sair com ETag
+    private static void definirCabecalhos(HttpExchange exchange, String etag) {
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+    }
+    
+    private static String chave(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getRawQuery();
+        String path = exchange.getRequestURI().getPath();
+        return query != null ? path + "?" + query : path;
+    }
+    
+    private static boolean naoModificado(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,347 @@
+package server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import util.ConfigUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compressao das respostas JSON (e das exportacoes) negociada pelo
+ * Accept-Encoding: gzip ou deflate. O corpo passa por um Deflater do pool e
+ * sai comprimido direto no corpo da resposta, em transferencia chunked, sem
+ * montar a versao comprimida inteira em memoria.
+ *
+ * Respostas de tamanho conhecido abaixo de http.compressao.minBytes vao sem
+ * compressao, porque o ganho nao paga o custo. Respostas em streaming
+ * (sendJson, exportacoes) nao tem tamanho conhecido e sao comprimidas sempre
+ * que o cliente aceita. A ETag de uma resposta comprimida vira fraca (W/):
+ * os bytes nao sao os da versao sem compressao, mas o If-None-Match continua
+ * casando, ja que a comparacao ignora o W/.
+ */
+final class ResponseCompression {
+    
+    private static final boolean ATIVA = ConfigUtil.getBoolean("http.compressao.ativa", true);
+    private static final int TAMANHO_MINIMO = ConfigUtil.getInt("http.compressao.minBytes", 1024);
+    private static final int NIVEL = ConfigUtil.getInt("http.compressao.nivel", 6);
+    private static final int TAMANHO_POOL = Math.max(ConfigUtil.getInt("http.compressao.poolSize", 32), 1);
+    private static final int TAMANHO_BUFFER = 8 * 1024;
+    
+    // Cabecalho gzip fixo: metodo deflate, sem nome nem data, sistema desconhecido (RFC 1952)
+    private static final byte[] CABECALHO_GZIP = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    
+    private static final Map<String, Estatistica> ROTAS = new ConcurrentSkipListMap<>();
+    private static final LongAdder DEFLATERS_NOVOS = new LongAdder();
+    
+    enum Codificacao {
+        GZIP("gzip", true),
+        DEFLATE("deflate", false);
+        
+        final String nome;
+        // gzip leva cabecalho e CRC proprios em volta do deflate cru; deflate e o formato zlib
+        final boolean semCabecalhoZlib;
+        final ArrayBlockingQueue<Compactador> pool = new ArrayBlockingQueue<>(TAMANHO_POOL);
+        
+        Codificacao(String nome, boolean semCabecalhoZlib) {
+            this.nome = nome;
+            this.semCabecalhoZlib = semCabecalhoZlib;
+        }
+    }
+    
+    // Deflater, buffer de saida e CRC reaproveitados juntos
+    private static final class Compactador {
+        final Deflater deflater;
+        final byte[] buffer = new byte[TAMANHO_BUFFER];
+        final CRC32 crc = new CRC32();
+        
+        Compactador(Codificacao codificacao) {
+            this.deflater = new Deflater(NIVEL, codificacao.semCabecalhoZlib);
+        }
+    }
+    
+    private static final class Estatistica {
+        final LongAdder comprimidas = new LongAdder();
+        final LongAdder naoComprimidas = new LongAdder();
+        final LongAdder bytesOriginais = new LongAdder();
+        final LongAdder bytesEnviados = new LongAdder();
+        
+        String toJson() {
+            long originais = bytesOriginais.sum();
+            long enviados = bytesEnviados.sum();
+            return "{" +
+                "\"comprimidas\":" + comprimidas.sum() + "," +
+                "\"naoComprimidas\":" + naoComprimidas.sum() + "," +
+                "\"bytesOriginais\":" + originais + "," +
+                "\"bytesEnviados\":" + enviados + "," +
+                "\"razao\":" + (originais == 0 ? 0 : Math.round(enviados * 1000.0 / originais) / 1000.0) +
+                "}";
+        }
+    }
+    
+    private ResponseCompression() {
+    }
+    
+    /**
+     * Codificacao a usar na resposta, ou null para enviar sem compressao.
+     * tamanho e -1 quando o corpo vai em streaming.
+     */
+    static Codificacao negociar(HttpExchange exchange, String contentType, long tamanho) {
+        if (!ATIVA || !compressivel(contentType)) {
+            return null;
+        }
+        // A mesma URL pode voltar comprimida ou nao, conforme o cliente
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            return null;
+        }
+        if (tamanho >= 0 && tamanho < TAMANHO_MINIMO) {
+            if (tamanho > 0) {
+                estatistica(exchange).naoComprimidas.increment();
+            }
+            return null;
+        }
+        Codificacao codificacao = escolher(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        if (codificacao == null && tamanho > 0) {
+            estatistica(exchange).naoComprimidas.increment();
+        }
+        return codificacao;
+    }
+    
+    /**
+     * Envia os cabecalhos (chunked, com Content-Encoding) e devolve o stream
+     * que comprime para o corpo da resposta. O close() termina a compressao
+     * e devolve o Deflater ao pool; sem ele o Deflater fica para o GC.
+     */
+    static OutputStream comprimir(HttpExchange exchange, int statusCode, Codificacao codificacao) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Encoding", codificacao.nome);
+        String etag = headers.getFirst("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            headers.set("ETag", "W/" + etag);
+        }
+        Estatistica estatistica = estatistica(exchange);
+        exchange.sendResponseHeaders(statusCode, 0);
+        return new Compressor(exchange.getResponseBody(), codificacao, estatistica);
+    }
+    
+    /** Devolve o Deflater de um corpo interrompido, sem terminar a compressao nem fechar a resposta. */
+    static void descartar(OutputStream corpo) {
+        if (corpo instanceof Compressor) {
+            ((Compressor) corpo).descartar();
+        }
+    }
+    
+    static String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"ativa\":").append(ATIVA).append(",");
+        json.append("\"minBytes\":").append(TAMANHO_MINIMO).append(",");
+        json.append("\"nivel\":").append(NIVEL).append(",");
+        json.append("\"deflatersNovos\":").append(DEFLATERS_NOVOS.sum()).append(",");
+        json.append("\"deflatersNoPool\":{");
+        boolean primeiro = true;
+        for (Codificacao codificacao : Codificacao.values()) {
+            if (!primeiro) json.append(",");
+            primeiro = false;
+            json.append("\"").append(codificacao.nome).append("\":").append(codificacao.pool.size());
+        }
+        json.append("},\"rotas\":{");
+        primeiro = true;
+        for (Map.Entry<String, Estatistica> rota : ROTAS.entrySet()) {
+            if (!primeiro) json.append(",");
+            primeiro = false;
+            json.append("\"").append(rota.getKey()).append("\":").append(rota.getValue().toJson());
+        }
+        json.append("}}");
+        return json.toString();
+    }
+    
+    // JSON, NDJSON e texto (CSV das exportacoes) comprimem bem; imagens e binarios nao
+    private static boolean compressivel(String contentType) {
+        return contentType != null && (contentType.startsWith("application/json")
+            || contentType.startsWith("application/x-ndjson") || contentType.startsWith("text/"));
+    }
+    
+    // Maior q vence; no empate gzip, que todo cliente entende. "*" vale para o que nao foi citado
+    private static Codificacao escolher(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double qualquer = -1;
+        for (String item : acceptEncoding.split(",")) {
+            String[] partes = item.trim().split(";");
+            String nome = partes[0].trim().toLowerCase();
+            double q = 1;
+            for (int i = 1; i < partes.length; i++) {
+                String param = partes[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (nome.equals("gzip") || nome.equals("x-gzip")) {
+                gzip = q;
+            } else if (nome.equals("deflate")) {
+                deflate = q;
+            } else if (nome.equals("*")) {
+                qualquer = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = qualquer;
+        }
+        if (deflate < 0) {
+            deflate = qualquer;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return Codificacao.GZIP;
+        }
+        return deflate > 0 ? Codificacao.DEFLATE : null;
+    }
+    
+    // Metricas pela rota do Router ou, fora dele, pelo contexto
+    private static Estatistica estatistica(HttpExchange exchange) {
+        String rota = HttpMetrics.rotaAtual();
+        if (rota == null) {
+            rota = exchange.getRequestMethod() + " " + exchange.getHttpContext().getPath();
+        }
+        return ROTAS.computeIfAbsent(rota, r -> new Estatistica());
+    }
+    
+    private static Compactador emprestar(Codificacao codificacao) {
+        Compactador compactador = codificacao.pool.poll();
+        if (compactador == null) {
+            DEFLATERS_NOVOS.increment();
+            return new Compactador(codificacao);
+        }
+        return compactador;
+    }
+    
+    private static void devolver(Codificacao codificacao, Compactador compactador) {
+        compactador.deflater.reset();
+        compactador.crc.reset();
+        if (!codificacao.pool.offer(compactador)) {
+            compactador.deflater.end();
+        }
+    }
+    
+    private static final class Compressor extends OutputStream {
+        private final OutputStream destino;
+        private final Codificacao codificacao;
+        private final Estatistica estatistica;
+        private final Compactador compactador;
+        private final byte[] umByte = new byte[1];
+        private long originais;
+        private long enviados;
+        private boolean fechado;
+        
+        Compressor(OutputStream destino, Codificacao codificacao, Estatistica estatistica) throws IOException {
+            this.destino = destino;
+            this.codificacao = codificacao;
+            this.estatistica = estatistica;
+            this.compactador = emprestar(codificacao);
+            if (codificacao == Codificacao.GZIP) {
+                destino.write(CABECALHO_GZIP);
+                enviados += CABECALHO_GZIP.length;
+            }
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            umByte[0] = (byte) b;
+            write(umByte, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (fechado) {
+                throw new IOException("Resposta ja encerrada");
+            }
+            if (len == 0) {
+                return;
+            }
+            originais += len;
+            compactador.crc.update(b, off, len);
+            Deflater deflater = compactador.deflater;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                drenar(Deflater.NO_FLUSH);
+            }
+        }
+        
+        // SYNC_FLUSH: o cliente consegue descomprimir tudo o que ja foi escrito
+        @Override
+        public void flush() throws IOException {
+            if (fechado) {
+                return;
+            }
+            while (drenar(Deflater.SYNC_FLUSH) == TAMANHO_BUFFER) {
+                // buffer cheio: ainda ha saida pendente
+            }
+            destino.flush();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (fechado) {
+                return;
+            }
+            fechado = true;
+            try {
+                Deflater deflater = compactador.deflater;
+                deflater.finish();
+                while (!deflater.finished()) {
+                    drenar(Deflater.NO_FLUSH);
+                }
+                if (codificacao == Codificacao.GZIP) {
+                    byte[] rodape = new byte[8];
+                    escreverInt(rodape, 0, compactador.crc.getValue());
+                    escreverInt(rodape, 4, originais);
+                    destino.write(rodape);
+                    enviados += rodape.length;
+                }
+                destino.close();
+            } finally {
+                devolver(codificacao, compactador);
+                estatistica.comprimidas.increment();
+                estatistica.bytesOriginais.add(originais);
+                estatistica.bytesEnviados.add(enviados);
+                HttpMetrics.bytesEnviados(enviados);
+            }
+        }
+        
+        void descartar() {
+            if (!fechado) {
+                fechado = true;
+                devolver(codificacao, compactador);
+            }
+        }
+        
+        private int drenar(int modo) throws IOException {
+            int n = compactador.deflater.deflate(compactador.buffer, 0, TAMANHO_BUFFER, modo);
+            if (n > 0) {
+                destino.write(compactador.buffer, 0, n);
+                enviados += n;
+            }
+            return n;
+        }
+        
+        // Little-endian, como pede o rodape do gzip
+        private static void escreverInt(byte[] destino, int posicao, long valor) {
+            for (int i = 0; i < 4; i++) {
+                destino[posicao + i] = (byte) (valor >>> (8 * i));
+            }
+        }
+    }
+}
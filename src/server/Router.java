@@ -0,0 +1,264 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Despacha as requisicoes da API por metodo e caminho. As rotas sao
+ * registradas uma vez (ex.: "/api/pets/{id:int}", "/api/produtos/categoria/{categoria}")
+ * e ficam numa arvore de segmentos; cada requisicao percorre o caminho uma
+ * vez, sem regex nem split, e os parametros {nome:int} sao convertidos
+ * direto dos caracteres do caminho. Segmentos fixos tem prioridade sobre
+ * parametros, entao "/api/produtos/exportar" nunca cai em "{id:int}".
+ *
+ * Caminho sem rota responde 404; caminho com rota, mas nao para o metodo,
+ * responde 405 com o cabecalho Allow. Cada rota conta chamadas, erros e
+ * tempo de execucao, expostos em /api/stats, e tem sua serie em /metrics
+ * (HttpMetrics).
+ */
+public class Router {
+    
+    private static final int MAXIMO_PARAMETROS = 4;
+    
+    @FunctionalInterface
+    public interface Acao {
+        void executar(HttpExchange exchange, Parametros parametros) throws Exception;
+    }
+    
+    /** Valores dos parametros da rota, na ordem em que aparecem no caminho. */
+    public static final class Parametros {
+        private final int[] inteiros = new int[MAXIMO_PARAMETROS];
+        private final String[] textos = new String[MAXIMO_PARAMETROS];
+        
+        public int inteiro(int indice) {
+            return inteiros[indice];
+        }
+        
+        public String texto(int indice) {
+            return textos[indice];
+        }
+    }
+    
+    private static final class Rota {
+        final String metodo;
+        final String padrao;
+        final Acao acao;
+        final String chave;
+        final HttpMetrics.Serie metricas;
+        final LongAdder chamadas = new LongAdder();
+        final LongAdder erros = new LongAdder();
+        final LongAdder nanosTotais = new LongAdder();
+        final AtomicLong nanosMaximo = new AtomicLong();
+        
+        Rota(String metodo, String padrao, Acao acao) {
+            this.metodo = metodo;
+            this.padrao = padrao;
+            this.acao = acao;
+            this.chave = metodo + " " + padrao;
+            this.metricas = HttpMetrics.rota(chave);
+        }
+        
+        void registrar(long nanos, boolean erro) {
+            chamadas.increment();
+            nanosTotais.add(nanos);
+            if (erro) {
+                erros.increment();
+            }
+            long maximo = nanosMaximo.get();
+            while (nanos > maximo && !nanosMaximo.compareAndSet(maximo, nanos)) {
+                maximo = nanosMaximo.get();
+            }
+        }
+        
+        String toJson() {
+            long total = chamadas.sum();
+            return "{" +
+                "\"chamadas\":" + total + "," +
+                "\"erros\":" + erros.sum() + "," +
+                "\"mediaMs\":" + (total == 0 ? 0 : nanosTotais.sum() / total / 1000) / 1000.0 + "," +
+                "\"maximoMs\":" + nanosMaximo.get() / 1000 / 1000.0 +
+                "}";
+        }
+    }
+    
+    // Um no por segmento; filhos fixos em arrays pequenos, comparados sem criar String
+    private static final class No {
+        String[] literais = new String[0];
+        No[] filhosLiterais = new No[0];
+        No filhoInteiro;
+        No filhoTexto;
+        final Map<String, Rota> rotas = new LinkedHashMap<>();
+        String allow;
+        
+        No literal(String segmento) {
+            for (int i = 0; i < literais.length; i++) {
+                if (literais[i].equals(segmento)) {
+                    return filhosLiterais[i];
+                }
+            }
+            literais = Arrays.copyOf(literais, literais.length + 1);
+            filhosLiterais = Arrays.copyOf(filhosLiterais, filhosLiterais.length + 1);
+            literais[literais.length - 1] = segmento;
+            return filhosLiterais[filhosLiterais.length - 1] = new No();
+        }
+    }
+    
+    private final No raiz = new No();
+    private final List<Rota> todas = new ArrayList<>();
+    private final LongAdder naoEncontradas = new LongAdder();
+    private final LongAdder metodoNaoPermitido = new LongAdder();
+    
+    /**
+     * Registra uma rota. Segmentos entre chaves sao parametros: {nome:int}
+     * aceita so digitos (cabendo num int) e {nome} aceita qualquer texto.
+     * Deve ser chamado antes do servidor comecar a atender.
+     */
+    public synchronized Router adicionar(String metodo, String padrao, Acao acao) {
+        No no = raiz;
+        int parametros = 0;
+        for (String segmento : segmentos(padrao)) {
+            if (segmento.startsWith("{") && segmento.endsWith("}")) {
+                if (++parametros > MAXIMO_PARAMETROS) {
+                    throw new IllegalArgumentException("Parametros demais na rota " + padrao);
+                }
+                if (segmento.endsWith(":int}")) {
+                    no = no.filhoInteiro != null ? no.filhoInteiro : (no.filhoInteiro = new No());
+                } else if (segmento.indexOf(':') < 0) {
+                    no = no.filhoTexto != null ? no.filhoTexto : (no.filhoTexto = new No());
+                } else {
+                    throw new IllegalArgumentException("Tipo de parametro invalido na rota " + padrao + ": " + segmento);
+                }
+            } else {
+                no = no.literal(segmento);
+            }
+        }
+        
+        if (no.rotas.containsKey(metodo)) {
+            throw new IllegalArgumentException("Rota repetida: " + metodo + " " + padrao);
+        }
+        Rota rota = new Rota(metodo, padrao, acao);
+        no.rotas.put(metodo, rota);
+        no.allow = String.join(", ", no.rotas.keySet());
+        todas.add(rota);
+        return this;
+    }
+    
+    /**
+     * Executa a rota do metodo e caminho da requisicao, ou responde 404/405.
+     * Excecoes da acao sao repassadas, para o handler responder o erro.
+     */
+    public void despachar(HttpExchange exchange) throws Exception {
+        String caminho = exchange.getRequestURI().getPath();
+        Parametros parametros = new Parametros();
+        No no = buscar(raiz, caminho, inicioSegmento(caminho, 0), parametros, 0);
+        
+        if (no == null || no.rotas.isEmpty()) {
+            naoEncontradas.increment();
+            WebServer.sendResponse(exchange, 404, "application/json",
+                "{\"erro\":\"Rota nao encontrada: " + exchange.getRequestMethod() + " "
+                + caminho.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}");
+            return;
+        }
+        Rota rota = no.rotas.get(exchange.getRequestMethod());
+        if (rota == null) {
+            metodoNaoPermitido.increment();
+            exchange.getResponseHeaders().set("Allow", no.allow);
+            WebServer.sendResponse(exchange, 405, "text/plain", "Metodo nao permitido");
+            return;
+        }
+        
+        long inicio = System.nanoTime();
+        boolean erro = true;
+        HttpMetrics.usar(rota.metricas);
+        try {
+            rota.acao.executar(exchange, parametros);
+            erro = false;
+        } finally {
+            rota.registrar(System.nanoTime() - inicio, erro);
+        }
+    }
+    
+    // Percorre a arvore a partir do segmento em 'inicio'; volta atras se um
+    // segmento fixo casar mas o restante do caminho nao
+    private No buscar(No no, String caminho, int inicio, Parametros parametros, int indice) {
+        if (inicio >= caminho.length()) {
+            return no;
+        }
+        int fim = caminho.indexOf('/', inicio);
+        if (fim < 0) {
+            fim = caminho.length();
+        }
+        int proximo = inicioSegmento(caminho, fim);
+        int tamanho = fim - inicio;
+        
+        for (int i = 0; i < no.literais.length; i++) {
+            String literal = no.literais[i];
+            if (literal.length() == tamanho && caminho.regionMatches(inicio, literal, 0, tamanho)) {
+                No encontrado = buscar(no.filhosLiterais[i], caminho, proximo, parametros, indice);
+                if (encontrado != null && !encontrado.rotas.isEmpty()) {
+                    return encontrado;
+                }
+                break;
+            }
+        }
+        if (no.filhoInteiro != null && tamanho > 0 && tamanho <= 10) {
+            long valor = 0;
+            int i = inicio;
+            while (i < fim && caminho.charAt(i) >= '0' && caminho.charAt(i) <= '9') {
+                valor = valor * 10 + (caminho.charAt(i++) - '0');
+            }
+            if (i == fim && valor <= Integer.MAX_VALUE) {
+                parametros.inteiros[indice] = (int) valor;
+                No encontrado = buscar(no.filhoInteiro, caminho, proximo, parametros, indice + 1);
+                if (encontrado != null && !encontrado.rotas.isEmpty()) {
+                    return encontrado;
+                }
+            }
+        }
+        if (no.filhoTexto != null && tamanho > 0) {
+            parametros.textos[indice] = caminho.substring(inicio, fim);
+            return buscar(no.filhoTexto, caminho, proximo, parametros, indice + 1);
+        }
+        return null;
+    }
+    
+    // Pula as barras: "/api//pets/" equivale a "/api/pets"
+    private static int inicioSegmento(String caminho, int i) {
+        while (i < caminho.length() && caminho.charAt(i) == '/') {
+            i++;
+        }
+        return i;
+    }
+    
+    private static List<String> segmentos(String padrao) {
+        List<String> segmentos = new ArrayList<>();
+        for (String segmento : padrao.split("/")) {
+            if (!segmento.isEmpty()) {
+                segmentos.add(segmento);
+            }
+        }
+        return segmentos;
+    }
+    
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"naoEncontradas\":").append(naoEncontradas.sum()).append(",");
+        json.append("\"metodoNaoPermitido\":").append(metodoNaoPermitido.sum()).append(",");
+        json.append("\"rotas\":{");
+        boolean primeiro = true;
+        for (Rota rota : todas) {
+            if (!primeiro) json.append(",");
+            primeiro = false;
+            json.append("\"").append(rota.chave).append("\":").append(rota.toJson());
+        }
+        json.append("}}");
+        return json.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package server;
+
+import com.sun.net.httpserver.HttpHandler;
+import util.ConfigUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+/**
+ * Motor HTTP por baixo do WebServer. Os handlers sao sempre
+ * com.sun.net.httpserver.HttpHandler, entao as rotas, o controle de admissao
+ * e a conexao por requisicao funcionam igual nos dois motores:
+ * "jdk" usa o HttpServer do JDK e "nio" usa NioServerEngine (selector proprio,
+ * buffers diretos reaproveitados, keep-alive e pipelining).
+ */
+public interface ServerEngine {
+    
+    String JDK = "jdk";
+    String NIO = "nio";
+    
+    void createContext(String path, HttpHandler handler);
+    
+    void start() throws IOException;
+    
+    void stop(int delaySeconds);
+    
+    String getName();
+    
+    /** Endereco em que o motor esta escutando (com a porta real, se foi pedida a porta 0). */
+    InetSocketAddress getAddress();
+    
+    String toJson();
+    
+    static ServerEngine create(String name, InetSocketAddress address, Executor executor) throws IOException {
+        switch (name) {
+            case JDK:
+                return new JdkServerEngine(address, executor);
+            case NIO:
+                return new NioServerEngine(address, executor);
+            default:
+                throw new IllegalArgumentException("Motor HTTP desconhecido: " + name + ". Use jdk ou nio.");
+        }
+    }
+    
+    static ServerEngine fromConfig(InetSocketAddress address, Executor executor) throws IOException {
+        String name = ConfigUtil.getString("http.engine", JDK).toLowerCase();
+        if (!JDK.equals(name) && !NIO.equals(name)) {
+            System.err.println("Motor HTTP desconhecido: " + name + "; usando " + JDK);
+            name = JDK;
+        }
+        return create(name, address, executor);
+    }
+}
@@ -0,0 +1,206 @@
+package server;
+
+import util.ConfigUtil;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor usado pelo HttpServer para atender as requisicoes.
+ * Modo "virtual": uma virtual thread por requisicao (requer Java 21+; e o
+ * padrao quando a JVM oferece virtual threads).
+ * Modo "platform": pool limitado de threads com fila de tamanho fixo. Quando
+ * a fila enche, a tarefa vai para um pool pequeno de descarte, onde o
+ * AdmissionController responde 503 sem tocar no banco; a thread que submeteu
+ * (dispatcher do HttpServer ou selector do motor nio) nunca executa a
+ * requisicao. Se o pool de descarte tambem encher, execute() lanca
+ * RejectedExecutionException e o motor fecha a conexao ou responde 503.
+ */
+public class ServerExecutor implements Executor {
+
+    public static final String MODO_VIRTUAL = "virtual";
+    public static final String MODO_PLATAFORMA = "platform";
+
+    // Marca a thread que atende uma tarefa recusada pelo pool principal
+    private static final ThreadLocal<Boolean> SOBRECARGA = new ThreadLocal<>();
+
+    private final String mode;
+    private final ExecutorService delegate;
+    private final ThreadPoolExecutor platformPool;
+    private final ThreadPoolExecutor sheddingPool;
+    private final int threads;
+    private final int queueCapacity;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    private ServerExecutor(String mode, int threads, int queueCapacity, int shedThreads) {
+        ExecutorService virtual = MODO_VIRTUAL.equals(mode) ? newVirtualThreadExecutor() : null;
+        if (MODO_VIRTUAL.equals(mode) && virtual == null) {
+            System.err.println("Virtual threads indisponiveis nesta JVM; usando pool de plataforma.");
+            mode = MODO_PLATAFORMA;
+        }
+
+        this.mode = mode;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+
+        if (virtual != null) {
+            this.delegate = virtual;
+            this.platformPool = null;
+            this.sheddingPool = null;
+        } else {
+            this.sheddingPool = new ThreadPoolExecutor(shedThreads, shedThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("http-descarte-"),
+                new ThreadPoolExecutor.AbortPolicy());
+            this.sheddingPool.allowCoreThreadTimeOut(true);
+            this.platformPool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("http-worker-"),
+                new ShedOnSaturation());
+            this.platformPool.allowCoreThreadTimeOut(true);
+            this.delegate = platformPool;
+        }
+    }
+
+    public static ServerExecutor fromConfig() {
+        String padrao = Runtime.version().feature() >= 21 ? MODO_VIRTUAL : MODO_PLATAFORMA;
+        String mode = ConfigUtil.getString("http.executor", padrao).toLowerCase();
+        if (!MODO_VIRTUAL.equals(mode) && !MODO_PLATAFORMA.equals(mode)) {
+            System.err.println("Modo de executor desconhecido: " + mode + "; usando " + padrao);
+            mode = padrao;
+        }
+        int threads = ConfigUtil.getInt("http.threads", Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+        int queue = ConfigUtil.getInt("http.queue", 256);
+        int shedThreads = ConfigUtil.getInt("http.shedThreads", 2);
+        if (threads <= 0) {
+            throw new IllegalArgumentException("http.threads deve ser positivo.");
+        }
+        if (queue <= 0) {
+            throw new IllegalArgumentException("http.queue deve ser positivo.");
+        }
+        if (shedThreads <= 0) {
+            throw new IllegalArgumentException("http.shedThreads deve ser positivo.");
+        }
+        return new ServerExecutor(mode, threads, queue, shedThreads);
+    }
+
+    /** Verdadeiro na thread que atende uma requisicao recusada pelo pool cheio. */
+    public static boolean emSobrecarga() {
+        return SOBRECARGA.get() != null;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        submitted.increment();
+        delegate.execute(() -> {
+            int now = active.incrementAndGet();
+            peakActive.accumulateAndGet(now, Math::max);
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) {
+                failed.increment();
+                throw e;
+            } finally {
+                active.decrementAndGet();
+                completed.increment();
+            }
+        });
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void shutdown() {
+        if (sheddingPool != null) {
+            sheddingPool.shutdown();
+        }
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(5, TimeUnit.SECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"modo\":\"").append(mode).append("\",");
+        json.append("\"ativas\":").append(active.get()).append(",");
+        json.append("\"picoAtivas\":").append(peakActive.get()).append(",");
+        json.append("\"submetidas\":").append(submitted.sum()).append(",");
+        json.append("\"concluidas\":").append(completed.sum()).append(",");
+        json.append("\"falhas\":").append(failed.sum()).append(",");
+        json.append("\"rejeitadas\":").append(rejected.sum());
+        if (platformPool != null) {
+            json.append(",\"threads\":").append(threads);
+            json.append(",\"threadsVivas\":").append(platformPool.getPoolSize());
+            json.append(",\"filaCapacidade\":").append(queueCapacity);
+            json.append(",\"filaOcupada\":").append(platformPool.getQueue().size());
+            json.append(",\"threadsDescarte\":").append(sheddingPool.getPoolSize());
+        }
+        json.append("}");
+        return json.toString();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private class ShedOnSaturation implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejected.increment();
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor encerrado");
+            }
+            // Lanca RejectedExecutionException se o pool de descarte tambem estiver cheio
+            sheddingPool.execute(() -> {
+                SOBRECARGA.set(Boolean.TRUE);
+                try {
+                    r.run();
+                } finally {
+                    SOBRECARGA.remove();
+                }
+            });
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(false);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+public class StaticFileHandler implements HttpHandler {
+    
+    private final AssetCache cache;
+    private final String cacheControl;
+    
+    public StaticFileHandler(AssetCache cache, String cacheControl) {
+        this.cache = cache;
+        this.cacheControl = cacheControl;
+    }
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            WebServer.sendResponse(exchange, 405, "text/plain", "Metodo nao permitido");
+            return;
+        }
+        
+        String requestPath = exchange.getRequestURI().getPath();
+        if (requestPath.equals("/")) {
+            requestPath = "/index.html";
+        }
+        
+        AssetCache.Asset asset = cache.get(requestPath);
+        if (asset == null) {
+            WebServer.sendResponse(exchange, 404, "text/plain", "Arquivo nao encontrado");
+            return;
+        }
+        
+        Headers requestHeaders = exchange.getRequestHeaders();
+        boolean gzip = asset.getGzip() != null && aceitaGzip(requestHeaders.getFirst("Accept-Encoding"));
+        
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", asset.getContentType());
+        headers.set("ETag", gzip ? asset.getGzipEtag() : asset.getEtag());
+        headers.set("Last-Modified", asset.getLastModifiedHttp());
+        headers.set("Cache-Control", cacheControl);
+        if (asset.getGzip() != null) {
+            headers.set("Vary", "Accept-Encoding");
+        }
+        
+        if (naoModificado(requestHeaders, asset)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        
+        byte[] body = gzip ? asset.getGzip() : asset.getBytes();
+        long length = body != null ? body.length : asset.getLength();
+        if (gzip) {
+            headers.set("Content-Encoding", "gzip");
+        }
+        
+        if ("HEAD".equals(method)) {
+            headers.set("Content-Length", String.valueOf(length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        
+        exchange.sendResponseHeaders(200, length);
+        HttpMetrics.bytesEnviados(length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            if (body != null) {
+                os.write(body);
+            } else {
+                copiar(asset.getFile(), os, length);
+            }
+        }
+    }
+    
+    // Envia no maximo o tamanho anunciado, mesmo que o arquivo cresca no meio do envio
+    private void copiar(Path file, OutputStream os, long length) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            long restante = length;
+            while (restante > 0) {
+                int lidos = in.read(buffer, 0, (int) Math.min(buffer.length, restante));
+                if (lidos < 0) {
+                    throw new IOException("Arquivo encolheu durante o envio: " + file);
+                }
+                os.write(buffer, 0, lidos);
+                restante -= lidos;
+            }
+        }
+    }
+    
+    private boolean naoModificado(Headers requestHeaders, AssetCache.Asset asset) {
+        String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-None-Match tem precedencia sobre If-Modified-Since
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(asset.getEtag()) || tag.equals(asset.getGzipEtag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        String ifModifiedSince = requestHeaders.getFirst("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli();
+                return asset.getLastModified() <= since;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+    
+    private boolean aceitaGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String encoding : acceptEncoding.split(",")) {
+            String[] partes = encoding.trim().split(";");
+            if (!partes[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < partes.length; i++) {
+                String param = partes[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
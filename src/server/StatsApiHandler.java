@@ -0,0 +1,48 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import dao.EntityCache;
+import dao.QueryCache;
+import db.DatabaseConnection;
+import db.UnitOfWork;
+
+import java.io.IOException;
+
+public class StatsApiHandler implements HttpHandler {
+    
+    private final ServerEngine motor;
+    private final ServerExecutor executor;
+    private final AdmissionController admission;
+    private final Router rotas;
+    
+    public StatsApiHandler(ServerEngine motor, ServerExecutor executor, AdmissionController admission, Router rotas) {
+        this.motor = motor;
+        this.executor = executor;
+        this.admission = admission;
+        this.rotas = rotas;
+    }
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            WebServer.sendResponse(exchange, 405, "text/plain", "Metodo nao permitido");
+            return;
+        }
+        
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"motorHttp\":").append(motor.toJson()).append(",");
+        json.append("\"executor\":").append(executor.toJson()).append(",");
+        json.append("\"admissao\":").append(admission.toJson()).append(",");
+        json.append("\"rotas\":").append(rotas.toJson()).append(",");
+        json.append("\"compressao\":").append(ResponseCompression.toJson()).append(",");
+        json.append("\"corpoRequisicao\":").append(RequestBody.toJson()).append(",");
+        json.append("\"poolConexoes\":").append(DatabaseConnection.getInstance().getPoolStats().toJson()).append(",");
+        json.append("\"conexoesPorRequisicao\":").append(UnitOfWork.toJson()).append(",");
+        json.append("\"cacheEntidades\":").append(EntityCache.toJsonTodos()).append(",");
+        json.append("\"cacheConsultas\":").append(QueryCache.toJsonTodos()).append(",");
+        json.append("\"cacheRespostas\":").append(ResponseCache.toJsonTodos());
+        json.append("}");
+        WebServer.sendResponse(exchange, 200, "application/json", json.toString());
+    }
+}
@@ -1,31 +1,51 @@
 package server;
 
-import com.sun.net.httpserver.HttpServer;
-import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import db.UnitOfWork;
+import util.ConfigUtil;
+import util.JsonContent;
+import util.JsonWriter;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class WebServer {
     
     private static final int PORT = 8080;
     private static final String WEB_DIR = "web";
-    private HttpServer server;
+    private ServerEngine server;
+    private ServerExecutor executor;
+    private AdmissionController admission;
+    private AssetCache assetCache;
+    private Router rotas;
     
     public void start() throws IOException {
-        server = HttpServer.create(new InetSocketAddress(PORT), 0);
-        server.createContext("/api/clientes", new ClienteApiHandler());
-        server.createContext("/api/funcionarios", new FuncionarioApiHandler());
-        server.createContext("/api/pets", new PetApiHandler());
-        server.createContext("/api/produtos", new ProdutoApiHandler());
-        server.createContext("/", new StaticFileHandler());
+        executor = ServerExecutor.fromConfig();
+        admission = AdmissionController.fromConfig();
+        assetCache = new AssetCache(Paths.get(WEB_DIR),
+            ConfigUtil.getInt("http.static.maxCachedBytes", 4 * 1024 * 1024),
+            ConfigUtil.getInt("http.static.gzipMinBytes", 512),
+            ConfigUtil.getLong("http.static.maxTotalBytes", 64L * 1024 * 1024));
+        assetCache.startWatching();
+        rotas = new Router();
+        server = ServerEngine.fromConfig(new InetSocketAddress(PORT), executor);
+        contexto("/api/clientes", admission.wrap("/api/clientes", porRequisicao(new ClienteApiHandler(rotas))));
+        contexto("/api/funcionarios", admission.wrap("/api/funcionarios", porRequisicao(new FuncionarioApiHandler(rotas))));
+        contexto("/api/pets", admission.wrap("/api/pets", porRequisicao(new PetApiHandler(rotas))));
+        contexto("/api/produtos", admission.wrap("/api/produtos", porRequisicao(new ProdutoApiHandler(rotas))));
+        contexto("/api/admissao", new AdmissaoApiHandler(admission));
+        contexto("/api/stats", new StatsApiHandler(server, executor, admission, rotas));
+        contexto("/metrics", new MetricsHandler());
+        contexto("/", new StaticFileHandler(assetCache,
+            ConfigUtil.getString("http.static.cacheControl", "no-cache")));
         
-        server.setExecutor(null); // Usa thread pool padrão
         server.start();
         
         System.out.println("========================================");
@@ -33,62 +53,133 @@ public class WebServer {
         System.out.println("========================================");
         System.out.println("  URL: http://localhost:" + PORT);
         System.out.println("  Diretorio web: " + WEB_DIR);
+        System.out.println("  Motor HTTP: " + server.getName());
+        System.out.println("  Executor: " + executor.getMode());
         System.out.println("========================================");
     }
     
     public void stop() {
         if (server != null) {
             server.stop(0);
+            executor.shutdown();
+            assetCache.stopWatching();
             System.out.println("Servidor HTTP parado.");
         }
     }
     
-    private static class StaticFileHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            String requestPath = exchange.getRequestURI().getPath();
-            if (requestPath.equals("/")) {
-                requestPath = "/index.html";
-            }
-            
-            Path filePath = Paths.get(WEB_DIR + requestPath);
-            if (!Files.exists(filePath) || !Files.isRegularFile(filePath)) {
-                sendResponse(exchange, 404, "text/plain", "Arquivo nao encontrado");
-                return;
+    public static void sendResponse(HttpExchange exchange, int statusCode, String contentType, String response) throws IOException {
+        sendResponse(exchange, statusCode, contentType, response.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public static void sendResponse(HttpExchange exchange, int statusCode, String contentType, byte[] responseBytes) throws IOException {
+        if (!prepareHeaders(exchange, contentType)) {
+            return;
+        }
+        
+        ResponseCompression.Codificacao codificacao =
+            ResponseCompression.negociar(exchange, contentType, responseBytes.length);
+        if (codificacao != null) {
+            try (OutputStream os = ResponseCompression.comprimir(exchange, statusCode, codificacao)) {
+                os.write(responseBytes);
             }
-            
-            byte[] fileBytes = Files.readAllBytes(filePath);
-            String contentType = getContentType(requestPath);
-            sendResponse(exchange, 200, contentType, new String(fileBytes, "UTF-8"));
+            return;
         }
         
-        private String getContentType(String filename) {
-            if (filename.endsWith(".html")) return "text/html; charset=UTF-8";
-            if (filename.endsWith(".css")) return "text/css; charset=UTF-8";
-            if (filename.endsWith(".js")) return "application/javascript; charset=UTF-8";
-            if (filename.endsWith(".json")) return "application/json; charset=UTF-8";
-            return "text/plain; charset=UTF-8";
+        exchange.sendResponseHeaders(statusCode, responseBytes.length);
+        HttpMetrics.bytesEnviados(responseBytes.length);
+        
+        OutputStream os = exchange.getResponseBody();
+        os.write(responseBytes);
+        os.close();
+    }
+    
+    // Resposta 304 sem corpo; o ETag ja deve estar nos cabecalhos
+    public static void sendNotModified(HttpExchange exchange) throws IOException {
+        if (!prepareHeaders(exchange, "application/json")) {
+            return;
         }
+        
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
     }
     
-    public static void sendResponse(HttpExchange exchange, int statusCode, String contentType, String response) throws IOException {
+    // Escreve o JSON direto no corpo da resposta (chunked), sem montar String
+    public static void sendJson(HttpExchange exchange, int statusCode, JsonContent content) throws IOException {
+        OutputStream os = sendChunkedHeaders(exchange, statusCode, "application/json");
+        if (os == null) {
+            return;
+        }
+        
+        try (JsonWriter writer = new JsonWriter(os)) {
+            content.writeTo(writer);
+        }
+    }
+    
+    // Envia os cabecalhos com corpo chunked, comprimido se o cliente aceitar;
+    // retorna null se a requisicao era OPTIONS
+    public static OutputStream sendChunkedHeaders(HttpExchange exchange, int statusCode, String contentType) throws IOException {
+        if (!prepareHeaders(exchange, contentType)) {
+            return null;
+        }
+        
+        ResponseCompression.Codificacao codificacao = ResponseCompression.negociar(exchange, contentType, -1);
+        if (codificacao != null) {
+            return ResponseCompression.comprimir(exchange, statusCode, codificacao);
+        }
+        exchange.sendResponseHeaders(statusCode, 0);
+        return HttpMetrics.contar(exchange.getResponseBody());
+    }
+    
+    // Para um corpo chunked que falhou no meio: devolve o compressor sem terminar o corpo e
+    // lanca a excecao, que deve sair do handler. Os dois motores fecham a conexao sem o
+    // chunk final, entao o cliente ve a resposta truncada em vez de um corpo completo
+    static void interromperChunked(OutputStream corpo, String mensagem, Exception causa) throws IOException {
+        ResponseCompression.descartar(corpo);
+        throw new IOException(mensagem, causa);
+    }
+    
+    // Decodifica a query string; parametros repetidos ficam com o ultimo valor
+    public static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parametros = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parametros;
+        }
+        for (String par : rawQuery.split("&")) {
+            if (par.isEmpty()) {
+                continue;
+            }
+            int igual = par.indexOf('=');
+            String chave = igual >= 0 ? par.substring(0, igual) : par;
+            String valor = igual >= 0 ? par.substring(igual + 1) : "";
+            parametros.put(URLDecoder.decode(chave, StandardCharsets.UTF_8),
+                URLDecoder.decode(valor, StandardCharsets.UTF_8));
+        }
+        return parametros;
+    }
+    
+    // Todo contexto passa pelas metricas HTTP
+    private void contexto(String path, HttpHandler handler) {
+        server.createContext(path, HttpMetrics.medir(path, handler));
+    }
+    
+    // Uma conexao do pool por requisicao, compartilhada pelos DAOs que o handler usar
+    private static HttpHandler porRequisicao(HttpHandler handler) {
+        return exchange -> UnitOfWork.executar(() -> handler.handle(exchange));
+    }
+    
+    private static boolean prepareHeaders(HttpExchange exchange, String contentType) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", contentType);
         exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
-        exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, PUT, PATCH, DELETE, OPTIONS");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type, If-None-Match, If-Match");
+        exchange.getResponseHeaders().set("Access-Control-Expose-Headers", "ETag");
         
         if (exchange.getRequestMethod().equals("OPTIONS")) {
             exchange.sendResponseHeaders(200, 0);
             exchange.close();
-            return;
+            return false;
         }
-        
-        byte[] responseBytes = response.getBytes("UTF-8");
-        exchange.sendResponseHeaders(statusCode, responseBytes.length);
-        
-        OutputStream os = exchange.getResponseBody();
-        os.write(responseBytes);
-        os.close();
+        return true;
     }
     
     public static void main(String[] args) {
@@ -0,0 +1,53 @@
+package util;
+
+/**
+ * Leitura de configuracao do servidor.
+ * Procura primeiro a propriedade de sistema (-Dchave=valor) e depois a
+ * variavel de ambiente equivalente (CHAVE_COM_UNDERSCORE), usando o valor
+ * padrao quando nenhuma das duas estiver definida.
+ */
+public class ConfigUtil {
+    
+    public static String getString(String chave, String padrao) {
+        String valor = System.getProperty(chave);
+        if (valor == null) {
+            valor = System.getenv(paraVariavelAmbiente(chave));
+        }
+        return valor != null && !valor.trim().isEmpty() ? valor.trim() : padrao;
+    }
+    
+    public static int getInt(String chave, int padrao) {
+        String valor = getString(chave, null);
+        if (valor == null) {
+            return padrao;
+        }
+        try {
+            return Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            System.err.println("Configuracao invalida para " + chave + ": " + valor);
+            return padrao;
+        }
+    }
+    
+    public static long getLong(String chave, long padrao) {
+        String valor = getString(chave, null);
+        if (valor == null) {
+            return padrao;
+        }
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            System.err.println("Configuracao invalida para " + chave + ": " + valor);
+            return padrao;
+        }
+    }
+    
+    public static boolean getBoolean(String chave, boolean padrao) {
+        String valor = getString(chave, null);
+        return valor != null ? Boolean.parseBoolean(valor) : padrao;
+    }
+    
+    private static String paraVariavelAmbiente(String chave) {
+        return chave.replace('.', '_').replace('-', '_').toUpperCase();
+    }
+}
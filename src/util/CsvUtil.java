@@ -0,0 +1,58 @@
+package util;
+
+import model.Cliente;
+import model.Pet;
+import model.Produto;
+
+import java.io.IOException;
+
+public class CsvUtil {
+    
+    public static final String[] CABECALHO_CLIENTE = {
+        "idCliente", "nome", "cpf", "telefone", "email", "endereco", "dataCadastro"
+    };
+    
+    public static final String[] CABECALHO_PET = {
+        "idPet", "idCliente", "nome", "especie", "raca", "dataNascimento", "peso", "observacoes", "dataCadastro"
+    };
+    
+    public static final String[] CABECALHO_PRODUTO = {
+        "idProduto", "nome", "descricao", "preco", "estoque", "categoria", "ativo", "dataCadastro"
+    };
+    
+    public static void writeCliente(CsvWriter w, Cliente cliente) throws IOException {
+        w.value(cliente.getIdCliente());
+        w.value(cliente.getNome());
+        w.value(cliente.getCpf());
+        w.value(cliente.getTelefone());
+        w.value(cliente.getEmail());
+        w.value(cliente.getEndereco());
+        w.value(cliente.getDataCadastro());
+        w.fimLinha();
+    }
+    
+    public static void writePet(CsvWriter w, Pet pet) throws IOException {
+        w.value(pet.getIdPet());
+        w.value(pet.getIdCliente());
+        w.value(pet.getNome());
+        w.value(pet.getEspecie());
+        w.value(pet.getRaca());
+        w.value(pet.getDataNascimento());
+        w.value(pet.getPeso());
+        w.value(pet.getObservacoes());
+        w.value(pet.getDataCadastro());
+        w.fimLinha();
+    }
+    
+    public static void writeProduto(CsvWriter w, Produto produto) throws IOException {
+        w.value(produto.getIdProduto());
+        w.value(produto.getNome());
+        w.value(produto.getDescricao());
+        w.value(produto.getPreco());
+        w.value(produto.getEstoque());
+        w.value(produto.getCategoria());
+        w.value(produto.getAtivo() != null ? produto.getAtivo() : true);
+        w.value(produto.getDataCadastro());
+        w.fimLinha();
+    }
+}
@@ -0,0 +1,127 @@
+package util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Escritor de CSV (RFC 4180) em UTF-8 com buffer proprio. Campos com
+ * separador, aspas ou quebra de linha sao escritos entre aspas.
+ */
+public class CsvWriter implements Closeable, Flushable {
+    
+    private static final DateTimeFormatter DATA_HORA = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    
+    private final Writer out;
+    private final char separador;
+    private boolean inicioLinha = true;
+    
+    public CsvWriter(OutputStream out) {
+        this(out, ',');
+    }
+    
+    public CsvWriter(OutputStream out, char separador) {
+        this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        this.separador = separador;
+    }
+    
+    public CsvWriter linha(String... campos) throws IOException {
+        for (String campo : campos) {
+            value(campo);
+        }
+        return fimLinha();
+    }
+    
+    public CsvWriter value(String valor) throws IOException {
+        separar();
+        if (valor == null) {
+            return this;
+        }
+        if (precisaAspas(valor)) {
+            out.write('"');
+            for (int i = 0; i < valor.length(); i++) {
+                char c = valor.charAt(i);
+                if (c == '"') {
+                    out.write('"');
+                }
+                out.write(c);
+            }
+            out.write('"');
+        } else {
+            out.write(valor);
+        }
+        return this;
+    }
+    
+    public CsvWriter value(Number valor) throws IOException {
+        separar();
+        if (valor != null) {
+            out.write(valor.toString());
+        }
+        return this;
+    }
+    
+    public CsvWriter value(Boolean valor) throws IOException {
+        separar();
+        if (valor != null) {
+            out.write(valor ? "true" : "false");
+        }
+        return this;
+    }
+    
+    public CsvWriter value(LocalDate data) throws IOException {
+        separar();
+        if (data != null) {
+            out.write(data.toString());
+        }
+        return this;
+    }
+    
+    public CsvWriter value(LocalDateTime dataHora) throws IOException {
+        separar();
+        if (dataHora != null) {
+            out.write(DATA_HORA.format(dataHora));
+        }
+        return this;
+    }
+    
+    public CsvWriter fimLinha() throws IOException {
+        out.write("\r\n");
+        inicioLinha = true;
+        return this;
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+    
+    private void separar() throws IOException {
+        if (!inicioLinha) {
+            out.write(separador);
+        }
+        inicioLinha = false;
+    }
+    
+    private boolean precisaAspas(String valor) {
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == separador || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,136 @@
+package util;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma log-linear de valores inteiros (nanossegundos, bytes). Cada
+ * potencia de dois entre o minimo e o maximo e dividida em faixas lineares
+ * de mesmo tamanho, entao o erro relativo e o mesmo em toda a escala. O
+ * indice da faixa sai de numberOfLeadingZeros e de um shift, sem busca; o
+ * registro so incrementa um AtomicLongArray e um LongAdder, sem alocar.
+ */
+public final class Histogram {
+    
+    private final long minimo;
+    private final long maximo;
+    private final int log2Minimo;
+    private final int log2Subdivisoes;
+    private final int subdivisoes;
+    // Limite superior (inclusivo) de cada faixa; a ultima posicao de contagens e o excedente (+Inf)
+    private final long[] limites;
+    // Os mesmos limites ja na unidade exportada, formatados uma vez
+    private final String[] limitesExportados;
+    private final AtomicLongArray contagens;
+    private final LongAdder soma = new LongAdder();
+    // Multiplicador aplicado na exportacao (1e-9 para nanossegundos em segundos)
+    private final double escala;
+    
+    /**
+     * minimo e maximo devem ser potencias de dois, e subdivisoes uma potencia
+     * de dois nao maior que o minimo.
+     */
+    public Histogram(long minimo, long maximo, int subdivisoes, double escala) {
+        if (Long.bitCount(minimo) != 1 || Long.bitCount(maximo) != 1 || maximo <= minimo
+                || Integer.bitCount(subdivisoes) != 1 || subdivisoes > minimo) {
+            throw new IllegalArgumentException("Faixas invalidas para o histograma: " + minimo + ".." + maximo
+                + " em " + subdivisoes);
+        }
+        this.minimo = minimo;
+        this.maximo = maximo;
+        this.log2Minimo = Long.numberOfTrailingZeros(minimo);
+        this.log2Subdivisoes = Integer.numberOfTrailingZeros(subdivisoes);
+        this.subdivisoes = subdivisoes;
+        this.escala = escala;
+        
+        int log2Maximo = Long.numberOfTrailingZeros(maximo);
+        limites = new long[1 + (log2Maximo - log2Minimo) * subdivisoes];
+        limites[0] = minimo;
+        int i = 1;
+        for (int k = log2Minimo; k < log2Maximo; k++) {
+            long passo = 1L << (k - log2Subdivisoes);
+            for (int s = 1; s <= subdivisoes; s++) {
+                limites[i++] = (1L << k) + s * passo;
+            }
+        }
+        contagens = new AtomicLongArray(limites.length + 1);
+        
+        limitesExportados = new String[limites.length];
+        BigDecimal multiplicador = BigDecimal.valueOf(escala);
+        for (int j = 0; j < limites.length; j++) {
+            limitesExportados[j] = BigDecimal.valueOf(limites[j]).multiply(multiplicador)
+                .stripTrailingZeros().toPlainString();
+        }
+    }
+    
+    /** Latencias em nanossegundos, de ~4 us a ~69 s, exportadas em segundos. */
+    public static Histogram latencia() {
+        return new Histogram(1L << 12, 1L << 36, 2, 1e-9);
+    }
+    
+    /** Tamanhos em bytes, de 64 B a 64 MiB. */
+    public static Histogram bytes() {
+        return new Histogram(1L << 6, 1L << 26, 2, 1);
+    }
+    
+    public void registrar(long valor) {
+        if (valor < 0) {
+            valor = 0;
+        }
+        contagens.incrementAndGet(indice(valor));
+        soma.add(valor);
+    }
+    
+    /** Registra o tempo decorrido desde inicioNanos (de System.nanoTime()). */
+    public void registrarDesde(long inicioNanos) {
+        registrar(System.nanoTime() - inicioNanos);
+    }
+    
+    private int indice(long valor) {
+        if (valor <= minimo) {
+            return 0;
+        }
+        if (valor > maximo) {
+            return limites.length;
+        }
+        // Faixa (valor - 1) em [2^k, 2^(k+1)): os limites superiores sao inclusivos
+        int k = 63 - Long.numberOfLeadingZeros(valor - 1);
+        int s = (int) ((valor - 1 - (1L << k)) >>> (k - log2Subdivisoes));
+        return 1 + (k - log2Minimo) * subdivisoes + s;
+    }
+    
+    public long getTotal() {
+        long total = 0;
+        for (int i = 0; i < contagens.length(); i++) {
+            total += contagens.get(i);
+        }
+        return total;
+    }
+    
+    /**
+     * Escreve as linhas _bucket (acumuladas), _sum e _count no formato texto
+     * do Prometheus. rotulos ja vem formatado (ex.: rota="GET /api/pets") ou vazio.
+     */
+    void escreverPrometheus(StringBuilder out, String nome, String rotulos) {
+        String separador = rotulos.isEmpty() ? "" : ",";
+        long acumulado = 0;
+        for (int i = 0; i < limites.length; i++) {
+            acumulado += contagens.get(i);
+            out.append(nome).append("_bucket{").append(rotulos).append(separador)
+                .append("le=\"").append(limitesExportados[i]).append("\"} ").append(acumulado).append('\n');
+        }
+        acumulado += contagens.get(limites.length);
+        out.append(nome).append("_bucket{").append(rotulos).append(separador)
+            .append("le=\"+Inf\"} ").append(acumulado).append('\n');
+        String chaves = rotulos.isEmpty() ? "" : "{" + rotulos + "}";
+        out.append(nome).append("_sum").append(chaves).append(' ');
+        if (escala == 1) {
+            out.append(soma.sum());
+        } else {
+            out.append(soma.sum() * escala);
+        }
+        out.append('\n');
+        out.append(nome).append("_count").append(chaves).append(' ').append(acumulado).append('\n');
+    }
+}
@@ -0,0 +1,12 @@
+package util;
+
+import java.io.IOException;
+
+/**
+ * Conteudo JSON escrito de forma incremental num {@link JsonWriter}.
+ */
+@FunctionalInterface
+public interface JsonContent {
+    
+    void writeTo(JsonWriter writer) throws IOException;
+}
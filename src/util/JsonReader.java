@@ -0,0 +1,538 @@
+package util;
+
+import exception.JsonInvalidoException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Leitor de JSON incremental (pull parser) que consome bytes UTF-8 direto de
+ * um InputStream. Cada chamada a peek() identifica o proximo token sem
+ * carregar o documento inteiro em memoria.
+ */
+public class JsonReader implements Closeable {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY,
+        NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int NONEMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+    private static final int MAX_DEPTH = 64;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int pos;
+    private int limit;
+    private long consumed;
+
+    private final int[] stack = new int[MAX_DEPTH + 1];
+    private int stackSize;
+
+    private Token peeked;
+    private String peekedText;
+    private boolean peekedBoolean;
+    private final StringBuilder text = new StringBuilder();
+
+    public JsonReader(InputStream in) {
+        this(in, 8192);
+    }
+
+    public JsonReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Le a partir de bytes ja recebidos, sem copia-los.
+     */
+    public JsonReader(byte[] bytes, int offset, int length) {
+        this.in = null;
+        this.buffer = bytes;
+        this.pos = offset;
+        this.limit = offset + length;
+        this.consumed = -offset;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        int c;
+        switch (stack[stackSize - 1]) {
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                c = nextNonWhitespace();
+                if (c == -1) {
+                    throw syntaxError("Documento JSON vazio");
+                }
+                return peeked = readValueToken(c);
+            case NONEMPTY_DOCUMENT:
+                c = nextNonWhitespace();
+                if (c != -1) {
+                    throw syntaxError("Conteudo apos o fim do documento JSON");
+                }
+                return peeked = Token.END_DOCUMENT;
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                return peeked = readValueToken(c);
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Esperado ',' ou ']'");
+                }
+                return peeked = readValueToken(nextNonWhitespace());
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (stack[stackSize - 1] == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Esperado ',' ou '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Esperado nome de campo entre aspas");
+                }
+                stack[stackSize - 1] = DANGLING_NAME;
+                peekedText = readString();
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                c = nextNonWhitespace();
+                if (c != ':') {
+                    throw syntaxError("Esperado ':'");
+                }
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                return peeked = readValueToken(nextNonWhitespace());
+            default:
+                throw new IllegalStateException("Estado invalido do leitor JSON");
+        }
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return peekedText;
+    }
+
+    /**
+     * Retorna o texto de uma string ou de um numero.
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token != Token.STRING && token != Token.NUMBER) {
+            throw syntaxError("Esperado texto mas encontrado " + token);
+        }
+        peeked = null;
+        return peekedText;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return peekedBoolean;
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    public double nextDouble() throws IOException {
+        String value = nextString();
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Numero invalido: " + value);
+        }
+    }
+
+    public long nextLong() throws IOException {
+        String value = nextString();
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            try {
+                double d = Double.parseDouble(value);
+                if (d == Math.rint(d) && Math.abs(d) < 9.007199254740992E15) {
+                    return (long) d;
+                }
+            } catch (NumberFormatException ignored) {
+                // Cai no erro abaixo
+            }
+            throw syntaxError("Numero inteiro invalido: " + value);
+        }
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw syntaxError("Numero fora do intervalo de int: " + value);
+        }
+        return (int) value;
+    }
+
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            switch (token) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Fim inesperado do documento JSON");
+                default:
+                    peeked = null;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Le o proximo valor como Map, List, String, Double/Long, Boolean ou null.
+     */
+    public Object readValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT: {
+                Map<String, Object> map = new LinkedHashMap<>();
+                beginObject();
+                while (hasNext()) {
+                    String name = nextName();
+                    map.put(name, readValue());
+                }
+                endObject();
+                return map;
+            }
+            case BEGIN_ARRAY: {
+                List<Object> list = new ArrayList<>();
+                beginArray();
+                while (hasNext()) {
+                    list.add(readValue());
+                }
+                endArray();
+                return list;
+            }
+            case STRING:
+                return nextString();
+            case NUMBER: {
+                String number = nextString();
+                if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+                    try {
+                        return Long.parseLong(number);
+                    } catch (NumberFormatException e) {
+                        // Inteiro grande demais: cai para double
+                    }
+                }
+                return Double.parseDouble(number);
+            }
+            case BOOLEAN:
+                return nextBoolean();
+            case NULL:
+                nextNull();
+                return null;
+            default:
+                throw syntaxError("Valor JSON esperado");
+        }
+    }
+
+    /**
+     * Garante que nao ha mais nada no documento alem do valor ja lido.
+     */
+    public void endDocument() throws IOException {
+        if (stackSize != 1 || peek() != Token.END_DOCUMENT) {
+            throw syntaxError("Conteudo inesperado no fim do documento JSON");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Esperado " + expected + " mas encontrado " + token);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (stackSize > MAX_DEPTH) {
+            throw syntaxError("JSON aninhado demais");
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private Token readValueToken(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                peekedText = readString();
+                return Token.STRING;
+            case 't':
+                readLiteral("rue");
+                peekedBoolean = true;
+                return Token.BOOLEAN;
+            case 'f':
+                readLiteral("alse");
+                peekedBoolean = false;
+                return Token.BOOLEAN;
+            case 'n':
+                readLiteral("ull");
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Fim inesperado do documento JSON");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    peekedText = readNumber(c);
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Caractere inesperado '" + (char) c + "'");
+        }
+    }
+
+    private void readLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw syntaxError("Literal invalido");
+            }
+        }
+        int next = peekByte();
+        if ((next >= 'a' && next <= 'z') || (next >= 'A' && next <= 'Z') || (next >= '0' && next <= '9')) {
+            throw syntaxError("Literal invalido");
+        }
+    }
+
+    private String readNumber(int first) throws IOException {
+        text.setLength(0);
+        text.append((char) first);
+        while (true) {
+            int c = peekByte();
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                text.append((char) read());
+            } else {
+                break;
+            }
+        }
+        if (!isValidNumber(text)) {
+            throw syntaxError("Numero invalido: " + text);
+        }
+        return text.toString();
+    }
+
+    // -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?
+    private static boolean isValidNumber(CharSequence s) {
+        int i = 0;
+        int n = s.length();
+        if (i < n && s.charAt(i) == '-') i++;
+        if (i >= n) return false;
+        if (s.charAt(i) == '0') {
+            i++;
+        } else if (s.charAt(i) >= '1' && s.charAt(i) <= '9') {
+            while (i < n && Character.isDigit(s.charAt(i))) i++;
+        } else {
+            return false;
+        }
+        if (i < n && s.charAt(i) == '.') {
+            i++;
+            int start = i;
+            while (i < n && Character.isDigit(s.charAt(i))) i++;
+            if (i == start) return false;
+        }
+        if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+            int start = i;
+            while (i < n && Character.isDigit(s.charAt(i))) i++;
+            if (i == start) return false;
+        }
+        return i == n;
+    }
+
+    private String readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int b = read();
+            if (b == -1) {
+                throw syntaxError("String nao terminada");
+            }
+            if (b == '"') {
+                return text.toString();
+            }
+            if (b == '\\') {
+                readEscape();
+            } else if (b < 0x20) {
+                throw syntaxError("Caractere de controle dentro de string");
+            } else if (b < 0x80) {
+                text.append((char) b);
+            } else {
+                readUtf8(b);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"': text.append('"'); break;
+            case '\\': text.append('\\'); break;
+            case '/': text.append('/'); break;
+            case 'b': text.append('\b'); break;
+            case 'f': text.append('\f'); break;
+            case 'n': text.append('\n'); break;
+            case 'r': text.append('\r'); break;
+            case 't': text.append('\t'); break;
+            case 'u': {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int h = Character.digit(read(), 16);
+                    if (h < 0) {
+                        throw syntaxError("Escape unicode invalido");
+                    }
+                    value = (value << 4) | h;
+                }
+                text.append((char) value);
+                break;
+            }
+            default:
+                throw syntaxError("Escape invalido");
+        }
+    }
+
+    private void readUtf8(int first) throws IOException {
+        int codePoint;
+        int extra;
+        if ((first & 0xE0) == 0xC0) {
+            codePoint = first & 0x1F;
+            extra = 1;
+        } else if ((first & 0xF0) == 0xE0) {
+            codePoint = first & 0x0F;
+            extra = 2;
+        } else if ((first & 0xF8) == 0xF0) {
+            codePoint = first & 0x07;
+            extra = 3;
+        } else {
+            throw syntaxError("Sequencia UTF-8 invalida");
+        }
+        for (int i = 0; i < extra; i++) {
+            int b = read();
+            if (b == -1 || (b & 0xC0) != 0x80) {
+                throw syntaxError("Sequencia UTF-8 invalida");
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        if ((extra == 1 && codePoint < 0x80) || (extra == 2 && codePoint < 0x800)
+                || (extra == 3 && codePoint < 0x10000) || codePoint > 0x10FFFF
+                || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+            throw syntaxError("Sequencia UTF-8 invalida");
+        }
+        text.appendCodePoint(codePoint);
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private int peekByte() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        consumed += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    private JsonInvalidoException syntaxError(String message) {
+        return new JsonInvalidoException(message + " (posicao " + (consumed + pos) + ")");
+    }
+}
@@ -5,154 +5,254 @@ import model.Pet;
 import model.Produto;
 import model.Funcionario;
 
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class JsonUtil {
     
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final byte[] F_ID_CLIENTE = JsonWriter.name("idCliente");
+    private static final byte[] F_ID_PET = JsonWriter.name("idPet");
+    private static final byte[] F_ID_PRODUTO = JsonWriter.name("idProduto");
+    private static final byte[] F_ID_FUNCIONARIO = JsonWriter.name("idFuncionario");
+    private static final byte[] F_NOME = JsonWriter.name("nome");
+    private static final byte[] F_CPF = JsonWriter.name("cpf");
+    private static final byte[] F_TELEFONE = JsonWriter.name("telefone");
+    private static final byte[] F_EMAIL = JsonWriter.name("email");
+    private static final byte[] F_ENDERECO = JsonWriter.name("endereco");
+    private static final byte[] F_ESPECIE = JsonWriter.name("especie");
+    private static final byte[] F_RACA = JsonWriter.name("raca");
+    private static final byte[] F_DATA_NASCIMENTO = JsonWriter.name("dataNascimento");
+    private static final byte[] F_PESO = JsonWriter.name("peso");
+    private static final byte[] F_OBSERVACOES = JsonWriter.name("observacoes");
+    private static final byte[] F_DESCRICAO = JsonWriter.name("descricao");
+    private static final byte[] F_PRECO = JsonWriter.name("preco");
+    private static final byte[] F_ESTOQUE = JsonWriter.name("estoque");
+    private static final byte[] F_CATEGORIA = JsonWriter.name("categoria");
+    private static final byte[] F_CARGO = JsonWriter.name("cargo");
+    private static final byte[] F_SALARIO_BASE = JsonWriter.name("salarioBase");
+    private static final byte[] F_SALARIO_CALCULADO = JsonWriter.name("salarioCalculado");
+    private static final byte[] F_DATA_CONTRATACAO = JsonWriter.name("dataContratacao");
+    private static final byte[] F_ATIVO = JsonWriter.name("ativo");
+    private static final byte[] F_DATA_CADASTRO = JsonWriter.name("dataCadastro");
+    private static final byte[] F_VERSAO = JsonWriter.name("versao");
+    private static final byte[] F_ITENS = JsonWriter.name("itens");
+    private static final byte[] F_DATA = JsonWriter.name("data");
+    private static final byte[] F_PROXIMO_CURSOR = JsonWriter.name("proximoCursor");
+    private static final byte[] F_LIMITE = JsonWriter.name("limite");
+    private static final byte[] F_QUANTIDADE = JsonWriter.name("quantidade");
     
     public static String clienteToJson(Cliente cliente) {
-        if (cliente == null) {
-            return "null";
-        }
-        
-        StringBuilder json = new StringBuilder("{");
-        json.append("\"idCliente\":").append(cliente.getIdCliente() != null ? cliente.getIdCliente() : "null").append(",");
-        json.append("\"nome\":\"").append(escapeJson(cliente.getNome() != null ? cliente.getNome() : "")).append("\",");
-        json.append("\"cpf\":\"").append(escapeJson(cliente.getCpf() != null ? cliente.getCpf() : "")).append("\",");
-        json.append("\"telefone\":").append(cliente.getTelefone() != null ? "\"" + escapeJson(cliente.getTelefone()) + "\"" : "null").append(",");
-        json.append("\"email\":").append(cliente.getEmail() != null ? "\"" + escapeJson(cliente.getEmail()) + "\"" : "null").append(",");
-        json.append("\"endereco\":").append(cliente.getEndereco() != null ? "\"" + escapeJson(cliente.getEndereco()) + "\"" : "null").append(",");
-        json.append("\"dataCadastro\":").append(cliente.getDataCadastro() != null ? "\"" + cliente.getDataCadastro().format(DATETIME_FORMATTER) + "\"" : "null");
-        json.append("}");
-        
-        return json.toString();
+        return toJson(w -> writeCliente(w, cliente));
     }
     
     public static String clientesToJson(List<Cliente> clientes) {
-        if (clientes == null) {
-            return "[]";
+        return toJson(w -> writeClientes(w, clientes));
+    }
+    
+    public static String petToJson(Pet pet) {
+        return toJson(w -> writePet(w, pet));
+    }
+    
+    public static String petsToJson(List<Pet> pets) {
+        return toJson(w -> writePets(w, pets));
+    }
+    
+    public static String produtoToJson(Produto produto) {
+        return toJson(w -> writeProduto(w, produto));
+    }
+    
+    public static String produtosToJson(List<Produto> produtos) {
+        return toJson(w -> writeProdutos(w, produtos));
+    }
+    
+    public static String funcionarioToJson(Funcionario funcionario) {
+        return toJson(w -> writeFuncionario(w, funcionario));
+    }
+    
+    public static String funcionariosToJson(List<Funcionario> funcionarios) {
+        return toJson(w -> writeFuncionarios(w, funcionarios));
+    }
+    
+    public static void writeCliente(JsonWriter w, Cliente cliente) throws IOException {
+        if (cliente == null) {
+            w.nullValue();
+            return;
         }
         
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < clientes.size(); i++) {
-            if (i > 0) json.append(",");
-            json.append(clienteToJson(clientes.get(i)));
+        w.beginObject();
+        w.name(F_ID_CLIENTE).value(cliente.getIdCliente());
+        w.name(F_NOME).value(naoNulo(cliente.getNome()));
+        w.name(F_CPF).value(naoNulo(cliente.getCpf()));
+        w.name(F_TELEFONE).value(cliente.getTelefone());
+        w.name(F_EMAIL).value(cliente.getEmail());
+        w.name(F_ENDERECO).value(cliente.getEndereco());
+        w.name(F_DATA_CADASTRO).value(cliente.getDataCadastro());
+        w.name(F_VERSAO).value(cliente.getVersao());
+        w.endObject();
+    }
+    
+    public static void writeClientes(JsonWriter w, List<Cliente> clientes) throws IOException {
+        w.beginArray();
+        if (clientes != null) {
+            for (Cliente cliente : clientes) {
+                writeCliente(w, cliente);
+            }
         }
-        json.append("]");
-        
-        return json.toString();
+        w.endArray();
     }
     
-    public static String petToJson(Pet pet) {
+    public static void writePet(JsonWriter w, Pet pet) throws IOException {
         if (pet == null) {
-            return "null";
+            w.nullValue();
+            return;
         }
         
-        StringBuilder json = new StringBuilder("{");
-        json.append("\"idPet\":").append(pet.getIdPet() != null ? pet.getIdPet() : "null").append(",");
-        json.append("\"idCliente\":").append(pet.getIdCliente() != null ? pet.getIdCliente() : "null").append(",");
-        json.append("\"nome\":\"").append(escapeJson(pet.getNome())).append("\",");
-        json.append("\"especie\":\"").append(escapeJson(pet.getEspecie())).append("\",");
-        json.append("\"raca\":").append(pet.getRaca() != null ? "\"" + escapeJson(pet.getRaca()) + "\"" : "null").append(",");
-        json.append("\"dataNascimento\":").append(pet.getDataNascimento() != null ? "\"" + pet.getDataNascimento().format(DATE_FORMATTER) + "\"" : "null").append(",");
-        json.append("\"peso\":").append(pet.getPeso() != null ? pet.getPeso() : "null").append(",");
-        json.append("\"observacoes\":").append(pet.getObservacoes() != null ? "\"" + escapeJson(pet.getObservacoes()) + "\"" : "null").append(",");
-        json.append("\"dataCadastro\":").append(pet.getDataCadastro() != null ? "\"" + pet.getDataCadastro().format(DATETIME_FORMATTER) + "\"" : "null");
-        json.append("}");
-        
-        return json.toString();
+        w.beginObject();
+        w.name(F_ID_PET).value(pet.getIdPet());
+        w.name(F_ID_CLIENTE).value(pet.getIdCliente());
+        w.name(F_NOME).value(naoNulo(pet.getNome()));
+        w.name(F_ESPECIE).value(naoNulo(pet.getEspecie()));
+        w.name(F_RACA).value(pet.getRaca());
+        w.name(F_DATA_NASCIMENTO).value(pet.getDataNascimento());
+        w.name(F_PESO).value(pet.getPeso());
+        w.name(F_OBSERVACOES).value(pet.getObservacoes());
+        w.name(F_DATA_CADASTRO).value(pet.getDataCadastro());
+        w.name(F_VERSAO).value(pet.getVersao());
+        w.endObject();
     }
     
-    public static String petsToJson(List<Pet> pets) {
-        if (pets == null) {
-            return "[]";
-        }
-        
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < pets.size(); i++) {
-            if (i > 0) json.append(",");
-            json.append(petToJson(pets.get(i)));
+    public static void writePets(JsonWriter w, List<Pet> pets) throws IOException {
+        w.beginArray();
+        if (pets != null) {
+            for (Pet pet : pets) {
+                writePet(w, pet);
+            }
         }
-        json.append("]");
-        
-        return json.toString();
+        w.endArray();
     }
     
-    public static String produtoToJson(Produto produto) {
+    public static void writeProduto(JsonWriter w, Produto produto) throws IOException {
         if (produto == null) {
-            return "null";
+            w.nullValue();
+            return;
         }
         
-        StringBuilder json = new StringBuilder("{");
-        json.append("\"idProduto\":").append(produto.getIdProduto() != null ? produto.getIdProduto() : "null").append(",");
-        json.append("\"nome\":\"").append(escapeJson(produto.getNome())).append("\",");
-        json.append("\"descricao\":").append(produto.getDescricao() != null ? "\"" + escapeJson(produto.getDescricao()) + "\"" : "null").append(",");
-        json.append("\"preco\":").append(produto.getPreco() != null ? produto.getPreco() : "null").append(",");
-        json.append("\"estoque\":").append(produto.getEstoque() != null ? produto.getEstoque() : "null").append(",");
-        json.append("\"categoria\":").append(produto.getCategoria() != null ? "\"" + escapeJson(produto.getCategoria()) + "\"" : "null").append(",");
-        json.append("\"ativo\":").append(produto.getAtivo() != null ? produto.getAtivo() : "true").append(",");
-        json.append("\"dataCadastro\":").append(produto.getDataCadastro() != null ? "\"" + produto.getDataCadastro().format(DATETIME_FORMATTER) + "\"" : "null");
-        json.append("}");
-        
-        return json.toString();
+        w.beginObject();
+        w.name(F_ID_PRODUTO).value(produto.getIdProduto());
+        w.name(F_NOME).value(naoNulo(produto.getNome()));
+        w.name(F_DESCRICAO).value(produto.getDescricao());
+        w.name(F_PRECO).value(produto.getPreco());
+        w.name(F_ESTOQUE).value(produto.getEstoque());
+        w.name(F_CATEGORIA).value(produto.getCategoria());
+        w.name(F_ATIVO).value(produto.getAtivo() != null ? produto.getAtivo() : true);
+        w.name(F_DATA_CADASTRO).value(produto.getDataCadastro());
+        w.name(F_VERSAO).value(produto.getVersao());
+        w.endObject();
     }
     
-    public static String produtosToJson(List<Produto> produtos) {
-        if (produtos == null) {
-            return "[]";
-        }
-        
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < produtos.size(); i++) {
-            if (i > 0) json.append(",");
-            json.append(produtoToJson(produtos.get(i)));
+    public static void writeProdutos(JsonWriter w, List<Produto> produtos) throws IOException {
+        w.beginArray();
+        if (produtos != null) {
+            for (Produto produto : produtos) {
+                writeProduto(w, produto);
+            }
         }
-        json.append("]");
-        
-        return json.toString();
+        w.endArray();
     }
     
-    public static String funcionarioToJson(Funcionario funcionario) {
+    public static void writeFuncionario(JsonWriter w, Funcionario funcionario) throws IOException {
         if (funcionario == null) {
-            return "null";
+            w.nullValue();
+            return;
         }
         
-        StringBuilder json = new StringBuilder("{");
-        json.append("\"idFuncionario\":").append(funcionario.getIdFuncionario() != null ? funcionario.getIdFuncionario() : "null").append(",");
-        json.append("\"nome\":\"").append(escapeJson(funcionario.getNome())).append("\",");
-        json.append("\"cpf\":\"").append(escapeJson(funcionario.getCpf())).append("\",");
-        json.append("\"telefone\":").append(funcionario.getTelefone() != null ? "\"" + escapeJson(funcionario.getTelefone()) + "\"" : "null").append(",");
-        json.append("\"email\":\"").append(escapeJson(funcionario.getEmail())).append("\",");
-        json.append("\"cargo\":\"").append(escapeJson(funcionario.getCargo())).append("\",");
-        json.append("\"salarioBase\":").append(funcionario.getSalarioBase() != null ? funcionario.getSalarioBase() : "null").append(",");
-        json.append("\"salarioCalculado\":").append(funcionario.calcularSalario() != null ? funcionario.calcularSalario() : "null").append(",");
-        json.append("\"dataContratacao\":").append(funcionario.getDataContratacao() != null ? "\"" + funcionario.getDataContratacao().format(DATE_FORMATTER) + "\"" : "null").append(",");
-        json.append("\"ativo\":").append(funcionario.getAtivo() != null ? funcionario.getAtivo() : "true").append(",");
-        json.append("\"dataCadastro\":").append(funcionario.getDataCadastro() != null ? "\"" + funcionario.getDataCadastro().format(DATETIME_FORMATTER) + "\"" : "null");
-        json.append("}");
-        
-        return json.toString();
+        w.beginObject();
+        w.name(F_ID_FUNCIONARIO).value(funcionario.getIdFuncionario());
+        w.name(F_NOME).value(naoNulo(funcionario.getNome()));
+        w.name(F_CPF).value(naoNulo(funcionario.getCpf()));
+        w.name(F_TELEFONE).value(funcionario.getTelefone());
+        w.name(F_EMAIL).value(naoNulo(funcionario.getEmail()));
+        w.name(F_CARGO).value(naoNulo(funcionario.getCargo()));
+        w.name(F_SALARIO_BASE).value(funcionario.getSalarioBase());
+        w.name(F_SALARIO_CALCULADO).value(funcionario.calcularSalario());
+        w.name(F_DATA_CONTRATACAO).value(funcionario.getDataContratacao());
+        w.name(F_ATIVO).value(funcionario.getAtivo() != null ? funcionario.getAtivo() : true);
+        w.name(F_DATA_CADASTRO).value(funcionario.getDataCadastro());
+        w.name(F_VERSAO).value(funcionario.getVersao());
+        w.endObject();
     }
     
-    public static String funcionariosToJson(List<Funcionario> funcionarios) {
-        if (funcionarios == null) {
-            return "[]";
+    public static void writeFuncionarios(JsonWriter w, List<Funcionario> funcionarios) throws IOException {
+        w.beginArray();
+        if (funcionarios != null) {
+            for (Funcionario funcionario : funcionarios) {
+                writeFuncionario(w, funcionario);
+            }
         }
-        
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < funcionarios.size(); i++) {
-            if (i > 0) json.append(",");
-            json.append(funcionarioToJson(funcionarios.get(i)));
+        w.endArray();
+    }
+    
+    public static void writeSaldoEstoque(JsonWriter w, Integer idProduto, int estoque) throws IOException {
+        w.beginObject();
+        w.name(F_ID_PRODUTO).value(idProduto);
+        w.name(F_ESTOQUE).value(estoque);
+        w.endObject();
+    }
+    
+    public static void writeSaldosEstoque(JsonWriter w, Map<Integer, Integer> saldos) throws IOException {
+        w.beginObject();
+        w.name(F_ITENS).beginArray();
+        for (Map.Entry<Integer, Integer> saldo : saldos.entrySet()) {
+            writeSaldoEstoque(w, saldo.getKey(), saldo.getValue());
         }
-        json.append("]");
-        
-        return json.toString();
+        w.endArray();
+        w.endObject();
+    }
+    
+    /**
+     * Escreve uma pagina no formato {"data":[...],"proximoCursor":...,"limite":N,"quantidade":N}.
+     */
+    public static <T> void writePagina(JsonWriter w, List<T> itens, String proximoCursor, int limite,
+                                       ListaWriter<T> escritor) throws IOException {
+        w.beginObject();
+        w.name(F_DATA);
+        escritor.write(w, itens);
+        w.name(F_PROXIMO_CURSOR).value(proximoCursor);
+        w.name(F_LIMITE).value(limite);
+        w.name(F_QUANTIDADE).value(itens.size());
+        w.endObject();
+    }
+    
+    @FunctionalInterface
+    public interface ListaWriter<T> {
+        void write(JsonWriter w, List<T> itens) throws IOException;
+    }
+    
+    public static byte[] toJsonBytes(JsonContent content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        try (JsonWriter writer = new JsonWriter(out, 512)) {
+            content.writeTo(writer);
+        } catch (IOException e) {
+            // ByteArrayOutputStream nao lanca IOException
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+    
+    private static String toJson(JsonContent content) {
+        return new String(toJsonBytes(content), StandardCharsets.UTF_8);
+    }
+    
+    private static String naoNulo(String texto) {
+        return texto != null ? texto : "";
     }
     
     public static Map<String, String> jsonToMap(String json) {
@@ -162,137 +262,406 @@ public class JsonUtil {
             return map;
         }
         
-        json = json.trim();
-        if (json.startsWith("{") && json.endsWith("}")) {
-            json = json.substring(1, json.length() - 1);
-        }
-        
-        String[] pairs = splitJsonPairs(json);
-        for (String pair : pairs) {
-            String[] keyValue = pair.split(":", 2);
-            if (keyValue.length == 2) {
-                String key = removeQuotes(keyValue[0].trim());
-                String value = removeQuotes(keyValue[1].trim());
-                map.put(key, value);
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        try {
+            JsonReader reader = new JsonReader(bytes, 0, bytes.length);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                String value = lerTexto(reader);
+                map.put(name, value != null ? value : "null");
             }
+            reader.endObject();
+            reader.endDocument();
+        } catch (IOException e) {
+            // Leitura de array em memoria nao lanca IOException
+            throw new UncheckedIOException(e);
         }
         
         return map;
     }
     
-    public static Cliente jsonToCliente(Map<String, String> jsonMap) {
-        Cliente cliente = new Cliente();
-        
-        if (jsonMap.containsKey("idCliente") && jsonMap.get("idCliente") != null && !jsonMap.get("idCliente").equals("null")) {
-            try {
-                cliente.setIdCliente(Integer.parseInt(jsonMap.get("idCliente")));
-            } catch (NumberFormatException e) {
-                // Ignora erro de conversão
+    public static Map<String, String> jsonToMap(JsonReader reader) throws IOException {
+        Map<String, String> map = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            String value = lerTexto(reader);
+            map.put(name, value != null ? value : "null");
+        }
+        reader.endObject();
+        reader.endDocument();
+        return map;
+    }
+    
+    /**
+     * Le {"itens":[{"idProduto":1,"quantidade":2},...]} somando itens repetidos.
+     */
+    public static Map<Integer, Integer> jsonToItensEstoque(JsonReader reader) throws IOException {
+        Map<Integer, Integer> itens = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("itens")) {
+                reader.skipValue();
+                continue;
             }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Integer idProduto = null;
+                Integer quantidade = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "idProduto": idProduto = lerInteiro(reader); break;
+                        case "quantidade": quantidade = lerInteiro(reader); break;
+                        default: reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (idProduto == null || quantidade == null) {
+                    throw new IllegalArgumentException("Cada item precisa de idProduto e quantidade.");
+                }
+                itens.merge(idProduto, quantidade, Integer::sum);
+            }
+            reader.endArray();
         }
-        
-        if (jsonMap.containsKey("nome")) cliente.setNome(jsonMap.get("nome"));
-        if (jsonMap.containsKey("cpf")) cliente.setCpf(jsonMap.get("cpf"));
-        if (jsonMap.containsKey("telefone") && !jsonMap.get("telefone").equals("null")) cliente.setTelefone(jsonMap.get("telefone"));
-        if (jsonMap.containsKey("email")) cliente.setEmail(jsonMap.get("email"));
-        if (jsonMap.containsKey("endereco") && !jsonMap.get("endereco").equals("null")) cliente.setEndereco(jsonMap.get("endereco"));
-        
+        reader.endObject();
+        reader.endDocument();
+        return itens;
+    }
+    
+    // Campo versao de um objeto, sem montar o registro; null quando nao foi enviado
+    public static Integer lerVersao(JsonReader reader) throws IOException {
+        Integer versao = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("versao")) {
+                versao = lerInteiro(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return versao;
+    }
+    
+    // Edicao parcial: uma copia de base com os campos enviados aplicados
+    public static Cliente jsonToCliente(JsonReader reader, Cliente base) throws IOException {
+        Cliente cliente = readCliente(reader, base.copiar());
+        reader.endDocument();
         return cliente;
     }
     
-    public static Produto jsonToProduto(Map<String, String> jsonMap) {
-        Produto produto = new Produto();
-        
-        if (jsonMap.containsKey("idProduto") && jsonMap.get("idProduto") != null && !jsonMap.get("idProduto").equals("null")) {
-            try {
-                produto.setIdProduto(Integer.parseInt(jsonMap.get("idProduto")));
-            } catch (NumberFormatException e) {
-                // Ignora erro de conversão
+    public static Cliente jsonToCliente(JsonReader reader) throws IOException {
+        Cliente cliente = readCliente(reader);
+        reader.endDocument();
+        return cliente;
+    }
+    
+    // Edicao parcial: uma copia de base com os campos enviados aplicados
+    public static Pet jsonToPet(JsonReader reader, Pet base) throws IOException {
+        Pet pet = readPet(reader, base.copiar());
+        reader.endDocument();
+        return pet;
+    }
+    
+    public static Pet jsonToPet(JsonReader reader) throws IOException {
+        Pet pet = readPet(reader);
+        reader.endDocument();
+        return pet;
+    }
+    
+    // Edicao parcial: uma copia de base com os campos enviados aplicados
+    public static Produto jsonToProduto(JsonReader reader, Produto base) throws IOException {
+        Produto produto = readProduto(reader, base.copiar());
+        reader.endDocument();
+        return produto;
+    }
+    
+    public static Produto jsonToProduto(JsonReader reader) throws IOException {
+        Produto produto = readProduto(reader);
+        reader.endDocument();
+        return produto;
+    }
+    
+    // Edicao parcial: uma copia de base com os campos enviados aplicados
+    public static Funcionario jsonToFuncionario(JsonReader reader, Funcionario base) throws IOException {
+        Funcionario funcionario = readFuncionario(reader, base);
+        reader.endDocument();
+        return funcionario;
+    }
+    
+    public static Funcionario jsonToFuncionario(JsonReader reader) throws IOException {
+        Funcionario funcionario = readFuncionario(reader);
+        reader.endDocument();
+        return funcionario;
+    }
+    
+    public static Cliente readCliente(JsonReader reader) throws IOException {
+        return readCliente(reader, new Cliente());
+    }
+    
+    // Aplica sobre cliente so os campos presentes no JSON (campos null sao ignorados)
+    public static Cliente readCliente(JsonReader reader, Cliente cliente) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "idCliente": {
+                    Integer id = lerInteiro(reader);
+                    if (id != null) cliente.setIdCliente(id);
+                    break;
+                }
+                case "nome":
+                    cliente.setNome(lerTexto(reader));
+                    break;
+                case "cpf":
+                    cliente.setCpf(lerTexto(reader));
+                    break;
+                case "telefone": {
+                    String telefone = lerTexto(reader);
+                    if (telefone != null) cliente.setTelefone(telefone);
+                    break;
+                }
+                case "email":
+                    cliente.setEmail(lerTexto(reader));
+                    break;
+                case "endereco": {
+                    String endereco = lerTexto(reader);
+                    if (endereco != null) cliente.setEndereco(endereco);
+                    break;
+                }
+                case "versao":
+                    cliente.setVersao(lerInteiro(reader));
+                    break;
+                default:
+                    reader.skipValue();
             }
         }
+        reader.endObject();
         
-        if (jsonMap.containsKey("nome")) produto.setNome(jsonMap.get("nome"));
-        if (jsonMap.containsKey("descricao") && !jsonMap.get("descricao").equals("null")) produto.setDescricao(jsonMap.get("descricao"));
-        if (jsonMap.containsKey("preco")) {
-            try {
-                produto.setPreco(Double.parseDouble(jsonMap.get("preco")));
-            } catch (NumberFormatException e) {
-                // Ignora erro
+        return cliente;
+    }
+    
+    public static Pet readPet(JsonReader reader) throws IOException {
+        return readPet(reader, new Pet());
+    }
+    
+    // Aplica sobre pet so os campos presentes no JSON (campos null sao ignorados)
+    public static Pet readPet(JsonReader reader, Pet pet) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "idPet": {
+                    Integer id = lerInteiro(reader);
+                    if (id != null) pet.setIdPet(id);
+                    break;
+                }
+                case "idCliente": {
+                    Integer idCliente = lerInteiro(reader);
+                    if (idCliente != null) pet.setIdCliente(idCliente);
+                    break;
+                }
+                case "nome":
+                    pet.setNome(lerTexto(reader));
+                    break;
+                case "especie":
+                    pet.setEspecie(lerTexto(reader));
+                    break;
+                case "raca": {
+                    String raca = lerTexto(reader);
+                    if (raca != null) pet.setRaca(raca);
+                    break;
+                }
+                case "dataNascimento": {
+                    LocalDate dataNascimento = lerData(reader);
+                    if (dataNascimento != null) pet.setDataNascimento(dataNascimento);
+                    break;
+                }
+                case "peso": {
+                    Double peso = lerDecimal(reader);
+                    if (peso != null) pet.setPeso(peso);
+                    break;
+                }
+                case "observacoes": {
+                    String observacoes = lerTexto(reader);
+                    if (observacoes != null) pet.setObservacoes(observacoes);
+                    break;
+                }
+                case "versao":
+                    pet.setVersao(lerInteiro(reader));
+                    break;
+                default:
+                    reader.skipValue();
             }
         }
-        if (jsonMap.containsKey("estoque")) {
-            try {
-                produto.setEstoque(Integer.parseInt(jsonMap.get("estoque")));
-            } catch (NumberFormatException e) {
-                // Ignora erro
+        reader.endObject();
+        
+        return pet;
+    }
+    
+    public static Produto readProduto(JsonReader reader) throws IOException {
+        return readProduto(reader, new Produto());
+    }
+    
+    // Aplica sobre produto so os campos presentes no JSON (campos null sao ignorados)
+    public static Produto readProduto(JsonReader reader, Produto produto) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "idProduto": {
+                    Integer id = lerInteiro(reader);
+                    if (id != null) produto.setIdProduto(id);
+                    break;
+                }
+                case "nome":
+                    produto.setNome(lerTexto(reader));
+                    break;
+                case "descricao": {
+                    String descricao = lerTexto(reader);
+                    if (descricao != null) produto.setDescricao(descricao);
+                    break;
+                }
+                case "preco": {
+                    Double preco = lerDecimal(reader);
+                    if (preco != null) produto.setPreco(preco);
+                    break;
+                }
+                case "estoque": {
+                    Integer estoque = lerInteiro(reader);
+                    if (estoque != null) produto.setEstoque(estoque);
+                    break;
+                }
+                case "categoria": {
+                    String categoria = lerTexto(reader);
+                    if (categoria != null) produto.setCategoria(categoria);
+                    break;
+                }
+                case "versao":
+                    produto.setVersao(lerInteiro(reader));
+                    break;
+                default:
+                    reader.skipValue();
             }
         }
-        if (jsonMap.containsKey("categoria") && !jsonMap.get("categoria").equals("null")) produto.setCategoria(jsonMap.get("categoria"));
+        reader.endObject();
         
         return produto;
     }
     
-    private static String escapeJson(String text) {
-        if (text == null) {
-            return "";
+    public static Funcionario readFuncionario(JsonReader reader) throws IOException {
+        return readFuncionario(reader, null);
+    }
+    
+    // Com base, os campos ausentes (ou null) ficam com o valor dela; a base nao e alterada
+    public static Funcionario readFuncionario(JsonReader reader, Funcionario base) throws IOException {
+        Integer id = null;
+        String cargo = null;
+        String nome = null;
+        String cpf = null;
+        String telefone = null;
+        String email = null;
+        Double salarioBase = null;
+        LocalDate dataContratacao = null;
+        Integer versao = null;
+        
+        // O cargo define a subclasse e pode vir depois dos outros campos
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "idFuncionario": id = lerInteiro(reader); break;
+                case "cargo": cargo = lerTexto(reader); break;
+                case "nome": nome = lerTexto(reader); break;
+                case "cpf": cpf = lerTexto(reader); break;
+                case "telefone": telefone = lerTexto(reader); break;
+                case "email": email = lerTexto(reader); break;
+                case "salarioBase": salarioBase = lerDecimal(reader); break;
+                case "dataContratacao": dataContratacao = lerData(reader); break;
+                case "versao": versao = lerInteiro(reader); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        
+        if (base == null) {
+            Funcionario funcionario = Funcionario.criarPorCargo(cargo);
+            if (id != null) funcionario.setIdFuncionario(id);
+            funcionario.setNome(nome);
+            funcionario.setCpf(cpf);
+            funcionario.setTelefone(telefone);
+            funcionario.setEmail(email);
+            funcionario.setSalarioBase(salarioBase);
+            funcionario.setDataContratacao(dataContratacao);
+            funcionario.setVersao(versao);
+            return funcionario;
+        }
+        
+        Funcionario funcionario = base.copiarComo(cargo != null ? cargo : base.getCargo());
+        if (id != null) funcionario.setIdFuncionario(id);
+        if (nome != null) funcionario.setNome(nome);
+        if (cpf != null) funcionario.setCpf(cpf);
+        if (telefone != null) funcionario.setTelefone(telefone);
+        if (email != null) funcionario.setEmail(email);
+        if (salarioBase != null) funcionario.setSalarioBase(salarioBase);
+        if (dataContratacao != null) funcionario.setDataContratacao(dataContratacao);
+        if (versao != null) funcionario.setVersao(versao);
+        return funcionario;
+    }
+    
+    private static String lerTexto(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            default:
+                reader.skipValue();
+                return null;
         }
-        return text.replace("\\", "\\\\")
-                   .replace("\"", "\\\"")
-                   .replace("\n", "\\n")
-                   .replace("\r", "\\r")
-                   .replace("\t", "\\t");
     }
     
-    private static String removeQuotes(String text) {
-        if (text == null) {
+    // Valores que nao convertem sao ignorados, como no cadastro pelo formulario
+    private static Integer lerInteiro(JsonReader reader) throws IOException {
+        String texto = lerTexto(reader);
+        if (texto == null) {
             return null;
         }
-        text = text.trim();
-        if (text.startsWith("\"") && text.endsWith("\"")) {
-            return text.substring(1, text.length() - 1);
+        try {
+            return Integer.parseInt(texto.trim());
+        } catch (NumberFormatException e) {
+            try {
+                double valor = Double.parseDouble(texto.trim());
+                return valor == Math.rint(valor) ? (int) valor : null;
+            } catch (NumberFormatException ignored) {
+                return null;
+            }
         }
-        return text;
     }
     
-    private static String[] splitJsonPairs(String json) {
-        List<String> pairs = new ArrayList<>();
-        StringBuilder currentPair = new StringBuilder();
-        boolean insideString = false;
-        boolean escapeNext = false;
-        
-        for (char c : json.toCharArray()) {
-            if (escapeNext) {
-                currentPair.append(c);
-                escapeNext = false;
-                continue;
-            }
-            
-            if (c == '\\') {
-                escapeNext = true;
-                currentPair.append(c);
-                continue;
-            }
-            
-            if (c == '"') {
-                insideString = !insideString;
-                currentPair.append(c);
-                continue;
-            }
-            
-            if (c == ',' && !insideString) {
-                pairs.add(currentPair.toString());
-                currentPair = new StringBuilder();
-                continue;
-            }
-            
-            currentPair.append(c);
+    private static Double lerDecimal(JsonReader reader) throws IOException {
+        String texto = lerTexto(reader);
+        if (texto == null) {
+            return null;
         }
-        
-        if (currentPair.length() > 0) {
-            pairs.add(currentPair.toString());
+        try {
+            return Double.parseDouble(texto.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private static LocalDate lerData(JsonReader reader) throws IOException {
+        String texto = lerTexto(reader);
+        if (texto == null || texto.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(texto);
+        } catch (DateTimeParseException e) {
+            return null;
         }
-        
-        return pairs.toArray(new String[0]);
     }
 }
-
@@ -0,0 +1,359 @@
+package util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Escritor de JSON que codifica direto em bytes UTF-8 num buffer proprio,
+ * descarregando no OutputStream quando o buffer enche. Nao cria Strings
+ * intermediarias: o escape e a codificacao UTF-8 sao feitos numa unica
+ * passada sobre os caracteres.
+ */
+public class JsonWriter implements Closeable, Flushable {
+
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_DEPTH = 64;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+
+    // Para cada nivel de aninhamento, indica se ja foi escrito algum elemento
+    private final boolean[] hasElements = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter(OutputStream out) {
+        this(out, 8192);
+    }
+
+    public JsonWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 64)];
+    }
+
+    /**
+     * Pre-codifica o nome de um campo como {@code "nome":} para ser reutilizado
+     * em todas as linhas.
+     */
+    public static byte[] name(String fieldName) {
+        return ("\"" + fieldName + "\":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        pop();
+        writeByte('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        pop();
+        writeByte(']');
+        return this;
+    }
+
+    public JsonWriter name(byte[] encodedName) throws IOException {
+        if (hasElements[depth - 1]) {
+            writeByte(',');
+        }
+        hasElements[depth - 1] = true;
+        writeBytes(encodedName, 0, encodedName.length);
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        writeBytes(NULL, 0, NULL.length);
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        byte[] bytes = value ? TRUE : FALSE;
+        writeBytes(bytes, 0, bytes.length);
+        return this;
+    }
+
+    public JsonWriter value(Boolean value) throws IOException {
+        return value == null ? nullValue() : value(value.booleanValue());
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JsonWriter value(Integer value) throws IOException {
+        return value == null ? nullValue() : value(value.longValue());
+    }
+
+    public JsonWriter value(Double value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeAscii(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(LocalDate date) throws IOException {
+        if (date == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeByte('"');
+        writeDate(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+        writeByte('"');
+        return this;
+    }
+
+    public JsonWriter value(LocalDateTime dateTime) throws IOException {
+        if (dateTime == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeByte('"');
+        writeDate(dateTime.getYear(), dateTime.getMonthValue(), dateTime.getDayOfMonth());
+        writeByte('T');
+        writeTwoDigits(dateTime.getHour());
+        writeByte(':');
+        writeTwoDigits(dateTime.getMinute());
+        writeByte(':');
+        writeTwoDigits(dateTime.getSecond());
+        writeByte('"');
+        return this;
+    }
+
+    /**
+     * Termina um registro NDJSON. So pode ser usado fora de objetos e arrays.
+     */
+    public JsonWriter newline() throws IOException {
+        if (depth != 0) {
+            throw new IllegalStateException("Quebra de linha dentro de um valor JSON.");
+        }
+        writeByte('\n');
+        return this;
+    }
+    
+    /**
+     * Escreve um trecho de JSON ja serializado como valor.
+     */
+    public JsonWriter rawValue(byte[] json) throws IOException {
+        beforeValue();
+        writeBytes(json, 0, json.length);
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        out.close();
+    }
+
+    private void push() {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON aninhado demais.");
+        }
+        hasElements[depth++] = false;
+    }
+
+    private void pop() {
+        if (depth == 0) {
+            throw new IllegalStateException("Fechamento sem abertura correspondente.");
+        }
+        depth--;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasElements[depth - 1]) {
+                writeByte(',');
+            }
+            hasElements[depth - 1] = true;
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        writeByte('"');
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    if (position == buffer.length) flushBuffer();
+                    buffer[position++] = (byte) c;
+                    continue;
+                }
+                switch (c) {
+                    case '"': writeEscape('"'); break;
+                    case '\\': writeEscape('\\'); break;
+                    case '\n': writeEscape('n'); break;
+                    case '\r': writeEscape('r'); break;
+                    case '\t': writeEscape('t'); break;
+                    case '\b': writeEscape('b'); break;
+                    case '\f': writeEscape('f'); break;
+                    default:
+                        ensure(6);
+                        buffer[position++] = '\\';
+                        buffer[position++] = 'u';
+                        buffer[position++] = '0';
+                        buffer[position++] = '0';
+                        buffer[position++] = HEX[c >> 4];
+                        buffer[position++] = HEX[c & 0xF];
+                }
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                ensure(4);
+                buffer[position++] = (byte) (0xF0 | (cp >> 18));
+                buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Surrogate solto nao e representavel em UTF-8
+                writeByte('?');
+            } else {
+                ensure(3);
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeEscape(char c) throws IOException {
+        ensure(2);
+        buffer[position++] = '\\';
+        buffer[position++] = (byte) c;
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private void writeDate(int year, int month, int day) throws IOException {
+        if (year < 0 || year > 9999) {
+            writeAscii(String.format("%04d", year));
+        } else {
+            ensure(4);
+            buffer[position++] = (byte) ('0' + year / 1000);
+            buffer[position++] = (byte) ('0' + year / 100 % 10);
+            buffer[position++] = (byte) ('0' + year / 10 % 10);
+            buffer[position++] = (byte) ('0' + year % 10);
+        }
+        writeByte('-');
+        writeTwoDigits(month);
+        writeByte('-');
+        writeTwoDigits(day);
+    }
+
+    private void writeTwoDigits(int value) throws IOException {
+        ensure(2);
+        buffer[position++] = (byte) ('0' + value / 10);
+        buffer[position++] = (byte) ('0' + value % 10);
+    }
+
+    private void writeAscii(String s) throws IOException {
+        int length = s.length();
+        ensure(Math.min(length, buffer.length));
+        for (int i = 0; i < length; i++) {
+            if (position == buffer.length) flushBuffer();
+            buffer[position++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeByte(char c) throws IOException {
+        if (position == buffer.length) flushBuffer();
+        buffer[position++] = (byte) c;
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - position) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.length - position < bytes) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
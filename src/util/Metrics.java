@@ -0,0 +1,132 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro das metricas do servidor, exportadas em /metrics no formato texto
+ * do Prometheus. Cada serie (familia + rotulos) e registrada uma vez, na
+ * criacao de quem a usa, e o chamador guarda o LongAdder ou Histogram
+ * devolvido; o caminho quente so incrementa, sem busca em mapa nem alocacao.
+ * Registrar de novo os mesmos rotulos substitui a serie anterior.
+ */
+public final class Metrics {
+    
+    /** Codigos de status HTTP possiveis; a posicao 0 guarda "sem resposta". */
+    public static final int CODIGOS_STATUS = 600;
+    
+    private static final String CONTADOR = "counter";
+    private static final String HISTOGRAMA = "histogram";
+    
+    private static final class Familia {
+        final String nome;
+        final String ajuda;
+        final String tipo;
+        // Rotulos formatados -> LongAdder, Histogram ou AtomicLongArray (por status)
+        final Map<String, Object> series = new LinkedHashMap<>();
+        
+        Familia(String nome, String ajuda, String tipo) {
+            this.nome = nome;
+            this.ajuda = ajuda;
+            this.tipo = tipo;
+        }
+    }
+    
+    private static final Map<String, Familia> FAMILIAS = new LinkedHashMap<>();
+    
+    private Metrics() {
+    }
+    
+    /** Contador; rotulos em pares nome, valor. */
+    public static LongAdder contador(String nome, String ajuda, String... rotulos) {
+        LongAdder contador = new LongAdder();
+        registrar(nome, ajuda, CONTADOR, rotulos, contador);
+        return contador;
+    }
+    
+    public static Histogram histograma(String nome, String ajuda, Histogram histograma, String... rotulos) {
+        registrar(nome, ajuda, HISTOGRAMA, rotulos, histograma);
+        return histograma;
+    }
+    
+    /**
+     * Contador com um rotulo status a mais, indexado pelo codigo HTTP
+     * (0 para sem resposta). So os codigos que ocorreram sao exportados.
+     */
+    public static AtomicLongArray contadorPorStatus(String nome, String ajuda, String... rotulos) {
+        AtomicLongArray porStatus = new AtomicLongArray(CODIGOS_STATUS);
+        registrar(nome, ajuda, CONTADOR, rotulos, porStatus);
+        return porStatus;
+    }
+    
+    public static void escrever(StringBuilder out) {
+        List<Familia> familias;
+        synchronized (FAMILIAS) {
+            familias = new ArrayList<>(FAMILIAS.values());
+        }
+        for (Familia familia : familias) {
+            List<Map.Entry<String, Object>> series;
+            synchronized (FAMILIAS) {
+                series = new ArrayList<>(familia.series.entrySet());
+            }
+            out.append("# HELP ").append(familia.nome).append(' ').append(familia.ajuda).append('\n');
+            out.append("# TYPE ").append(familia.nome).append(' ').append(familia.tipo).append('\n');
+            for (Map.Entry<String, Object> serie : series) {
+                escreverSerie(out, familia.nome, serie.getKey(), serie.getValue());
+            }
+        }
+    }
+    
+    private static void escreverSerie(StringBuilder out, String nome, String rotulos, Object valor) {
+        if (valor instanceof Histogram) {
+            ((Histogram) valor).escreverPrometheus(out, nome, rotulos);
+        } else if (valor instanceof LongAdder) {
+            out.append(nome);
+            if (!rotulos.isEmpty()) {
+                out.append('{').append(rotulos).append('}');
+            }
+            out.append(' ').append(((LongAdder) valor).sum()).append('\n');
+        } else {
+            AtomicLongArray porStatus = (AtomicLongArray) valor;
+            String separador = rotulos.isEmpty() ? "" : ",";
+            for (int codigo = 0; codigo < porStatus.length(); codigo++) {
+                long total = porStatus.get(codigo);
+                if (total > 0) {
+                    out.append(nome).append('{').append(rotulos).append(separador)
+                        .append("status=\"").append(codigo == 0 ? "nenhum" : Integer.toString(codigo))
+                        .append("\"} ").append(total).append('\n');
+                }
+            }
+        }
+    }
+    
+    private static void registrar(String nome, String ajuda, String tipo, String[] rotulos, Object valor) {
+        String formatados = formatar(rotulos);
+        synchronized (FAMILIAS) {
+            Familia familia = FAMILIAS.computeIfAbsent(nome, n -> new Familia(n, ajuda, tipo));
+            if (!familia.tipo.equals(tipo)) {
+                throw new IllegalArgumentException("Metrica " + nome + " ja registrada como " + familia.tipo);
+            }
+            familia.series.put(formatados, valor);
+        }
+    }
+    
+    // nome="valor",... com \ " e quebra de linha escapados, como pede o formato texto
+    private static String formatar(String[] rotulos) {
+        if (rotulos.length % 2 != 0) {
+            throw new IllegalArgumentException("Rotulos devem vir em pares nome, valor");
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < rotulos.length; i += 2) {
+            if (i > 0) out.append(',');
+            out.append(rotulos[i]).append("=\"")
+                .append(rotulos[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                .append('"');
+        }
+        return out.toString();
+    }
+}
@@ -166,6 +166,7 @@ function openClienteModal(cliente = null) {
     if (cliente) {
         title.textContent = 'Editar Cliente';
         document.getElementById('cliente-id').value = cliente.idCliente;
+        document.getElementById('cliente-versao').value = cliente.versao ?? '';
         document.getElementById('cliente-nome').value = cliente.nome || '';
         document.getElementById('cliente-cpf').value = cliente.cpf || '';
         document.getElementById('cliente-telefone').value = cliente.telefone || '';
@@ -175,6 +176,7 @@ function openClienteModal(cliente = null) {
         title.textContent = 'Novo Cliente';
         form.reset();
         document.getElementById('cliente-id').value = '';
+        document.getElementById('cliente-versao').value = '';
     }
 
     modal.classList.add('active');
@@ -196,6 +198,12 @@ async function saveCliente(event) {
         endereco: document.getElementById('cliente-endereco').value || null
     };
 
+    // Versao lida ao abrir o formulario: se outra pessoa salvou antes, o servidor responde 409
+    const versao = document.getElementById('cliente-versao').value;
+    if (id && versao !== '') {
+        cliente.versao = parseInt(versao);
+    }
+
     const endpoint = id ? `/api/clientes/${id}` : '/api/clientes';
     const method = id ? 'PUT' : 'POST';
     
@@ -276,6 +284,7 @@ function openFuncionarioModal(funcionario = null) {
     if (funcionario) {
         title.textContent = 'Editar Funcionario';
         document.getElementById('funcionario-id').value = funcionario.idFuncionario;
+        document.getElementById('funcionario-versao').value = funcionario.versao ?? '';
         document.getElementById('funcionario-nome').value = funcionario.nome || '';
         document.getElementById('funcionario-cpf').value = funcionario.cpf || '';
         document.getElementById('funcionario-telefone').value = funcionario.telefone || '';
@@ -291,6 +300,7 @@ function openFuncionarioModal(funcionario = null) {
         title.textContent = 'Novo Funcionario';
         form.reset();
         document.getElementById('funcionario-id').value = '';
+        document.getElementById('funcionario-versao').value = '';
     }
 
     modal.classList.add('active');
@@ -314,6 +324,12 @@ async function saveFuncionario(event) {
         dataContratacao: document.getElementById('funcionario-data').value || null
     };
 
+    // Versao lida ao abrir o formulario: se outra pessoa salvou antes, o servidor responde 409
+    const versao = document.getElementById('funcionario-versao').value;
+    if (id && versao !== '') {
+        funcionario.versao = parseInt(versao);
+    }
+
     const endpoint = id ? `/api/funcionarios/${id}` : '/api/funcionarios';
     const method = id ? 'PUT' : 'POST';
     
@@ -394,6 +410,7 @@ function openPetModal(pet = null) {
     if (pet) {
         title.textContent = 'Editar Pet';
         document.getElementById('pet-id').value = pet.idPet;
+        document.getElementById('pet-versao').value = pet.versao ?? '';
         document.getElementById('pet-id-cliente').value = pet.idCliente || '';
         document.getElementById('pet-nome').value = pet.nome || '';
         document.getElementById('pet-especie').value = pet.especie || '';
@@ -409,6 +426,7 @@ function openPetModal(pet = null) {
         title.textContent = 'Novo Pet';
         form.reset();
         document.getElementById('pet-id').value = '';
+        document.getElementById('pet-versao').value = '';
     }
 
     modal.classList.add('active');
@@ -432,6 +450,12 @@ async function savePet(event) {
         observacoes: document.getElementById('pet-observacoes').value || null
     };
 
+    // Versao lida ao abrir o formulario: se outra pessoa salvou antes, o servidor responde 409
+    const versao = document.getElementById('pet-versao').value;
+    if (id && versao !== '') {
+        pet.versao = parseInt(versao);
+    }
+
     const endpoint = id ? `/api/pets/${id}` : '/api/pets';
     const method = id ? 'PUT' : 'POST';
     
@@ -512,6 +536,7 @@ function openProdutoModal(produto = null) {
     if (produto) {
         title.textContent = 'Editar Produto';
         document.getElementById('produto-id').value = produto.idProduto;
+        document.getElementById('produto-versao').value = produto.versao ?? '';
         document.getElementById('produto-nome').value = produto.nome || '';
         document.getElementById('produto-descricao').value = produto.descricao || '';
         document.getElementById('produto-preco').value = produto.preco || '';
@@ -521,6 +546,7 @@ function openProdutoModal(produto = null) {
         title.textContent = 'Novo Produto';
         form.reset();
         document.getElementById('produto-id').value = '';
+        document.getElementById('produto-versao').value = '';
         document.getElementById('produto-estoque').value = 0;
     }
 
@@ -543,6 +569,12 @@ async function saveProduto(event) {
         categoria: document.getElementById('produto-categoria').value
     };
 
+    // Versao lida ao abrir o formulario: se outra pessoa salvou antes, o servidor responde 409
+    const versao = document.getElementById('produto-versao').value;
+    if (id && versao !== '') {
+        produto.versao = parseInt(versao);
+    }
+
     const endpoint = id ? `/api/produtos/${id}` : '/api/produtos';
     const method = id ? 'PUT' : 'POST';
     